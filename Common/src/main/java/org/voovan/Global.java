@@ -2,6 +2,7 @@ package org.voovan;
 
 import org.voovan.tools.hashwheeltimer.HashWheelTimer;
 import org.voovan.tools.threadpool.ThreadPool;
+import org.voovan.tools.threadpool.WorkerPool;
 
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -17,13 +18,20 @@ import java.util.concurrent.ThreadPoolExecutor;
 public class Global {
 
     private static ThreadPoolExecutor threadPool;
+    private static WorkerPool workerPool;
     private static HashWheelTimer hashWheelTimer;
 
     /**
      * 返回公用线程池
+     *      公用工作线程池是 ThreadPoolExecutor 时返回同一个线程池
      * @return 公用线程池
      */
     public synchronized static ThreadPoolExecutor getThreadPool(){
+       WorkerPool globalWorkerPool = getWorkerPool();
+       if(globalWorkerPool.getExecutor() instanceof ThreadPoolExecutor){
+           return (ThreadPoolExecutor) globalWorkerPool.getExecutor();
+       }
+
        if(threadPool==null || threadPool.isShutdown()){
            threadPool = ThreadPool.getNewThreadPool();
        }
@@ -31,6 +39,19 @@ public class Global {
        return threadPool;
     }
 
+    /**
+     * 返回公用工作线程池
+     *      线程池的类型, 并行度和拒绝策略在首次调用前通过 ThreadPool 的静态方法设置
+     * @return 公用工作线程池
+     */
+    public synchronized static WorkerPool getWorkerPool(){
+       if(workerPool==null || workerPool.isShutdown()){
+           workerPool = ThreadPool.getNewWorkerPool();
+       }
+
+       return workerPool;
+    }
+
     /**
      * 获取一个全局的秒定时器
      *      60个槽位, 每个槽位步长1s
@@ -0,0 +1,549 @@
+package org.voovan.tools;
+
+import org.voovan.tools.log.Logger;
+import org.voovan.tools.reflect.TReflect;
+import sun.misc.Cleaner;
+import sun.misc.Unsafe;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外内存分配器
+ *      按 2 的幂划分尺寸等级, 释放的内存块先进入线程缓存, 线程缓存满后进入全局缓存,
+ *      全局缓存也满了才真正释放. 超过 MAX_POOLED_SIZE 的内存不做缓存.
+ *      通过 allocateDirect 分配的 ByteBuffer 使用引用计数, 计数归零时内存块回到缓存,
+ *      没有显式释放的 ByteBuffer 在被 GC 回收时由 Cleaner 归还内存块.
+ *      只有分配出的 ByteBuffer 对象本身被当作内存池的 ByteBuffer, 通过 duplicate()/slice() 得到的视图
+ *      与原 ByteBuffer 共享内存, 不能通过视图 retain/release/reallocate.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ByteBufferAllocator {
+    //最小的尺寸等级 64B
+    private final static int MIN_SHIFT = 6;
+    //最大的尺寸等级 1MB
+    private final static int MAX_SHIFT = 20;
+    public final static int MIN_POOLED_SIZE = 1 << MIN_SHIFT;
+    public final static int MAX_POOLED_SIZE = 1 << MAX_SHIFT;
+    private final static int SIZE_CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+
+    //每个尺寸等级在线程缓存中保留的内存块数量
+    private static int THREAD_CACHE_SIZE = 32;
+    //每个尺寸等级在线程缓存中保留的内存字节数
+    private static int THREAD_CACHE_BYTES = 256 * 1024;
+    //每个尺寸等级在全局缓存中保留的内存字节数
+    private static long GLOBAL_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final static Unsafe unsafe = TUnsafe.getUnsafe();
+    private final static Constructor<?> DIRECT_BYTE_BUFFER_CONSTRUCTOR = findDirectByteBufferConstructor();
+
+    private final static Queue<Long>[] globalCaches = createGlobalCaches();
+    private final static AtomicInteger[] globalCacheCounts = createCounters();
+
+    private final static ThreadLocal<ThreadCacheHolder> threadCaches = new ThreadLocal<ThreadCacheHolder>(){
+        @Override
+        protected ThreadCacheHolder initialValue() {
+            return new ThreadCacheHolder();
+        }
+    };
+
+    private final static Map<Long, Deallocator> bufferDeallocators = new ConcurrentHashMap<Long, Deallocator>();
+
+    //统计计数器
+    private final static AtomicLong usedMemory = new AtomicLong(0);
+    private final static AtomicLong cachedMemory = new AtomicLong(0);
+    private final static AtomicLong allocateCount = new AtomicLong(0);
+    private final static AtomicLong cacheHitCount = new AtomicLong(0);
+    private final static AtomicLong releaseCount = new AtomicLong(0);
+
+    /**
+     * 线程缓存
+     *      只由所属的线程访问, 不需要同步
+     */
+    private static class ThreadCache {
+        private long[][] addresses = new long[SIZE_CLASS_COUNT][];
+        private int[] counts = new int[SIZE_CLASS_COUNT];
+
+        private ThreadCache(){
+            for(int i=0; i<SIZE_CLASS_COUNT; i++){
+                int blockSize = 1 << (i + MIN_SHIFT);
+                addresses[i] = new long[Math.max(0, Math.min(THREAD_CACHE_SIZE, THREAD_CACHE_BYTES / blockSize))];
+            }
+        }
+
+        private long poll(int sizeClass){
+            if(counts[sizeClass] == 0){
+                return 0;
+            }
+
+            counts[sizeClass]--;
+            return addresses[sizeClass][counts[sizeClass]];
+        }
+
+        private boolean offer(int sizeClass, long address){
+            if(counts[sizeClass] >= addresses[sizeClass].length){
+                return false;
+            }
+
+            addresses[sizeClass][counts[sizeClass]] = address;
+            counts[sizeClass]++;
+            return true;
+        }
+    }
+
+    /**
+     * 线程缓存的持有者
+     *      线程结束后持有者被 GC 回收, 由 Cleaner 将线程缓存中的内存块交给全局缓存
+     */
+    private static class ThreadCacheHolder {
+        private ThreadCache threadCache;
+
+        private ThreadCacheHolder(){
+            final ThreadCache cache = new ThreadCache();
+            this.threadCache = cache;
+            Cleaner.create(this, new Runnable() {
+                @Override
+                public void run() {
+                    for(int sizeClass=0; sizeClass<SIZE_CLASS_COUNT; sizeClass++){
+                        int blockSize = 1 << (sizeClass + MIN_SHIFT);
+                        long address = 0;
+                        while((address = cache.poll(sizeClass)) != 0){
+                            cachedMemory.addAndGet(-blockSize);
+                            freeToGlobal(sizeClass, address, blockSize);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Long>[] createGlobalCaches(){
+        Queue<Long>[] caches = new Queue[SIZE_CLASS_COUNT];
+        for(int i=0; i<SIZE_CLASS_COUNT; i++){
+            caches[i] = new ConcurrentLinkedQueue<Long>();
+        }
+        return caches;
+    }
+
+    private static AtomicInteger[] createCounters(){
+        AtomicInteger[] counters = new AtomicInteger[SIZE_CLASS_COUNT];
+        for(int i=0; i<SIZE_CLASS_COUNT; i++){
+            counters[i] = new AtomicInteger(0);
+        }
+        return counters;
+    }
+
+    private static Constructor<?> findDirectByteBufferConstructor(){
+        try {
+            Constructor<?> constructor = ByteBuffer.allocateDirect(0).getClass().getDeclaredConstructor(long.class, int.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            Logger.error("ByteBufferAllocator can't found the DirectByteBuffer constructor.", e);
+            return null;
+        }
+    }
+
+    /**
+     * 设置每个尺寸等级在线程缓存中保留的内存块数量
+     *      只对之后创建线程缓存的线程生效
+     * @param threadCacheSize 内存块数量
+     */
+    public static void setThreadCacheSize(int threadCacheSize) {
+        THREAD_CACHE_SIZE = threadCacheSize;
+    }
+
+    /**
+     * 设置每个尺寸等级在线程缓存中保留的内存字节数
+     *      只对之后创建线程缓存的线程生效
+     * @param threadCacheBytes 内存字节数
+     */
+    public static void setThreadCacheBytes(int threadCacheBytes) {
+        THREAD_CACHE_BYTES = threadCacheBytes;
+    }
+
+    /**
+     * 设置每个尺寸等级在全局缓存中保留的内存字节数
+     * @param globalCacheBytes 内存字节数
+     */
+    public static void setGlobalCacheBytes(long globalCacheBytes) {
+        GLOBAL_CACHE_BYTES = globalCacheBytes;
+    }
+
+    /**
+     * 计算容量对应的尺寸等级
+     * @param capacity 容量
+     * @return 尺寸等级, -1: 超过最大缓存的尺寸, 不做缓存
+     */
+    private static int sizeClass(int capacity){
+        if(capacity > MAX_POOLED_SIZE){
+            return -1;
+        }
+
+        if(capacity <= MIN_POOLED_SIZE){
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * 计算实际分配的内存块容量
+     *      不超过 MAX_POOLED_SIZE 时向上取整到 2 的幂
+     * @param capacity 期望的容量
+     * @return 实际分配的内存块容量
+     */
+    public static int blockSize(int capacity){
+        int sizeClass = sizeClass(capacity);
+        return sizeClass < 0 ? capacity : 1 << (sizeClass + MIN_SHIFT);
+    }
+
+    /**
+     * 分配内存块
+     *      返回的内存块容量为 blockSize(capacity), 必须使用 freeMemory 以相同的容量归还
+     * @param capacity 期望的容量
+     * @return 内存地址
+     */
+    public static long allocateMemory(int capacity){
+        int blockSize = blockSize(capacity);
+        int sizeClass = sizeClass(blockSize);
+        long address = 0;
+
+        allocateCount.incrementAndGet();
+
+        if(sizeClass >= 0) {
+            address = threadCaches.get().threadCache.poll(sizeClass);
+
+            if (address == 0) {
+                Long cachedAddress = globalCaches[sizeClass].poll();
+                if (cachedAddress != null) {
+                    globalCacheCounts[sizeClass].decrementAndGet();
+                    address = cachedAddress;
+                }
+            }
+        }
+
+        if(address == 0){
+            address = unsafe.allocateMemory(blockSize);
+        } else {
+            cacheHitCount.incrementAndGet();
+            cachedMemory.addAndGet(-blockSize);
+        }
+
+        usedMemory.addAndGet(blockSize);
+        return address;
+    }
+
+    /**
+     * 归还内存块
+     * @param address 内存地址
+     * @param capacity 分配时期望的容量
+     */
+    public static void freeMemory(long address, int capacity){
+        freeMemory(address, capacity, true);
+    }
+
+    /**
+     * 归还内存块
+     * @param address 内存地址
+     * @param capacity 分配时期望的容量
+     * @param useThreadCache 是否放入当前线程的缓存, Cleaner 在 GC 线程中归还时不能使用线程缓存
+     */
+    public static void freeMemory(long address, int capacity, boolean useThreadCache){
+        if(address == 0){
+            return;
+        }
+
+        int blockSize = blockSize(capacity);
+        int sizeClass = sizeClass(blockSize);
+
+        releaseCount.incrementAndGet();
+        usedMemory.addAndGet(-blockSize);
+
+        if(sizeClass >= 0) {
+            if (useThreadCache && threadCaches.get().threadCache.offer(sizeClass, address)) {
+                cachedMemory.addAndGet(blockSize);
+                return;
+            }
+
+            freeToGlobal(sizeClass, address, blockSize);
+        } else {
+            unsafe.freeMemory(address);
+        }
+    }
+
+    /**
+     * 将内存块放入全局缓存, 全局缓存已满时释放内存
+     * @param sizeClass 尺寸等级
+     * @param address 内存地址
+     * @param blockSize 内存块容量
+     */
+    private static void freeToGlobal(int sizeClass, long address, int blockSize){
+        if ((long)globalCacheCounts[sizeClass].get() * blockSize < GLOBAL_CACHE_BYTES) {
+            globalCacheCounts[sizeClass].incrementAndGet();
+            globalCaches[sizeClass].offer(address);
+            cachedMemory.addAndGet(blockSize);
+        } else {
+            unsafe.freeMemory(address);
+        }
+    }
+
+    /**
+     * 重新分配内存块
+     *      新的内存块能容纳期望的容量时直接返回原内存块, 否则复制数据到新的内存块并归还原内存块
+     * @param address 原内存地址
+     * @param oldCapacity 原期望容量
+     * @param newCapacity 新期望容量
+     * @return 新的内存地址
+     */
+    public static long reallocateMemory(long address, int oldCapacity, int newCapacity){
+        if(blockSize(oldCapacity) == blockSize(newCapacity)){
+            return address;
+        }
+
+        long newAddress = allocateMemory(newCapacity);
+        unsafe.copyMemory(address, newAddress, Math.min(oldCapacity, newCapacity));
+        freeMemory(address, oldCapacity);
+        return newAddress;
+    }
+
+    /**
+     * 使用内存地址构造 DirectByteBuffer
+     * @param address 内存地址
+     * @param capacity 容量
+     * @return ByteBuffer 对象
+     */
+    public static ByteBuffer wrap(long address, int capacity){
+        try {
+            return (ByteBuffer) DIRECT_BYTE_BUFFER_CONSTRUCTOR.newInstance(address, capacity);
+        } catch (Exception e) {
+            Logger.error("ByteBufferAllocator create DirectByteBuffer error.", e);
+            return null;
+        }
+    }
+
+    /**
+     * 分配一个 DirectByteBuffer
+     *      引用计数为 1, 使用完成后需要调用 release 归还内存
+     * @param capacity 容量
+     * @return ByteBuffer 对象
+     */
+    public static ByteBuffer allocateDirect(int capacity){
+        long address = allocateMemory(capacity);
+        ByteBuffer byteBuffer = wrap(address, capacity);
+        if(byteBuffer == null){
+            freeMemory(address, capacity);
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        Deallocator deallocator = new Deallocator(byteBuffer, address, capacity);
+        deallocator.cleaner = Cleaner.create(byteBuffer, deallocator);
+        bufferDeallocators.put(address, deallocator);
+        return byteBuffer;
+    }
+
+    /**
+     * 重新分配 ByteBuffer 的容量
+     *      原 ByteBuffer 对象的内存地址和容量被替换, 数据保留
+     * @param byteBuffer 由当前分配器分配的 ByteBuffer 对象
+     * @param newCapacity 新的容量
+     * @return true: 成功, false: 不是由当前分配器分配的 ByteBuffer
+     */
+    public static boolean reallocate(ByteBuffer byteBuffer, int newCapacity){
+        Deallocator deallocator = getDeallocator(byteBuffer);
+        if(deallocator == null){
+            return false;
+        }
+
+        synchronized (deallocator) {
+            long newAddress = reallocateMemory(deallocator.address, deallocator.capacity, newCapacity);
+            try {
+                TReflect.setFieldValue(byteBuffer, "address", newAddress);
+                TReflect.setFieldValue(byteBuffer, "capacity", newCapacity);
+            } catch (ReflectiveOperationException e) {
+                Logger.error("ByteBufferAllocator.reallocate() Error. ", e);
+                return false;
+            }
+
+            if(newAddress != deallocator.address) {
+                bufferDeallocators.remove(deallocator.address);
+                bufferDeallocators.put(newAddress, deallocator);
+            }
+            deallocator.address = newAddress;
+            deallocator.capacity = newCapacity;
+            return true;
+        }
+    }
+
+    private static Deallocator getDeallocator(ByteBuffer byteBuffer){
+        if(byteBuffer == null || byteBuffer.hasArray() || !byteBuffer.isDirect()){
+            return null;
+        }
+
+        Deallocator deallocator = bufferDeallocators.get(((sun.nio.ch.DirectBuffer)byteBuffer).address());
+
+        //duplicate() 得到的视图与原 ByteBuffer 的地址相同, 只认分配出的 ByteBuffer 对象本身
+        if(deallocator == null || deallocator.owner.get() != byteBuffer){
+            return null;
+        }
+
+        return deallocator;
+    }
+
+    /**
+     * 判断 ByteBuffer 是否由当前分配器分配
+     * @param byteBuffer ByteBuffer 对象
+     * @return true: 是, false: 否, 内存池 ByteBuffer 的 duplicate()/slice() 视图也返回 false
+     */
+    public static boolean isPooled(ByteBuffer byteBuffer){
+        return getDeallocator(byteBuffer) != null;
+    }
+
+    /**
+     * 增加 ByteBuffer 的引用计数
+     * @param byteBuffer ByteBuffer 对象
+     * @return 增加后的引用计数, -1: 不是由当前分配器分配的 ByteBuffer 或已释放
+     */
+    public static int retain(ByteBuffer byteBuffer){
+        Deallocator deallocator = getDeallocator(byteBuffer);
+        if(deallocator == null){
+            return -1;
+        }
+
+        while(true) {
+            int refCount = deallocator.refCount.get();
+            if(refCount <= 0){
+                return -1;
+            }
+
+            if(deallocator.refCount.compareAndSet(refCount, refCount + 1)){
+                return refCount + 1;
+            }
+        }
+    }
+
+    /**
+     * 减少 ByteBuffer 的引用计数, 计数归零时归还内存
+     *      归还后不能再访问这个 ByteBuffer
+     * @param byteBuffer ByteBuffer 对象
+     * @return true: 内存已归还, false: 仍有引用或者不是由当前分配器分配的 ByteBuffer
+     */
+    public static boolean release(ByteBuffer byteBuffer){
+        Deallocator deallocator = getDeallocator(byteBuffer);
+        if(deallocator == null){
+            return false;
+        }
+
+        if(deallocator.refCount.decrementAndGet() == 0){
+            //将 ByteBuffer 置为空, 防止归还后继续访问内存
+            byteBuffer.clear().limit(0);
+            deallocator.explicit = true;
+            deallocator.cleaner.clean();
+            try {
+                //地址置零, 防止同一地址被再次分配后用旧的 ByteBuffer 重复释放
+                TReflect.setFieldValue(byteBuffer, "address", 0L);
+            } catch (ReflectiveOperationException e) {
+                Logger.error("ByteBufferAllocator.release() Error. ", e);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * 获取 ByteBuffer 的引用计数
+     * @param byteBuffer ByteBuffer 对象
+     * @return 引用计数, -1: 不是由当前分配器分配的 ByteBuffer
+     */
+    public static int refCount(ByteBuffer byteBuffer){
+        Deallocator deallocator = getDeallocator(byteBuffer);
+        return deallocator == null ? -1 : deallocator.refCount.get();
+    }
+
+    /**
+     * 获取正在使用的堆外内存字节数
+     * @return 正在使用的字节数
+     */
+    public static long getUsedMemory(){
+        return usedMemory.get();
+    }
+
+    /**
+     * 获取缓存中的堆外内存字节数
+     * @return 缓存中的字节数
+     */
+    public static long getCachedMemory(){
+        return cachedMemory.get();
+    }
+
+    /**
+     * 获取分配次数
+     * @return 分配次数
+     */
+    public static long getAllocateCount(){
+        return allocateCount.get();
+    }
+
+    /**
+     * 获取命中缓存的分配次数
+     * @return 命中缓存的分配次数
+     */
+    public static long getCacheHitCount(){
+        return cacheHitCount.get();
+    }
+
+    /**
+     * 获取归还次数
+     * @return 归还次数
+     */
+    public static long getReleaseCount(){
+        return releaseCount.get();
+    }
+
+    /**
+     * 内存归还器
+     *      显式 release 或者 ByteBuffer 被 GC 回收时执行, 只会执行一次
+     */
+    private static class Deallocator implements Runnable {
+        //弱引用, 不影响 ByteBuffer 被 GC 回收
+        private WeakReference<ByteBuffer> owner;
+        private long address;
+        private int capacity;
+        private AtomicInteger refCount;
+        private Cleaner cleaner;
+        private volatile boolean explicit;
+
+        private Deallocator(ByteBuffer owner, long address, int capacity) {
+            this.owner = new WeakReference<ByteBuffer>(owner);
+            this.address = address;
+            this.capacity = capacity;
+            this.refCount = new AtomicInteger(1);
+            this.explicit = false;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (address == 0) {
+                return;
+            }
+
+            bufferDeallocators.remove(address);
+            freeMemory(address, capacity, explicit);
+            address = 0;
+        }
+    }
+}
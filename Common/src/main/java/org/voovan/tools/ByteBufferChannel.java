@@ -2,20 +2,22 @@ package org.voovan.tools;
 
 import org.voovan.tools.exception.MemoryReleasedException;
 import org.voovan.tools.log.Logger;
-import org.voovan.tools.reflect.TReflect;
 import sun.misc.Cleaner;
 import sun.misc.Unsafe;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.lang.reflect.Constructor;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ByteBuffer双向通道
+ *      内存从 ByteBufferAllocator 的内存池中分配, release 后归还到内存池
+ *      通道中的数据是内存块中的一个窗口, 从头部消费数据时只移动窗口的起始位置, 不移动数据,
+ *      尾部空间不足时才将数据移动到内存块的起始位置或者分配更大的内存块
  *
  * @author helyho
  *
@@ -25,7 +27,14 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class ByteBufferChannel {
 
-	private long address;
+	private final static long ADDRESS_OFFSET = bufferFieldOffset("address");
+	private final static long CAPACITY_OFFSET = bufferFieldOffset("capacity");
+
+	//数据窗口的起始地址
+	private volatile long address;
+	//内存块的起始地址和容量
+	private long blockAddress;
+	private int blockCapacity;
 	private Unsafe unsafe = TUnsafe.getUnsafe();
 	private ByteBuffer byteBuffer;
 	private int size;
@@ -34,6 +43,16 @@ public class ByteBufferChannel {
 	private Deallocator deallocator;
 	private Cleaner cleaner;
 
+	//单生产者模式下写入的数据先进入环形缓冲区, 由消费者在加锁后转移到通道中
+	private volatile RingByteBuffer ringBuffer;
+
+	//上一次查找的标识和停止的位置
+	private byte[] searchMark;
+	private int searchPosition;
+
+	//getTailBuffer() 调用前 byteBuffer 的 position
+	private int tailSavedPosition;
+
 	/**
 	 * 构造函数
 	 * @param capacity 分配的容量
@@ -57,34 +76,42 @@ public class ByteBufferChannel {
 		lock = new ReentrantLock();
 		this.byteBuffer = newByteBuffer(capacity);
 		byteBuffer.limit(0);
-		resetAddress();
 		this.size = 0;
 	}
 
+	private static long bufferFieldOffset(String fieldName){
+		try {
+			return TUnsafe.getUnsafe().objectFieldOffset(Buffer.class.getDeclaredField(fieldName));
+		} catch (NoSuchFieldException e) {
+			Logger.error("ByteBufferChannel can't found the Buffer field " + fieldName + ".", e);
+			return -1;
+		}
+	}
+
 	/**
 	 * 构造一个ByteBuffer
 	 * @param capacity 分配的容量
 	 * @return ByteBuffer 对象
 	 */
 	private ByteBuffer newByteBuffer(int capacity){
-		try {
-			ByteBuffer template = ByteBuffer.allocateDirect(0);
-			Constructor c = template.getClass().getDeclaredConstructor(long.class, int.class);
-			c.setAccessible(true);
-			address = TUnsafe.getUnsafe().allocateMemory(capacity);
-
-			ByteBuffer instance = (ByteBuffer) c.newInstance(address, capacity);
-
-			deallocator = new Deallocator(address, capacity);
+		//使用内存块的全部容量
+		capacity = ByteBufferAllocator.blockSize(capacity);
+		address = ByteBufferAllocator.allocateMemory(capacity);
+
+		ByteBuffer instance = ByteBufferAllocator.wrap(address, capacity);
+		if(instance == null){
+			ByteBufferAllocator.freeMemory(address, capacity);
+			Logger.error("Create ByteBufferChannel error. ");
+			return null;
+		}
 
-			cleaner = Cleaner.create(this, deallocator);
+		blockAddress = address;
+		blockCapacity = capacity;
+		deallocator = new Deallocator(address, capacity);
 
-			return instance;
+		cleaner = Cleaner.create(this, deallocator);
 
-		}catch(Exception e){
-			Logger.error("Create ByteBufferChannel error. ", e);
-			return null;
-		}
+		return instance;
 	}
 
 	/**
@@ -108,32 +135,97 @@ public class ByteBufferChannel {
 		}
 	}
 
+	/**
+	 * 启用单生产者模式
+	 *      启用后只能有一个线程调用 writeEnd 向通道尾部写入数据, 写入时不加锁,
+	 *      数据先进入环形缓冲区, 其他操作在加锁后将环形缓冲区中的数据转移到通道中.
+	 *      适用于一个线程(如 Selector)写入, 另一个线程(如消息分割)读取的场景.
+	 * @param ringBufferSize 环形缓冲区的容量
+	 */
+	public void enableSingleProducer(int ringBufferSize){
+		lock.lock();
+		try {
+			if(ringBuffer == null) {
+				ringBuffer = new RingByteBuffer(ringBufferSize);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 是否是单生产者模式
+	 * @return true: 单生产者模式, false: 加锁模式
+	 */
+	public boolean isSingleProducer(){
+		return ringBuffer != null;
+	}
+
+	/**
+	 * 加锁, 并将环形缓冲区中的数据转移到通道中
+	 */
+	private void lockChannel(){
+		lock.lock();
+		drainRingBuffer();
+	}
+
+	/**
+	 * 将环形缓冲区中的数据转移到通道尾部, 调用前必须持有锁
+	 */
+	private void drainRingBuffer(){
+		RingByteBuffer ringBuffer = this.ringBuffer;
+		if(ringBuffer == null || isReleased()){
+			return;
+		}
+
+		int ringSize = ringBuffer.size();
+		if(ringSize == 0){
+			return;
+		}
+
+		ensureCapacity(ringSize);
+
+		ringSize = ringBuffer.read(address + size, ringSize);
+		size = size + ringSize;
+		byteBuffer.limit(size);
+	}
+
 	/**
 	 * 立刻释放内存
 	 */
 	public void release(){
-//		lock.lock();
-//		try{
-//			if(address != 0) {
-//				cleaner.clean();
-//				address = 0;
-//			}
-//		}finally {
-//			lock.unlock();
-//		}
+		lock.lock();
+		try{
+			if(address != 0) {
+				deallocator.explicit = true;
+				cleaner.clean();
+				size = 0;
+				searchMark = null;
+				byteBuffer.position(0);
+				byteBuffer.limit(0);
+				setWindow(0, 0);
+				blockAddress = 0;
+				blockCapacity = 0;
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	private static class Deallocator implements Runnable {
 		private long address;
 		private int capacity;
+		private volatile boolean explicit;
 
 		private Deallocator(long address, int capacity) {
 			this.address = address;
 			this.capacity = capacity;
+			this.explicit = false;
 		}
 
-		public void setAddress(long address){
+		public void setAddress(long address, int capacity){
 			this.address = address;
+			this.capacity = capacity;
 		}
 
 		public void run() {
@@ -142,25 +234,63 @@ public class ByteBufferChannel {
 				return;
 			}
 
-			TUnsafe.getUnsafe().freeMemory(address);
+			//GC 线程中归还的内存不进入线程缓存
+			ByteBufferAllocator.freeMemory(address, capacity, explicit);
 			address = 0;
 		}
 	}
 
 	/**
-	 * 重新设置当前内存地址
+	 * 设置数据窗口, 调用前必须持有锁
+	 *      byteBuffer 的 position 和 limit 需要由调用者重新设置
+	 * @param windowAddress 窗口的起始地址
+	 * @param windowCapacity 窗口的容量
 	 */
-	private void resetAddress(){
-		checkRelease();
+	private void setWindow(long windowAddress, int windowCapacity){
+		unsafe.putLong(byteBuffer, ADDRESS_OFFSET, windowAddress);
+		unsafe.putInt(byteBuffer, CAPACITY_OFFSET, windowCapacity);
+		this.address = windowAddress;
+	}
 
-		lock.lock();
-		try {
-			this.address = TReflect.getFieldValue(byteBuffer, "address");
-			deallocator.setAddress(address);
-		}catch (ReflectiveOperationException e){
-			Logger.error("ByteBufferChannel resetAddress() Error: ", e);
-		} finally {
-			lock.unlock();
+	/**
+	 * 从头部消费数据, 调用前必须持有锁
+	 *      只移动窗口的起始位置, 数据全部消费后窗口回到内存块的起始位置
+	 * @param length 消费的数据大小
+	 */
+	private void consumeHead(int length){
+		int position = byteBuffer.position();
+		size = size - length;
+		searchPosition = Math.max(0, searchPosition - length);
+
+		if(size == 0) {
+			setWindow(blockAddress, blockCapacity);
+		} else {
+			setWindow(address + length, byteBuffer.capacity() - length);
+		}
+
+		byteBuffer.limit(size);
+		byteBuffer.position(position > length ? position - length : 0);
+	}
+
+	/**
+	 * 保证窗口尾部有足够的空间, 调用前必须持有锁
+	 *      内存块中剩余的空间足够时将数据移动到内存块的起始位置, 否则分配更大的内存块
+	 * @param length 需要的空间大小
+	 */
+	private void ensureCapacity(int length){
+		if(byteBuffer.capacity() - size >= length){
+			return;
+		}
+
+		if(blockCapacity - size >= length) {
+			int position = byteBuffer.position();
+			unsafe.copyMemory(address, blockAddress, size);
+			setWindow(blockAddress, blockCapacity);
+			byteBuffer.limit(size);
+			byteBuffer.position(position);
+		} else {
+			//按内存块尺寸等级增长, 避免每次写入都重新分配
+			reallocate(Math.max(size + length, blockCapacity * 2));
 		}
 	}
 
@@ -175,7 +305,7 @@ public class ByteBufferChannel {
 
 		lock.lock();
 		try {
-			return byteBuffer.capacity() - size;
+			return blockCapacity - size;
 		}finally {
 			lock.unlock();
 		}
@@ -192,7 +322,7 @@ public class ByteBufferChannel {
 
 		lock.lock();
 		try {
-			return byteBuffer.capacity();
+			return blockCapacity;
 		}finally {
 			lock.unlock();
 		}
@@ -207,7 +337,8 @@ public class ByteBufferChannel {
 			return -1;
 		}
 
-		return size;
+		RingByteBuffer ringBuffer = this.ringBuffer;
+		return ringBuffer == null ? size : size + ringBuffer.size();
 	}
 
 	/**
@@ -225,7 +356,7 @@ public class ByteBufferChannel {
 		}
 
 
-		lock.lock();
+		lockChannel();
 		try {
 			byte[] temp = new byte[size];
 			get(temp, 0, size);
@@ -243,10 +374,11 @@ public class ByteBufferChannel {
 			return;
 		}
 
-		lock.lock();
+		lockChannel();
 		try{
 			byteBuffer.limit(0);
 			size = 0;
+			searchMark = null;
 		} finally {
 			lock.unlock();
 		}
@@ -280,16 +412,25 @@ public class ByteBufferChannel {
 			shrinkSize = shrinkPosition * -1;
 		}
 
-		if(shrinkSize > 0 && shrinkPosition + shrinkSize > size()){
-			shrinkSize = size() - shrinkPosition;
-		}
+		lockChannel();
+		try{
+			if(shrinkSize > 0 && shrinkPosition + shrinkSize > size){
+				shrinkSize = size - shrinkPosition;
+			}
 
-		if(Math.abs(shrinkSize) > size){
-			return true;
-		}
+			if(Math.abs(shrinkSize) > size){
+				return true;
+			}
+
+			//从头部收缩只移动窗口
+			if(shrinkPosition == 0 && shrinkSize > 0){
+				consumeHead(shrinkSize);
+				return true;
+			}
+
+			//数据发生了移动, 重新开始查找
+			searchMark = null;
 
-		lock.lock();
-		try{
 			int position = byteBuffer.position();
 			byteBuffer.position(shrinkPosition);
 			if(shrinkSize > 0){
@@ -320,7 +461,7 @@ public class ByteBufferChannel {
 	 */
 	public boolean shrink(int shrinkSize){
 
-		lock.lock();
+		lockChannel();
 
 		try{
 			if(shrinkSize==0){
@@ -334,6 +475,36 @@ public class ByteBufferChannel {
 		}
 	}
 
+	/**
+	 * 如果通道头部的数据与 byte 标识相同, 则从头部收缩掉这个标识
+	 *     只比较头部固定长度的数据, 不扫描整个通道
+	 * @param mark byte 标识数组
+	 * @return true: 头部与标识相同并已收缩, false: 头部与标识不同
+	 */
+	public boolean shrinkHead(byte[] mark){
+		if(isReleased() || size() < mark.length){
+			return false;
+		}
+
+		lockChannel();
+		try{
+			if(isReleased() || size < mark.length){
+				return false;
+			}
+
+			for(int i=0; i<mark.length; i++){
+				if(unsafe.getByte(address + i) != mark[i]){
+					return false;
+				}
+			}
+
+			consumeHead(mark.length);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 
 	/**
 	 * 获取某个位置的 byte 数据
@@ -348,8 +519,10 @@ public class ByteBufferChannel {
 			throw new IndexOutOfBoundsException();
 		}
 
-		lock.lock();
+		lockChannel();
 		try{
+			checkRelease();
+
 			if(position >= 0 && position <= size) {
 				byte result = unsafe.getByte(address + position);
 				return result;
@@ -376,9 +549,11 @@ public class ByteBufferChannel {
 			return 0;
 		}
 
-		lock.lock();
+		lockChannel();
 		try {
-			int availableCount = size() - position;
+			checkRelease();
+
+			int availableCount = size - position;
 
 			if(position >= 0 && availableCount >= 0) {
 
@@ -430,7 +605,16 @@ public class ByteBufferChannel {
 		checkRelease();
 
 		//这里上锁,在compact()方法解锁
-		lock.lock();
+		lockChannel();
+
+		if(isReleased()){
+			lock.unlock();
+			throw new MemoryReleasedException("ByteBufferChannel is released.");
+		}
+
+		//调用者可以直接修改数据, 重新开始查找
+		searchMark = null;
+
 		return byteBuffer;
 	}
 
@@ -444,6 +628,10 @@ public class ByteBufferChannel {
 	 */
 	public boolean compact(){
 		if(isReleased()){
+			//释放前通过 getByteBuffer() 加的锁在这里解除
+			if(lock.isHeldByCurrentThread()){
+				lock.unlock();
+			}
 			return false;
 		}
 
@@ -451,7 +639,7 @@ public class ByteBufferChannel {
 			lock.lock();
 		}
 
-		if(size()==0){
+		if(size==0){
 			if(lock.isLocked()){
 				lock.unlock();
 			}
@@ -464,17 +652,14 @@ public class ByteBufferChannel {
 				return true;
 			}
 
+			//已读取的数据从头部消费, 只移动窗口
 			int position = byteBuffer.position();
 			int limit = byteBuffer.limit();
-			boolean result = false;
-			if(TByteBuffer.moveData(byteBuffer, position*-1)) {
-				byteBuffer.position(0);
-				size = limit - position;
-				byteBuffer.limit(size);
-
-				result = true;
-			}
-			return result;
+			consumeHead(position);
+			size = limit - position;
+			byteBuffer.limit(size);
+			byteBuffer.position(0);
+			return true;
 
 		} finally {
 			if(lock.isLocked()) {
@@ -483,6 +668,57 @@ public class ByteBufferChannel {
 		}
 	}
 
+	/**
+	 * 获取尾部可写入的缓冲区
+	 *     返回的 ByteBuffer 的 position 为数据的尾部, limit 为窗口的容量, 调用者可以直接向其中写入数据,
+	 *     避免先写入临时缓冲区再复制到通道中.
+	 *	   这里会加锁, 必须配合 commitTail() 方法使用, 由 commitTail() 将写入的数据计入通道并解锁.
+	 * @param length 需要的最小可写空间
+	 * @return ByteBuffer 对象
+	 */
+	public ByteBuffer getTailBuffer(int length){
+		checkRelease();
+
+		//这里上锁,在commitTail()方法解锁
+		lockChannel();
+
+		if(isReleased()){
+			lock.unlock();
+			throw new MemoryReleasedException("ByteBufferChannel is released.");
+		}
+
+		ensureCapacity(length);
+		tailSavedPosition = byteBuffer.position();
+		byteBuffer.limit(byteBuffer.capacity());
+		byteBuffer.position(size);
+		return byteBuffer;
+	}
+
+	/**
+	 * 提交尾部写入的数据
+	 *     将通过 getTailBuffer() 写入的数据 (原数据尾部到 position) 计入通道, 并解除 getTailBuffer() 加的锁
+	 *     所以 必须 getTailBuffer() 和 commitTail() 成对操作
+	 * @return 写入的数据大小
+	 */
+	public int commitTail(){
+		if(isReleased()){
+			if(lock.isHeldByCurrentThread()){
+				lock.unlock();
+			}
+			return 0;
+		}
+
+		try {
+			int writeSize = Math.max(byteBuffer.position() - size, 0);
+			size = size + writeSize;
+			byteBuffer.limit(size);
+			byteBuffer.position(Math.min(tailSavedPosition, size));
+			return writeSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * 等待期望的数据长度
 	 * @param length  期望的数据长度
@@ -534,11 +770,38 @@ public class ByteBufferChannel {
 	public boolean reallocate(int newSize){
 		checkRelease();
 
-		if (TByteBuffer.reallocate(byteBuffer, newSize)) {
-			resetAddress();
+		lock.lock();
+		try {
+			checkRelease();
+
+			if(newSize < size){
+				return false;
+			}
+
+			newSize = ByteBufferAllocator.blockSize(newSize);
+			int position = byteBuffer.position();
+
+			long newBlockAddress;
+			if(address == blockAddress) {
+				//新的尺寸仍在原内存块中时不需要复制数据
+				newBlockAddress = ByteBufferAllocator.reallocateMemory(blockAddress, blockCapacity, newSize);
+			} else {
+				//只复制窗口中的数据
+				newBlockAddress = ByteBufferAllocator.allocateMemory(newSize);
+				unsafe.copyMemory(address, newBlockAddress, size);
+				ByteBufferAllocator.freeMemory(blockAddress, blockCapacity);
+			}
+
+			blockAddress = newBlockAddress;
+			blockCapacity = newSize;
+			deallocator.setAddress(blockAddress, blockCapacity);
+
+			setWindow(blockAddress, blockCapacity);
+			byteBuffer.limit(size);
+			byteBuffer.position(position);
 			return true;
-		}else{
-			return false;
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -559,21 +822,24 @@ public class ByteBufferChannel {
 			return -1;
 		}
 
-		lock.lock();
+		lockChannel();
 		try {
+			checkRelease();
 
 			int writeSize = src.limit() - src.position();
 
 			if (writeSize > 0) {
 				//是否扩容
-				if (available() < writeSize) {
-					int newSize = byteBuffer.capacity() + writeSize;
-					reallocate(newSize);
-				}
+				ensureCapacity(writeSize);
 
 
 				int position = byteBuffer.position();
 
+				//不是在尾部写入时数据发生了移动, 重新开始查找
+				if (writePosition < size) {
+					searchMark = null;
+				}
+
 				byteBuffer.position(writePosition);
 
 				TByteBuffer.moveData(byteBuffer, writeSize);
@@ -605,9 +871,19 @@ public class ByteBufferChannel {
 	public int writeEnd(ByteBuffer src) {
 		checkRelease();
 
-		lock.lock();
+		//单生产者模式下不加锁写入环形缓冲区, 环形缓冲区已满时加锁直接写入通道
+		RingByteBuffer ringBuffer = this.ringBuffer;
+		int ringWriteSize = 0;
+		if(ringBuffer != null && src != null && !lock.isHeldByCurrentThread()) {
+			ringWriteSize = ringBuffer.write(src);
+			if(!src.hasRemaining()) {
+				return ringWriteSize;
+			}
+		}
+
+		lockChannel();
 		try {
-			return write(size(), src);
+			return ringWriteSize + write(size, src);
 		} finally {
 			lock.unlock();
 		}
@@ -621,7 +897,7 @@ public class ByteBufferChannel {
 	public int writeHead(ByteBuffer src) {
 		checkRelease();
 
-		lock.lock();
+		lockChannel();
 		try {
 			return write(0, src);
 		} finally {
@@ -637,7 +913,7 @@ public class ByteBufferChannel {
 	public int readHead(ByteBuffer dst) {
 		checkRelease();
 
-		lock.lock();
+		lockChannel();
 		try {
 			return read(0, dst);
 		} finally {
@@ -653,7 +929,7 @@ public class ByteBufferChannel {
 	public int readEnd(ByteBuffer dst) {
 		checkRelease();
 
-		lock.lock();
+		lockChannel();
 		try {
 			return read( size-dst.limit(), dst );
 		} finally {
@@ -678,8 +954,9 @@ public class ByteBufferChannel {
 			return -1;
 		}
 
-		lock.lock();
+		lockChannel();
 		try {
+			checkRelease();
 
 			int readSize = 0;
 
@@ -692,13 +969,17 @@ public class ByteBufferChannel {
 
 			if (readSize != 0) {
 				int position = byteBuffer.position();
+				byteBuffer.limit(readPosition + readSize);
 				byteBuffer.position(readPosition);
+				dst.put(byteBuffer);
+				byteBuffer.limit(size);
 
-				for (int i = 0; i < readSize; i++) {
-					dst.put(byteBuffer.get());
-				}
-
-				if (TByteBuffer.moveData(byteBuffer, (readSize*-1))) {
+				if (readPosition == 0) {
+					//从头部读取只移动窗口
+					consumeHead(readSize);
+					byteBuffer.position(position > readSize ? position - readSize : 0);
+				} else if (TByteBuffer.moveData(byteBuffer, (readSize*-1))) {
+					searchMark = null;
 					size = size - readSize;
 					byteBuffer.limit(size);
 
@@ -724,28 +1005,33 @@ public class ByteBufferChannel {
 	/**
 	 * 查找特定 byte 标识的位置
 	 *     byte 标识数组第一个字节的索引位置
+	 *     连续查找同一个标识时, 从上一次查找停止的位置继续, 不重复扫描已经检查过的数据
 	 * @param mark byte 标识数组
 	 * @return 第一个字节的索引位置
 	 */
 	public int indexOf(byte[] mark){
 		checkRelease();
 
-		lock.lock();
+		lockChannel();
 		try {
-			if(size() == 0){
+			checkRelease();
+
+			if(size == 0){
 				return -1;
 			}
 
-			int index = -1;
-			byte[] tmp = new byte[mark.length];
-			for(int position = 0; position <= size() - mark.length; position++){
-				get(tmp, position, tmp.length);
-				if(Arrays.equals(mark, tmp)){
-					index = position;
-					break;
-				}
+			int fromIndex = 0;
+			if(searchMark != null && Arrays.equals(searchMark, mark)){
+				fromIndex = Math.min(searchPosition, size);
+			} else {
+				searchMark = Arrays.copyOf(mark, mark.length);
 			}
 
+			int index = TByteBuffer.indexOf(null, address, size, mark, fromIndex);
+
+			//记录查找停止的位置, 未找到时下次从可能匹配的第一个位置开始
+			searchPosition = index >= 0 ? index : Math.max(0, size - mark.length + 1);
+
 			return index;
 		} finally {
 			lock.unlock();
@@ -1,9 +1,14 @@
 package org.voovan.tools;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.function.Predicate;
 /**
  * 对象链
+ *      链的内容可以通过 snapshot(E[]) 获取一个数组快照, 用于在热路径上按下标正向或反向遍历.
+ *      修改链的内容会废弃当前快照, 下一次获取时重新生成, 遍历中的数组不受影响.
  * 
  * @author helyho
  *
@@ -16,6 +21,7 @@ public class Chain<E>  extends ArrayDeque<E> implements Cloneable{
 	private Iterator<E> invertedIterator;
 	private boolean isStop;
 	private E currentObj;
+	private volatile Object[] snapshot;
 	
 	/**
 	 * 构造函数
@@ -107,6 +113,128 @@ public class Chain<E>  extends ArrayDeque<E> implements Cloneable{
 		}
 	}
 
+	/**
+	 * 获取链的快照
+	 * 		快照在链的内容修改前一直被复用, 请求的数组类型与缓存的快照不同时重新生成.
+	 * 		返回的数组被所有调用方共享, 调用方不能修改
+	 * @param type 快照的数组类型, 通常传入一个长度为 0 的数组常量, 数组本身不会被修改
+	 * @return 链中元素按顺序组成的数组
+	 */
+	@SuppressWarnings("unchecked")
+	public E[] snapshot(E[] type){
+		Object[] current = snapshot;
+		if(current == null || current.getClass() != type.getClass()){
+			synchronized (this) {
+				current = snapshot;
+				if(current == null || current.getClass() != type.getClass()) {
+					current = super.toArray(Arrays.copyOf(type, 0));
+					snapshot = current;
+				}
+			}
+		}
+		return (E[]) current;
+	}
+
+	@Override
+	public synchronized void addFirst(E e) {
+		super.addFirst(e);
+		snapshot = null;
+	}
+
+	@Override
+	public synchronized void addLast(E e) {
+		super.addLast(e);
+		snapshot = null;
+	}
+
+	@Override
+	public synchronized boolean addAll(Collection<? extends E> c) {
+		try {
+			return super.addAll(c);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized E pollFirst() {
+		try {
+			return super.pollFirst();
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized E pollLast() {
+		try {
+			return super.pollLast();
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean removeFirstOccurrence(Object o) {
+		try {
+			return super.removeFirstOccurrence(o);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean removeLastOccurrence(Object o) {
+		try {
+			return super.removeLastOccurrence(o);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean removeAll(Collection<?> c) {
+		try {
+			return super.removeAll(c);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean retainAll(Collection<?> c) {
+		try {
+			return super.retainAll(c);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized boolean removeIf(Predicate<? super E> filter) {
+		try {
+			return super.removeIf(filter);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		snapshot = null;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new ChainIterator(super.iterator());
+	}
+
+	@Override
+	public Iterator<E> descendingIterator() {
+		return new ChainIterator(super.descendingIterator());
+	}
+
 	/**
 	 *  从当前对象克隆一个 Chain
 	 *  @return 克隆后的对象
@@ -120,4 +248,33 @@ public class Chain<E>  extends ArrayDeque<E> implements Cloneable{
 		cloned.clear();
 		return chain;
 	}
+
+	/**
+	 * 通过迭代器删除元素时同样废弃快照
+	 */
+	private class ChainIterator implements Iterator<E> {
+		private Iterator<E> iterator;
+
+		public ChainIterator(Iterator<E> iterator){
+			this.iterator = iterator;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public E next() {
+			return iterator.next();
+		}
+
+		@Override
+		public void remove() {
+			synchronized (Chain.this) {
+				iterator.remove();
+				snapshot = null;
+			}
+		}
+	}
 }
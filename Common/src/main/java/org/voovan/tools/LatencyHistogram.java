@@ -0,0 +1,142 @@
+package org.voovan.tools;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图
+ *      按 2 的幂划分微秒级的桶, 记录操作无锁, 适合在高并发的路径上统计耗时分布.
+ *      第 i 个桶记录 [2^(i-1), 2^i) 微秒的耗时, 第 0 个桶记录小于 1 微秒的耗时.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LatencyHistogram {
+    private final static int BUCKET_COUNT = 40;
+
+    private LongAdder[] buckets;
+    private LongAdder count;
+    private LongAdder sum;
+    private LongAccumulator max;
+
+    /**
+     * 构造函数
+     */
+    public LatencyHistogram() {
+        buckets = new LongAdder[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时, 单位: 纳秒
+     */
+    public void record(long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        int index = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+        buckets[index].increment();
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * 获取记录的次数
+     * @return 记录的次数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 获取耗时的总和
+     * @return 耗时的总和, 单位: 微秒
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * 获取平均耗时
+     * @return 平均耗时, 单位: 微秒
+     */
+    public long getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : sum.sum() / total;
+    }
+
+    /**
+     * 获取最大耗时
+     * @return 最大耗时, 单位: 微秒
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 获取百分位耗时
+     *      返回值是百分位所在桶的上界, 误差在一倍以内
+     * @param percent 百分位, 例如: 99 表示 P99
+     * @return 百分位耗时, 单位: 微秒
+     */
+    public long getPercentile(double percent) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(total * percent / 100);
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= threshold && counts[i] > 0) {
+                return Math.min(i == 0 ? 1 : 1L << i, getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * 获取各个桶的计数
+     * @return 各个桶的计数
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + getCount() + ", mean=" + getMean() + "us, p50=" + getPercentile(50) +
+                "us, p99=" + getPercentile(99) + "us, max=" + getMax() + "us}";
+    }
+}
@@ -0,0 +1,193 @@
+package org.voovan.tools;
+
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 单生产者单消费者的环形缓冲区
+ *      写入位置只由生产者线程修改, 读取位置只由消费者线程修改,
+ *      双方通过 volatile 的读写位置同步, 不需要加锁.
+ *      同一时刻只能有一个线程写入, 一个线程读取.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RingByteBuffer {
+    private final static Unsafe unsafe = TUnsafe.getUnsafe();
+
+    //内存由 GC 回收, 避免消费者释放时生产者仍在写入
+    private ByteBuffer byteBuffer;
+    private long address;
+    private int capacity;
+    private int mask;
+
+    private volatile long readIndex;
+    private volatile long writeIndex;
+
+    /**
+     * 构造函数
+     * @param capacity 容量, 向上取整到 2 的幂
+     */
+    public RingByteBuffer(int capacity) {
+        if(capacity <= 0){
+            throw new IllegalArgumentException("RingByteBuffer capacity must be greater than 0");
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.byteBuffer = ByteBufferAllocator.allocateDirect(this.capacity);
+        this.address = ((sun.nio.ch.DirectBuffer)byteBuffer).address();
+        this.readIndex = 0;
+        this.writeIndex = 0;
+    }
+
+    /**
+     * 获取容量
+     * @return 容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取可读的数据大小
+     * @return 可读的数据大小
+     */
+    public int size() {
+        return (int)(writeIndex - readIndex);
+    }
+
+    /**
+     * 获取可写的空间大小
+     * @return 可写的空间大小
+     */
+    public int available() {
+        return capacity - size();
+    }
+
+    /**
+     * 写入数据, 只能由生产者线程调用
+     *      空间不足时只写入能容纳的部分
+     * @param src 需要写入的缓冲区
+     * @return 写入的数据大小
+     */
+    public int write(ByteBuffer src) {
+        long write = writeIndex;
+        int length = Math.min(capacity - (int)(write - readIndex), src.remaining());
+
+        if(length <= 0){
+            return 0;
+        }
+
+        int offset = (int)(write & mask);
+        int firstLength = Math.min(length, capacity - offset);
+
+        copy(src, src.position(), address + offset, firstLength, true);
+        if(length > firstLength) {
+            copy(src, src.position() + firstLength, address, length - firstLength, true);
+        }
+
+        src.position(src.position() + length);
+
+        //写入位置在数据复制完成后更新, 保证消费者读到完整的数据
+        writeIndex = write + length;
+        return length;
+    }
+
+    /**
+     * 读取数据到缓冲区, 只能由消费者线程调用
+     * @param dst 目标缓冲区
+     * @return 读取的数据大小
+     */
+    public int read(ByteBuffer dst) {
+        long read = readIndex;
+        int length = Math.min((int)(writeIndex - read), dst.remaining());
+
+        if(length <= 0){
+            return 0;
+        }
+
+        int offset = (int)(read & mask);
+        int firstLength = Math.min(length, capacity - offset);
+
+        copy(dst, dst.position(), address + offset, firstLength, false);
+        if(length > firstLength) {
+            copy(dst, dst.position() + firstLength, address, length - firstLength, false);
+        }
+
+        dst.position(dst.position() + length);
+
+        readIndex = read + length;
+        return length;
+    }
+
+    /**
+     * 读取数据到内存地址, 只能由消费者线程调用
+     * @param dstAddress 目标内存地址
+     * @param length 期望读取的数据大小
+     * @return 读取的数据大小
+     */
+    public int read(long dstAddress, int length) {
+        long read = readIndex;
+        length = Math.min((int)(writeIndex - read), length);
+
+        if(length <= 0){
+            return 0;
+        }
+
+        int offset = (int)(read & mask);
+        int firstLength = Math.min(length, capacity - offset);
+
+        unsafe.copyMemory(address + offset, dstAddress, firstLength);
+        if(length > firstLength) {
+            unsafe.copyMemory(address, dstAddress + firstLength, length - firstLength);
+        }
+
+        readIndex = read + length;
+        return length;
+    }
+
+    /**
+     * 在 ByteBuffer 和环形缓冲区之间复制数据
+     * @param byteBuffer ByteBuffer 对象
+     * @param position ByteBuffer 中的位置
+     * @param ringAddress 环形缓冲区中的内存地址
+     * @param length 数据大小
+     * @param toRing true: 从 ByteBuffer 复制到环形缓冲区, false: 从环形缓冲区复制到 ByteBuffer
+     */
+    private static void copy(ByteBuffer byteBuffer, int position, long ringAddress, int length, boolean toRing) {
+        if(byteBuffer.hasArray()) {
+            long arrayOffset = Unsafe.ARRAY_BYTE_BASE_OFFSET + byteBuffer.arrayOffset() + position;
+            if(toRing) {
+                unsafe.copyMemory(byteBuffer.array(), arrayOffset, null, ringAddress, length);
+            } else {
+                unsafe.copyMemory(null, ringAddress, byteBuffer.array(), arrayOffset, length);
+            }
+        } else if(byteBuffer.isDirect()) {
+            long bufferAddress = ((sun.nio.ch.DirectBuffer)byteBuffer).address() + position;
+            if(toRing) {
+                unsafe.copyMemory(bufferAddress, ringAddress, length);
+            } else {
+                unsafe.copyMemory(ringAddress, bufferAddress, length);
+            }
+        } else {
+            //只读的堆缓冲区
+            for(int i=0; i<length; i++) {
+                if(toRing) {
+                    unsafe.putByte(ringAddress + i, byteBuffer.get(position + i));
+                } else {
+                    byteBuffer.put(position + i, unsafe.getByte(ringAddress + i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{size=" + size() + ", capacity=" + capacity + "}";
+    }
+}
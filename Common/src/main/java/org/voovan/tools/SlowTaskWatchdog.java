@@ -0,0 +1,272 @@
+package org.voovan.tools;
+
+import org.voovan.Global;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.json.JSON;
+import org.voovan.tools.log.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 慢任务检测
+ *      按名称 (例如处理器的类名或者路由) 记录每次执行的耗时分布.
+ *      定时检查正在执行的任务, 执行时间超过阈值时采样执行线程的栈, 用于定位阻塞工作线程的代码.
+ *      每个任务只采样一次, 每个名称保留最近一次采样的栈.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SlowTaskWatchdog {
+    //采样的栈的最大深度
+    private final static int MAX_STACK_DEPTH = 32;
+
+    private long thresholdNanos;
+    private Set<Watch> runningWatches;
+    private ConcurrentHashMap<String, Stats> statsMap;
+    private HashWheelTask checkTask;
+
+    /**
+     * 构造函数
+     * @param threshold 慢任务的阈值, 单位: 毫秒
+     */
+    public SlowTaskWatchdog(int threshold) {
+        if(threshold <= 0) {
+            throw new IllegalArgumentException("SlowTaskWatchdog threshold must be greater than 0");
+        }
+
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.runningWatches = ConcurrentHashMap.newKeySet();
+        this.statsMap = new ConcurrentHashMap<String, Stats>();
+
+        checkTask = new HashWheelTask() {
+            @Override
+            public void run() {
+                check();
+            }
+        };
+        //检查的间隔为阈值的一半, 超过阈值的任务最迟在 1.5 倍阈值时被采样
+        Global.getHashWheelTimer().addTask(checkTask, Math.max(threshold / 2, 10), TimeUnit.MILLISECONDS, true);
+    }
+
+    /**
+     * 获取慢任务的阈值
+     * @return 慢任务的阈值, 单位: 毫秒
+     */
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * 开始执行任务
+     *      与 exit 成对调用, exit 应当放在 finally 中
+     * @param name 任务的名称
+     * @return 任务的观察对象
+     */
+    public Watch enter(String name) {
+        Watch watch = new Watch(Thread.currentThread(), name);
+        runningWatches.add(watch);
+        return watch;
+    }
+
+    /**
+     * 任务执行完成
+     * @param watch enter 返回的观察对象
+     */
+    public void exit(Watch watch) {
+        if(watch == null || !runningWatches.remove(watch)) {
+            return;
+        }
+
+        long duration = System.nanoTime() - watch.startTime;
+        Stats stats = getStats(watch.name);
+        stats.latency.record(duration);
+        if(duration >= thresholdNanos) {
+            stats.slowCount.increment();
+        }
+    }
+
+    /**
+     * 获取正在执行的慢任务数量
+     * @return 执行时间超过阈值的任务数量
+     */
+    public int getRunningSlowCount() {
+        long currentTime = System.nanoTime();
+        int count = 0;
+        for(Watch watch : runningWatches) {
+            if(currentTime - watch.startTime >= thresholdNanos) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取耗时最严重的任务
+     *      按超过阈值的次数排序, 次数相同时按最大耗时排序
+     * @param top 返回的数量
+     * @return 任务统计的列表, 耗时的单位为微秒
+     */
+    public List<Map<String, Object>> getOffenders(int top) {
+        return getOffenders(top, true);
+    }
+
+    /**
+     * 获取耗时最严重的任务
+     *      按超过阈值的次数排序, 次数相同时按最大耗时排序
+     * @param top 返回的数量
+     * @param withStack 是否包含采样的线程栈
+     * @return 任务统计的列表, 耗时的单位为微秒
+     */
+    public List<Map<String, Object>> getOffenders(int top, boolean withStack) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<Map.Entry<String, Stats>>(statsMap.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Stats>>() {
+            @Override
+            public int compare(Map.Entry<String, Stats> entry1, Map.Entry<String, Stats> entry2) {
+                int result = Long.compare(entry2.getValue().slowCount.sum(), entry1.getValue().slowCount.sum());
+                if(result == 0) {
+                    result = Long.compare(entry2.getValue().latency.getMax(), entry1.getValue().latency.getMax());
+                }
+                return result;
+            }
+        });
+
+        List<Map<String, Object>> offenders = new ArrayList<Map<String, Object>>();
+        for(Map.Entry<String, Stats> entry : entries) {
+            if(offenders.size() >= top) {
+                break;
+            }
+
+            Stats stats = entry.getValue();
+            Map<String, Object> offender = new LinkedHashMap<String, Object>();
+            offender.put("name", entry.getKey());
+            offender.put("count", stats.latency.getCount());
+            offender.put("slowCount", stats.slowCount.sum());
+            offender.put("mean", stats.latency.getMean());
+            offender.put("p99", stats.latency.getPercentile(99));
+            offender.put("max", stats.latency.getMax());
+            if(withStack) {
+                offender.put("stack", stats.stack);
+            }
+            offenders.add(offender);
+        }
+
+        return offenders;
+    }
+
+    /**
+     * 获取耗时最严重的任务
+     * @param top 返回的数量
+     * @return 任务统计的 JSON 字符串
+     */
+    public String toJSON(int top) {
+        return toJSON(top, true);
+    }
+
+    /**
+     * 获取耗时最严重的任务
+     * @param top 返回的数量
+     * @param withStack 是否包含采样的线程栈
+     * @return 任务统计的 JSON 字符串
+     */
+    public String toJSON(int top, boolean withStack) {
+        return JSON.toJSON(getOffenders(top, withStack));
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        statsMap.clear();
+    }
+
+    /**
+     * 停止检测
+     */
+    public void cancel() {
+        checkTask.cancel();
+        runningWatches.clear();
+    }
+
+    /**
+     * 采样执行时间超过阈值的任务
+     */
+    private void check() {
+        long currentTime = System.nanoTime();
+        for(Watch watch : runningWatches) {
+            if(watch.sampled || currentTime - watch.startTime < thresholdNanos) {
+                continue;
+            }
+
+            watch.sampled = true;
+            StackTraceElement[] stackTraceElements = watch.thread.getStackTrace();
+
+            //采样期间任务已经结束, 栈已经不是任务的栈
+            if(!runningWatches.contains(watch)) {
+                continue;
+            }
+
+            List<String> stack = new ArrayList<String>();
+            for(int i = 0; i < stackTraceElements.length && i < MAX_STACK_DEPTH; i++) {
+                stack.add(stackTraceElements[i].toString());
+            }
+            getStats(watch.name).stack = stack;
+
+            Logger.warn("Slow task " + watch.name + " running " + TimeUnit.NANOSECONDS.toMillis(currentTime - watch.startTime) +
+                    "ms on thread " + watch.thread.getName() + "\r\n" + TEnv.getStackElementsMessage(stackTraceElements));
+        }
+    }
+
+    private Stats getStats(String name) {
+        Stats stats = statsMap.get(name);
+        if(stats == null) {
+            stats = new Stats();
+            Stats oldStats = statsMap.putIfAbsent(name, stats);
+            if(oldStats != null) {
+                stats = oldStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 任务的观察对象
+     */
+    public static class Watch {
+        private Thread thread;
+        private String name;
+        private long startTime;
+        private volatile boolean sampled;
+
+        private Watch(Thread thread, String name) {
+            this.thread = thread;
+            this.name = name;
+            this.startTime = System.nanoTime();
+            this.sampled = false;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * 同一名称的任务的统计数据
+     */
+    private static class Stats {
+        private LatencyHistogram latency = new LatencyHistogram();
+        private LongAdder slowCount = new LongAdder();
+        private volatile List<String> stack;
+    }
+}
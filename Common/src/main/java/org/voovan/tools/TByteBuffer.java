@@ -2,10 +2,11 @@ package org.voovan.tools;
 
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.TReflect;
-import sun.misc.Cleaner;
+import sun.misc.Unsafe;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -18,6 +19,14 @@ import java.util.Arrays;
  * Licence: Apache v2 License
  */
 public class TByteBuffer {
+    private final static Unsafe unsafe = TUnsafe.getUnsafe();
+    private final static boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private final static long LOW_BITS = 0x0101010101010101L;
+    private final static long HIGH_BITS = 0x8080808080808080L;
+    //使用 Boyer-Moore-Horspool 算法的最小标识长度和数据长度
+    private final static int BMH_MIN_MARK_LENGTH = 8;
+    private final static int BMH_MIN_DATA_LENGTH = 256;
+
     /**
      * 将ByteBuffer转换成 byte 数组
      * @param bytebuffer ByteBuffer 对象
@@ -66,7 +75,7 @@ public class TByteBuffer {
      *     byte 标识数组第一个字节的索引位置
      * @param byteBuffer Bytebuffer 对象
      * @param mark byte 标识数组
-     * @return 第一个字节的索引位置
+     * @return 第一个字节相对于 position 的索引位置
      */
     public static int indexOf(ByteBuffer byteBuffer, byte[] mark){
 
@@ -74,22 +83,147 @@ public class TByteBuffer {
             return -1;
         }
 
-        int index = -1;
-        int position = byteBuffer.position();
-        byte[] tmp = new byte[mark.length];
-        int length = byteBuffer.remaining();
-        for(int offset = 0; (offset + position <= length - mark.length); offset++){
-            byteBuffer.position(position + offset);
-            byteBuffer.get(tmp, 0, tmp.length);
-            if(Arrays.equals(mark, tmp)){
-                index = offset;
-                break;
+        if(byteBuffer.hasArray()){
+            long offset = Unsafe.ARRAY_BYTE_BASE_OFFSET + byteBuffer.arrayOffset() + byteBuffer.position();
+            return indexOf(byteBuffer.array(), offset, byteBuffer.remaining(), mark, 0);
+        } else if(byteBuffer.isDirect()){
+            long address = ((sun.nio.ch.DirectBuffer)byteBuffer).address() + byteBuffer.position();
+            return indexOf(null, address, byteBuffer.remaining(), mark, 0);
+        } else {
+            //只读的堆缓冲区
+            ByteBuffer temp = byteBuffer.duplicate();
+            byte[] data = new byte[temp.remaining()];
+            temp.get(data);
+            return indexOf(data, Unsafe.ARRAY_BYTE_BASE_OFFSET, data.length, mark, 0);
+        }
+    }
+
+    /**
+     * 在内存中查找特定 byte 标识的位置
+     *      标识较短时每次读取 8 个字节查找标识的首字节(SWAR), 找到后再比较整个标识,
+     *      标识较长且数据较多时使用 Boyer-Moore-Horspool 算法跳跃查找
+     * @param base 数组对象, 堆外内存为 null
+     * @param offset 数组中的偏移量或者堆外内存的地址
+     * @param length 数据长度
+     * @param mark byte 标识数组
+     * @param fromIndex 开始查找的位置
+     * @return 第一个字节的索引位置, -1: 未找到
+     */
+    public static int indexOf(Object base, long offset, int length, byte[] mark, int fromIndex){
+        if(mark.length == 0 || fromIndex < 0 || length - fromIndex < mark.length){
+            return -1;
+        }
+
+        if(mark.length >= BMH_MIN_MARK_LENGTH && length - fromIndex >= BMH_MIN_DATA_LENGTH){
+            return indexOfBMH(base, offset, length, mark, fromIndex);
+        }
+
+        int last = length - mark.length;
+        int index = fromIndex;
+        while(index <= last){
+            index = indexOfByte(base, offset, index, last + 1, mark[0]);
+            if(index < 0){
+                return -1;
+            }
+
+            if(matches(base, offset + index, mark)){
+                return index;
+            }
+
+            index++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * 查找单个字节的位置
+     *      每次读取 8 个字节, 使用位运算判断其中是否包含目标字节
+     * @param base 数组对象, 堆外内存为 null
+     * @param offset 数组中的偏移量或者堆外内存的地址
+     * @param from 开始位置
+     * @param to 结束位置(不包含)
+     * @param value 目标字节
+     * @return 字节的索引位置, -1: 未找到
+     */
+    private static int indexOfByte(Object base, long offset, int from, int to, byte value){
+        long pattern = (value & 0xFFL) * LOW_BITS;
+        int index = from;
+
+        for(; index + 8 <= to; index += 8){
+            long word = unsafe.getLong(base, offset + index) ^ pattern;
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if(found != 0){
+                if(LITTLE_ENDIAN) {
+                    return index + (Long.numberOfTrailingZeros(found) >>> 3);
+                } else {
+                    break;
+                }
+            }
+        }
+
+        for(; index < to; index++){
+            if(unsafe.getByte(base, offset + index) == value){
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 比较内存中的数据和 byte 标识
+     * @param base 数组对象, 堆外内存为 null
+     * @param offset 数据开始的偏移量或者地址
+     * @param mark byte 标识数组
+     * @return true: 相同, false: 不同
+     */
+    private static boolean matches(Object base, long offset, byte[] mark){
+        int index = 0;
+        for(; index + 8 <= mark.length; index += 8){
+            if(unsafe.getLong(base, offset + index) != unsafe.getLong(mark, (long) Unsafe.ARRAY_BYTE_BASE_OFFSET + index)){
+                return false;
+            }
+        }
+
+        for(; index < mark.length; index++){
+            if(unsafe.getByte(base, offset + index) != mark[index]){
+                return false;
             }
         }
 
-        byteBuffer.position(position);
+        return true;
+    }
+
+    /**
+     * 使用 Boyer-Moore-Horspool 算法查找 byte 标识的位置
+     * @param base 数组对象, 堆外内存为 null
+     * @param offset 数组中的偏移量或者堆外内存的地址
+     * @param length 数据长度
+     * @param mark byte 标识数组
+     * @param fromIndex 开始查找的位置
+     * @return 第一个字节的索引位置, -1: 未找到
+     */
+    private static int indexOfBMH(Object base, long offset, int length, byte[] mark, int fromIndex){
+        int markLength = mark.length;
+        int[] skip = new int[256];
+        Arrays.fill(skip, markLength);
+        for(int i = 0; i < markLength - 1; i++){
+            skip[mark[i] & 0xFF] = markLength - 1 - i;
+        }
 
-        return index;
+        byte lastByte = mark[markLength - 1];
+        int last = length - markLength;
+        int index = fromIndex;
+        while(index <= last){
+            byte value = unsafe.getByte(base, offset + index + markLength - 1);
+            if(value == lastByte && matches(base, offset + index, mark)){
+                return index;
+            }
+            index += skip[value & 0xFF];
+        }
+
+        return -1;
     }
 
     /**
@@ -99,6 +233,15 @@ public class TByteBuffer {
      * @return true:成功, false:失败
      */
     public static boolean reallocate(ByteBuffer byteBuffer, int newSize) {
+        if(ByteBufferAllocator.isPooled(byteBuffer)){
+            return ByteBufferAllocator.reallocate(byteBuffer, newSize);
+        }
+
+        //duplicate()/slice() 得到的视图与原 ByteBuffer 共享内存, 重新分配会释放原 ByteBuffer 的内存
+        if(byteBuffer.isDirect() && ((sun.nio.ch.DirectBuffer)byteBuffer).attachment() != null){
+            return false;
+        }
+
         try {
 
             if(!byteBuffer.hasArray()) {
@@ -172,20 +315,33 @@ public class TByteBuffer {
         return false;
     }
 
+    /**
+     * 从堆外内存池分配 ByteBuffer
+     *      使用完成后应当调用 release 归还内存, 没有归还的 ByteBuffer 在 GC 时归还
+     * @param capacity 容量
+     * @return ByteBuffer 对象
+     */
+    public static ByteBuffer allocateDirect(int capacity){
+        return ByteBufferAllocator.allocateDirect(capacity);
+    }
+
+    /**
+     * 增加 byteBuffer 的引用计数
+     *      每次 retain 都需要对应一次 release
+     * @param byteBuffer bytebuffer 对象
+     */
+    public static void retain(ByteBuffer byteBuffer){
+        ByteBufferAllocator.retain(byteBuffer);
+    }
+
     /**
      * 释放byteBuffer
-     *      释放对外的 bytebuffer
+     *      释放通过 allocateDirect 分配的 bytebuffer, 引用计数归零时内存归还到内存池,
+     *      其他 bytebuffer 由 GC 回收, 不做任何操作
      * @param byteBuffer bytebuffer 对象
      */
     public static void release(ByteBuffer byteBuffer){
-//        if(byteBuffer!=null && !byteBuffer.hasArray()) {
-//            try {
-//                Cleaner cleaner = TReflect.getFieldValue(byteBuffer, "cleaner");
-//                cleaner.clean();
-//            } catch (ReflectiveOperationException e) {
-//                e.printStackTrace();
-//            }
-//        }
+        ByteBufferAllocator.release(byteBuffer);
     }
 
 }
@@ -10,6 +10,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -48,10 +50,28 @@ public class TEnv {
 	 * 
 	 * @param sleepTime 休眠时间
 	 */
-	public static void sleep(int sleepTime) {
+	public static void sleep(final int sleepTime) {
 		try {
-			Thread.currentThread();
-			Thread.sleep(sleepTime);
+			if(Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				//在 ForkJoin 线程池中休眠时, 线程池会补偿一个工作线程
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					private boolean done = false;
+
+					@Override
+					public boolean block() throws InterruptedException {
+						Thread.sleep(sleepTime);
+						done = true;
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable() {
+						return done;
+					}
+				});
+			} else {
+				Thread.sleep(sleepTime);
+			}
 		} catch (InterruptedException e) {
 			Logger.error("TEnv.sleep interrupted",e);
 		}
@@ -1,14 +1,13 @@
 package org.voovan.tools.hashwheeltimer;
 
-import org.voovan.tools.MultiMap;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.PriorityQueue;
 
 
 /**
  * 时间轮对象
+ *      分层时间轮中的一层, 超出本层范围的任务交给上一层 (溢出轮) 保存,
+ *      上一层的槽到期后, 其中的任务重新放入下层时间轮.
+ *      只由时间轮的轮转线程访问, 不需要加锁.
  *
  * @author: helyho
  * Voovan Framework.
@@ -16,129 +15,167 @@ import java.util.concurrent.locks.ReentrantLock;
  * Licence: Apache v2 License
  */
 public class HashWheel {
-    private MultiMap<Integer, HashWheelTask> wheel;
-    private int size = 0;
-    private int currentSlot;
-    private ReentrantLock lock;
+    private long tickMillis;
+    private int size;
+    private long wheelMillis;
+    private long currentTime;
+    private Bucket[] buckets;
+    private PriorityQueue<Bucket> bucketQueue;
+    private HashWheel overflowWheel;
 
     /**
      * 构造函数
+     * @param tickMillis 每槽的时间跨度, 单位: 毫秒
      * @param size 时间轮的槽数
+     * @param startTime 起始时间, 单位: 毫秒
+     * @param bucketQueue 按到期时间排序的槽队列, 各层时间轮共用
      */
-    public HashWheel(int size){
-        currentSlot = 0;
+    public HashWheel(long tickMillis, int size, long startTime, PriorityQueue<Bucket> bucketQueue){
+        this.tickMillis = tickMillis;
         this.size = size;
-        wheel = new MultiMap<Integer, HashWheelTask>();
-        lock = new ReentrantLock();
+        this.wheelMillis = tickMillis * size;
+        this.currentTime = startTime - (startTime % tickMillis);
+        this.bucketQueue = bucketQueue;
+
+        buckets = new Bucket[size];
+        for(int i=0; i<size; i++){
+            buckets[i] = new Bucket();
+        }
     }
 
     /**
      * 增加任务
-     * @param task 任务对象
-     * @param interval 任务间隔的槽数
-     * @param asynchronous 是否异步执行
-     * @return true 增加任务成功, false: 增加任务失败, 任务的Interval必须大于0
+     * @param task 任务对象, 到期时间已经设置在 task.expiration 上
+     * @return true: 任务已放入时间轮, false: 任务已经到期或已取消
      */
-    public boolean addTask(HashWheelTask task, int interval, boolean asynchronous){
-
-        lock.lock();
-        try {
-
-            if (interval < 0) {
-                //这里考虑抛出异常
-                return false;
-            }
-
-
-            int nextSlot = currentSlot + interval;
-
-            int skipSlot = interval / size;
-
-            //计算 SLot 位置
-            int targetSlot = nextSlot % size;
-
-            //对于步长等于槽数,的特殊处理
-            if(interval%size == 0 && skipSlot > 0 && task.getDoCount() !=0 ){
-                skipSlot--;
+    public boolean addTask(HashWheelTask task){
+        long expiration = task.expiration;
+
+        if(task.isCancel()){
+            return false;
+        } else if(expiration < currentTime + tickMillis){
+            return false;
+        } else if(expiration < currentTime + wheelMillis){
+            long virtualId = expiration / tickMillis;
+            Bucket bucket = buckets[(int)(virtualId % size)];
+            bucket.add(task);
+
+            //槽被再次使用时设置新的到期时间并加入槽队列
+            if(bucket.setExpiration(virtualId * tickMillis)){
+                bucketQueue.offer(bucket);
             }
-
-//            Logger.simple("ST: "+skipSlot+" TT: "+targetSlot+ " CS:" +currentSlot + " I:" + interval);
-
-            //重新安置任务
-            wheel.putValue(targetSlot, task);
-
-            task.init(skipSlot, interval, asynchronous, this, targetSlot);
-
             return true;
-        }finally {
-            lock.unlock();
+        } else {
+            if(overflowWheel == null){
+                overflowWheel = new HashWheel(wheelMillis, size, currentTime, bucketQueue);
+            }
+            return overflowWheel.addTask(task);
         }
     }
 
     /**
-     * 增加任务
-     *      同步方式执行
-     * @param task 任务对象
-     * @param interval 任务间隔的槽数
-     * @return true 增加任务成功, false: 增加任务失败, 任务的Interval必须大于0
+     * 移除任务
+     *      任务通过双向链表挂在槽上, 移除的时间复杂度为 O(1)
+     * @param task 任务
+     * @return true:移除任务成功, false:任务不在时间轮中
      */
-    public boolean addTask(HashWheelTask task, int interval){
-        return addTask(task, task.getInterval(), false);
-    }
-
+    public static boolean removeTask(HashWheelTask task){
+        Bucket bucket = task.bucket;
+        if(bucket == null){
+            return false;
+        }
 
-    /**
-     * 增加任务
-     *
-     * @param task 任务对象
-     * @return true 增加任务成功, false: 增加任务失败, 任务的Interval必须大于0
-     */
-    private boolean addTask(HashWheelTask task){
-        return addTask(task, task.getInterval(), task.isAsynchronous());
+        bucket.remove(task);
+        return true;
     }
 
     /**
-     * 移除任务
-     * @param task 任务
-     * @return true:移除任务成功, false:移除任务失败,或任务不存在
+     * 推进时间轮的当前时间
+     * @param time 当前时间, 单位: 毫秒
      */
-    public boolean removeTask(HashWheelTask task){
-        return wheel.removeValue(task.getSlot(), task);
+    public void advanceClock(long time){
+        if(time >= currentTime + tickMillis){
+            currentTime = time - (time % tickMillis);
+
+            if(overflowWheel != null){
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
     }
 
     /**
-     * 执行一个步长
+     * 时间轮的槽
+     *      以双向链表保存任务
      */
-    public void Tick(){
-        lock.lock();
-        try {
+    static class Bucket implements Comparable<Bucket> {
+        private HashWheelTask head;
+        private long expiration = -1;
+
+        private void add(HashWheelTask task){
+            if(task.bucket != null){
+                task.bucket.remove(task);
+            }
+
+            task.bucket = this;
+            task.prev = null;
+            task.next = head;
+            if(head != null){
+                head.prev = task;
+            }
+            head = task;
+        }
 
-            if (currentSlot == size) {
-                currentSlot = 0;
+        private void remove(HashWheelTask task){
+            if(task.bucket != this){
+                return;
             }
 
-            List<HashWheelTask> tasks = wheel.get(currentSlot);
+            if(task.prev != null){
+                task.prev.next = task.next;
+            } else {
+                head = task.next;
+            }
+
+            if(task.next != null){
+                task.next.prev = task.prev;
+            }
 
-            if (tasks != null) {
-                List<HashWheelTask> tmpList = new ArrayList<HashWheelTask>();
-                tmpList.addAll(tasks);
+            task.bucket = null;
+            task.prev = null;
+            task.next = null;
+        }
 
-                for (HashWheelTask task : tmpList) {
-                    if (task.doTask()) {
-                        removeTask(task);
-                        if(!task.isCancel()) {
-                            addTask(task);
-                        }
-                    }
-                }
+        private boolean setExpiration(long expiration){
+            if(this.expiration == expiration){
+                return false;
             }
 
-            currentSlot++;
-        }finally {
-            lock.unlock();
+            this.expiration = expiration;
+            return true;
+        }
+
+        long getExpiration(){
+            return expiration;
         }
 
-//        Logger.simple(currentSlot);
+        /**
+         * 取出槽中的全部任务并重置槽
+         * @return 任务链表的头部
+         */
+        HashWheelTask flush(){
+            HashWheelTask tasks = head;
+            for(HashWheelTask task = head; task != null; task = task.next){
+                task.bucket = null;
+            }
+
+            head = null;
+            expiration = -1;
+            return tasks;
+        }
 
+        @Override
+        public int compareTo(Bucket other) {
+            return Long.compare(expiration, other.expiration);
+        }
     }
 }
@@ -1,9 +1,13 @@
 package org.voovan.tools.hashwheeltimer;
 
-import org.voovan.Global;
+import org.voovan.tools.log.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 时间轮任务对象
+ *      任务按间隔周期执行, 直到调用 cancel 取消.
+ *      到期后任务被分发到线程池执行, 不占用时间轮的轮转线程.
  *
  * @author: helyho
  * Voovan Framework.
@@ -12,24 +16,33 @@ import org.voovan.Global;
  */
 public abstract class HashWheelTask {
     private int interval;
-    private int skipTick = 0;
+    private long intervalMillis;
     private boolean asynchronous;
-    private HashWheel hashWheel;
-    private int slot;
-    private long doCount;
-    private boolean isCancel;
+    private HashWheelTimer timer;
+    private volatile long doCount;
+    private volatile boolean isCancel;
+    private AtomicBoolean running;
+    private Runnable runnable;
+
+    //提交任务时计算的到期时间
+    volatile long deadline;
+
+    //以下字段只由时间轮的轮转线程访问
+    long expiration;
+    HashWheel.Bucket bucket;
+    HashWheelTask prev;
+    HashWheelTask next;
 
     /**
      * 构造函数
      */
     public HashWheelTask(){
         this.interval = 0;
-        this.skipTick = 0;
         this.asynchronous=false;
         this.isCancel = false;
+        init();
     }
 
-
     /**
      * 构造函数
      * @param interval      任务的槽间隔数
@@ -37,18 +50,26 @@ public abstract class HashWheelTask {
      */
     public HashWheelTask(int interval, boolean asynchronous){
         this.interval = interval;
-        this.skipTick = 0;
         this.asynchronous=asynchronous;
         this.isCancel = false;
+        init();
     }
 
+    private void init(){
+        running = new AtomicBoolean(false);
+        runnable = new Runnable() {
+            @Override
+            public void run() {
+                doTask();
+            }
+        };
+    }
 
-    protected void init(int skipTick, int interval, boolean asynchronous,  HashWheel hashWheel, int slot){
-        this.skipTick = skipTick;
+    protected void init(int interval, long intervalMillis, boolean asynchronous, HashWheelTimer timer){
         this.interval = interval;
+        this.intervalMillis = intervalMillis;
         this.asynchronous = asynchronous;
-        this.hashWheel = hashWheel;
-        this.slot = slot;
+        this.timer = timer;
         doCount = 0;
         this.isCancel = false;
     }
@@ -61,22 +82,6 @@ public abstract class HashWheelTask {
         return isCancel;
     }
 
-    /**
-     * 获取跳跃的轮次数
-     * @return 跳跃的轮次数
-     */
-    public int getSkipTick() {
-        return skipTick;
-    }
-
-    /**
-     * 设置跳跃的轮次数
-     * @param skipTick 跳跃的轮次数
-     */
-    public void setSkipTick(int skipTick) {
-        this.skipTick = skipTick;
-    }
-
     /**
      * 获取当前任务的槽间隔
      * @return 当前任务的槽间隔
@@ -87,12 +92,21 @@ public abstract class HashWheelTask {
 
     /**
      * 设置当前任务的槽间隔
+     *      在下一次加入时间轮时生效
      * @param interval 当前任务槽间隔,单位: 秒
      */
     public void setInterval(int interval) {
         this.interval = interval;
     }
 
+    /**
+     * 获取当前任务的执行间隔
+     * @return 当前任务的执行间隔, 单位: 毫秒
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
     /**
      * 是否是异步任务
      * @return true: 异步任务, false: 同步任务
@@ -109,14 +123,6 @@ public abstract class HashWheelTask {
         this.asynchronous = asynchronous;
     }
 
-    /**
-     * 获取当前任务的槽位
-     * @return 当前任务的槽位
-     */
-    public int getSlot() {
-        return slot;
-    }
-
     /**
      * 获取任务执行的次数
      * @return 任务执行的次数
@@ -127,11 +133,19 @@ public abstract class HashWheelTask {
 
     /**
      * 取消当前任务
+     *      只做标记并通知时间轮, 由轮转线程在 O(1) 时间内将任务从槽中摘除
      * @return true: 成功, false:失败
      */
     public boolean cancel(){
+        if(isCancel){
+            return false;
+        }
+
         this.isCancel = true;
-        return hashWheel.removeTask(this);
+        if(timer != null) {
+            timer.cancelTask(this);
+        }
+        return true;
     }
 
     /**
@@ -140,33 +154,42 @@ public abstract class HashWheelTask {
     public abstract void run();
 
     /**
-     * 步进一次
+     * 获取用于分发到线程池的 Runnable 对象
+     * @return Runnable 对象
+     */
+    Runnable getRunnable() {
+        return runnable;
+    }
+
+    /**
+     * 执行一次任务
+     *      同步任务上一次执行未结束时跳过本次执行, 异步任务允许多次执行重叠
      * @return true: 执行了这个任务, false: 未执行这个任务
      */
     public boolean doTask(){
-        doCount++;
-
-        if(doCount == Long.MAX_VALUE){
-            doCount = 0;
+        if(isCancel){
+            return false;
         }
 
-        if(skipTick > 0){
-            skipTick--;
+        if(!asynchronous && !running.compareAndSet(false, true)){
             return false;
-        }else {
-            if(asynchronous){
-                final HashWheelTask task = this;
-                Global.getThreadPool().execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        task.run();
-                    }
-                });
-            }else{
-                run();
+        }
+
+        try {
+            doCount++;
+            if (doCount == Long.MAX_VALUE) {
+                doCount = 0;
             }
 
-            return true;
+            run();
+        } catch (Exception e) {
+            Logger.error("HashWheelTask run failed", e);
+        } finally {
+            if(!asynchronous) {
+                running.set(false);
+            }
         }
+
+        return true;
     }
 }
@@ -1,12 +1,20 @@
 package org.voovan.tools.hashwheeltimer;
 
-import org.voovan.tools.TEnv;
-
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 时间轮定时器
+ *      毫秒精度的分层时间轮, 任务的增加和取消通过无锁队列提交给轮转线程,
+ *      轮转线程只在最近的槽到期时醒来, 到期的任务分发到线程池中执行.
  *
  * @author: helyho
  * Voovan Framework.
@@ -16,7 +24,15 @@ import java.util.TimerTask;
 public class HashWheelTimer {
     private HashWheel wheel;
     private int tickStep = 1;
-    private Timer timer;
+    private long startNanos;
+    private PriorityQueue<HashWheel.Bucket> bucketQueue;
+    private ConcurrentLinkedQueue<HashWheelTask> addQueue;
+    private ConcurrentLinkedQueue<HashWheelTask> cancelQueue;
+    private Executor executor;
+    private ThreadPoolExecutor defaultExecutor;
+    private Thread rotateThread;
+    private volatile boolean running;
+    private volatile long wakeupTime = Long.MAX_VALUE;
 
     /**
      * 构造函数
@@ -24,19 +40,46 @@ public class HashWheelTimer {
      * @param size 时间轮的槽数
      */
     public HashWheelTimer(int size){
-        wheel = new HashWheel(size);
-        timer = new Timer("VOOVAN@HASH_WHEEL");
+        this(size, 1);
     }
 
     /**
      * 构造函数
+     *      时间轮的精度为 1 毫秒, 每层有 size 个槽, 超出范围的任务逐层溢出到上一层
      * @param size 时间轮的槽数
-     * @param tickStep 每槽的步长
+     * @param tickStep 每槽的步长, addTask 的任务间隔以这个步长为单位, 单位: 秒
      */
     public HashWheelTimer(int size, int tickStep){
-        wheel = new HashWheel(size);
-        timer = new Timer("VOOVAN@HASH_WHEEL");
         this.tickStep = tickStep;
+        this.startNanos = System.nanoTime();
+        bucketQueue = new PriorityQueue<HashWheel.Bucket>();
+        wheel = new HashWheel(1, size, 0, bucketQueue);
+        addQueue = new ConcurrentLinkedQueue<HashWheelTask>();
+        cancelQueue = new ConcurrentLinkedQueue<HashWheelTask>();
+    }
+
+    /**
+     * 获取到期任务使用的线程池
+     * @return 线程池, 为 null 时使用时间轮自带的线程池
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 设置到期任务使用的线程池
+     * @param executor 线程池, 为 null 时使用时间轮自带的线程池
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 获取时间轮的当前时间
+     * @return 当前时间, 单位: 毫秒
+     */
+    private long currentTime(){
+        return (System.nanoTime() - startNanos) / 1000000;
     }
 
     /**
@@ -58,9 +101,49 @@ public class HashWheelTimer {
      * @return true 增加任务成功, false: 增加任务失败, 任务的Interval必须大于0
      */
     public boolean addTask(HashWheelTask task, int interval, boolean asynchronous){
-        return wheel.addTask(task, interval, asynchronous);
+        if (interval < 0) {
+            return false;
+        }
+
+        //间隔为 0 的任务按一个步长执行, 避免任务空转
+        return addTask(task, interval, Math.max(interval, 1) * tickStep * 1000L, asynchronous);
+    }
+
+    /**
+     * 增加任务
+     *      毫秒精度的任务间隔
+     * @param task 任务对象
+     * @param interval 任务间隔
+     * @param timeUnit 任务间隔的时间单位
+     * @param asynchronous 是否异步执行
+     * @return true 增加任务成功, false: 增加任务失败, 任务的Interval必须大于0
+     */
+    public boolean addTask(HashWheelTask task, long interval, TimeUnit timeUnit, boolean asynchronous){
+        if (interval < 0) {
+            return false;
+        }
+
+        long intervalMillis = timeUnit.toMillis(interval);
+        return addTask(task, (int)(intervalMillis / (tickStep * 1000L)), intervalMillis, asynchronous);
     }
 
+    private boolean addTask(HashWheelTask task, int interval, long intervalMillis, boolean asynchronous){
+        task.init(interval, Math.max(intervalMillis, 1), asynchronous, this);
+
+        //到期时间以提交时为准, 不受轮转线程处理队列的时机影响
+        long deadline = currentTime() + task.getIntervalMillis();
+        task.deadline = deadline;
+
+        //任务通过无锁队列提交, 由轮转线程放入时间轮
+        addQueue.offer(task);
+
+        //任务早于轮转线程的下一次唤醒时间到期, 提前唤醒轮转线程
+        if(deadline < wakeupTime){
+            LockSupport.unpark(rotateThread);
+        }
+
+        return true;
+    }
 
     /**
      * 移除任务
@@ -68,44 +151,184 @@ public class HashWheelTimer {
      * @return true:移除任务成功, false:移除任务失败,或任务不存在
      */
     public boolean removeTask(HashWheelTask task){
-        return wheel.removeTask(task);
+        return task.cancel();
     }
 
+    /**
+     * 通知轮转线程摘除已取消的任务
+     * @param task 任务
+     */
+    void cancelTask(HashWheelTask task){
+        cancelQueue.offer(task);
+    }
 
     /**
      * 启动时间轮的轮转
      * @return true:成功启动, false:时间轮已经启动
      */
-    public boolean rotate(){
-
-        final HashWheel rotateWheel = wheel;
-
-        final HashWheelTimer tempTimer = this;
-
-        timer.schedule(new TimerTask(){
+    public synchronized boolean rotate(){
+        if(running){
+            return false;
+        }
 
+        running = true;
+        rotateThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                if(TEnv.isMainThreadShutDown()){
-                    this.cancel();
+                while(running) {
+                    tick();
                 }
+            }
+        }, "VOOVAN@HASH_WHEEL");
+        rotateThread.setDaemon(true);
+        rotateThread.start();
 
-                rotateWheel.Tick();
+        return true;
+    }
 
-                //如果进程结束自动结束当前定时器
-                if(TEnv.isMainThreadShutDown()){
-                    tempTimer.cancel();
-                }
+    /**
+     * 执行一次轮转
+     *      处理提交的任务, 分发到期的任务, 然后等待到最近的槽到期
+     */
+    private void tick(){
+        drainQueues();
+
+        long now = currentTime();
+        HashWheel.Bucket bucket = bucketQueue.peek();
+        while(bucket != null && bucket.getExpiration() <= now) {
+            bucketQueue.poll();
+            wheel.advanceClock(bucket.getExpiration());
+
+            HashWheelTask next = null;
+            for(HashWheelTask task = bucket.flush(); task != null; task = next) {
+                next = task.next;
+                task.prev = null;
+                task.next = null;
+                reinsert(task);
             }
-        }, 0, tickStep*1000);
 
-        return true;
+            bucket = bucketQueue.peek();
+        }
+
+        long waitTime = Long.MAX_VALUE;
+        if(bucket != null){
+            waitTime = bucket.getExpiration();
+        }
+
+        //先公布唤醒时间再检查队列, 避免与提交任务的线程错过唤醒
+        wakeupTime = waitTime;
+        if(addQueue.isEmpty() && cancelQueue.isEmpty()) {
+            if (waitTime == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else if (waitTime > now) {
+                LockSupport.parkNanos(this, (waitTime - now) * 1000000);
+            }
+        }
+        wakeupTime = Long.MAX_VALUE;
+    }
+
+    /**
+     * 处理提交的新任务和取消的任务
+     */
+    private void drainQueues(){
+        HashWheelTask task;
+        while((task = addQueue.poll()) != null) {
+            HashWheel.removeTask(task);
+            task.expiration = task.deadline;
+            reinsert(task);
+        }
+
+        while((task = cancelQueue.poll()) != null) {
+            if(task.isCancel()) {
+                HashWheel.removeTask(task);
+            }
+        }
+    }
+
+    /**
+     * 将任务放回时间轮, 已到期的任务分发执行后按间隔重新放入时间轮
+     * @param task 任务
+     */
+    private void reinsert(HashWheelTask task){
+        if(task.isCancel() || wheel.addTask(task)) {
+            return;
+        }
+
+        dispatch(task);
+
+        long now = currentTime();
+        task.expiration = Math.max(task.expiration + task.getIntervalMillis(), now + 1);
+        wheel.addTask(task);
+    }
+
+    /**
+     * 将到期的任务分发到线程池
+     * @param task 任务
+     */
+    private void dispatch(HashWheelTask task){
+        Executor taskExecutor = executor;
+        if(taskExecutor == null) {
+            taskExecutor = getDefaultExecutor();
+
+            //时间轮已经停止
+            if(taskExecutor == null) {
+                return;
+            }
+        }
+
+        try {
+            taskExecutor.execute(task.getRunnable());
+        } catch (RejectedExecutionException e) {
+            task.doTask();
+        }
+    }
+
+    /**
+     * 获取时间轮自带的线程池
+     *      与 cancel 互斥, 时间轮停止后不再创建新的线程池
+     * @return 线程池, 时间轮已经停止时返回 null
+     */
+    private synchronized ThreadPoolExecutor getDefaultExecutor(){
+        if(defaultExecutor == null && running) {
+            defaultExecutor = createExecutor();
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * 创建时间轮自带的线程池
+     *      使用无界队列, 大量任务同时到期时不会因为拒绝而回到轮转线程上执行
+     * @return 线程池
+     */
+    private static ThreadPoolExecutor createExecutor(){
+        final AtomicInteger threadIndex = new AtomicInteger();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "VOOVAN@HASH_WHEEL_TASK-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
     }
 
     /**
      * 停止时间轮的轮转
      */
-    public void cancel(){
-        timer.cancel();
+    public synchronized void cancel(){
+        running = false;
+        if(rotateThread != null) {
+            LockSupport.unpark(rotateThread);
+        }
+
+        //再次启动时重新创建线程池
+        if(defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+        }
     }
 }
@@ -3,6 +3,11 @@ package org.voovan.tools.threadpool;
 import org.voovan.Global;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -19,6 +24,32 @@ public class ThreadPool {
 	private final static int cpuCoreCount = Runtime.getRuntime().availableProcessors();
 	protected static int MIN_POOL_SIZE = 2*cpuCoreCount;
 	protected static int MAX_POOL_SIZE = 100*cpuCoreCount;
+	protected static int QUEUE_SIZE = 500*cpuCoreCount;
+	protected static int PARALLELISM = cpuCoreCount;
+	protected static PoolType POOL_TYPE = PoolType.THREAD_POOL;
+	protected static RejectPolicy REJECT_POLICY = RejectPolicy.ABORT;
+
+	/**
+	 * 线程池类型
+	 */
+	public enum PoolType {
+		//ThreadPoolExecutor, 线程数在最小和最大活动线程数之间按排队延迟调整
+		THREAD_POOL,
+		//ForkJoinPool, 工作窃取, 并行度固定
+		FORK_JOIN
+	}
+
+	/**
+	 * 任务拒绝策略
+	 */
+	public enum RejectPolicy {
+		//抛出 RejectedExecutionException
+		ABORT,
+		//在提交任务的线程中执行
+		CALLER_RUNS,
+		//丢弃任务
+		DISCARD
+	}
 
 	/**
 	 * 获取线程池最小活动线程数
@@ -52,19 +83,154 @@ public class ThreadPool {
 		MAX_POOL_SIZE = maxPoolSize;
 	}
 
+	/**
+	 * 获取线程池排队任务数的上限
+	 * @return 排队任务数的上限
+	 */
+	public static int getQueueSize() {
+		return QUEUE_SIZE;
+	}
+
+	/**
+	 * 设置线程池排队任务数的上限
+	 * @param queueSize 排队任务数的上限
+	 */
+	public static void setQueueSize(int queueSize) {
+		QUEUE_SIZE = queueSize;
+	}
+
+	/**
+	 * 获取 ForkJoin 线程池的并行度
+	 * @return 并行度
+	 */
+	public static int getParallelism() {
+		return PARALLELISM;
+	}
+
+	/**
+	 * 设置 ForkJoin 线程池的并行度
+	 * @param parallelism 并行度
+	 */
+	public static void setParallelism(int parallelism) {
+		PARALLELISM = parallelism;
+	}
+
+	/**
+	 * 获取线程池类型
+	 * @return 线程池类型
+	 */
+	public static PoolType getPoolType() {
+		return POOL_TYPE;
+	}
+
+	/**
+	 * 设置线程池类型
+	 *      在创建线程池之前设置才会生效
+	 * @param poolType 线程池类型
+	 */
+	public static void setPoolType(PoolType poolType) {
+		POOL_TYPE = poolType;
+	}
+
+	/**
+	 * 获取任务拒绝策略
+	 * @return 任务拒绝策略
+	 */
+	public static RejectPolicy getRejectPolicy() {
+		return REJECT_POLICY;
+	}
+
+	/**
+	 * 设置任务拒绝策略
+	 * @param rejectPolicy 任务拒绝策略
+	 */
+	public static void setRejectPolicy(RejectPolicy rejectPolicy) {
+		REJECT_POLICY = rejectPolicy;
+	}
+
+	/**
+	 * 是否支持虚拟线程
+	 * 		虚拟线程在 JDK 21 之后才提供
+	 * @return true: 支持, false: 不支持
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VirtualThreadExecutorHolder.EXECUTOR != null;
+	}
+
+	/**
+	 * 获取虚拟线程执行器
+	 * 		每个任务在一个新的虚拟线程中执行, 任务中的阻塞操作不会占用平台线程
+	 * @return 虚拟线程执行器, 当前 JDK 不支持虚拟线程时返回 null
+	 */
+	public static ExecutorService getVirtualThreadExecutor() {
+		return VirtualThreadExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * 延迟创建虚拟线程执行器
+	 */
+	private static class VirtualThreadExecutorHolder {
+		private final static ExecutorService EXECUTOR = createVirtualThreadExecutor();
+
+		/**
+		 * 通过反射创建虚拟线程执行器, 保持对低版本 JDK 的兼容
+		 * @return 虚拟线程执行器, 不支持时返回 null
+		 */
+		private static ExecutorService createVirtualThreadExecutor() {
+			try {
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "VOOVAN@VIRTUAL-", 0L);
+				ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+				return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+			} catch (ReflectiveOperationException e) {
+				return null;
+			}
+		}
+	}
+
 	private ThreadPool(){
 	}
-	
-	private static ThreadPoolExecutor createThreadPool(){
-		ThreadPoolExecutor threadPoolInstance = new ThreadPoolExecutor(MIN_POOL_SIZE, MAX_POOL_SIZE, 1, TimeUnit.MINUTES,new ArrayBlockingQueue<Runnable>(cpuCoreCount*500));
-		//设置allowCoreThreadTimeOut,允许回收超时的线程
-		threadPoolInstance.allowCoreThreadTimeOut(true);
 
-		Global.getHashWheelTimer().addTask(new ThreadPoolTask(threadPoolInstance), 1);
-		return threadPoolInstance;
+	private static WorkerPool createWorkerPool(PoolType poolType){
+		ExecutorService executor;
+		if(poolType == PoolType.FORK_JOIN) {
+			//asyncMode 为 true 时按提交顺序执行任务, 适合事件类的任务
+			executor = new ForkJoinPool(PARALLELISM, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("VOOVAN@FORK_JOIN-" + thread.getPoolIndex());
+					return thread;
+				}
+			}, null, true);
+		} else {
+			ThreadPoolExecutor threadPoolInstance = new WorkerPool.MeteredThreadPoolExecutor(MIN_POOL_SIZE, MAX_POOL_SIZE, 1, TimeUnit.MINUTES,new ArrayBlockingQueue<Runnable>(QUEUE_SIZE));
+			//设置allowCoreThreadTimeOut,允许回收超时的线程
+			threadPoolInstance.allowCoreThreadTimeOut(true);
+			executor = threadPoolInstance;
+		}
+
+		WorkerPool workerPool = new WorkerPool(executor, QUEUE_SIZE, REJECT_POLICY);
+		Global.getHashWheelTimer().addTask(new ThreadPoolTask(workerPool), 1);
+		return workerPool;
 	}
-	
+
+	/**
+	 * 创建一个新的 ThreadPoolExecutor
+	 * 		提交的任务经过 WorkerPool 统计, 并按照拒绝策略处理, 不受线程池类型的影响
+	 * @return ThreadPoolExecutor 对象
+	 */
 	public static ThreadPoolExecutor getNewThreadPool(){
-		 return createThreadPool();	
+		 return (ThreadPoolExecutor) createWorkerPool(PoolType.THREAD_POOL).getExecutor();
+	}
+
+	/**
+	 * 创建一个新的工作线程池
+	 * 		按照设置的线程池类型创建, 可以获取排队和执行耗时等统计信息
+	 * @return 工作线程池
+	 */
+	public static WorkerPool getNewWorkerPool(){
+		return createWorkerPool(POOL_TYPE);
 	}
 }
@@ -1,14 +1,16 @@
 package org.voovan.tools.threadpool;
 
 import org.voovan.tools.TEnv;
-import org.voovan.tools.TPerformance;
 import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.log.Logger;
 
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 线程池监控类
+ * 		根据等待最久的任务的排队时间调整 ThreadPoolExecutor 的线程数,
+ * 		ForkJoinPool 的并行度固定, 不做调整
  * 
  * @author helyho
  *
@@ -17,63 +19,66 @@ import java.util.concurrent.ThreadPoolExecutor;
  * Licence: Apache v2 License
  */
 public class ThreadPoolTask extends HashWheelTask {
-	private ThreadPoolExecutor	threadPoolInstance;
-	private int					cpuCoreCount;
+	//排队时间超过这个值时才增加线程, 单位: 微秒
+	private final static long GROW_QUEUE_LATENCY = 10000;
 
-	public ThreadPoolTask(ThreadPoolExecutor threadPoolInstance) {
-		cpuCoreCount = Runtime.getRuntime().availableProcessors();
-		this.threadPoolInstance = threadPoolInstance;
+	private WorkerPool			workerPool;
+
+	public ThreadPoolTask(WorkerPool workerPool) {
+		this.workerPool = workerPool;
 	}
 
 	@Override
 	public void run() {
-		if (threadPoolInstance.isShutdown()) {
+		if (workerPool.isShutdown()) {
 			this.cancel();
+			return;
 		}
-		
-//		String threadPoolInfo = "PoolInfo:" + threadPoolInstance.getActiveCount() + "/" + threadPoolInstance.getCorePoolSize() + "/"
-//				+ threadPoolInstance.getLargestPoolSize()+ "/" + threadPoolInstance.getMaximumPoolSize() + " TaskCount: "
-//				+ threadPoolInstance.getCompletedTaskCount() + "/"
-//				+ threadPoolInstance.getTaskCount() + " QueueSize:" + threadPoolInstance.getQueue().size() + " PerCoreLoadAvg:"
-//				+ TPerformance.cpuPerCoreLoadAvg();
-//		if (threadPoolInstance.getActiveCount() != 0) {
-//			System.out.println(TDateTime.now() + " ShutDown:" + threadPoolInstance.isShutdown() + " " + threadPoolInfo);
-//		}
-
-		int poolSize = threadPoolInstance.getPoolSize();
-		// 动态调整线程数,且系统CPU负载值要小于1
-		if (threadPoolInstance.getQueue().size() > 0 ) {
-
-			int newPoolSize = (int)(threadPoolInstance.getCorePoolSize() * 1.25);
-
-			if(newPoolSize > ThreadPool.MAX_POOL_SIZE){
-				newPoolSize = ThreadPool.MAX_POOL_SIZE;
-			}
 
-			if(newPoolSize!=poolSize) {
-				threadPoolInstance.setCorePoolSize(newPoolSize);
-				Logger.debug("PoolSizeChange: " + poolSize + "->" + threadPoolInstance.getCorePoolSize());
-			}
-		}
+		//等待最久的任务的排队时间, 所有线程都阻塞时依然会增长
+		long pendingLatency = TimeUnit.NANOSECONDS.toMicros(workerPool.getOldestPendingTime());
+
+		if (workerPool.getExecutor() instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor threadPoolInstance = (ThreadPoolExecutor) workerPool.getExecutor();
+			int poolSize = threadPoolInstance.getPoolSize();
 
-		else if(threadPoolInstance.getActiveCount() <= threadPoolInstance.getPoolSize()/2 &&
-				 threadPoolInstance.getCorePoolSize() > ThreadPool.MIN_POOL_SIZE){
+			// 所有线程都在忙且任务排队过久时才增加线程数
+			if (workerPool.getQueueSize() > 0 &&
+					workerPool.getActiveCount() >= poolSize &&
+					pendingLatency > GROW_QUEUE_LATENCY) {
 
-			int newPoolsize = (int)(threadPoolInstance.getCorePoolSize()*0.8);
+				//线程数较少时至少增加一个线程
+				int newPoolSize = Math.max((int)(threadPoolInstance.getCorePoolSize() * 1.25), threadPoolInstance.getCorePoolSize() + 1);
 
-			if(newPoolsize < ThreadPool.MIN_POOL_SIZE){
-				newPoolsize = ThreadPool.MIN_POOL_SIZE;
+				if(newPoolSize > ThreadPool.MAX_POOL_SIZE){
+					newPoolSize = ThreadPool.MAX_POOL_SIZE;
+				}
+
+				if(newPoolSize!=threadPoolInstance.getCorePoolSize()) {
+					threadPoolInstance.setCorePoolSize(newPoolSize);
+					Logger.debug("PoolSizeChange: " + poolSize + "->" + threadPoolInstance.getCorePoolSize() + " " + workerPool);
+				}
 			}
 
-			if(newPoolsize != poolSize) {
-				threadPoolInstance.setCorePoolSize(newPoolsize);
-				Logger.debug("PoolSizeChange: " + poolSize + "->" + threadPoolInstance.getCorePoolSize());
+			else if(workerPool.getActiveCount() <= poolSize/2 &&
+					threadPoolInstance.getCorePoolSize() > ThreadPool.MIN_POOL_SIZE){
+
+				int newPoolsize = (int)(threadPoolInstance.getCorePoolSize()*0.8);
+
+				if(newPoolsize < ThreadPool.MIN_POOL_SIZE){
+					newPoolsize = ThreadPool.MIN_POOL_SIZE;
+				}
+
+				if(newPoolsize != threadPoolInstance.getCorePoolSize()) {
+					threadPoolInstance.setCorePoolSize(newPoolsize);
+					Logger.debug("PoolSizeChange: " + poolSize + "->" + threadPoolInstance.getCorePoolSize() + " " + workerPool);
+				}
 			}
 		}
 
 		//如果主线程结束,则线程池也关闭
 		if( TEnv.isMainThreadShutDown()) {
-			threadPoolInstance.shutdown();
+			workerPool.shutdown();
 		}
 	}
 }
@@ -0,0 +1,291 @@
+package org.voovan.tools.threadpool;
+
+import org.voovan.tools.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 工作线程池
+ *      包装 ThreadPoolExecutor 或 ForkJoinPool, 统计排队任务数, 活动任务数,
+ *      任务的排队延迟和执行耗时, 并按照拒绝策略处理无法接收的任务.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WorkerPool extends AbstractExecutorService {
+	private ExecutorService executor;
+	private int queueSize;
+	private ThreadPool.RejectPolicy rejectPolicy;
+
+	private AtomicInteger pendingCount;
+	private AtomicInteger activeCount;
+	private LongAdder completedCount;
+	private LongAdder rejectedCount;
+	private LatencyHistogram queueLatency;
+	private LatencyHistogram taskLatency;
+
+	/**
+	 * 构造函数
+	 * @param executor 实际执行任务的线程池
+	 * @param queueSize 排队任务数的上限, 只对 ForkJoinPool 生效, ThreadPoolExecutor 由自身的队列限制
+	 * @param rejectPolicy 拒绝策略
+	 */
+	public WorkerPool(ExecutorService executor, int queueSize, ThreadPool.RejectPolicy rejectPolicy) {
+		this.executor = executor;
+		this.queueSize = queueSize;
+		this.rejectPolicy = rejectPolicy;
+
+		pendingCount = new AtomicInteger();
+		activeCount = new AtomicInteger();
+		completedCount = new LongAdder();
+		rejectedCount = new LongAdder();
+		queueLatency = new LatencyHistogram();
+		taskLatency = new LatencyHistogram();
+
+		if(executor instanceof MeteredThreadPoolExecutor) {
+			((MeteredThreadPoolExecutor) executor).workerPool = this;
+		}
+	}
+
+	/**
+	 * 获取实际执行任务的线程池
+	 * @return ThreadPoolExecutor 或 ForkJoinPool 对象
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * 是否是 ForkJoin 线程池
+	 * @return true: ForkJoinPool, false: ThreadPoolExecutor
+	 */
+	public boolean isForkJoin() {
+		return executor instanceof ForkJoinPool;
+	}
+
+	/**
+	 * 获取等待执行的任务数
+	 * @return 等待执行的任务数
+	 */
+	public int getQueueSize() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * 获取正在执行的任务数
+	 * @return 正在执行的任务数
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * 获取线程池中的线程数
+	 * @return 线程数
+	 */
+	public int getPoolSize() {
+		if(executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getPoolSize();
+		} else if(executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getPoolSize();
+		}
+		return 0;
+	}
+
+	/**
+	 * 获取已执行完成的任务数
+	 * @return 已执行完成的任务数
+	 */
+	public long getCompletedTaskCount() {
+		return completedCount.sum();
+	}
+
+	/**
+	 * 获取被拒绝的任务数
+	 * @return 被拒绝的任务数
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * 获取任务从提交到开始执行的排队延迟
+	 * @return 排队延迟直方图
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return queueLatency;
+	}
+
+	/**
+	 * 获取任务的执行耗时
+	 * @return 执行耗时直方图
+	 */
+	public LatencyHistogram getTaskLatency() {
+		return taskLatency;
+	}
+
+	/**
+	 * 获取等待最久的任务已经排队的时间
+	 * 		只对 ThreadPoolExecutor 生效, 所有线程都阻塞时没有任务开始执行, 排队时间依然会增长
+	 * @return 排队时间, 单位: 纳秒, 没有排队的任务时返回 0
+	 */
+	public long getOldestPendingTime() {
+		if(executor instanceof ThreadPoolExecutor) {
+			Runnable oldestTask = ((ThreadPoolExecutor) executor).getQueue().peek();
+			if(oldestTask instanceof WorkerTask) {
+				return System.nanoTime() - ((WorkerTask) oldestTask).submitTime;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if(command == null) {
+			throw new NullPointerException();
+		}
+
+		//ForkJoinPool 的队列没有上限, 按排队任务数限制
+		if(queueSize > 0 && isForkJoin() && pendingCount.get() >= queueSize) {
+			reject(command);
+			return;
+		}
+
+		pendingCount.incrementAndGet();
+		try {
+			if(executor instanceof MeteredThreadPoolExecutor) {
+				((MeteredThreadPoolExecutor) executor).executeDirect(new WorkerTask(command));
+			} else {
+				executor.execute(new WorkerTask(command));
+			}
+		} catch (RejectedExecutionException e) {
+			pendingCount.decrementAndGet();
+			if(executor.isShutdown()) {
+				throw e;
+			}
+			reject(command);
+		}
+	}
+
+	/**
+	 * 按拒绝策略处理任务
+	 * @param command 任务
+	 */
+	private void reject(Runnable command) {
+		rejectedCount.increment();
+		switch (rejectPolicy) {
+			case CALLER_RUNS:
+				command.run();
+				break;
+			case DISCARD:
+				break;
+			default:
+				throw new RejectedExecutionException("Task " + command + " rejected from " + this);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return executor.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "{type=" + (isForkJoin() ? "ForkJoin" : "ThreadPool") + ", poolSize=" + getPoolSize() +
+				", active=" + getActiveCount() + ", queue=" + getQueueSize() + ", completed=" + getCompletedTaskCount() +
+				", rejected=" + getRejectedCount() + ", queueLatency=" + queueLatency + ", taskLatency=" + taskLatency + "}";
+	}
+
+	/**
+	 * 经过工作线程池统计的 ThreadPoolExecutor
+	 * 		直接向这个线程池提交的任务同样由 WorkerPool 统计, 并按照 WorkerPool 的拒绝策略处理
+	 */
+	public static class MeteredThreadPoolExecutor extends ThreadPoolExecutor {
+		private WorkerPool workerPool;
+
+		public MeteredThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+			super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+		}
+
+		/**
+		 * 获取统计这个线程池的工作线程池
+		 * @return 工作线程池
+		 */
+		public WorkerPool getWorkerPool() {
+			return workerPool;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if(workerPool == null) {
+				super.execute(command);
+			} else {
+				workerPool.execute(command);
+			}
+		}
+
+		private void executeDirect(Runnable command) {
+			super.execute(command);
+		}
+	}
+
+	/**
+	 * 记录排队和执行耗时的任务
+	 */
+	private class WorkerTask implements Runnable {
+		private Runnable command;
+		private long submitTime;
+
+		public WorkerTask(Runnable command) {
+			this.command = command;
+			this.submitTime = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.nanoTime();
+			pendingCount.decrementAndGet();
+			activeCount.incrementAndGet();
+			queueLatency.record(startTime - submitTime);
+			try {
+				command.run();
+			} finally {
+				activeCount.decrementAndGet();
+				completedCount.increment();
+				taskLatency.record(System.nanoTime() - startTime);
+			}
+		}
+	}
+}
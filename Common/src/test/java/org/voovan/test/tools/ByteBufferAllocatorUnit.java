@@ -0,0 +1,118 @@
+package org.voovan.test.tools;
+
+import junit.framework.TestCase;
+import org.voovan.tools.ByteBufferAllocator;
+import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.TByteBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 堆外内存分配器测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class ByteBufferAllocatorUnit extends TestCase {
+
+    public void testBlockSize(){
+        assertEquals(64, ByteBufferAllocator.blockSize(1));
+        assertEquals(64, ByteBufferAllocator.blockSize(64));
+        assertEquals(128, ByteBufferAllocator.blockSize(65));
+        assertEquals(1024 * 1024, ByteBufferAllocator.blockSize(1024 * 1024));
+        assertEquals(1024 * 1024 + 1, ByteBufferAllocator.blockSize(1024 * 1024 + 1));
+    }
+
+    public void testAllocateAndRelease(){
+        long usedMemory = ByteBufferAllocator.getUsedMemory();
+
+        ByteBuffer byteBuffer = TByteBuffer.allocateDirect(1000);
+        assertTrue(ByteBufferAllocator.isPooled(byteBuffer));
+        assertEquals(1000, byteBuffer.capacity());
+        assertEquals(usedMemory + 1024, ByteBufferAllocator.getUsedMemory());
+
+        byteBuffer.put("helyho".getBytes());
+        byteBuffer.flip();
+        assertEquals("helyho", TByteBuffer.toString(byteBuffer));
+
+        assertTrue(ByteBufferAllocator.release(byteBuffer));
+        assertEquals(usedMemory, ByteBufferAllocator.getUsedMemory());
+        assertEquals(0, byteBuffer.limit());
+
+        //重复释放不影响其他 ByteBuffer
+        ByteBuffer other = TByteBuffer.allocateDirect(1000);
+        assertFalse(ByteBufferAllocator.release(byteBuffer));
+        assertEquals(1, ByteBufferAllocator.refCount(other));
+        TByteBuffer.release(other);
+    }
+
+    public void testCacheHit(){
+        ByteBuffer byteBuffer = TByteBuffer.allocateDirect(4000);
+        TByteBuffer.release(byteBuffer);
+
+        long cacheHitCount = ByteBufferAllocator.getCacheHitCount();
+        byteBuffer = TByteBuffer.allocateDirect(3000);
+        assertEquals(cacheHitCount + 1, ByteBufferAllocator.getCacheHitCount());
+        TByteBuffer.release(byteBuffer);
+    }
+
+    public void testRefCount(){
+        ByteBuffer byteBuffer = TByteBuffer.allocateDirect(100);
+        assertEquals(2, ByteBufferAllocator.retain(byteBuffer));
+        assertFalse(ByteBufferAllocator.release(byteBuffer));
+        assertEquals(1, ByteBufferAllocator.refCount(byteBuffer));
+        assertTrue(ByteBufferAllocator.release(byteBuffer));
+        assertEquals(-1, ByteBufferAllocator.retain(byteBuffer));
+
+        //非内存池分配的 ByteBuffer 不做处理
+        ByteBuffer heapBuffer = ByteBuffer.allocate(100);
+        assertFalse(ByteBufferAllocator.release(heapBuffer));
+        assertEquals(-1, ByteBufferAllocator.refCount(heapBuffer));
+    }
+
+    public void testViewRelease(){
+        ByteBuffer byteBuffer = TByteBuffer.allocateDirect(100);
+        byteBuffer.put("helyho".getBytes());
+        byteBuffer.flip();
+
+        //视图不能释放或重新分配原 ByteBuffer 的内存
+        ByteBuffer duplicate = byteBuffer.duplicate();
+        ByteBuffer slice = byteBuffer.slice();
+        assertFalse(ByteBufferAllocator.isPooled(duplicate));
+        assertFalse(ByteBufferAllocator.release(duplicate));
+        assertFalse(ByteBufferAllocator.release(slice));
+        assertEquals(-1, ByteBufferAllocator.retain(duplicate));
+        assertFalse(TByteBuffer.reallocate(duplicate, 2000));
+        assertEquals(1, ByteBufferAllocator.refCount(byteBuffer));
+        assertEquals("helyho", TByteBuffer.toString(duplicate));
+
+        assertTrue(ByteBufferAllocator.release(byteBuffer));
+    }
+
+    public void testReallocate(){
+        ByteBuffer byteBuffer = TByteBuffer.allocateDirect(10);
+        byteBuffer.put("helyho".getBytes());
+        assertTrue(TByteBuffer.reallocate(byteBuffer, 2000));
+        assertEquals(2000, byteBuffer.capacity());
+        byteBuffer.flip();
+        assertEquals("helyho", TByteBuffer.toString(byteBuffer));
+        assertTrue(ByteBufferAllocator.release(byteBuffer));
+    }
+
+    public void testChannelRelease(){
+        long usedMemory = ByteBufferAllocator.getUsedMemory();
+
+        ByteBufferChannel byteBufferChannel = new ByteBufferChannel(100);
+        byteBufferChannel.writeEnd(ByteBuffer.wrap("helyho".getBytes()));
+        byteBufferChannel.writeEnd(ByteBuffer.wrap(new byte[500]));
+        assertEquals(506, byteBufferChannel.size());
+        assertEquals("helyho", new String(byteBufferChannel.array(), 0, 6));
+
+        byteBufferChannel.release();
+        assertTrue(byteBufferChannel.isReleased());
+        assertEquals(usedMemory, ByteBufferAllocator.getUsedMemory());
+    }
+}
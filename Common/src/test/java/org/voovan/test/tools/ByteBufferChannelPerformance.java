@@ -0,0 +1,69 @@
+package org.voovan.test.tools;
+
+import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.log.Logger;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferChannel 加锁模式和单生产者模式的性能对比
+ *      一个线程写入, 一个线程读取, 模拟 Selector 线程和消息处理线程
+ *
+ * @author helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ByteBufferChannelPerformance {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final long TOTAL_SIZE = 1024L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        //预热
+        for(int x=0;x<3;x++) {
+            run(false);
+            run(true);
+        }
+
+        for(int x=0;x<5;x++) {
+            Logger.simple("locked: " + run(false) + "ms, single producer: " + run(true) + "ms");
+        }
+    }
+
+    private static long run(boolean singleProducer) throws Exception {
+        final ByteBufferChannel channel = new ByteBufferChannel(64 * 1024);
+        if(singleProducer) {
+            channel.enableSingleProducer(256 * 1024);
+        }
+
+        long start = System.currentTimeMillis();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer data = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                for (long i = 0; i < TOTAL_SIZE; i += CHUNK_SIZE) {
+                    //限制积压的数据, 避免通道无限扩容
+                    while(channel.size() > 1024 * 1024){
+                        Thread.yield();
+                    }
+                    data.clear();
+                    channel.writeEnd(data);
+                }
+            }
+        });
+        producer.start();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
+        long readSize = 0;
+        while (readSize < TOTAL_SIZE) {
+            buffer.clear();
+            readSize += channel.readHead(buffer);
+        }
+
+        producer.join();
+        channel.release();
+        return System.currentTimeMillis() - start;
+    }
+}
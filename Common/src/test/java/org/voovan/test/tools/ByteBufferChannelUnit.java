@@ -196,6 +196,137 @@ public class ByteBufferChannelUnit extends TestCase {
 		byteBufferChannel.release();
 	}
 
+	public void testIndexOfResume() {
+		ByteBufferChannel channel = new ByteBufferChannel();
+		byte[] mark = "\r\n\r\n".getBytes();
+
+		channel.writeEnd(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: a\r".getBytes()));
+		assertEquals(-1, channel.indexOf(mark));
+		channel.writeEnd(ByteBuffer.wrap("\n\r".getBytes()));
+		assertEquals(-1, channel.indexOf(mark));
+		channel.writeEnd(ByteBuffer.wrap("\nbody".getBytes()));
+		assertEquals(23, channel.indexOf(mark));
+
+		//头部消费后位置随之移动
+		channel.shrink(4);
+		assertEquals(19, channel.indexOf(mark));
+		channel.writeHead(ByteBuffer.wrap("\r\n\r\n".getBytes()));
+		assertEquals(0, channel.indexOf(mark));
+		channel.release();
+	}
+
+	public void testConsumeHead() {
+		ByteBufferChannel channel = new ByteBufferChannel(64);
+		ByteBuffer buffer = ByteBuffer.allocate(6);
+		int writeCount = 0;
+		int readCount = 0;
+		byte[] data = new byte[7];
+
+		//交替写入和读取, 窗口在内存块中移动, 数据保持顺序
+		for(int i=0; i<1000; i++){
+			for(int x=0; x<data.length; x++){
+				data[x] = (byte)(writeCount++);
+			}
+			channel.writeEnd(ByteBuffer.wrap(data));
+
+			buffer.clear();
+			int readSize = channel.readHead(buffer);
+			for(int x=0; x<readSize; x++){
+				assertEquals((byte)(readCount++), buffer.get(x));
+			}
+
+			if(i % 2 == 0){
+				assertTrue(channel.shrink(1));
+				readCount++;
+			}
+		}
+
+		assertEquals(writeCount - readCount, channel.size());
+		assertTrue(channel.capacity() <= 1024);
+
+		ByteBuffer byteBuffer = channel.getByteBuffer();
+		assertEquals((byte)readCount, byteBuffer.get(0));
+		byteBuffer.position(2);
+		channel.compact();
+		assertEquals((byte)(readCount + 2), channel.get(0));
+		channel.release();
+	}
+
+	public void testTailBuffer() {
+		ByteBufferChannel channel = new ByteBufferChannel(16);
+		channel.writeEnd(ByteBuffer.wrap("helyho".getBytes()));
+
+		//直接向尾部写入, 空间不足时扩容
+		ByteBuffer tailBuffer = channel.getTailBuffer(100);
+		assertEquals(6, tailBuffer.position());
+		assertTrue(tailBuffer.remaining() >= 100);
+		tailBuffer.put(" is here".getBytes());
+		assertEquals(8, channel.commitTail());
+
+		assertEquals(14, channel.size());
+		assertEquals("helyho is here", new String(channel.array(), 0, channel.size()));
+
+		//未写入数据时不改变通道
+		channel.getTailBuffer(1);
+		assertEquals(0, channel.commitTail());
+		assertEquals(14, channel.size());
+		channel.release();
+	}
+
+	public void testShrinkHead() {
+		ByteBufferChannel channel = new ByteBufferChannel(16);
+		channel.writeEnd(ByteBuffer.wrap("PINGPING helyho".getBytes()));
+
+		assertTrue(channel.shrinkHead("PING".getBytes()));
+		assertTrue(channel.shrinkHead("PING".getBytes()));
+		assertFalse(channel.shrinkHead("PING".getBytes()));
+		assertEquals(" helyho", new String(channel.array(), 0, channel.size()));
+
+		//头部以外的标识不处理
+		assertFalse(channel.shrinkHead("helyho".getBytes()));
+		assertFalse(channel.shrinkHead(" helyho is here".getBytes()));
+		assertEquals(7, channel.size());
+		channel.release();
+	}
+
+	public void testSingleProducer() throws Exception {
+		final ByteBufferChannel channel = new ByteBufferChannel(16);
+		channel.enableSingleProducer(64);
+		final int total = 100000;
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] data = new byte[7];
+				for(int i=0; i<total; i+=data.length){
+					int length = Math.min(data.length, total - i);
+					for(int x=0; x<length; x++){
+						data[x] = (byte)(i + x);
+					}
+					channel.writeEnd(ByteBuffer.wrap(data, 0, length));
+				}
+			}
+		});
+		producer.start();
+
+		ByteBuffer buffer = ByteBuffer.allocate(13);
+		int count = 0;
+		long deadline = System.currentTimeMillis() + 10000;
+		while(count < total && System.currentTimeMillis() < deadline){
+			buffer.clear();
+			int readSize = channel.readHead(buffer);
+			for(int i=0; i<readSize; i++){
+				assertEquals((byte)count, buffer.get(i));
+				count++;
+			}
+		}
+		producer.join();
+
+		assertEquals(total, count);
+		assertEquals(0, channel.size());
+		channel.release();
+	}
+
 	public void testAll() throws IOException {
 		ByteBufferChannel byteBufferChannel1;
 		byteBufferChannel1 = new ByteBufferChannel(2);
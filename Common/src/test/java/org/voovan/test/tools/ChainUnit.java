@@ -0,0 +1,92 @@
+package org.voovan.test.tools;
+
+import junit.framework.TestCase;
+import org.voovan.tools.Chain;
+
+import java.util.Iterator;
+
+/**
+ * 对象链测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class ChainUnit extends TestCase {
+    private static final String[] STRING_ARRAY_TYPE = new String[0];
+
+    public void testSnapshot(){
+        Chain<String> chain = new Chain<String>();
+        chain.add("a");
+        chain.add("b");
+
+        String[] snapshot = chain.snapshot(STRING_ARRAY_TYPE);
+        assertEquals(2, snapshot.length);
+        assertEquals("a", snapshot[0]);
+        assertEquals("b", snapshot[1]);
+
+        //内容未修改时复用同一个快照
+        assertSame(snapshot, chain.snapshot(STRING_ARRAY_TYPE));
+
+        //修改后生成新的快照, 旧的快照不受影响
+        chain.add("c");
+        String[] newSnapshot = chain.snapshot(STRING_ARRAY_TYPE);
+        assertNotSame(snapshot, newSnapshot);
+        assertEquals(2, snapshot.length);
+        assertEquals(3, newSnapshot.length);
+        assertEquals("c", newSnapshot[2]);
+
+        chain.remove("a");
+        assertEquals("b", chain.snapshot(STRING_ARRAY_TYPE)[0]);
+
+        chain.push("z");
+        assertEquals("z", chain.snapshot(STRING_ARRAY_TYPE)[0]);
+
+        Iterator<String> iterator = chain.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(2, chain.snapshot(STRING_ARRAY_TYPE).length);
+
+        chain.clear();
+        assertEquals(0, chain.snapshot(STRING_ARRAY_TYPE).length);
+    }
+
+    public void testSnapshotType(){
+        Chain<CharSequence> chain = new Chain<CharSequence>();
+        chain.add("a");
+
+        //快照的数组类型与请求的类型一致, 类型不同时重新生成
+        CharSequence[] snapshot = chain.snapshot(new CharSequence[0]);
+        assertEquals(CharSequence[].class, snapshot.getClass());
+        assertSame(snapshot, chain.snapshot(new CharSequence[0]));
+
+        Object[] objects = ((Chain) chain).snapshot(new Object[0]);
+        assertEquals(Object[].class, objects.getClass());
+        assertEquals("a", objects[0]);
+
+        //传入的数组不会被修改
+        CharSequence[] type = new CharSequence[]{"x", "y"};
+        chain.clear();
+        chain.add("b");
+        assertEquals(1, chain.snapshot(type).length);
+        assertEquals("x", type[0]);
+    }
+
+    public void testIterate(){
+        Chain<String> chain = new Chain<String>();
+        chain.add("a");
+        chain.add("b");
+
+        Chain<String> cloned = chain.clone();
+        assertEquals("a", cloned.next());
+        assertEquals("b", cloned.next());
+        assertFalse(cloned.hasNext());
+
+        cloned.rewind();
+        assertEquals("b", cloned.previous());
+        assertEquals("a", cloned.previous());
+        assertFalse(cloned.hasPrevious());
+    }
+}
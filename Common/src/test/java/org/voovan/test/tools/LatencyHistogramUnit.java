@@ -0,0 +1,48 @@
+package org.voovan.test.tools;
+
+import junit.framework.TestCase;
+import org.voovan.tools.LatencyHistogram;
+
+/**
+ * 延迟直方图测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class LatencyHistogramUnit extends TestCase {
+
+    public void testRecord(){
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        assertEquals(0, latencyHistogram.getCount());
+        assertEquals(0, latencyHistogram.getPercentile(99));
+
+        for(int i=0; i<99; i++) {
+            latencyHistogram.record(100 * 1000);
+        }
+        latencyHistogram.record(50 * 1000 * 1000);
+
+        assertEquals(100, latencyHistogram.getCount());
+        assertEquals(50 * 1000, latencyHistogram.getMax());
+        assertEquals(599, latencyHistogram.getMean());
+
+        //100us 落在 [64, 128) 的桶中
+        assertEquals(128, latencyHistogram.getPercentile(50));
+        assertEquals(128, latencyHistogram.getPercentile(99));
+        assertEquals(50 * 1000, latencyHistogram.getPercentile(100));
+
+        latencyHistogram.reset();
+        assertEquals(0, latencyHistogram.getCount());
+        assertEquals(0, latencyHistogram.getMax());
+    }
+
+    public void testSmallValue(){
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        latencyHistogram.record(500);
+        latencyHistogram.record(-1);
+        assertEquals(2, latencyHistogram.getBucketCounts()[0]);
+        assertEquals(0, latencyHistogram.getPercentile(50));
+    }
+}
@@ -0,0 +1,60 @@
+package org.voovan.test.tools;
+
+import junit.framework.TestCase;
+import org.voovan.tools.SlowTaskWatchdog;
+import org.voovan.tools.TEnv;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 慢任务检测测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class SlowTaskWatchdogUnit extends TestCase {
+
+    public void testOffenders(){
+        SlowTaskWatchdog watchdog = new SlowTaskWatchdog(50);
+
+        for(int i=0; i<10; i++) {
+            watchdog.exit(watchdog.enter("fast"));
+        }
+
+        SlowTaskWatchdog.Watch watch = watchdog.enter("slow");
+        TEnv.sleep(200);
+        assertEquals(1, watchdog.getRunningSlowCount());
+        watchdog.exit(watch);
+        assertEquals(0, watchdog.getRunningSlowCount());
+
+        List<Map<String, Object>> offenders = watchdog.getOffenders(10);
+        assertEquals(2, offenders.size());
+
+        Map<String, Object> slow = offenders.get(0);
+        assertEquals("slow", slow.get("name"));
+        assertEquals(1L, slow.get("slowCount"));
+        assertTrue((Long) slow.get("max") >= 200 * 1000);
+
+        //超过阈值的任务被采样了执行线程的栈
+        List<String> stack = (List<String>) slow.get("stack");
+        assertNotNull(stack);
+        assertTrue(stack.toString().contains("SlowTaskWatchdogUnit"));
+
+        Map<String, Object> fast = offenders.get(1);
+        assertEquals("fast", fast.get("name"));
+        assertEquals(10L, fast.get("count"));
+        assertEquals(0L, fast.get("slowCount"));
+        assertNull(fast.get("stack"));
+
+        assertEquals(1, watchdog.getOffenders(1).size());
+        assertFalse(watchdog.getOffenders(10, false).get(0).containsKey("stack"));
+
+        watchdog.reset();
+        assertEquals(0, watchdog.getOffenders(10).size());
+        watchdog.cancel();
+    }
+}
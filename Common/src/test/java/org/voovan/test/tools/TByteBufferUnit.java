@@ -57,4 +57,33 @@ public class TByteBufferUnit extends TestCase {
         assertEquals("lylyho", TByteBuffer.toString(b).trim());
 
     }
+
+    public void testIndexOf(){
+        byte[] data = new byte[1000];
+        for(int i=0; i<data.length; i++){
+            data[i] = (byte)('a' + i % 20);
+        }
+        System.arraycopy("\r\n\r\n".getBytes(), 0, data, 517, 4);
+        System.arraycopy("--boundary-123456".getBytes(), 0, data, 901, 17);
+
+        ByteBuffer heapBuffer = ByteBuffer.wrap(data);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(data.length);
+        directBuffer.put(data);
+        directBuffer.flip();
+
+        for(ByteBuffer buffer : new ByteBuffer[]{heapBuffer, directBuffer}) {
+            assertEquals(517, TByteBuffer.indexOf(buffer, "\r\n\r\n".getBytes()));
+            assertEquals(517, TByteBuffer.indexOf(buffer, "\r".getBytes()));
+            assertEquals(901, TByteBuffer.indexOf(buffer, "--boundary-123456".getBytes()));
+            assertEquals(3, TByteBuffer.indexOf(buffer, "defg".getBytes()));
+            assertEquals(-1, TByteBuffer.indexOf(buffer, "--boundary-654321".getBytes()));
+            assertEquals(-1, TByteBuffer.indexOf(buffer, "\n\n".getBytes()));
+
+            //相对 position 的位置
+            buffer.position(600);
+            assertEquals(301, TByteBuffer.indexOf(buffer, "--boundary-123456".getBytes()));
+            assertEquals(-1, TByteBuffer.indexOf(buffer, "\r\n\r\n".getBytes()));
+            buffer.position(0);
+        }
+    }
 }
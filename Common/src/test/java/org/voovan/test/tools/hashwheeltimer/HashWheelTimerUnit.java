@@ -9,6 +9,8 @@ import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 类文字命名
@@ -74,6 +76,108 @@ public class HashWheelTimerUnit extends TestCase {
         }, 12);
     }
 
+    public void testMillisecondTask(){
+        HashWheelTimer timer = new HashWheelTimer(64, 1);
+        timer.rotate();
+
+        final AtomicInteger count = new AtomicInteger();
+        HashWheelTask task = new HashWheelTask() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+        timer.addTask(task, 10, TimeUnit.MILLISECONDS, true);
+
+        TEnv.sleep(1000);
+        task.cancel();
+        int executed = count.get();
+        assertTrue(executed >= 50 && executed <= 101);
+
+        //取消后不再执行
+        TEnv.sleep(100);
+        assertTrue(count.get() - executed <= 1);
+        timer.cancel();
+    }
+
+    public void testOverflowWheel(){
+        HashWheelTimer timer = new HashWheelTimer(8, 1);
+        timer.rotate();
+
+        final AtomicInteger count = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+        final long[] firstRun = new long[1];
+        timer.addTask(new HashWheelTask() {
+            @Override
+            public void run() {
+                if(count.incrementAndGet() == 1) {
+                    firstRun[0] = System.currentTimeMillis() - start;
+                }
+                cancel();
+            }
+        }, 300, TimeUnit.MILLISECONDS, false);
+
+        TEnv.sleep(600);
+        assertEquals(1, count.get());
+        assertTrue(firstRun[0] >= 290 && firstRun[0] < 400);
+        timer.cancel();
+    }
+
+    public void testCancelBeforeExpire(){
+        HashWheelTimer timer = new HashWheelTimer(64, 1);
+        timer.rotate();
+
+        final AtomicInteger count = new AtomicInteger();
+        HashWheelTask[] tasks = new HashWheelTask[100000];
+        for(int i=0; i<tasks.length; i++) {
+            tasks[i] = new HashWheelTask() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            };
+            timer.addTask(tasks[i], 1, TimeUnit.SECONDS, true);
+        }
+
+        for(int i=0; i<tasks.length; i+=2) {
+            assertTrue(tasks[i].cancel());
+        }
+        assertFalse(tasks[0].cancel());
+
+        TEnv.sleep(1500);
+        for(HashWheelTask task : tasks) {
+            task.cancel();
+        }
+        assertEquals(tasks.length / 2, count.get());
+        timer.cancel();
+    }
+
+    public void testRotateAfterCancel(){
+        HashWheelTimer timer = new HashWheelTimer(64, 1);
+        timer.rotate();
+
+        final AtomicInteger count = new AtomicInteger();
+        HashWheelTask task = new HashWheelTask() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+                cancel();
+            }
+        };
+        timer.addTask(task, 10, TimeUnit.MILLISECONDS, false);
+        TEnv.sleep(200);
+        assertEquals(1, count.get());
+
+        //停止后再次启动, 时间轮重新创建线程池
+        timer.cancel();
+        TEnv.sleep(100);
+        assertTrue(timer.rotate());
+        timer.addTask(task, 10, TimeUnit.MILLISECONDS, false);
+        TEnv.sleep(200);
+        assertEquals(2, count.get());
+        timer.cancel();
+    }
+
     public void testRotateWheel(){
         hashWheelTimer.rotate();
         TEnv.sleep(60 * 1000 * 10);
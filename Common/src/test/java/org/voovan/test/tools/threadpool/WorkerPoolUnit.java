@@ -0,0 +1,170 @@
+package org.voovan.test.tools.threadpool;
+
+import junit.framework.TestCase;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.threadpool.ThreadPool;
+import org.voovan.tools.threadpool.ThreadPoolTask;
+import org.voovan.tools.threadpool.WorkerPool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 工作线程池测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WorkerPoolUnit extends TestCase {
+
+    public void testMetrics() throws Exception {
+        WorkerPool workerPool = new WorkerPool(new ThreadPoolExecutor(2, 2, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(100)),
+                100, ThreadPool.RejectPolicy.ABORT);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(10);
+        for(int i=0; i<10; i++) {
+            workerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        TEnv.sleep(100);
+        assertEquals(2, workerPool.getActiveCount());
+        assertEquals(8, workerPool.getQueueSize());
+
+        startLatch.countDown();
+        doneLatch.await();
+        TEnv.sleep(50);
+
+        assertEquals(0, workerPool.getActiveCount());
+        assertEquals(0, workerPool.getQueueSize());
+        assertEquals(10, workerPool.getCompletedTaskCount());
+        assertEquals(10, workerPool.getQueueLatency().getCount());
+        assertTrue(workerPool.getQueueLatency().getMax() >= 50000);
+        workerPool.shutdown();
+    }
+
+    public void testForkJoinRejectPolicy() throws Exception {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                count.incrementAndGet();
+            }
+        };
+
+        WorkerPool workerPool = new WorkerPool(new ForkJoinPool(1, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true),
+                2, ThreadPool.RejectPolicy.ABORT);
+        assertTrue(workerPool.isForkJoin());
+
+        workerPool.execute(task);
+        TEnv.sleep(50);
+        workerPool.execute(task);
+        workerPool.execute(task);
+
+        //排队任务数达到上限
+        try {
+            workerPool.execute(task);
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, workerPool.getRejectedCount());
+        }
+
+        startLatch.countDown();
+        TEnv.sleep(50);
+        assertEquals(3, count.get());
+        workerPool.shutdown();
+
+        //在提交任务的线程中执行
+        workerPool = new WorkerPool(new ForkJoinPool(1), 0, ThreadPool.RejectPolicy.CALLER_RUNS);
+        workerPool.shutdown();
+        try {
+            workerPool.execute(task);
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, workerPool.getRejectedCount());
+        }
+    }
+
+    public void testDiscardPolicy() {
+        WorkerPool workerPool = new WorkerPool(new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(1)),
+                1, ThreadPool.RejectPolicy.DISCARD);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        for(int i=0; i<5; i++) {
+            workerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+
+        assertEquals(3, workerPool.getRejectedCount());
+        startLatch.countDown();
+        workerPool.shutdown();
+    }
+
+    public void testGrowWhenWorkersBlocked() {
+        WorkerPool.MeteredThreadPoolExecutor executor = new WorkerPool.MeteredThreadPoolExecutor(4, 100, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(100));
+        WorkerPool workerPool = new WorkerPool(executor, 100, ThreadPool.RejectPolicy.ABORT);
+
+        //直接向 ThreadPoolExecutor 提交的任务同样经过 WorkerPool 统计
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        for(int i=0; i<10; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+
+        //所有线程都阻塞, 没有任务开始执行, 等待最久的任务的排队时间依然增长
+        TEnv.sleep(50);
+        assertEquals(4, workerPool.getActiveCount());
+        assertEquals(6, workerPool.getQueueSize());
+        assertTrue(workerPool.getOldestPendingTime() >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        new ThreadPoolTask(workerPool).run();
+        assertEquals(5, executor.getCorePoolSize());
+
+        startLatch.countDown();
+        TEnv.sleep(50);
+        assertEquals(0, workerPool.getOldestPendingTime());
+        assertEquals(10, workerPool.getCompletedTaskCount());
+        workerPool.shutdown();
+    }
+}
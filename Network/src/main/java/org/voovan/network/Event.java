@@ -13,6 +13,7 @@ public class Event {
 	private IoSession session;
 	private EventName name;
 	private Object other;
+	private long createTime;
 
 	/**
 	 * 事件名称枚举
@@ -62,6 +63,23 @@ public class Event {
 		this.other = other;
 	}
 
+	/**
+	 * 获取事件的触发时间
+	 * @return 触发时间, 单位: 纳秒, 0: 未记录
+	 */
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	/**
+	 * 设置事件的触发时间
+	 * 		启用网络 IO 统计时记录, 用于计算事件的排队耗时
+	 * @param createTime 触发时间, 单位: 纳秒 (System.nanoTime)
+	 */
+	public void setCreateTime(long createTime) {
+		this.createTime = createTime;
+	}
+
 	@Override
 	public int hashCode(){
 		return session.hashCode()+name.hashCode();
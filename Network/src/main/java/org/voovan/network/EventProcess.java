@@ -1,17 +1,15 @@
 package org.voovan.network;
 
-import org.voovan.Global;
 import org.voovan.network.Event.EventName;
 import org.voovan.network.exception.IoFilterException;
 import org.voovan.network.exception.SendMessageException;
 import org.voovan.network.udp.UdpSocket;
-import org.voovan.tools.Chain;
+import org.voovan.tools.SlowTaskWatchdog;
 import org.voovan.tools.TByteBuffer;
 import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.Callable;
 
 /**
  * 事件的实际逻辑处理
@@ -23,6 +21,8 @@ import java.util.concurrent.Callable;
  * Licence: Apache v2 License
  */
 public class EventProcess {
+	//获取过滤器链快照使用的数组类型
+	private static final IoFilter[] FILTER_ARRAY_TYPE = new IoFilter[0];
 
 	/**
 	 * 私有构造函数,防止被实例化
@@ -56,10 +56,12 @@ public class EventProcess {
 
 		IoSession session = event.getSession();
 
-        // SSL 握手
+        // SSL 握手, 握手由连接和数据到达事件驱动, 完成后会再次触发 onConnect 事件
         if (session != null && session.getSSLParser() != null && !session.getSSLParser().isHandShakeDone()) {
             try {
-                session.getSSLParser().doHandShake();
+                if(session.getSSLParser().deferConnect()) {
+                    return;
+                }
             } catch (Exception e) {
                 Logger.error("SSL hand shake failed", e);
                 session.close();
@@ -89,6 +91,12 @@ public class EventProcess {
 	public static void onDisconnect(Event event) {
         IoSession session = event.getSession();
 		session.cancelIdle();
+
+		NetworkMetrics metrics = session.getMetrics();
+		if (metrics != null) {
+			metrics.sessionClosed();
+		}
+
 		SocketContext socketContext = event.getSession().socketContext();
 
 		if (socketContext != null) {
@@ -110,8 +118,6 @@ public class EventProcess {
 		SocketContext socketContext = session.socketContext();
 
 		if (socketContext != null) {
-			ByteBuffer byteBuffer = null;
-
 			MessageLoader messageLoader = session.getMessageLoader();
 
 			//如果没有使用分割器,则跳过
@@ -125,43 +131,93 @@ public class EventProcess {
 			// 由于之前有消息分割器在工作,所以这里读取的消息都是完成的消息包.
 			// 有可能缓冲区没有读完
 			// 按消息包触发 onRecive 事件
-			while (session.getByteBufferChannel().size() > 0) {
+			// 同一批消息的响应合并后一次写出
+			session.getSendQueue().cork();
+			try {
+				readMessages(session, messageLoader);
+			} finally {
+				if(session.getSendQueue().uncork()) {
+					session.flush();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 读取缓冲区中所有完整的消息包并处理
+	 * @param session Session 对象
+	 * @param messageLoader 消息读取对象
+	 * @throws IOException  IO 异常
+	 * @throws IoFilterException IoFilter 异常
+	 */
+	private static void readMessages(IoSession session, MessageLoader messageLoader) throws IOException, IoFilterException {
+		SocketContext socketContext = session.socketContext();
+		NetworkMetrics metrics = session.getMetrics();
+		ByteBuffer byteBuffer = null;
 
-				byteBuffer = messageLoader.read();
+		while (session.getByteBufferChannel().size() > 0) {
 
-				//设置空闲状态
-				session.getState().setReceive(false);
+			int channelSize = session.getByteBufferChannel().size();
+			byteBuffer = messageLoader.read();
 
-				//如果读出的数据为 null 则直接返回
-				if (byteBuffer == null) {
-					return;
-				}
+			//设置空闲状态
+			session.getState().setReceive(false);
+
+			//如果读出的数据为 null 则直接返回
+			if (byteBuffer == null) {
+				return;
+			}
 
-				Object result = null;
+			Object decodeResult = null;
+			Object result = null;
+			//消息包从缓冲区中取出了数据, 缓冲区中剩余的消息可以继续处理
+			boolean isConsumed = byteBuffer.limit() > 0;
+			long startTime = 0;
 
+			if (metrics != null) {
+				metrics.incrementMessage();
+				startTime = System.nanoTime();
+			}
+
+			try {
 				// -----------------Filter 解密处理-----------------
-				result = filterDecoder(session,byteBuffer);
+				decodeResult = filterDecoder(session, byteBuffer);
 				// -------------------------------------------------
 
+				if (metrics != null) {
+					long decodeTime = System.nanoTime();
+					metrics.recordFilter(decodeTime - startTime);
+					startTime = decodeTime;
+				}
+
 				// -----------------Handler 业务处理-----------------
-				if (result != null) {
+				if (decodeResult != null) {
 					IoHandler handler = socketContext.handler();
-					result = handler.onReceive(session, result);
+					result = handler.onReceive(session, decodeResult);
+
+					if (metrics != null) {
+						metrics.recordHandler(System.nanoTime() - startTime);
+					}
 				}
 				// --------------------------------------------------
-
-				// 返回的结果不为空的时候才发送
-				if (result != null) {
-
-                    //触发发送事件
-                    sendMessage(session, result);
-				} else {
-					break;
+			} finally {
+				//过滤器直接传递的消息包由业务代码持有, 在 GC 时归还,
+				//其他情况下消息包已经处理完成, 直接归还到内存池
+				if (decodeResult != byteBuffer && result != byteBuffer) {
+					TByteBuffer.release(byteBuffer);
 				}
+			}
 
+			// 返回的结果不为空的时候才发送
+			if (result != null) {
+
+				//触发发送事件
+				sendMessage(session, result);
+			} else if(!isConsumed && session.getByteBufferChannel().size() >= channelSize) {
+				//空消息包由解码器直接从缓冲区读取 (如 HTTP 响应), 缓冲区没有变化时等待更多的数据
+				break;
 			}
 
-			TByteBuffer.release(byteBuffer);
 		}
 	}
 
@@ -174,12 +230,10 @@ public class EventProcess {
 	 */
 	public static Object filterDecoder(IoSession session, ByteBuffer readedBuffer) throws IoFilterException{
 		Object result = readedBuffer;
-		Chain<IoFilter> filterChain = session.socketContext().filterChain().clone();
-		while (filterChain.hasNext()) {
-			IoFilter fitler = filterChain.next();
-			result = fitler.decode(session, result);
+		IoFilter[] filters = session.socketContext().filterChain().snapshot(FILTER_ARRAY_TYPE);
+		for (int i = 0; i < filters.length; i++) {
+			result = filters[i].decode(session, result);
 		}
-		filterChain.clear();
 		return result;
 	}
 
@@ -187,71 +241,84 @@ public class EventProcess {
 	 * 使用过滤器编码结果
 	 * @param session      Session 对象
 	 * @param result	   需编码的对象
-	 * @return  编码后的对象
+	 * @return  编码后的对象, ByteBuffer 或者需要合并写出的 ByteBuffer[]
 	 * @throws IoFilterException 过滤器异常
 	 */
-	public static ByteBuffer filterEncoder(IoSession session,Object result) throws IoFilterException{
-		Chain<IoFilter> filterChain = session.socketContext().filterChain().clone();
-		filterChain.rewind();
-		while (filterChain.hasPrevious()) {
-			IoFilter fitler = filterChain.previous();
-			result = fitler.encode(session, result);
+	public static Object filterEncoder(IoSession session,Object result) throws IoFilterException{
+		IoFilter[] filters = session.socketContext().filterChain().snapshot(FILTER_ARRAY_TYPE);
+		for (int i = filters.length - 1; i >= 0; i--) {
+			result = filters[i].encode(session, result);
 		}
-		filterChain.clear();
 
-		if(result instanceof ByteBuffer || result == null) {
-			return (ByteBuffer)result;
+		if(result instanceof ByteBuffer || result instanceof ByteBuffer[] || result == null) {
+			return result;
 		}else{
-			throw new IoFilterException("Send object must be ByteBuffer, " +
-					"please check you filter be sure the latest filter return Object's type is ByteBuffer.");
+			throw new IoFilterException("Send object must be ByteBuffer or ByteBuffer[], " +
+					"please check you filter be sure the latest filter return Object's type is ByteBuffer or ByteBuffer[].");
 		}
 	}
 
 	/**
-	 * 在一个独立的线程中并行的发送消息
+	 * 在当前线程中发送消息
+	 * 		由会话的事件执行器调用时, 同一个会话的消息按顺序发送
+	 * 		编码器返回 ByteBuffer[] 时多个缓冲区合并为一次写操作
 	 *
 	 * @param session Session 对象
 	 * @param obj 待发送的对象
+	 * @return 发送的字节数, -1: 没有发送
 	 */
-	public static void sendMessage(IoSession session, Object obj) {
-
-		final IoSession sendSession = session;
-		final Object sendObj = obj;
-		Global.getThreadPool().submit(new Callable<Object>() {
-			@Override
-			public Object call() {
-				int sendCount = -1;
-
-				try {
-					// ------------------Filter 加密处理-----------------
-					ByteBuffer sendBuffer = EventProcess.filterEncoder(sendSession, sendObj);
-					// ---------------------------------------------------
-
-					if (sendBuffer != null) {
-
-						// 发送消息
-						if (sendBuffer != null && sendSession.isOpen()) {
-							if (sendBuffer.limit() > 0) {
-								sendCount = sendSession.send(sendBuffer);
-								sendBuffer.rewind();
-							}
+	public static int sendMessage(IoSession session, Object obj) {
+		int sendCount = -1;
+
+		try {
+			NetworkMetrics metrics = session.getMetrics();
+			long startTime = metrics == null ? 0 : System.nanoTime();
+
+			// ------------------Filter 加密处理-----------------
+			Object sendObj = EventProcess.filterEncoder(session, obj);
+			// ---------------------------------------------------
 
-							TByteBuffer.release((ByteBuffer) sendBuffer);
+			if (metrics != null) {
+				metrics.recordFilter(System.nanoTime() - startTime);
+			}
+
+			if (sendObj != null) {
+
+				// 发送消息
+				if (session.isOpen()) {
+					if (sendObj instanceof ByteBuffer[]) {
+						ByteBuffer[] sendBuffers = (ByteBuffer[]) sendObj;
+						sendCount = session.send(sendBuffers);
+						if (sendObj != obj) {
+							for (ByteBuffer sendBuffer : sendBuffers) {
+								TByteBuffer.release(sendBuffer);
+							}
+						}
+					} else {
+						ByteBuffer sendBuffer = (ByteBuffer) sendObj;
+						if (sendBuffer.limit() > 0) {
+							sendCount = session.send(sendBuffer);
+							sendBuffer.rewind();
 						}
 
-						//触发发送事件
-						EventTrigger.fireSent(sendSession, sendObj);
+						//编码器未转换的缓冲区在 onSent 事件之后释放
+						if (sendObj != obj) {
+							TByteBuffer.release(sendBuffer);
+						}
 					}
-				}catch(IoFilterException e){
-					EventTrigger.fireException(sendSession, e);
 				}
 
-				//设置空闲状态
-				sendSession.getState().setSend(false);
-
-				return sendCount;
+				//触发发送事件
+				EventTrigger.fireSent(session, obj);
 			}
-		});
+		}catch(IoFilterException e){
+			EventTrigger.fireException(session, e);
+		}
+
+		//设置空闲状态
+		session.getState().setSend(false);
+
+		return sendCount;
 	}
 
 	/**
@@ -274,8 +341,8 @@ public class EventProcess {
                 TByteBuffer.release((ByteBuffer) sendObj);
             }
 
-            //如果是 Udp 通信则在发送完成后触发关闭事件
-            if(session.socketContext() instanceof UdpSocket) {
+            //如果是 Udp 通信则在发送完成后触发关闭事件, 会话表中的会话在空闲超时后关闭
+            if(session.socketContext() instanceof UdpSocket && !((UdpSocket) session.socketContext()).isMultiplexed()) {
 				EventTrigger.fireDisconnectThread(session);
 			}
         }
@@ -325,10 +392,26 @@ public class EventProcess {
 			return;
 		}
 		EventName eventName = event.getName();
+
+		//记录事件从触发到开始处理的排队耗时
+		if (event.getCreateTime() != 0) {
+			NetworkMetrics metrics = event.getSession().getMetrics();
+			if (metrics != null) {
+				metrics.recordQueue(System.nanoTime() - event.getCreateTime());
+			}
+		}
+
+		//记录事件的处理耗时, 采样处理过慢的事件
+		SocketContext socketContext = event.getSession().socketContext();
+		SlowTaskWatchdog watchdog = socketContext == null ? null : socketContext.getWatchdog();
+		SlowTaskWatchdog.Watch watch = null;
+		if (watchdog != null && socketContext.handler() != null) {
+			watch = watchdog.enter(socketContext.handler().getClass().getName() + "#" + eventName);
+		}
+
 		// 根据事件名称处理事件
 		try {
 			if (eventName == EventName.ON_ACCEPTED) {
-				SocketContext socketContext = (SocketContext)event.getSession().socketContext();
 				socketContext.acceptStart();
 			} else if (eventName == EventName.ON_CONNECT) {
 				EventProcess.onConnect(event);
@@ -346,6 +429,10 @@ public class EventProcess {
 			}
 		} catch (Exception e) {
 			EventProcess.onException(event, e);
+		} finally {
+			if (watch != null) {
+				watchdog.exit(watch);
+			}
 		}
 	}
 }
@@ -0,0 +1,167 @@
+package org.voovan.network;
+
+import org.voovan.Global;
+import org.voovan.network.Event.EventName;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
+import org.voovan.tools.threadpool.ThreadPool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 会话事件执行器
+ * 		每个会话拥有一个事件邮箱, 同一时刻只有一个工作线程在处理这个邮箱,
+ * 		保证同一个会话的事件按顺序串行执行, 不同会话的事件仍然在线程池中并行执行
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class EventRunner implements Runnable {
+	//每次调度最多处理的事件数量, 超过后让出工作线程给其他会话
+	private static final int MAX_BATCH_SIZE = 64;
+
+	//线程池拒绝执行时重新提交的初始间隔和最大间隔, 单位: 毫秒
+	private static final long MIN_RETRY_DELAY = 1;
+	private static final long MAX_RETRY_DELAY = 1000;
+
+	private IoSession session;
+	private Queue<Event> eventQueue;
+	private AtomicBoolean running;
+	private AtomicBoolean receivePending;
+	private volatile long retryDelay;
+
+	/**
+	 * 构造函数
+	 * @param session 会话对象
+	 */
+	public EventRunner(IoSession session){
+		this.session = session;
+		this.eventQueue = new ConcurrentLinkedQueue<Event>();
+		this.running = new AtomicBoolean(false);
+		this.receivePending = new AtomicBoolean(false);
+	}
+
+	/**
+	 * 获取会话对象
+	 * @return 会话对象
+	 */
+	public IoSession getSession() {
+		return session;
+	}
+
+	/**
+	 * 获取等待执行的事件数量
+	 * @return 等待执行的事件数量
+	 */
+	public int size(){
+		return eventQueue.size();
+	}
+
+	/**
+	 * 增加一个事件
+	 * 		ON_RECEIVE 事件在邮箱中只保留一个, 这个事件执行时会读取缓冲区中所有的完整消息
+	 * @param event 事件对象
+	 * @return true: 事件被加入邮箱, false: 事件被合并到已存在的事件中
+	 */
+	public boolean addEvent(Event event){
+		if(event.getName() == EventName.ON_RECEIVE && !receivePending.compareAndSet(false, true)){
+			return false;
+		}
+
+		eventQueue.offer(event);
+		schedule();
+		return true;
+	}
+
+	/**
+	 * 调度邮箱到工作线程
+	 */
+	private void schedule(){
+		if(running.compareAndSet(false, true)){
+			dispatch();
+		}
+	}
+
+	/**
+	 * 将邮箱提交到线程池, 调用前必须已经设置了 running 标记
+	 * 		线程池拒绝执行时保留 running 标记, 通过时间轮按指数退避重新提交,
+	 * 		事件不会丢失, 也不会在调用者 (如 Reactor 线程) 中处理或向调用者抛出异常
+	 */
+	private void dispatch(){
+		try {
+			getExecutor().execute(this);
+		} catch (RejectedExecutionException e){
+			if(retryDelay == 0) {
+				retryDelay = MIN_RETRY_DELAY;
+				Logger.warn("EventRunner is rejected by the thread pool, retry after " + retryDelay + "ms");
+			} else {
+				retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+			}
+
+			Global.getHashWheelTimer().addTask(new HashWheelTask() {
+				@Override
+				public void run() {
+					this.cancel();
+					dispatch();
+				}
+			}, retryDelay, TimeUnit.MILLISECONDS, false);
+		}
+	}
+
+	/**
+	 * 获取执行事件的线程池
+	 * 		启用虚拟线程且当前 JDK 支持时使用虚拟线程, 否则使用公用线程池
+	 * @return 线程池
+	 */
+	private ExecutorService getExecutor(){
+		if(session.socketContext().isVirtualThread()){
+			ExecutorService virtualThreadExecutor = ThreadPool.getVirtualThreadExecutor();
+			if(virtualThreadExecutor != null){
+				return virtualThreadExecutor;
+			}
+		}
+
+		return Global.getWorkerPool();
+	}
+
+	/**
+	 * 处理邮箱中的事件
+	 * @param maxCount 最多处理的事件数量
+	 */
+	private void processEvents(int maxCount) {
+		Event event = null;
+		int count = 0;
+		while (count < maxCount && (event = eventQueue.poll()) != null) {
+			if (event.getName() == EventName.ON_RECEIVE) {
+				//执行前清理标记, 执行期间到达的数据会触发新的 ON_RECEIVE 事件
+				receivePending.set(false);
+			}
+
+			EventProcess.process(event);
+			count++;
+		}
+	}
+
+	@Override
+	public void run() {
+		retryDelay = 0;
+		try {
+			processEvents(MAX_BATCH_SIZE);
+		} finally {
+			running.set(false);
+
+			//执行期间有新的事件加入, 则重新调度
+			if(!eventQueue.isEmpty()){
+				schedule();
+			}
+		}
+	}
+}
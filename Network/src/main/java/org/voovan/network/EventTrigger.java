@@ -1,11 +1,8 @@
 package org.voovan.network;
 
-import org.voovan.Global;
 import org.voovan.network.Event.EventName;
 import org.voovan.tools.log.Logger;
 
-import java.util.concurrent.ThreadPoolExecutor;
-
 /**
  * 事件触发器
  * 
@@ -19,8 +16,6 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public class EventTrigger {
 	
-	private static ThreadPoolExecutor eventThreadPool = Global.getThreadPool();
-
 	public static void fireAcceptThread(IoSession session){
 		fireEventThread(session,EventName.ON_ACCEPTED,null);
 	}
@@ -30,14 +25,14 @@ public class EventTrigger {
 		session.getState().setConnect(true);
 		session.getState().setInit(false);
 
+		sessionOpened(session);
 		fireEventThread(session, EventName.ON_CONNECT,null);
 	}
 	
 	public static void fireReceiveThread(IoSession session){
 		// 当消息长度大于缓冲区时,receive 会在缓冲区满了后就出发,这时消息还没有发送完,会被触发多次
-		// 所以当有 receive 事件正在执行则抛弃后面的所有 receive 事件
-		// !hasEventDisposeing(EventName.ON_CONNECT) &&
-		if (session.isOpen() && isHandShakeDone(session) && !session.getState().isReceive()) {
+		// 会话的事件执行器中只保留一个等待执行的 receive 事件, 多次触发会被合并
+		if (session.isOpen() && isHandShakeDone(session)) {
 			//设置接受状态
 			session.getState().setReceive(true);
 
@@ -77,13 +72,14 @@ public class EventTrigger {
 		////设置连接状态
 		session.getState().setConnect(true);
 
+		sessionOpened(session);
 		fireEvent(session, EventName.ON_CONNECT,null);
 	}
 	
 	public static void fireReceive(IoSession session){
 		//当消息长度大于缓冲区时,receive 会在缓冲区满了后就出发,这时消息还没有发送完,会被触发多次
-		//所以当有 receive 事件正在执行则抛弃后面的所有 receive 事件
-		if (session.isOpen() && isHandShakeDone(session) && !session.getState().isReceive()) {
+		//会话的事件执行器中只保留一个等待执行的 receive 事件, 多次触发会被合并
+		if (session.isOpen() && isHandShakeDone(session)) {
 			//设置接受状态
 			session.getState().setReceive(true);
 
@@ -116,6 +112,18 @@ public class EventTrigger {
 		fireEvent(session, EventName.ON_EXCEPTION,exception);
 	}
 
+	/**
+	 * 记录会话建立
+	 * 		在触发连接事件时计数, 接收事件可能先于连接事件处理
+	 * @param session 当前连接会话
+	 */
+	private static void sessionOpened(IoSession session){
+		NetworkMetrics metrics = session.getMetrics();
+		if(metrics != null) {
+			metrics.sessionOpened();
+		}
+	}
+
 	public static boolean isHandShakeDone(IoSession session){
 		if(session==null || session.getSSLParser()==null){
 			return true;
@@ -126,21 +134,24 @@ public class EventTrigger {
 
 	/**
 	 * 事件触发
-	 * 		根据事件启动 EventThread 来处理事件
+	 * 		将事件加入会话的事件执行器, 同一个会话的事件按触发顺序串行处理
+	 * 		启用网络 IO 统计时记录触发时间, 处理时计算排队耗时
 	 * @param session  当前连接会话
 	 * @param name     事件名称
 	 * @param other 附属对象
 	 */
 	public static void fireEventThread(IoSession session,EventName name,Object other){
-		if(!eventThreadPool.isShutdown()){
-			Event event = Event.getInstance(session,name,other);
-			eventThreadPool.execute(new EventThread(event));
+		Event event = Event.getInstance(session,name,other);
+		SocketContext socketContext = session.socketContext();
+		if(socketContext != null && socketContext.getMetrics() != null) {
+			event.setCreateTime(System.nanoTime());
 		}
+		session.getEventRunner().addEvent(event);
 	}
 
 	/**
 	 * 事件触发
-	 * 		根据事件启动 EventThread 来处理事件
+	 * 		在当前线程中同步处理事件
 	 * @param session  当前连接会话
 	 * @param name     事件名称
 	 * @param other 附属对象
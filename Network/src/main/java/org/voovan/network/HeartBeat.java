@@ -1,16 +1,18 @@
 package org.voovan.network;
 
+import org.voovan.Global;
 import org.voovan.network.aio.AioSession;
 import org.voovan.network.aio.AioSocket;
 import org.voovan.tools.ByteBufferChannel;
-import org.voovan.tools.TEnv;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
- * 类文字命名
+ * 心跳
+ *      心跳报文是固定长度的帧, 只在消息边界 (通道头部) 上识别, 收到 PING 立即回复 PONG.
+ *      PING 的发送和 PONG 的超时检查由时间轮驱动, 两次心跳之间不占用任何线程.
  *
  * @author: helyho
  * Voovan Framework.
@@ -21,9 +23,10 @@ public class HeartBeat {
     private byte[] ping;
     private byte[] pong;
     private ConnectModel connectModel;
-    private boolean isFirstBeat = true;
-    private LinkedBlockingDeque<Integer> queue;
-    private int fieldCount = 0;
+    private volatile int failedCount = 0;
+    private volatile boolean waitPong = false;
+    private volatile long lastBeatTime;
+    private HashWheelTask beatTask;
 
 
     /**
@@ -37,16 +40,8 @@ public class HeartBeat {
     private HeartBeat(IoSession session, ConnectModel connectModel, String ping, String pong){
         this.ping = ping.getBytes();
         this.pong = pong.getBytes();
-        queue = new LinkedBlockingDeque<Integer>();
         this.connectModel = connectModel;
-    }
-
-    /**
-     * 获取心跳包队列
-     * @return 心跳包队列
-     */
-    private LinkedBlockingDeque<Integer> getQueue() {
-        return queue;
+        this.lastBeatTime = System.currentTimeMillis();
     }
 
     /**
@@ -71,11 +66,21 @@ public class HeartBeat {
      * @return 失败次数
      */
     public int getFailedCount() {
-        return fieldCount;
+        return failedCount;
+    }
+
+    /**
+     * 判断当前会话是否是发送 PING 的一方
+     * @param session 会话对象
+     * @return true: 发送 PING, false: 回复 PONG
+     */
+    private boolean isPingSide(IoSession session){
+        return session.socketContext().getConnectModel() == connectModel;
     }
 
     /**
      * 截断心跳消息
+     *      只检查通道头部是否是心跳帧, 由数据到达和消息分割完成时调用
      * @param session 会话对象
      * @param byteBufferChannel 保存消息 ByteBufferChannel 对象
      */
@@ -85,85 +90,105 @@ public class HeartBeat {
         }
 
         HeartBeat heartBeat = session.getHeartBeat();
-        if (heartBeat != null && byteBufferChannel.size() > 0) {
-            //心跳处理
-            if (heartBeat != null) {
-                int pingPosition = byteBufferChannel.indexOf(heartBeat.getPing());
-                if (pingPosition >= 0) {
-                    byteBufferChannel.shrink(pingPosition, heartBeat.getPing().length);
-                    heartBeat.getQueue().addLast(1);
-                    return;
-                }
-
-                int pongPosition = byteBufferChannel.indexOf(heartBeat.getPong());
-                if (pongPosition >= 0) {
-                    byteBufferChannel.shrink(pongPosition, heartBeat.getPing().length);
-                    heartBeat.getQueue().addLast(2);
-                    return;
-                }
-
-                if (byteBufferChannel.content().contains(new String(heartBeat.getPing())) ||
-                        byteBufferChannel.content().contains(new String(heartBeat.getPong()))) {
-                    System.out.println("Omit HeartBeat Message" + byteBufferChannel.content());
-                }
+        if (heartBeat == null) {
+            return;
+        }
+
+        while(byteBufferChannel.size() > 0) {
+            if (byteBufferChannel.shrinkHead(heartBeat.ping)) {
+                heartBeat.onBeat();
+                session.send(ByteBuffer.wrap(heartBeat.pong));
+            } else if (byteBufferChannel.shrinkHead(heartBeat.pong)) {
+                heartBeat.onBeat();
+            } else {
+                break;
             }
         }
     }
 
     /**
-     * 一次心跳动作
+     * 收到心跳报文
+     */
+    private void onBeat(){
+        lastBeatTime = System.currentTimeMillis();
+        waitPong = false;
+        failedCount = 0;
+    }
+
+    /**
+     * 时间轮触发的心跳动作
+     *      发送 PING 的一方: 上一个 PING 未收到 PONG 则记一次失败, 然后发送新的 PING
+     *      回复 PONG 的一方: 超过两个心跳周期没有收到 PING 则记一次失败
      * @param session 会话对象
-     * @return true:心跳成功,false: 心跳失败
      */
-    public static boolean beat(IoSession session){
+    private void tick(IoSession session){
+        if(!session.isConnected() && !session.isOpen()){
+            cancel();
+            return;
+        }
 
-        HeartBeat heartBeat = session.getHeartBeat();
+        long interval = session.getIdleInterval() * 1000L;
+        long now = System.currentTimeMillis();
 
-        //收个心跳返回成功
-        if(heartBeat.isFirstBeat){
-            heartBeat.isFirstBeat=false;
-            if(session.socketContext().getConnectModel() == heartBeat.connectModel){
-                //等待这个时间的目的是为了等待客户端那边的心跳检测启动
-                TEnv.sleep(session.getIdleInterval());
-                session.send(ByteBuffer.wrap(heartBeat.ping));
+        if(isPingSide(session)) {
+            if(waitPong){
+                failedCount++;
             }
-            return true;
+
+            waitPong = true;
+            session.send(ByteBuffer.wrap(ping));
+        } else if(now - lastBeatTime >= interval * 2){
+            failedCount++;
+            lastBeatTime = now - interval;
         }
+    }
 
-        if(session.getState().isReceive() || session.getState().isSend()){
-            return true;
+    /**
+     * 启动心跳定时任务
+     * @param session 会话对象
+     */
+    private synchronized void start(final IoSession session){
+        int interval = session.getIdleInterval();
+        if(beatTask != null || interval < 1){
+            return;
         }
 
-        //弥补双方发送的时间差,等待心跳到来,如果超过空闲事件周期则认为是失败
-        int waitCount = 0;
-        while(heartBeat.getQueue().size() == 0){
-            session.wait(1);
-            waitCount++;
-            if(waitCount >= session.getIdleInterval()*1000){
-                break;
+        beatTask = new HashWheelTask() {
+            @Override
+            public void run() {
+                tick(session);
             }
-        }
+        };
 
-        if(heartBeat.getQueue().size() > 0) {
-            int beatType = heartBeat.getQueue().pollFirst();
+        Global.getHashWheelTimer().addTask(beatTask, interval, true);
+    }
 
-            if (beatType == 1) {
-                session.send(ByteBuffer.wrap(heartBeat.pong));
-                heartBeat.fieldCount = 0;
-                return true;
-            } else if (beatType == 2) {
-                session.send(ByteBuffer.wrap(heartBeat.ping));
-                heartBeat.fieldCount = 0;
-                return true;
-            } else {
-                heartBeat.fieldCount++;
-                return false;
-            }
+    /**
+     * 停止心跳定时任务
+     */
+    public synchronized void cancel(){
+        if(beatTask != null){
+            beatTask.cancel();
+            beatTask = null;
+        }
+    }
+
+    /**
+     * 一次心跳动作
+     *      心跳的发送和超时检查由时间轮驱动, 这里只返回当前的心跳状态, 不会阻塞
+     * @param session 会话对象
+     * @return true:心跳成功,false: 心跳失败
+     */
+    public static boolean beat(IoSession session){
+        HeartBeat heartBeat = session.getHeartBeat();
+        if(heartBeat == null){
+            return false;
         }
 
-        heartBeat.fieldCount++;
-        return false;
+        heartBeat.start(session);
+        return heartBeat.failedCount == 0;
     }
+
     /**
      * 将心跳绑定到 Session
      * @param session   会话
@@ -177,6 +202,7 @@ public class HeartBeat {
         if(session.getHeartBeat()==null) {
             heartBeat = new HeartBeat(session, connectModel, ping, pong);
             session.setHeartBeat(heartBeat);
+            heartBeat.start(session);
         } else{
             heartBeat = session.getHeartBeat();
         }
@@ -192,20 +218,12 @@ public class HeartBeat {
      * @return 心跳消息对象
      */
     public static HeartBeat attachSession(IoSession session, ConnectModel connectModel){
-        HeartBeat heartBeat = null;
-        if(session.getHeartBeat()==null) {
-            heartBeat = new HeartBeat(session, connectModel, "PING", "PONG");
-            session.setHeartBeat(heartBeat);
-        }else{
-            heartBeat = session.getHeartBeat();
-        }
-
-        return heartBeat;
+        return attachSession(session, connectModel, "PING", "PONG");
     }
 
     public static void main(String[] args) throws IOException {
         AioSession session = new AioSession(new AioSocket("127.0.0.1",1,1));
-        session.getByteBufferChannel().writeHead(ByteBuffer.wrap("==== some data =====\r\nPINGq".getBytes()));
+        session.getByteBufferChannel().writeHead(ByteBuffer.wrap("PONGqPONGq==== some data =====\r\nPINGq".getBytes()));
         HeartBeat.attachSession(session, ConnectModel.CLIENT, "PINGq", "PONGq");
         HeartBeat.interceptHeartBeat(session, session.getByteBufferChannel());
     }
@@ -15,6 +15,8 @@ public interface IoFilter {
 	/**
 	 * 过滤器解密函数,接收事件(onRecive)前调用
 	 * 			onRecive事件前调用
+	 * 			第一个过滤器收到的 ByteBuffer 来自内存池, 处理完成后会被归还,
+	 * 			过滤器需要保留其中的数据时应当复制, 直接返回这个 ByteBuffer 则不会被归还
 	 * @param session  session 对象
 	 * @param object   解码对象,上一个过滤器的返回值
 	 * @return 解码后对象
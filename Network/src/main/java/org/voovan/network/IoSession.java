@@ -37,6 +37,9 @@ public abstract class IoSession<T extends SocketContext> {
 	private HashWheelTask checkIdleTask;
 	private HeartBeat heartBeat;
 	private State state;
+	private EventRunner eventRunner;
+	private SendQueue sendQueue;
+	private volatile NetworkMetrics metrics;
 
 	/**
 	 * 会话状态管理
@@ -97,6 +100,8 @@ public abstract class IoSession<T extends SocketContext> {
 		attributes = new ConcurrentHashMap<Object, Object>();
 		this.socketContext = socketContext;
 		this.state = new State();
+		this.eventRunner = new EventRunner(this);
+		this.sendQueue = new SendQueue(this);
 		byteBufferChannel = new ByteBufferChannel(socketContext.getBufferSize());
 		messageLoader = new MessageLoader(this);
 		checkIdle();
@@ -118,6 +123,96 @@ public abstract class IoSession<T extends SocketContext> {
 		return state;
 	}
 
+	/**
+	 * 获取会话的事件执行器
+	 * @return 事件执行器
+	 */
+	public EventRunner getEventRunner() {
+		return eventRunner;
+	}
+
+	/**
+	 * 获取会话的发送队列
+	 * @return 发送队列
+	 */
+	public SendQueue getSendQueue() {
+		return sendQueue;
+	}
+
+	/**
+	 * 获取会话的网络 IO 统计
+	 * 		会话的统计对象在第一次使用时创建, 记录的数据同时累加到 SocketContext 的统计对象
+	 * @return 统计对象, SocketContext 不存在或未启用统计时返回 null
+	 */
+	public NetworkMetrics getMetrics() {
+		SocketContext context = socketContext;
+		NetworkMetrics contextMetrics = context == null ? null : context.getMetrics();
+		if(contextMetrics == null) {
+			return null;
+		}
+
+		NetworkMetrics sessionMetrics = metrics;
+		if(sessionMetrics == null || sessionMetrics.getParent() != contextMetrics) {
+			synchronized (this) {
+				sessionMetrics = metrics;
+				if(sessionMetrics == null || sessionMetrics.getParent() != contextMetrics) {
+					sessionMetrics = new NetworkMetrics(contextMetrics);
+					metrics = sessionMetrics;
+				}
+			}
+		}
+		return sessionMetrics;
+	}
+
+	/**
+	 * 会话是否可写
+	 * 		等待发送的数据超过高水位时返回 false, 业务代码应当暂停产生数据, 直到回落到低水位以下
+	 * @return true: 可写, false: 对端接收缓慢, 发送队列已超过高水位
+	 */
+	public boolean isWritable() {
+		return sendQueue.isWritable();
+	}
+
+	/**
+	 * 获取等待发送的字节数
+	 * @return 等待发送的字节数
+	 */
+	public long getSendQueueSize() {
+		return sendQueue.size();
+	}
+
+	/**
+	 * 获取发送队列的高水位
+	 * @return 发送队列的高水位, 单位:字节
+	 */
+	public int getSendHighWaterMark() {
+		return socketContext.getSendHighWaterMark();
+	}
+
+	/**
+	 * 设置发送队列的高水位
+	 * @param sendHighWaterMark 发送队列的高水位, 单位:字节
+	 */
+	public void setSendHighWaterMark(int sendHighWaterMark) {
+		socketContext.setSendHighWaterMark(sendHighWaterMark);
+	}
+
+	/**
+	 * 获取发送队列的低水位
+	 * @return 发送队列的低水位, 单位:字节
+	 */
+	public int getSendLowWaterMark() {
+		return socketContext.getSendLowWaterMark();
+	}
+
+	/**
+	 * 设置发送队列的低水位
+	 * @param sendLowWaterMark 发送队列的低水位, 单位:字节
+	 */
+	public void setSendLowWaterMark(int sendLowWaterMark) {
+		socketContext.setSendLowWaterMark(sendLowWaterMark);
+	}
+
 	/**
 	 * 启动空闲事件触发
 	 */
@@ -187,6 +282,7 @@ public abstract class IoSession<T extends SocketContext> {
 	public void cancelIdle(){
 		if(checkIdleTask!=null) {
 			if(heartBeat!=null){
+				heartBeat.cancel();
 				heartBeat = null;
 			}
 			checkIdleTask.cancel();
@@ -325,12 +421,36 @@ public abstract class IoSession<T extends SocketContext> {
 	/**
 	 * 发送消息
 	 * 		注意直接调用不会出发 onSent 事件
+	 * 		无法立即写出的数据进入发送队列, 调用返回后缓冲区可以被复用
 	 * @param buffer  发送缓冲区
 	 * @return 读取的字节数
 	 * @throws IOException IO 异常
 	 */
 	protected abstract int send0(ByteBuffer buffer) throws IOException;
 
+	/**
+	 * 发送多个缓冲区中的消息
+	 * 		支持聚集写(gathering write)的会话将多个缓冲区合并为一次写操作
+	 * 		注意直接调用不会出发 onSent 事件
+	 * @param buffers  发送缓冲区数组
+	 * @return 发送的字节数
+	 * @throws IOException IO 异常
+	 */
+	protected int send0(ByteBuffer[] buffers) throws IOException {
+		int totalSendByte = 0;
+		for(ByteBuffer buffer : buffers) {
+			totalSendByte += send0(buffer);
+		}
+		return totalSendByte;
+	}
+
+	/**
+	 * 将发送队列中合并的数据写出
+	 * @throws IOException IO 异常
+	 */
+	protected void flush() throws IOException {
+	}
+
 	/**
 	 * 同步读取消息
 	 * 			消息会经过 filter 的 decoder 函数处理后再返回
@@ -389,8 +509,11 @@ public abstract class IoSession<T extends SocketContext> {
 	 * @throws SendMessageException  消息发送异常
 	 */
 	public void syncSend(Object obj) throws SendMessageException{
-		//等待 ssl 握手完成
+		//等待 ssl 握手完成, 握手失败时连接被关闭
 		while(sslParser!=null && !sslParser.handShakeDone){
+			if(!isConnected()){
+				throw new SendMessageException("Socket is disconnect before SSL hand shake done");
+			}
 			TEnv.sleep(1);
 		}
 
@@ -435,6 +558,32 @@ public abstract class IoSession<T extends SocketContext> {
 		return -1;
 	}
 
+	/**
+	 * 直接向缓冲区发送多个缓冲区中的消息
+	 * 		多个缓冲区合并为一次写操作, 注意直接调用不会触发 onSent 事件, 也不会经过任何过滤器
+	 * 	@param buffers byte缓冲区数组
+	 * 	@return 发送的数据大小
+	 */
+	public int send(ByteBuffer[] buffers){
+		try {
+			if(sslParser!=null && sslParser.isHandShakeDone()) {
+				int totalSendByte = 0;
+				for(ByteBuffer buffer : buffers) {
+					totalSendByte += buffer.remaining();
+				}
+				//多个缓冲区打包到一次写操作中, warpData 内置调用 session.send0 将数据送至发送缓冲区
+				sslParser.warpData(buffers);
+				return totalSendByte;
+			}else{
+				return send0(buffers);
+			}
+		} catch (IOException e) {
+			Logger.error("Send data failed" ,e);
+		}
+
+		return -1;
+	}
+
 	/**
 	 * 直接从缓冲区读取数据
 	 * @param byteBuffer 字节缓冲对象ByteBuffer,读取 前需要使用 enabledMessageSpliter(false) 停止分割器的工作,除非有特殊的需求.
@@ -483,13 +632,14 @@ public abstract class IoSession<T extends SocketContext> {
 	/**
 	 * 等待所有处理都被处理完成
 	 * 		ByteBufferChannel.size() = 0时,或者超时后退出
+	 * 		不使用分割器时缓冲区由调用者直接读取, 等待调用者读完缓冲区中的数据
 	 * @param waitTime 超时事件
 	 * @return true: 数据处理完退出, false:超时退出
 	 */
 	public boolean wait(int waitTime){
 		int count= 0;
 		messageLoader.close();
-		while(state.isReceive()){
+		while(state.isReceive() || (!messageLoader.isUseSpliter() && getByteBufferChannel().size() > 0)){
 			TEnv.sleep(1);
 			count ++;
 
@@ -1,14 +1,19 @@
 package org.voovan.network;
 
+import org.voovan.Global;
 import org.voovan.network.messagesplitter.TransferSplitter;
+import org.voovan.network.udp.UdpSession;
 import org.voovan.network.udp.UdpSocket;
 import org.voovan.tools.ByteBufferChannel;
-import org.voovan.tools.TEnv;
+import org.voovan.tools.TByteBuffer;
 import org.voovan.tools.exception.MemoryReleasedException;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -25,8 +30,9 @@ public class MessageLoader {
 	private StopType stopType;
 	private ByteBufferChannel byteBufferChannel;
 	private boolean useSpliter;
-	private int readZeroCount = 0;
 	private int splitLength;
+	private SplitState<?> splitState;
+	private AtomicBoolean resplitScheduled;
 	/**
 	 * 构造函数
 	 * @param session Session 对象
@@ -34,6 +40,7 @@ public class MessageLoader {
 	public MessageLoader(IoSession session) {
 		this.session = session;
 		useSpliter = true;
+		resplitScheduled = new AtomicBoolean(false);
 		//准备缓冲流
 		byteBufferChannel = session.getByteBufferChannel();
 	}
@@ -53,6 +60,11 @@ public class MessageLoader {
 	 */
 	public void setUseSpliter(boolean useSpliter) {
 		this.useSpliter = useSpliter;
+
+		//停止分割时缓冲区可能被直接读取, 分割状态失效
+		if(!useSpliter){
+			splitState = null;
+		}
 	}
 
 	public enum StopType {
@@ -142,11 +154,11 @@ public class MessageLoader {
 	}
 
 	/**
-	 * 重置计数
-	 * 		读取超时时间回0
+	 * 重置状态
 	 */
 	public void reset(){
-		readZeroCount = 0;
+		splitLength = -1;
+		splitState = null;
 	}
 
 	/**
@@ -158,29 +170,64 @@ public class MessageLoader {
 
 
 	/**
-	 * 读取 socket 中的数据
-	 * 	逐字节读取数据,并用消息截断器判断消息包是否完整,消息粘包有两种截断方式:
-	 * 	1.消息截断器生效
-	 * 	2.消息读取时间超时,例如设置5m,则连续5秒内没有读取到有用的消息则返回报文.
-	 * @return 读取的缓冲区数据
-	 * @throws IOException IO 异常
+	 * 使用有状态的消息分割器分割消息
+	 * 		分割状态在第一次分割时创建, 随会话保存, 更换消息分割器后重新创建
+	 * @param messageSplitter 有状态的消息分割器
+	 * @param byteBuffer 缓冲数据
+	 * @return 分割出的消息长度, 小于 0: 消息不完整
 	 */
-	public ByteBuffer read() throws IOException {
+	private int statefulSplite(StatefulMessageSplitter<?> messageSplitter, ByteBuffer byteBuffer){
+		if(splitState == null || splitState.messageSplitter != messageSplitter){
+			splitState = SplitState.create(messageSplitter, session);
+		}
 
-		ByteBuffer result = ByteBuffer.allocate(0);
-		int oldByteChannelSize = 0;
+		return splitState.canSplite(session, byteBuffer);
+	}
 
-		ByteBufferChannel dataByteBufferChannel = null;
-		ByteBuffer dataByteBuffer = null;
+	/**
+	 * 在读超时时间后重新分割缓冲区中的数据
+	 * 		分割只在数据到达时进行, 对端不再发送数据时依赖时间判断边界的分割器 (如 TimeOutMesssageSplitter)
+	 * 		无法再被调用. 缓冲区中仍有数据时在读超时时间后再次触发 onReceive 事件, 每个会话最多等待一个
+	 */
+	private void scheduleResplit(){
+		int readTimeout = session.socketContext().getReadTimeout();
+		if(readTimeout <= 0 || !resplitScheduled.compareAndSet(false, true)){
+			return;
+		}
 
-        dataByteBufferChannel = session.getByteBufferChannel();
+		Global.getHashWheelTimer().addTask(new HashWheelTask() {
+			@Override
+			public void run() {
+				this.cancel();
+				resplitScheduled.set(false);
 
-		stopType = StopType.RUNNING;
+				if(useSpliter && byteBufferChannel.size() > 0) {
+					EventTrigger.fireReceiveThread(session);
+				}
+			}
+		}, readTimeout, TimeUnit.MILLISECONDS, false);
+	}
+
+	/**
+	 * 读取 socket 中的数据
+	 * 	由数据到达时触发的 onReceive 事件调用, 每次调用只对缓冲区中现有的数据进行一次消息分割:
+	 * 	1.消息截断器生效, 则返回截断出的完整消息
+	 * 	2.消息不完整, 则返回 null, 数据保留在缓冲区中, 等待下一次数据到达或者读超时时间后再次分割
+	 * @return 读取的缓冲区数据, null: 没有完整的消息或者连接已关闭
+	 * @throws IOException IO 异常
+	 */
+	public ByteBuffer read() throws IOException {
 
 		if(session==null){
 			return null;
 		}
 
+		if(stopType == StopType.PAUSE){
+			return null;
+		}
+
+		stopType = StopType.RUNNING;
+
 		//获取消息分割器
 		MessageSplitter messageSplitter = session.socketContext().messageSplitter();
 
@@ -190,89 +237,97 @@ public class MessageLoader {
 		}
 
 		boolean isConnect = true;
+		if(session.socketContext() instanceof UdpSocket) {
+			isConnect = session.isOpen();
+		}else {
+			isConnect = session.isConnected();
+		}
 
-		while ( isConnect && useSpliter &&
-				(stopType== StopType.RUNNING || stopType == StopType.PAUSE)) {
-
-			if(stopType == StopType.PAUSE){
-				continue;
-			}
-
-			if(session.socketContext() instanceof UdpSocket) {
-				isConnect = session.isOpen();
-			}else {
-				isConnect = session.isConnected();
-			}
-
-			//如果连接关闭,
-			if(!isConnect){
-				stopType = StopType.SOCKET_CLOSED;
-				return null;
-			}
+		//如果连接关闭,
+		if(!isConnect || !useSpliter){
+			stopType = StopType.SOCKET_CLOSED;
+			return null;
+		}
 
-			int readsize = byteBufferChannel.size() - oldByteChannelSize;
+		ByteBufferChannel dataByteBufferChannel = session.getByteBufferChannel();
 
-			try {
-				dataByteBuffer = dataByteBufferChannel.getByteBuffer();
-			}catch(MemoryReleasedException e){
-				stopType = StopType.SOCKET_CLOSED;
-			}
+		ByteBuffer dataByteBuffer = null;
+		try {
+			dataByteBuffer = dataByteBufferChannel.getByteBuffer();
+		}catch(MemoryReleasedException e){
+			stopType = StopType.SOCKET_CLOSED;
+			return null;
+		}
 
+		splitLength = -1;
+		try {
 			//判断连接是否关闭
 			if (isStreamEnd(dataByteBuffer, dataByteBufferChannel.size())) {
 				stopType = StopType.STREAM_END;
+				return null;
 			}
 
-
 			//使用消息划分器进行消息划分
-			if(readsize == 0 && dataByteBuffer.limit() > 0) {
-				if(messageSplitter instanceof TransferSplitter){
-					splitLength = dataByteBuffer.limit();
-				}else{
+			if (dataByteBuffer.limit() > 0) {
+				if (messageSplitter instanceof TransferSplitter) {
+					//UDP 会话按数据报的边界透传
+					if (session instanceof UdpSession) {
+						splitLength = ((UdpSession) session).pollDatagram(dataByteBuffer.limit());
+					} else {
+						splitLength = dataByteBuffer.limit();
+					}
+				} else if (messageSplitter instanceof StatefulMessageSplitter) {
+					splitLength = statefulSplite((StatefulMessageSplitter<?>) messageSplitter, dataByteBuffer);
+				} else {
 					splitLength = messageSplitter.canSplite(session, dataByteBuffer);
 				}
-
-				if (splitLength >= 0) {
-					stopType = StopType.MSG_SPLITTER ;
-				}
 			}
-
+		} finally {
+			//消息分割器只检查数据, 不消费数据
+			dataByteBuffer.position(0);
 			dataByteBufferChannel.compact();
-
-			//超时判断,防止读0时导致的高 CPU 负载
-			if( readsize==0 && stopType == StopType.RUNNING ){
-				if(readZeroCount >= session.socketContext().getReadTimeout()){
-					stopType = StopType.STREAM_END;
-				}else {
-					readZeroCount++;
-					TEnv.sleep(1);
-				}
-			}else{
-				readZeroCount = 0;
-			}
-
-			oldByteChannelSize = byteBufferChannel.size();
 		}
 
-		//如果是流结束,对方关闭,本地关闭这三种情况则返回 null
-		// 返回是 null 则在EventProcess中直接返回,不做任何处理
-		if(stopType == StopType.STREAM_END ||
-				stopType == StopType.SOCKET_CLOSED){
-			result = null;
-		 }
+		//消息不完整, 等待下一次数据到达
+		if (splitLength < 0) {
+			scheduleResplit();
+			return null;
+		}
 
 		//如果是消息截断器截断的消息则调用消息截断器处理的逻辑
-		else if(stopType== StopType.MSG_SPLITTER) {
-			if(splitLength!=0) {
-				result = ByteBuffer.allocateDirect(splitLength);
-				dataByteBufferChannel.readHead(result);
-			} else {
-				return ByteBuffer.allocate(0);
-			}
+		stopType = StopType.MSG_SPLITTER;
+		if(splitLength!=0) {
+			ByteBuffer result = TByteBuffer.allocateDirect(splitLength);
+			dataByteBufferChannel.readHead(result);
+
+			//消息边界上的心跳帧
+			HeartBeat.interceptHeartBeat(session, dataByteBufferChannel);
+			return result;
 		} else {
 			return ByteBuffer.allocate(0);
 		}
+	}
 
-		return result;
+	/**
+	 * 会话的分割状态
+	 * 		分割状态和创建它的消息分割器绑定在一起, 保证传给分割器的状态类型一致
+	 * @param <T> 分割状态的类型
+	 */
+	private static class SplitState<T> {
+		private StatefulMessageSplitter<T> messageSplitter;
+		private T state;
+
+		private SplitState(StatefulMessageSplitter<T> messageSplitter, T state) {
+			this.messageSplitter = messageSplitter;
+			this.state = state;
+		}
+
+		private static <T> SplitState<T> create(StatefulMessageSplitter<T> messageSplitter, IoSession session) {
+			return new SplitState<T>(messageSplitter, messageSplitter.createState(session));
+		}
+
+		private int canSplite(IoSession session, ByteBuffer byteBuffer) {
+			return messageSplitter.canSplite(session, byteBuffer, state);
+		}
 	}
 }
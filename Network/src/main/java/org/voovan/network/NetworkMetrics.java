@@ -0,0 +1,293 @@
+package org.voovan.network;
+
+import org.voovan.tools.LatencyHistogram;
+import org.voovan.tools.json.JSON;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网络 IO 统计
+ * 		SocketContext 上的统计对象汇总所有会话的数据, 包括读写字节数, 分割出的消息包数, 会话数,
+ * 		以及过滤器, 业务处理和事件排队的耗时分布. 会话上的统计对象只保存本会话的计数,
+ * 		记录时同时累加到 SocketContext 的统计对象, 耗时只记录在 SocketContext 的统计对象上.
+ * 		计数使用 LongAdder, 记录操作无锁. 未启用时 SocketContext.getMetrics() 返回 null, 不产生统计开销.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class NetworkMetrics {
+	private NetworkMetrics parent;
+
+	private LongAdder bytesRead;
+	private LongAdder bytesWritten;
+	private LongAdder messageCount;
+
+	//以下只在 SocketContext 的统计对象上存在
+	private LongAdder activeSessions;
+	private LongAdder totalSessions;
+	private LatencyHistogram filterLatency;
+	private LatencyHistogram handlerLatency;
+	private LatencyHistogram queueLatency;
+
+	//会话是否已经计入活动会话数, 只在会话的统计对象上存在
+	private AtomicBoolean active;
+
+	/**
+	 * 构造函数
+	 * 		SocketContext 使用的统计对象
+	 */
+	public NetworkMetrics() {
+		this(null);
+	}
+
+	/**
+	 * 构造函数
+	 * @param parent SocketContext 的统计对象, 为 null 时创建 SocketContext 使用的统计对象
+	 */
+	public NetworkMetrics(NetworkMetrics parent) {
+		this.parent = parent;
+		bytesRead = new LongAdder();
+		bytesWritten = new LongAdder();
+		messageCount = new LongAdder();
+
+		if(parent == null) {
+			activeSessions = new LongAdder();
+			totalSessions = new LongAdder();
+			filterLatency = new LatencyHistogram();
+			handlerLatency = new LatencyHistogram();
+			queueLatency = new LatencyHistogram();
+		} else {
+			active = new AtomicBoolean(false);
+		}
+	}
+
+	/**
+	 * 获取 SocketContext 的统计对象
+	 * @return SocketContext 的统计对象, 当前对象属于 SocketContext 时返回 null
+	 */
+	public NetworkMetrics getParent() {
+		return parent;
+	}
+
+	/**
+	 * 记录读取的字节数
+	 * @param length 从 Socket 读取的字节数
+	 */
+	public void addBytesRead(long length) {
+		bytesRead.add(length);
+		if(parent != null) {
+			parent.addBytesRead(length);
+		}
+	}
+
+	/**
+	 * 记录写出的字节数
+	 * @param length 写入 Socket 的字节数
+	 */
+	public void addBytesWritten(long length) {
+		bytesWritten.add(length);
+		if(parent != null) {
+			parent.addBytesWritten(length);
+		}
+	}
+
+	/**
+	 * 记录一个分割出的消息包
+	 */
+	public void incrementMessage() {
+		messageCount.increment();
+		if(parent != null) {
+			parent.incrementMessage();
+		}
+	}
+
+	/**
+	 * 记录过滤器编解码的耗时
+	 * @param nanos 耗时, 单位: 纳秒
+	 */
+	public void recordFilter(long nanos) {
+		if(parent != null) {
+			parent.recordFilter(nanos);
+		} else {
+			filterLatency.record(nanos);
+		}
+	}
+
+	/**
+	 * 记录业务处理的耗时
+	 * @param nanos 耗时, 单位: 纳秒
+	 */
+	public void recordHandler(long nanos) {
+		if(parent != null) {
+			parent.recordHandler(nanos);
+		} else {
+			handlerLatency.record(nanos);
+		}
+	}
+
+	/**
+	 * 记录事件从触发到开始处理的排队耗时
+	 * @param nanos 耗时, 单位: 纳秒
+	 */
+	public void recordQueue(long nanos) {
+		if(parent != null) {
+			parent.recordQueue(nanos);
+		} else {
+			queueLatency.record(nanos);
+		}
+	}
+
+	/**
+	 * 会话建立
+	 * 		在会话的统计对象上调用, 同一个会话只计数一次
+	 */
+	public void sessionOpened() {
+		if(parent != null && active.compareAndSet(false, true)) {
+			parent.activeSessions.increment();
+			parent.totalSessions.increment();
+		}
+	}
+
+	/**
+	 * 会话关闭
+	 * 		在会话的统计对象上调用, 只对已经计数的会话生效
+	 */
+	public void sessionClosed() {
+		if(parent != null && active.compareAndSet(true, false)) {
+			parent.activeSessions.decrement();
+		}
+	}
+
+	/**
+	 * 获取读取的字节数
+	 * @return 读取的字节数
+	 */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/**
+	 * 获取写出的字节数
+	 * @return 写出的字节数
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * 获取分割出的消息包数
+	 * @return 消息包数
+	 */
+	public long getMessageCount() {
+		return messageCount.sum();
+	}
+
+	/**
+	 * 获取活动的会话数
+	 * @return 活动的会话数, 会话的统计对象返回 0 或 1
+	 */
+	public long getActiveSessions() {
+		return parent == null ? activeSessions.sum() : (active.get() ? 1 : 0);
+	}
+
+	/**
+	 * 获取建立过的会话总数
+	 * @return 会话总数, 会话的统计对象返回 0 或 1
+	 */
+	public long getTotalSessions() {
+		return parent == null ? totalSessions.sum() : (active.get() ? 1 : 0);
+	}
+
+	/**
+	 * 获取过滤器编解码的耗时分布
+	 * @return 耗时分布, 会话的统计对象返回 SocketContext 的耗时分布
+	 */
+	public LatencyHistogram getFilterLatency() {
+		return parent == null ? filterLatency : parent.getFilterLatency();
+	}
+
+	/**
+	 * 获取业务处理的耗时分布
+	 * @return 耗时分布, 会话的统计对象返回 SocketContext 的耗时分布
+	 */
+	public LatencyHistogram getHandlerLatency() {
+		return parent == null ? handlerLatency : parent.getHandlerLatency();
+	}
+
+	/**
+	 * 获取事件排队的耗时分布
+	 * @return 耗时分布, 会话的统计对象返回 SocketContext 的耗时分布
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return parent == null ? queueLatency : parent.getQueueLatency();
+	}
+
+	/**
+	 * 清空统计数据
+	 * 		活动的会话数不会被清空
+	 */
+	public void reset() {
+		bytesRead.reset();
+		bytesWritten.reset();
+		messageCount.reset();
+
+		if(parent == null) {
+			totalSessions.reset();
+			filterLatency.reset();
+			handlerLatency.reset();
+			queueLatency.reset();
+		}
+	}
+
+	/**
+	 * 转换为 Map
+	 * 		耗时的单位为微秒
+	 * @return 统计数据的 Map
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> metricsMap = new LinkedHashMap<String, Object>();
+		metricsMap.put("bytesRead", getBytesRead());
+		metricsMap.put("bytesWritten", getBytesWritten());
+		metricsMap.put("messageCount", getMessageCount());
+
+		if(parent == null) {
+			metricsMap.put("activeSessions", getActiveSessions());
+			metricsMap.put("totalSessions", getTotalSessions());
+			metricsMap.put("filterLatency", latencyToMap(filterLatency));
+			metricsMap.put("handlerLatency", latencyToMap(handlerLatency));
+			metricsMap.put("queueLatency", latencyToMap(queueLatency));
+		}
+
+		return metricsMap;
+	}
+
+	/**
+	 * 转换为 JSON
+	 * @return 统计数据的 JSON 字符串
+	 */
+	public String toJSON() {
+		return JSON.toJSON(toMap());
+	}
+
+	private static Map<String, Object> latencyToMap(LatencyHistogram latencyHistogram) {
+		Map<String, Object> latencyMap = new LinkedHashMap<String, Object>();
+		latencyMap.put("count", latencyHistogram.getCount());
+		latencyMap.put("mean", latencyHistogram.getMean());
+		latencyMap.put("p50", latencyHistogram.getPercentile(50));
+		latencyMap.put("p99", latencyHistogram.getPercentile(99));
+		latencyMap.put("p999", latencyHistogram.getPercentile(99.9));
+		latencyMap.put("max", latencyHistogram.getMax());
+		return latencyMap;
+	}
+
+	@Override
+	public String toString() {
+		return toJSON();
+	}
+}
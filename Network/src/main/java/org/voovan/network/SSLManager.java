@@ -1,6 +1,7 @@
 package org.voovan.network;
 
 import org.voovan.tools.TString;
+import org.voovan.tools.log.Logger;
 
 import javax.net.ssl.*;
 import java.io.FileInputStream;
@@ -18,12 +19,18 @@ import java.security.cert.X509Certificate;
  * Licence: Apache v2 License
  */
 public class SSLManager {
+	//开启会话票据的 JDK 属性
+	private static final String SESSION_TICKET_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
 	private KeyManagerFactory keyManagerFactory;
 	private TrustManagerFactory trustManagerFactory;
-	private SSLContext context;
-	private SSLEngine engine;
+	private volatile SSLContext context;
+	private volatile SSLEngine engine;
 	private boolean needClientAuth;
 	private String protocol;
+	private int sessionCacheSize = 20480;
+	private int sessionTimeout = 3600;
+	private boolean sessionTicket = false;
 	
 	/**
 	 * 构造函数
@@ -48,13 +55,102 @@ public class SSLManager {
 	}
 
 	/**
-	 * 获取 SSLEngine
+	 * 获取最近创建的 SSLEngine
 	 * @return SSLEngine 对象
      */
 	public SSLEngine getSSLEngine(){
 		return engine;
 	}
 	
+	/**
+	 * 获取 SSL 会话缓存的数量
+	 * @return SSL 会话缓存的数量
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * 设置 SSL 会话缓存的数量
+	 * 		缓存的会话用于恢复握手, 超过数量时淘汰最早的会话, 0 表示不限制
+	 * @param sessionCacheSize SSL 会话缓存的数量 (default:20480)
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = sessionCacheSize;
+		applySessionContext();
+	}
+
+	/**
+	 * 获取 SSL 会话的超时时间
+	 * @return SSL 会话的超时时间, 单位: 秒
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * 设置 SSL 会话的超时时间
+	 * 		超时的会话从缓存中清除, 不能再用于恢复握手, 0 表示不超时
+	 * @param sessionTimeout SSL 会话的超时时间, 单位: 秒 (default:3600)
+	 */
+	public void setSessionTimeout(int sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+		applySessionContext();
+	}
+
+	/**
+	 * 是否启用会话票据
+	 * @return true: 启用, false: 不启用
+	 */
+	public boolean isSessionTicket() {
+		return sessionTicket;
+	}
+
+	/**
+	 * 设置是否启用会话票据
+	 * 		启用后服务端不保存会话状态, 由客户端持有加密的会话票据恢复握手.
+	 * 		通过 jdk.tls.server.enableSessionTicketExtension 属性开启, 需要 JDK 13+.
+	 * 		JDK 只在第一次使用 SSL 时读取这个属性, 必须在 JVM 中创建任何 SSLContext 之前调用,
+	 * 		也可以在启动参数中指定 -Djdk.tls.server.enableSessionTicketExtension=true.
+	 * 		不支持或者属性已被设置为 false 时输出警告, 使用会话缓存恢复握手.
+	 * @param sessionTicket true: 启用, false: 不启用 (default:false)
+	 */
+	public void setSessionTicket(boolean sessionTicket) {
+		this.sessionTicket = sessionTicket;
+		if(!sessionTicket) {
+			return;
+		}
+
+		if(javaVersion() < 13) {
+			Logger.warn("TLS session ticket needs JDK 13+, the session cache is used to resume the hand shake");
+			return;
+		}
+
+		String property = System.getProperty(SESSION_TICKET_PROPERTY);
+		if(property == null) {
+			System.setProperty(SESSION_TICKET_PROPERTY, "true");
+		} else if(!"true".equalsIgnoreCase(property)) {
+			Logger.warn("TLS session ticket is disabled by -D" + SESSION_TICKET_PROPERTY + "=" + property);
+		}
+	}
+
+	/**
+	 * 获取当前 JDK 的主版本号
+	 * @return JDK 的主版本号, 例如 1.8 返回 8
+	 */
+	private static int javaVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		if(version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+
 	/**
 	 * 读取管理证书
 	 * @param manageCertFile   证书地址
@@ -75,6 +171,9 @@ public class SSLManager {
 
 			keyManagerFactory.init(keystore , keyPassword.toCharArray());
 			trustManagerFactory.init(keystore );
+
+			//证书变化后重新创建 SSLContext
+			context = null;
 		} catch (CertificateException | IOException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
 			throw new SSLException("Init SSLContext Error: "+e.getMessage(),e);
 		}finally {
@@ -90,21 +189,27 @@ public class SSLManager {
 	
 	/**
 	 * 初始化
+	 * 		SSLContext 只创建一次, 所有连接共用 SSLContext 中的会话缓存
 	 * @param protocol		协议名称 SSL/TLS
 	 * @throws SSLException SSL 异常
 	 */
 	private synchronized void init(String protocol) throws SSLException {
+		if(context != null){
+			return;
+		}
 
 		if(TString.isNullOrEmpty(protocol)){
 			this.protocol = "SSL";
 		}
 		try {
-			context = SSLContext.getInstance(protocol, "SunJSSE");
+			SSLContext sslContext = SSLContext.getInstance(this.protocol, "SunJSSE");
 			if(keyManagerFactory!=null && trustManagerFactory!=null){
-				context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
+				sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
 			}else{
-				context.init(null, new TrustManager[]{new DefaultTrustManager()}, new SecureRandom());
+				sslContext.init(null, new TrustManager[]{new DefaultTrustManager()}, new SecureRandom());
 			}
+			context = sslContext;
+			applySessionContext();
 			//NoSuchAlgorithmException | KeyManagementException |
 		} catch ( Exception e) {
 			
@@ -112,14 +217,31 @@ public class SSLManager {
 		}
 		
 	}
-	
+
+	/**
+	 * 将会话缓存的配置应用到 SSLContext
+	 */
+	private void applySessionContext() {
+		SSLContext sslContext = context;
+		if(sslContext != null) {
+			for (SSLSessionContext sessionContext : new SSLSessionContext[]{sslContext.getServerSessionContext(), sslContext.getClientSessionContext()}) {
+				sessionContext.setSessionCacheSize(sessionCacheSize);
+				sessionContext.setSessionTimeout(sessionTimeout);
+			}
+		}
+	}
+
 	/**
 	 * 构造SSLEngine
+	 * 		客户端按 ipAddress:port 复用缓存的会话
+	 * @return SSLEngine 对象
 	 * @throws SSLException SSL 异常
 	 */
-	private synchronized void createSSLEngine(String protocol, String ipAddress, int port) throws SSLException {
+	private SSLEngine createSSLEngine(String protocol, String ipAddress, int port) throws SSLException {
 		init(protocol);
-		engine = context.createSSLEngine(ipAddress, port);
+		SSLEngine sslEngine = context.createSSLEngine(ipAddress, port);
+		engine = sslEngine;
+		return sslEngine;
 	}
 	
 	/**
@@ -129,9 +251,9 @@ public class SSLManager {
 	 * @throws SSLException SSL 异常
 	 */
 	public SSLParser createClientSSLParser(IoSession session) throws SSLException {
-		createSSLEngine(protocol, session.socketContext().getHost(), session.socketContext().getPort());
-		engine.setUseClientMode(true);
-		return new SSLParser(engine, session);
+		SSLEngine sslEngine = createSSLEngine(protocol, session.socketContext().getHost(), session.socketContext().getPort());
+		sslEngine.setUseClientMode(true);
+		return new SSLParser(sslEngine, session);
 	}
 	
 	/**
@@ -141,10 +263,10 @@ public class SSLManager {
 	 * @throws SSLException SSL 异常
 	 */
 	public SSLParser createServerSSLParser(IoSession session) throws SSLException{
-		createSSLEngine(protocol, session.socketContext().getHost(), session.socketContext().getPort());
-		engine.setUseClientMode(false);
-		engine.setNeedClientAuth(needClientAuth);
-		return new SSLParser(engine, session);
+		SSLEngine sslEngine = createSSLEngine(protocol, session.socketContext().getHost(), session.socketContext().getPort());
+		sslEngine.setUseClientMode(false);
+		sslEngine.setNeedClientAuth(needClientAuth);
+		return new SSLParser(sslEngine, session);
 	}
 	
 	private static class DefaultTrustManager implements X509TrustManager {
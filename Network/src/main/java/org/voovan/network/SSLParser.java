@@ -1,9 +1,11 @@
 package org.voovan.network;
 
+import org.voovan.Global;
 import org.voovan.network.exception.SocketDisconnectByRemote;
 import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.LatencyHistogram;
 import org.voovan.tools.TByteBuffer;
-import org.voovan.tools.TEnv;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.log.Logger;
 
 import javax.net.ssl.SSLEngine;
@@ -14,11 +16,18 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SSL 解析器
  * 		1.握手信息
  * 		2.报文信息
+ * 		握手由连接和数据到达事件驱动, 不阻塞 IO 和事件线程
  * @author helyho
  *
  * Voovan Framework.
@@ -26,11 +35,29 @@ import java.nio.ByteBuffer;
  * Licence: Apache v2 License
  */
 public class SSLParser {
+	private final static LatencyHistogram HAND_SHAKE_LATENCY = new LatencyHistogram();
+	private static ThreadPoolExecutor cryptoExecutor = createCryptoExecutor();
+	//TLS 记录的最大明文长度
+	private final static int MAX_RECORD_SIZE = 16384;
+	//一次打包的最大记录数
+	private final static int MAX_WRAP_RECORDS = 16;
+
 	private SSLEngine engine;
 	private ByteBuffer appData;
 	private ByteBuffer netData;
 	private IoSession session;
-	boolean handShakeDone = false;
+	private ByteBufferChannel netByteBufferChannel;
+	volatile boolean handShakeDone = false;
+	private boolean handShakeStarted = false;
+	private boolean runningTask = false;
+	//执行委派任务期间保持的合并发送
+	private boolean taskCorked = false;
+	private boolean connectDeferred = false;
+	private volatile boolean released = false;
+	private final Object wrapLock = new Object();
+	private long handShakeStartTime;
+	private HashWheelTask handShakeTimeoutTask;
+
 	/**
 	 * 构造函数
 	 * @param engine  SSLEngine对象
@@ -42,6 +69,7 @@ public class SSLParser {
 		session.setSSLParser(this);
 		this.appData= buildAppDataBuffer();
 		this.netData = buildNetDataBuffer();
+		this.netByteBufferChannel = new ByteBufferChannel(session.socketContext().getBufferSize());
 	}
 
 	/**
@@ -87,32 +115,74 @@ public class SSLParser {
 	 * @throws IOException IO 异常
 	 */
 	public SSLEngineResult warpData(ByteBuffer buffer) throws IOException{
-		netData.clear();
-		SSLEngineResult engineResult = null;
-		do{
-			engineResult = engine.wrap(buffer, netData);
-			netData.flip();
-			if(session.isConnected() && engineResult.bytesProduced()>0 && netData.limit()>0){
-				session.send0(netData);
+		return warpData(new ByteBuffer[]{buffer});
+	}
+
+	/**
+	 * 打包并发送多个缓冲区中的数据
+	 * 		多个 TLS 记录打包到同一个缓冲区中, 合并为一次写操作
+	 * @param buffers      需要的数据缓冲区数组
+	 * @return 			   返回成功执行的最后一个或者失败的那个 SSLEnginResult
+	 * @throws IOException IO 异常
+	 */
+	public SSLEngineResult warpData(ByteBuffer[] buffers) throws IOException{
+		//保证多个线程发送时 TLS 记录的打包顺序和写出顺序一致
+		synchronized (wrapLock) {
+			if(released){
+				throw new IOException("Socket is disconnect");
 			}
-			netData.clear();
-		}while(engineResult.getStatus() == Status.OK && buffer.hasRemaining());
-		return engineResult;
+
+			int packetSize = engine.getSession().getPacketBufferSize();
+			long remaining = remaining(buffers);
+			int recordCount = (int) Math.min(MAX_WRAP_RECORDS, (remaining + MAX_RECORD_SIZE - 1) / MAX_RECORD_SIZE);
+			ByteBuffer wrapBuffer = recordCount > 1 ? TByteBuffer.allocateDirect(recordCount * packetSize) : netData;
+
+			SSLEngineResult engineResult = null;
+			try {
+				do {
+					wrapBuffer.clear();
+					do {
+						engineResult = engine.wrap(buffers, wrapBuffer);
+					} while (engineResult.getStatus() == Status.OK && engineResult.bytesConsumed() > 0 &&
+							remaining(buffers) > 0 && wrapBuffer.remaining() >= packetSize);
+
+					wrapBuffer.flip();
+					if (session.isConnected() && wrapBuffer.hasRemaining()) {
+						session.send0(wrapBuffer);
+					}
+				} while (engineResult.getStatus() == Status.OK && remaining(buffers) > 0 &&
+						(engineResult.bytesConsumed() > 0 || engineResult.bytesProduced() > 0));
+			} finally {
+				if(wrapBuffer != netData) {
+					TByteBuffer.release(wrapBuffer);
+				}
+				netData.clear();
+			}
+			return engineResult;
+		}
+	}
+
+	private static long remaining(ByteBuffer[] buffers){
+		long remaining = 0;
+		for(ByteBuffer buffer : buffers){
+			remaining += buffer.remaining();
+		}
+		return remaining;
 	}
 
 	/**
-	 * 处理握手 Warp;
-	 * @return
-	 * @throws IOException
-	 * @throws Exception
+	 * 处理握手 Warp
+	 * @return 握手状态
+	 * @throws IOException IO 异常
 	 */
 	private HandshakeStatus doHandShakeWarp() throws IOException {
 		clearBuffer();
 		appData.flip();
-		warpData(appData);
-		//如果有 HandShake Task 则执行
-		HandshakeStatus handshakeStatus = runDelegatedTasks();
-		return handshakeStatus;
+		SSLEngineResult engineResult = warpData(appData);
+		if(engineResult.getStatus() == Status.CLOSED){
+			throw new SSLException("SSLEngine is closed on hand shake");
+		}
+		return engineResult.getHandshakeStatus();
 	}
 
 	/**
@@ -129,140 +199,349 @@ public class SSLParser {
 	}
 
 	/**
-	 * 处理握手 Unwarp;
-	 * @return
-	 * @throws IOException
-	 * @throws Exception
+	 * 处理握手 Unwarp
+	 * 		只处理接收通道中已有的数据, 不等待
+	 * @return 握手状态, 数据不足时返回 null
+	 * @throws IOException IO 异常
 	 */
 	private HandshakeStatus doHandShakeUnwarp() throws IOException{
-		HandshakeStatus handshakeStatus =engine.getHandshakeStatus();
+		if(netByteBufferChannel.isReleased()){
+			throw new IOException("Socket is disconnect");
+		}
+
+		if(netByteBufferChannel.size() == 0){
+			return null;
+		}
+
+		clearBuffer();
 		SSLEngineResult engineResult = null;
-		int waitCount = 0;
-		while(true){
-			if(waitCount >= session.socketContext().getReadTimeout()){
-				throw new SocketDisconnectByRemote("Hand shake on: "+ session.remoteAddress() + ":" + session.remotePort()+" timeout");
-			}
+		ByteBuffer byteBuffer = netByteBufferChannel.getByteBuffer();
+		try {
+			engineResult = unwarpData(byteBuffer, appData);
+		} finally {
+			netByteBufferChannel.compact();
+		}
+
+		//握手过程中解出的业务数据
+		if(appData.position() > 0){
+			appData.flip();
+			session.getByteBufferChannel().writeEnd(appData);
+		}
 
-			clearBuffer();
-			ByteBufferChannel byteBufferChannel = session.getByteBufferChannel();
+		switch (engineResult.getStatus()) {
+			case BUFFER_UNDERFLOW:
+				return null;
+			case CLOSED:
+				throw new SSLException("SSLEngine is closed on hand shake");
+			default:
+				return engineResult.getHandshakeStatus();
+		}
+	}
 
-			if(byteBufferChannel.isReleased()){
-				throw new IOException("Socket is disconnect");
-			}
+	/**
+	 * 在加密线程池中执行委派任务
+	 * 		任务完成后继续握手. 线程池饱和时握手失败, 委派任务不会在 Reactor 线程中执行
+	 */
+	private void runDelegatedTasks() {
+		runningTask = true;
+		try {
+			cryptoExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Runnable runnable;
+					try {
+						while ((runnable = engine.getDelegatedTask()) != null) {
+							runnable.run();
+						}
+					} catch (Exception e) {
+						synchronized (SSLParser.this) {
+							runningTask = false;
+							releaseTaskCork();
+						}
+						handShakeFailed(e);
+						return;
+					}
 
-			if(byteBufferChannel.size() > 0)  {
-				ByteBuffer byteBuffer = byteBufferChannel.getByteBuffer();
-				engineResult = unwarpData(byteBuffer, appData);
-				if(engineResult.getStatus() == Status.OK) {
-					//如果有 HandShake Task 则执行
-					handshakeStatus = runDelegatedTasks();
-				}
-				byteBufferChannel.compact();
+					synchronized (SSLParser.this) {
+						runningTask = false;
+					}
 
-				if(engineResult!=null &&
-						engineResult.getStatus()==Status.OK &&
-						byteBuffer.remaining() == 0){
-					break;
+					try {
+						doHandShake();
+					} catch (IOException e) {
+						handShakeFailed(e);
+					}
 				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (SSLParser.this) {
+				runningTask = false;
+				releaseTaskCork();
+			}
+			handShakeFailed(e);
+		}
+	}
 
-				if(engineResult!=null &&
-						(engineResult.getStatus() == Status.BUFFER_OVERFLOW ||
-								engineResult.getStatus() == Status.BUFFER_UNDERFLOW ||
-								engineResult.getStatus() == Status.CLOSED)
-						){
-					break;
+	/**
+	 * 开始握手
+	 * @throws SSLException SSL 异常
+	 */
+	private void startHandShake() throws SSLException {
+		handShakeStarted = true;
+		handShakeStartTime = System.nanoTime();
+		engine.beginHandshake();
+
+		//握手超时检查
+		final long timeout = session.socketContext().getReadTimeout() * 1000000L;
+		if(timeout > 0) {
+			handShakeTimeoutTask = new HashWheelTask() {
+				@Override
+				public void run() {
+					if (handShakeDone || !session.isConnected()) {
+						this.cancel();
+					} else if (System.nanoTime() - handShakeStartTime >= timeout) {
+						this.cancel();
+						handShakeFailed(new SocketDisconnectByRemote("Hand shake on: " + session.remoteAddress() + ":" + session.remotePort() + " timeout"));
+					}
 				}
-			}
+			};
+			//异步执行, 关闭连接时不阻塞定时器线程
+			Global.getHashWheelTimer().addTask(handShakeTimeoutTask, 1, true);
+		}
+	}
+
+	/**
+	 * 握手完成
+	 * @throws IOException IO 异常
+	 */
+	private void finishHandShake() throws IOException {
+		handShakeDone = true;
+		HAND_SHAKE_LATENCY.record(System.nanoTime() - handShakeStartTime);
 
-			waitCount++;
-			TEnv.sleep(1);
-		};
-		return handshakeStatus;
+		if(handShakeTimeoutTask != null){
+			handShakeTimeoutTask.cancel();
+			handShakeTimeoutTask = null;
+		}
+
+		ByteBufferChannel appByteBufferChannel = session.getByteBufferChannel();
+
+		//对端在握手完成后立即发送的数据
+		if(netByteBufferChannel.size() > 0) {
+			unWarpByteBufferChannel(session, netByteBufferChannel, appByteBufferChannel);
+		}
+
+		//onConnect 事件在等待握手完成
+		if(connectDeferred){
+			connectDeferred = false;
+			EventTrigger.fireConnectThread(session);
+		}
+
+		if(appByteBufferChannel.size() > 0){
+			EventTrigger.fireReceiveThread(session);
+		}
 	}
 
 	/**
-	 * 执行委派任务
-	 * @throws Exception
+	 * 释放执行委派任务期间保持的合并发送
+	 * 		委派任务失败或者线程池拒绝任务时调用, 连接随后关闭, 不再写出队列中的数据
 	 */
-	private HandshakeStatus runDelegatedTasks()  {
-		if(handShakeDone==false){
-			if (engine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
-				Runnable runnable;
-				while ((runnable = engine.getDelegatedTask()) != null) {
-					runnable.run();
+	private synchronized void releaseTaskCork() {
+		if(taskCorked) {
+			taskCorked = false;
+			session.getSendQueue().uncork();
+		}
+	}
+
+	/**
+	 * 握手失败, 关闭连接
+	 * @param e 异常对象
+	 */
+	private void handShakeFailed(Exception e) {
+		Logger.error("SSL hand shake failed", e);
+		session.close();
+	}
+
+	/**
+	 * 推进握手过程
+	 * 		非阻塞方法, 在连接建立和收到对端数据时调用, 按握手状态发送或解包数据,
+	 * 		数据不足时直接返回, 收到新的数据时继续. 委派任务在加密线程池中执行, 完成后继续握手.
+	 * @return true: 握手完成, false: 握手未完成
+	 * @throws IOException IO 异常
+	 */
+	public synchronized boolean doHandShake() throws IOException{
+		if(handShakeDone){
+			return true;
+		}
+
+		if(released || runningTask){
+			return false;
+		}
+
+		if(!handShakeStarted){
+			startHandShake();
+		}
+
+		//等待对端数据前打包的握手消息合并为一次写出, 避免多个小包触发 Nagle 算法的等待,
+		//执行委派任务时保持合并, 任务完成后的消息和之前的消息一起写出.
+		//委派任务完成后再次进入时沿用任务期间保持的合并, 不再重复 cork
+		SendQueue sendQueue = session.getSendQueue();
+		if(!taskCorked) {
+			sendQueue.cork();
+		}
+		taskCorked = false;
+		boolean corkHeld = true;
+		try {
+			HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+			while (!handShakeDone) {
+				switch (handshakeStatus) {
+					case NEED_TASK:
+						//合并交给委派任务保持, 由任务完成后的握手或 releaseTaskCork 结束
+						taskCorked = true;
+						corkHeld = false;
+						runDelegatedTasks();
+						return false;
+					case NEED_WRAP:
+						handshakeStatus = doHandShakeWarp();
+						break;
+					case NEED_UNWRAP:
+						handshakeStatus = doHandShakeUnwarp();
+						if (handshakeStatus == null) {
+							return false;
+						}
+						break;
+					default:
+						//FINISHED 或 NOT_HANDSHAKING
+						finishHandShake();
+						break;
 				}
 			}
-			return engine.getHandshakeStatus();
+			return true;
+		} finally {
+			if(corkHeld && sendQueue.uncork()) {
+				session.flush();
+			}
 		}
-		return null;
 	}
 
-	public boolean doHandShake() throws IOException{
+	/**
+	 * 推迟 onConnect 事件到握手完成
+	 * 		握手未完成时开始握手, 握手完成后重新触发 onConnect 事件
+	 * @return true: 已推迟, false: 握手已经完成
+	 * @throws IOException IO 异常
+	 */
+	public synchronized boolean deferConnect() throws IOException {
+		if(handShakeDone){
+			return false;
+		}
 
-		engine.beginHandshake();
-		int handShakeCount = 0;
-		HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
-		while(!handShakeDone && handShakeCount<20){
-			handShakeCount++;
-			switch (handshakeStatus) {
-				case NEED_TASK:
-					handshakeStatus = runDelegatedTasks();
-					break;
-				case NEED_WRAP:
-					handshakeStatus = doHandShakeWarp();
-					break;
-				case NEED_UNWRAP:
-					handshakeStatus = doHandShakeUnwarp();
-					break;
-				case FINISHED:
-					handshakeStatus = engine.getHandshakeStatus();
-					break;
-				case NOT_HANDSHAKING:
-					handShakeDone = true;
-					break;
-				default:
-					break;
-			}
-//			TEnv.sleep(1);
+		connectDeferred = true;
+		doHandShake();
+		return true;
+	}
+
+	/**
+	 * 接收 Socket 读取到的加密数据
+	 * 		握手未完成时推进握手, 握手完成后解包到会话的接收通道
+	 * @param buffer 读取到的数据
+	 * @throws IOException IO 异常
+	 */
+	public void receive(ByteBuffer buffer) throws IOException {
+		netByteBufferChannel.writeEnd(buffer);
+		if(handShakeDone || doHandShake()) {
+			unWarpByteBufferChannel(session, netByteBufferChannel, session.getByteBufferChannel());
 		}
-		return handShakeDone;
+	}
+
+	/**
+	 * 获取加密数据的接收通道
+	 * @return ByteBufferChannel 对象
+	 */
+	public ByteBufferChannel getNetByteBufferChannel() {
+		return netByteBufferChannel;
+	}
+
+	/**
+	 * 获取握手耗时的直方图
+	 * @return 握手耗时的直方图
+	 */
+	public static LatencyHistogram getHandShakeLatency() {
+		return HAND_SHAKE_LATENCY;
+	}
+
+	/**
+	 * 获取执行握手委派任务的线程池
+	 * @return 线程池对象
+	 */
+	public static ThreadPoolExecutor getCryptoExecutor() {
+		return cryptoExecutor;
+	}
+
+	/**
+	 * 设置执行握手委派任务的线程池
+	 * 		线程池拒绝任务时握手失败, 不要使用在提交任务的线程中执行的拒绝策略 (CallerRunsPolicy)
+	 * @param cryptoExecutor 线程池对象
+	 */
+	public static void setCryptoExecutor(ThreadPoolExecutor cryptoExecutor) {
+		SSLParser.cryptoExecutor = cryptoExecutor;
+	}
+
+	/**
+	 * 创建执行握手委派任务的线程池
+	 * 		线程数为 CPU 核心数, 队列有界, 队列满时拒绝任务, 对应的握手失败.
+	 * 		提交任务的可能是 Reactor 线程, 不能在提交任务的线程中执行耗时的委派任务
+	 * @return 线程池对象
+	 */
+	private static ThreadPoolExecutor createCryptoExecutor() {
+		final int cpuCoreCount = Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(cpuCoreCount, cpuCoreCount, 1, TimeUnit.MINUTES,
+				new ArrayBlockingQueue<Runnable>(cpuCoreCount * 500), new ThreadFactory() {
+			private AtomicInteger threadCount = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "VOOVAN@SSL_CRYPTO-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		return threadPoolExecutor;
 	}
 
 	/**
 	 * 读取SSL消息到缓冲区
+	 * 		直接从加密数据的通道解包到解密数据通道的尾部, 不经过临时缓冲区
 	 * @param session Socket 会话对象
 	 * @param netByteBufferChannel Socket SSL 加密后的数据
 	 * @param appByteBufferChannel Socket SSL 解密后的数据
 	 * @return 接收数据大小
 	 * @throws IOException  IO异常
 	 */
-	public int unWarpByteBufferChannel(IoSession session, ByteBufferChannel netByteBufferChannel, ByteBufferChannel appByteBufferChannel) throws IOException{
+	public synchronized int unWarpByteBufferChannel(IoSession session, ByteBufferChannel netByteBufferChannel, ByteBufferChannel appByteBufferChannel) throws IOException{
 		int readSize = 0;
 
-		if(session.isConnected() && netByteBufferChannel.size()>0){
-			SSLEngineResult engineResult = null;
-
-			while(true) {
-				appData.clear();
-				ByteBuffer byteBuffer = netByteBufferChannel.getByteBuffer();
-
-				engineResult = unwarpData(byteBuffer, appData);
-				netByteBufferChannel.compact();
+		if(!released && session.isConnected() && netByteBufferChannel.size()>0){
+			int appBufferSize = engine.getSession().getApplicationBufferSize();
 
-				appData.flip();
-				appByteBufferChannel.writeEnd(appData);
+			while(netByteBufferChannel.size() > 0) {
+				SSLEngineResult engineResult = null;
 
-				if(engineResult!=null &&
-						engineResult.getStatus()==Status.OK  &&
-						byteBuffer.remaining() == 0){
-					break;
+				ByteBuffer netBuffer = netByteBufferChannel.getByteBuffer();
+				try {
+					ByteBuffer appBuffer = appByteBufferChannel.getTailBuffer(appBufferSize);
+					try {
+						engineResult = unwarpData(netBuffer, appBuffer);
+					} finally {
+						appByteBufferChannel.commitTail();
+					}
+				} finally {
+					netByteBufferChannel.compact();
 				}
 
-				if(engineResult!=null &&
-						(engineResult.getStatus() == Status.BUFFER_OVERFLOW ||
-								engineResult.getStatus() == Status.BUFFER_UNDERFLOW  ||
-								engineResult.getStatus() == Status.CLOSED)
-						){
+				readSize = readSize + engineResult.bytesProduced();
+
+				//数据不是完整的 TLS 记录或连接已关闭时等待后续的数据
+				if(engineResult.getStatus() != Status.OK || engineResult.bytesConsumed() == 0){
 					break;
 				}
 			}
@@ -270,8 +549,16 @@ public class SSLParser {
 		return readSize;
 	}
 
-	public void release(){
-		TByteBuffer.release(netData);
-		TByteBuffer.release(appData);
+	public synchronized void release(){
+		synchronized (wrapLock) {
+			released = true;
+			if (handShakeTimeoutTask != null) {
+				handShakeTimeoutTask.cancel();
+				handShakeTimeoutTask = null;
+			}
+			netByteBufferChannel.release();
+			TByteBuffer.release(netData);
+			TByteBuffer.release(appData);
+		}
 	}
 }
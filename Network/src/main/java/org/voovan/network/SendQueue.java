@@ -0,0 +1,239 @@
+package org.voovan.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 会话发送队列
+ * 		Socket 发送缓冲区满时, 未写出的数据在这里排队, 等待通道可写时继续写出.
+ * 		队列中的数据超过高水位时会话变为不可写, 回落到低水位以下时恢复可写,
+ * 		业务代码可以通过 IoSession.isWritable() 感知慢速的对端并停止继续产生数据
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SendQueue {
+	private IoSession session;
+	private Deque<ByteBuffer> buffers;
+	private long size;
+	private volatile boolean writable;
+	private boolean flushing;
+	private int corkCount;
+	private boolean released;
+
+	/**
+	 * 构造函数
+	 * @param session 会话对象
+	 */
+	public SendQueue(IoSession session){
+		this.session = session;
+		this.buffers = new ArrayDeque<ByteBuffer>();
+		this.size = 0;
+		this.writable = true;
+		this.flushing = false;
+		this.corkCount = 0;
+		this.released = false;
+	}
+
+	/**
+	 * 队列是否为空
+	 * @return true: 空, false: 有等待发送的数据
+	 */
+	public synchronized boolean isEmpty(){
+		return buffers.isEmpty();
+	}
+
+	/**
+	 * 获取等待发送的字节数
+	 * @return 等待发送的字节数
+	 */
+	public synchronized long size(){
+		return size;
+	}
+
+	/**
+	 * 是否可写
+	 * @return true: 等待发送的数据低于水位, false: 等待发送的数据超过了高水位
+	 */
+	public boolean isWritable(){
+		return writable;
+	}
+
+	/**
+	 * 将缓冲区中剩余的数据复制到队列尾部
+	 * 		调用者在返回后可以继续复用传入的缓冲区
+	 * @param buffer 缓冲区
+	 */
+	public synchronized void add(ByteBuffer buffer){
+		if(released || buffer == null || !buffer.hasRemaining()){
+			return;
+		}
+
+		ByteBuffer copyBuffer = ByteBuffer.allocate(buffer.remaining());
+		copyBuffer.put(buffer);
+		copyBuffer.flip();
+
+		buffers.offer(copyBuffer);
+		size += copyBuffer.limit();
+
+		if(writable && size > session.socketContext().getSendHighWaterMark()){
+			writable = false;
+		}
+	}
+
+	/**
+	 * 获取队列中所有等待写出的缓冲区
+	 * 		用于一次聚集写(gathering write)写出队列中的全部数据
+	 * @return 缓冲区数组, 队列为空时返回空数组
+	 */
+	public synchronized ByteBuffer[] toArray(){
+		return buffers.toArray(new ByteBuffer[buffers.size()]);
+	}
+
+	/**
+	 * 记录已写出的数据
+	 * 		队列头部已写完的缓冲区从队列中移除
+	 * @param length 写出的字节数
+	 */
+	public synchronized void written(long length){
+		if(length > 0) {
+			size -= length;
+		}
+
+		ByteBuffer buffer = null;
+		while((buffer = buffers.peek()) != null && !buffer.hasRemaining()){
+			buffers.poll();
+		}
+
+		if(!writable && size <= session.socketContext().getSendLowWaterMark()){
+			writable = true;
+		}
+
+		if(writable || buffers.isEmpty()){
+			notifyAll();
+		}
+	}
+
+	/**
+	 * 开始合并发送
+	 * 		合并期间发送的数据只进入队列, 在最外层的 uncork 时合并为一次写操作.
+	 * 		可以嵌套调用, 每次 cork 都需要对应一次 uncork
+	 */
+	public synchronized void cork(){
+		corkCount++;
+	}
+
+	/**
+	 * 结束合并发送
+	 * @return true: 合并已全部结束, 调用者需要 flush 队列中的数据, false: 仍在外层的合并中
+	 */
+	public synchronized boolean uncork(){
+		if(corkCount > 0) {
+			corkCount--;
+		}
+		return corkCount == 0;
+	}
+
+	/**
+	 * 是否正在合并发送
+	 * 		队列中的数据超过高水位时不再合并, 避免数据在队列中无限堆积
+	 * @return true: 合并中, false: 未合并
+	 */
+	public synchronized boolean isCorked(){
+		return corkCount > 0 && size <= session.socketContext().getSendHighWaterMark();
+	}
+
+	/**
+	 * 标记开始写出队列中的数据
+	 * 		用于异步通道保证同一时刻只有一个写操作
+	 * @return true: 标记成功, 由调用者负责写出, false: 已经有写操作在进行
+	 */
+	public synchronized boolean beginFlush(){
+		if(flushing || released){
+			return false;
+		}
+		flushing = true;
+		return true;
+	}
+
+	/**
+	 * 标记写操作结束
+	 */
+	public synchronized void endFlush(){
+		flushing = false;
+	}
+
+	/**
+	 * 等待会话恢复可写
+	 * @param waitTime 超时时间, 单位:毫秒
+	 * @return true: 可写, false: 超时或会话已关闭
+	 */
+	public synchronized boolean waitWritable(int waitTime){
+		return waitFor(waitTime, false);
+	}
+
+	/**
+	 * 等待队列中的数据全部写出
+	 * @param waitTime 超时时间, 单位:毫秒
+	 * @return true: 队列已空, false: 超时或会话已关闭
+	 */
+	public synchronized boolean waitEmpty(int waitTime){
+		return waitFor(waitTime, true);
+	}
+
+	private boolean waitFor(int waitTime, final boolean empty){
+		final long deadline = System.currentTimeMillis() + waitTime;
+
+		//通过 ManagedBlocker 等待, 在 ForkJoin 线程池中等待时线程池会补偿一个工作线程
+		ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() throws InterruptedException {
+				while(!isReady()) {
+					//剩余时间只计算一次, wait(0) 会永久等待, 负数会抛出异常
+					long remaining = deadline - System.currentTimeMillis();
+					if(remaining <= 0) {
+						break;
+					}
+					SendQueue.this.wait(remaining);
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return isReady() || deadline <= System.currentTimeMillis();
+			}
+
+			private boolean isReady() {
+				return released || (empty ? buffers.isEmpty() : writable) || !session.isConnected();
+			}
+		};
+
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return empty ? buffers.isEmpty() : writable;
+	}
+
+	/**
+	 * 释放队列, 丢弃未写出的数据
+	 */
+	public synchronized void release(){
+		released = true;
+		buffers.clear();
+		size = 0;
+		writable = true;
+		flushing = false;
+		corkCount = 0;
+		notifyAll();
+	}
+}
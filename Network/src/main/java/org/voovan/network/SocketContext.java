@@ -3,12 +3,15 @@ package org.voovan.network;
 import org.voovan.network.handler.SynchronousHandler;
 import org.voovan.network.messagesplitter.TransferSplitter;
 import org.voovan.tools.Chain;
+import org.voovan.tools.SlowTaskWatchdog;
 import org.voovan.tools.TEnv;
 import org.voovan.tools.log.Logger;
+import org.voovan.tools.threadpool.ThreadPool;
 
 import javax.net.ssl.SSLException;
 import java.io.IOException;
 import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 
 /**
  * socket 上下文
@@ -20,6 +23,9 @@ import java.net.SocketOption;
  * Licence: Apache v2 License
  */
 public abstract class SocketContext {
+	//SO_REUSEPORT 选项在 JDK 9 之后才提供, 通过反射获取, 不支持时为 null
+	private final static SocketOption<Boolean> SO_REUSEPORT = getReusePortOption();
+
 	protected String host;
 	protected int port;
 	protected int readTimeout;
@@ -30,6 +36,13 @@ public abstract class SocketContext {
 	protected SSLManager sslManager;
 	protected ConnectModel connectModel;
 	protected int bufferSize = 1024;
+	protected int sendHighWaterMark = 64 * 1024;
+	protected int sendLowWaterMark = 32 * 1024;
+	protected int receiveRingBufferSize = 0;
+	protected int acceptorCount = 1;
+	protected boolean virtualThread = false;
+	protected volatile NetworkMetrics metrics;
+	protected SlowTaskWatchdog watchdog;
 
 	protected int idleInterval = 0;
 
@@ -66,6 +79,17 @@ public abstract class SocketContext {
 		this.handler = new SynchronousHandler();
 	}
 
+	/**
+	 * 初始化会话的接收通道
+	 * 		配置了接收环形缓冲区时, 接收通道使用无锁的单生产者模式
+	 * @param session 会话对象
+	 */
+	protected void initReceiveChannel(IoSession session) {
+		if(receiveRingBufferSize > 0){
+			session.getByteBufferChannel().enableSingleProducer(receiveRingBufferSize);
+		}
+	}
+
 	protected void initSSL(IoSession session) throws SSLException {
 		if (sslManager != null && connectModel == ConnectModel.SERVER) {
 			sslManager.createServerSSLParser(session);
@@ -86,6 +110,12 @@ public abstract class SocketContext {
 		this.sslManager = parentSocketContext.sslManager;
 		this.bufferSize = parentSocketContext.bufferSize;
 		this.idleInterval = parentSocketContext.idleInterval;
+		this.sendHighWaterMark = parentSocketContext.sendHighWaterMark;
+		this.sendLowWaterMark = parentSocketContext.sendLowWaterMark;
+		this.receiveRingBufferSize = parentSocketContext.receiveRingBufferSize;
+		this.virtualThread = parentSocketContext.virtualThread;
+		this.metrics = parentSocketContext.metrics;
+		this.watchdog = parentSocketContext.watchdog;
 	}
 
 	/**
@@ -128,6 +158,187 @@ public abstract class SocketContext {
 		this.bufferSize = bufferSize;
 	}
 
+	/**
+	 * 获取发送队列的高水位
+	 * @return 发送队列的高水位, 单位:字节 (default:65536)
+	 */
+	public int getSendHighWaterMark() {
+		return sendHighWaterMark;
+	}
+
+	/**
+	 * 设置发送队列的高水位
+	 * 		等待发送的数据超过高水位时会话变为不可写
+	 * @param sendHighWaterMark 发送队列的高水位, 单位:字节 (default:65536)
+	 */
+	public void setSendHighWaterMark(int sendHighWaterMark) {
+		this.sendHighWaterMark = sendHighWaterMark;
+	}
+
+	/**
+	 * 获取发送队列的低水位
+	 * @return 发送队列的低水位, 单位:字节 (default:32768)
+	 */
+	public int getSendLowWaterMark() {
+		return sendLowWaterMark;
+	}
+
+	/**
+	 * 设置发送队列的低水位
+	 * 		不可写的会话在等待发送的数据回落到低水位以下时恢复可写
+	 * @param sendLowWaterMark 发送队列的低水位, 单位:字节 (default:32768)
+	 */
+	public void setSendLowWaterMark(int sendLowWaterMark) {
+		this.sendLowWaterMark = sendLowWaterMark;
+	}
+
+	/**
+	 * 获取接收环形缓冲区的大小
+	 * @return 接收环形缓冲区的大小, 单位:字节, 0: 不使用环形缓冲区 (default:0)
+	 */
+	public int getReceiveRingBufferSize() {
+		return receiveRingBufferSize;
+	}
+
+	/**
+	 * 设置接收环形缓冲区的大小
+	 * 		大于 0 时, 读取线程不加锁地将数据写入环形缓冲区, 消息分割和解析时再转移到接收通道,
+	 * 		读取线程不会因为业务线程持有接收通道的锁而阻塞. 需要在连接启动前设置.
+	 * @param receiveRingBufferSize 接收环形缓冲区的大小, 单位:字节, 0: 不使用环形缓冲区 (default:0)
+	 */
+	public void setReceiveRingBufferSize(int receiveRingBufferSize) {
+		this.receiveRingBufferSize = receiveRingBufferSize;
+	}
+
+	/**
+	 * 获取服务端接入循环的数量
+	 * @return 接入循环的数量 (default:1)
+	 */
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
+	/**
+	 * 设置服务端接入循环的数量
+	 * 		大于 1 时, 使用 SO_REUSEPORT 在同一个端口上监听多个 Socket, 由内核将新连接分配到各个接入循环,
+	 * 		减少多核下接入的竞争. 只对 NioServerSocket 和 AioServerSocket 有效, UdpServerSocket 忽略这个设置,
+	 * 		需要在启动监听前设置. 当前 JDK 或操作系统不支持 SO_REUSEPORT 时只使用一个接入循环.
+	 * @param acceptorCount 接入循环的数量
+	 */
+	public void setAcceptorCount(int acceptorCount) {
+		this.acceptorCount = acceptorCount;
+	}
+
+	/**
+	 * 是否在虚拟线程中执行会话事件
+	 * @return true: 虚拟线程, false: 公用线程池 (default:false)
+	 */
+	public boolean isVirtualThread() {
+		return virtualThread;
+	}
+
+	/**
+	 * 设置是否在虚拟线程中执行会话事件
+	 * 		为 true 时, 会话的事件在虚拟线程中执行, IoHandler 中的 JDBC, HTTP 客户端等阻塞调用不会占用平台线程.
+	 * 		当前 JDK 不支持虚拟线程 (JDK 21 之前) 时仍然使用公用线程池.
+	 * @param virtualThread true: 虚拟线程, false: 公用线程池
+	 */
+	public void setVirtualThread(boolean virtualThread) {
+		if(virtualThread && !ThreadPool.isVirtualThreadSupported()){
+			Logger.warn("Virtual thread is not supported, use the thread pool");
+		}
+		this.virtualThread = virtualThread;
+	}
+
+	/**
+	 * 是否启用网络 IO 统计
+	 * @return true: 启用, false: 未启用 (default:false)
+	 */
+	public boolean isMetricsEnabled() {
+		return metrics != null;
+	}
+
+	/**
+	 * 设置是否启用网络 IO 统计
+	 * 		服务端需要在启动监听前设置, 接入的会话共用服务端的统计对象
+	 * @param metricsEnabled true: 启用, false: 不启用
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		if(!metricsEnabled) {
+			this.metrics = null;
+		} else if(this.metrics == null) {
+			this.metrics = new NetworkMetrics();
+		}
+	}
+
+	/**
+	 * 获取网络 IO 统计
+	 * @return 统计对象, 未启用时返回 null
+	 */
+	public NetworkMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 设置网络 IO 统计对象
+	 * 		多个客户端连接可以共用同一个统计对象
+	 * @param metrics 统计对象, null: 不启用
+	 */
+	public void setMetrics(NetworkMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 获取慢事件检测
+	 * @return 慢事件检测对象, 未启用时返回 null
+	 */
+	public SlowTaskWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * 设置慢事件检测
+	 * 		启用后按 "处理器类名#事件名" 记录每个事件的处理耗时, 处理时间超过阈值的事件会被采样线程栈.
+	 * 		服务端需要在启动监听前设置, 接入的会话共用服务端的检测对象
+	 * @param watchdog 慢事件检测对象, null: 不启用
+	 */
+	public void setWatchdog(SlowTaskWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	/**
+	 * 是否支持 SO_REUSEPORT
+	 * @return true: 支持, false: 不支持
+	 */
+	public static boolean isReusePortSupported() {
+		return SO_REUSEPORT != null;
+	}
+
+	/**
+	 * 获取实际使用的接入循环数量
+	 * @return 不支持 SO_REUSEPORT 时返回 1
+	 */
+	protected int acceptors() {
+		return isReusePortSupported() && acceptorCount > 1 ? acceptorCount : 1;
+	}
+
+	/**
+	 * 获取 SO_REUSEPORT 选项
+	 * @return SO_REUSEPORT 选项, 不支持时返回 null
+	 */
+	protected static SocketOption<Boolean> reusePortOption() {
+		return SO_REUSEPORT;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * 无参数构造函数
 	 */
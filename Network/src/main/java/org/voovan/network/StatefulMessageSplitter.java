@@ -0,0 +1,36 @@
+package org.voovan.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 有状态的消息分割类
+ * 		分割状态按会话保存在 MessageLoader 中, 数据到达时从上一次扫描的位置继续分割,
+ * 		不需要每次重新扫描整个缓冲区.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface StatefulMessageSplitter<T> extends MessageSplitter {
+
+	/**
+	 * 创建会话的分割状态
+	 * @param session  session 对象
+	 * @return 分割状态对象
+	 */
+	public T createState(IoSession session);
+
+	/**
+	 * 判断消息是否可分割
+	 * 		缓冲区总是从消息的起始位置开始, 分割出消息后由分割器重置分割状态
+	 * @param session  session 对象
+	 * @param byteBuffer 缓冲数据
+	 * @param state 会话的分割状态
+	 * @return   返回: 大于0或者等于0可区分,小于不0可区分
+	 * 					返回的int数据值,则被用于从缓冲区取值给onRecive函数作为参数的的数据的长度.
+	 */
+	public int canSplite(IoSession session, ByteBuffer byteBuffer, T state);
+
+}
@@ -1,14 +1,22 @@
 package org.voovan.network.aio;
 
+import org.voovan.Global;
 import org.voovan.network.EventTrigger;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Aio Accept 事件
- * 
+ * 		accept 失败 (例如文件句柄耗尽) 时按退避时间延迟后再次接收, 避免失败后立即重试形成忙循环
+ *
  * @author helyho
  *
  * Voovan Framework.
@@ -17,14 +25,36 @@ import java.nio.channels.CompletionHandler;
  */
 public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSocketChannel, AioServerSocket>{
 
-	public AcceptCompletionHandler(){
+	//accept 失败后重试的最小和最大延迟, 单位: 毫秒
+	private static final int MIN_RETRY_DELAY = 10;
+	private static final int MAX_RETRY_DELAY = 1000;
+
+	private AsynchronousServerSocketChannel serverSocketChannel;
+	private int retryDelay = 0;
+
+	/**
+	 * 构造函数
+	 * @param serverSocketChannel 接收连接的 ServerSocketChannel
+	 */
+	public AcceptCompletionHandler(AsynchronousServerSocketChannel serverSocketChannel){
+		this.serverSocketChannel = serverSocketChannel;
+	}
+
+	/**
+	 * 获取接收连接的 ServerSocketChannel
+	 * @return ServerSocketChannel 对象
+	 */
+	public AsynchronousServerSocketChannel getServerSocketChannel() {
+		return serverSocketChannel;
 	}
 	
 	@Override
 	public void completed(AsynchronousSocketChannel socketChannel, AioServerSocket serverSocket) {
 		try {
+			retryDelay = 0;
+
 			//接续接收 accept 请求
-			serverSocket.catchAccept();
+			serverSocket.catchAccept(this);
 			
 			AioSocket socket = new AioSocket(serverSocket,socketChannel);
 			
@@ -33,16 +63,45 @@ public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSo
 			
 			
 		} catch (IOException e) {
-			EventTrigger.fireExceptionThread(null, e);
+			//连接还没有建立会话, 无法触发会话的 onException 事件
+			Logger.error("Accept AsynchronousSocketChannel failed", e);
 		}
 	}
 
 	@Override
-	public void failed(Throwable exc, AioServerSocket attachment) {
+	public void failed(Throwable exc, AioServerSocket serverSocket) {
+		//监听关闭时未完成的 accept 操作会以异常结束
+		if(exc instanceof AsynchronousCloseException || exc instanceof ClosedChannelException){
+			return;
+		}
+
 		if(exc instanceof Exception){
-			//触发 onException 事件
-			EventTrigger.fireExceptionThread(null, ( Exception)exc);
+			Logger.error("Accept AsynchronousSocketChannel failed", (Exception)exc);
+		}
+
+		if(serverSocketChannel.isOpen()) {
+			retryAccept(serverSocket);
 		}
 	}
 
+	/**
+	 * 延迟后再次接收连接
+	 * 		连续失败时延迟时间逐次加倍, 直到最大延迟, 成功接收连接后重置
+	 * @param serverSocket AioServerSocket 对象
+	 */
+	private void retryAccept(final AioServerSocket serverSocket) {
+		retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY), MAX_RETRY_DELAY);
+
+		final AcceptCompletionHandler completionHandler = this;
+		Global.getHashWheelTimer().addTask(new HashWheelTask() {
+			@Override
+			public void run() {
+				this.cancel();
+				if(serverSocketChannel.isOpen()) {
+					serverSocket.catchAccept(completionHandler);
+				}
+			}
+		}, retryDelay, TimeUnit.MILLISECONDS, false);
+	}
+
 }
@@ -1,7 +1,5 @@
 package org.voovan.network.aio;
 
-import org.voovan.Global;
-import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
 import org.voovan.tools.TEnv;
 import org.voovan.tools.log.Logger;
@@ -11,6 +9,9 @@ import java.net.InetSocketAddress;
 import java.net.SocketOption;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
 
 /**
  * AioServerSocket 监听
@@ -25,6 +26,8 @@ public class AioServerSocket extends SocketContext{
 
 	private AsynchronousServerSocketChannel serverSocketChannel;
 	private AcceptCompletionHandler acceptCompletionHandler;
+	private AsynchronousChannelGroup asynchronousChannelGroup;
+	private List<AsynchronousServerSocketChannel> reusePortChannels;
 
 	/**
 	 * 构造函数
@@ -53,9 +56,11 @@ public class AioServerSocket extends SocketContext{
 	}
 
 	private void init() throws IOException {
-		AsynchronousChannelGroup asynchronousChannelGroup = AsynchronousChannelGroup.withThreadPool(Global.getThreadPool());
+		//通道组要求线程池的队列没有上限, 不能使用有拒绝策略的公用线程池
+		asynchronousChannelGroup = AsynchronousChannelGroup.withThreadPool(Executors.newCachedThreadPool());
 		serverSocketChannel = AsynchronousServerSocketChannel.open(asynchronousChannelGroup);
-		acceptCompletionHandler = new AcceptCompletionHandler();
+		acceptCompletionHandler = new AcceptCompletionHandler(serverSocketChannel);
+		reusePortChannels = new ArrayList<AsynchronousServerSocketChannel>();
 	}
 
 	@Override
@@ -86,7 +91,15 @@ public class AioServerSocket extends SocketContext{
 	 * 捕获 Aio Accept 事件
 	 */
 	protected void catchAccept(){
-		serverSocketChannel.accept(this, acceptCompletionHandler);
+		catchAccept(acceptCompletionHandler);
+	}
+
+	/**
+	 * 在 AcceptCompletionHandler 对应的 ServerSocketChannel 上捕获 Aio Accept 事件
+	 * @param completionHandler AcceptCompletionHandler 对象
+	 */
+	protected void catchAccept(AcceptCompletionHandler completionHandler){
+		completionHandler.getServerSocketChannel().accept(this, completionHandler);
 	}
 
 	/**
@@ -111,8 +124,28 @@ public class AioServerSocket extends SocketContext{
 	@Override
 	public void syncStart() throws IOException {
 		InetSocketAddress socketAddress = new InetSocketAddress(host, port);
+
+		int acceptors = acceptors();
+		if(acceptors > 1) {
+			try {
+				serverSocketChannel.setOption(reusePortOption(), true);
+			} catch (UnsupportedOperationException e) {
+				Logger.warn("SO_REUSEPORT is not supported, use one acceptor");
+				acceptors = 1;
+			}
+		}
+
 		serverSocketChannel.bind(socketAddress, 1000);
 		catchAccept();
+
+		//配置了多个接入循环时, 使用 SO_REUSEPORT 在同一个端口上监听, 各自接收连接
+		for(int i=1; i<acceptors; i++){
+			AsynchronousServerSocketChannel reusePortChannel = AsynchronousServerSocketChannel.open(asynchronousChannelGroup);
+			reusePortChannel.setOption(reusePortOption(), true);
+			reusePortChannel.bind(socketAddress, 1000);
+			reusePortChannels.add(reusePortChannel);
+			catchAccept(new AcceptCompletionHandler(reusePortChannel));
+		}
 	}
 
 	@Override
@@ -143,13 +176,17 @@ public class AioServerSocket extends SocketContext{
 		
 		if(serverSocketChannel!=null && serverSocketChannel.isOpen()){
 			try{
-				//触发 DisConnect 事件
-				EventTrigger.fireDisconnectThread(null);
-
 				//关闭 Socket 连接
 				if(serverSocketChannel.isOpen()){
 					serverSocketChannel.close();
 				}
+
+				for(AsynchronousServerSocketChannel reusePortChannel : reusePortChannels){
+					reusePortChannel.close();
+				}
+
+				//已接入的连接关闭后通道组的线程池才会结束
+				asynchronousChannelGroup.shutdown();
 				return true;
 			}catch(IOException e){
 				Logger.error("SocketChannel close failed",e);
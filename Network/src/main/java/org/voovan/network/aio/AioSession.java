@@ -2,6 +2,7 @@ package org.voovan.network.aio;
 
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.SendQueue;
 import org.voovan.network.exception.RestartException;
 import org.voovan.tools.log.Logger;
 
@@ -9,9 +10,6 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
-import java.nio.channels.WritePendingException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
  * NIO 会话连接对象
@@ -112,30 +110,55 @@ public class AioSession extends IoSession<AioSocket>  {
 
 	@Override
 	protected int send0(ByteBuffer buffer) throws IOException {
+		return send0(new ByteBuffer[]{buffer});
+	}
+
+	@Override
+	protected int send0(ByteBuffer[] buffers) throws IOException {
 		int totalSendByte = 0;
-		if (isConnected() && buffer != null) {
-			//循环发送直到全部内容发送完毕
-			while(isConnected() && buffer.remaining()!=0){
-				try {
-					Future<Integer> sendResult = socketChannel.write(buffer);
-					if(sendResult==null){
-						break;
-					}
-
-					try {
-						totalSendByte += sendResult.get();
-					} catch (InterruptedException | ExecutionException e) {
-						close();
-					}
-
-				}catch(WritePendingException e){
-					continue;
+		if (isConnected() && buffers != null) {
+			SendQueue sendQueue = getSendQueue();
+
+			//数据进入发送队列
+			synchronized (sendQueue) {
+				for (ByteBuffer buffer : buffers) {
+					totalSendByte += buffer.remaining();
+					sendQueue.add(buffer);
 				}
 			}
+
+			//合并发送中的数据在 flush 时写出
+			if (!sendQueue.isCorked()) {
+				flush();
+			}
+
+			//超过高水位时等待对端接收
+			if (!sendQueue.isWritable()) {
+				sendQueue.waitWritable(socketContext().getReadTimeout());
+			}
 		}
 		return totalSendByte;
 	}
 
+	/**
+	 * 将发送队列中的数据聚集写入通道
+	 * 		没有正在进行的写操作时发起异步写, 否则由正在进行的写操作完成后继续写出
+	 * @throws IOException IO 异常
+	 */
+	@Override
+	protected void flush() throws IOException {
+		SendQueue sendQueue = getSendQueue();
+		ByteBuffer[] buffers = null;
+		synchronized (sendQueue) {
+			if (sendQueue.isEmpty() || !sendQueue.beginFlush()) {
+				return;
+			}
+			buffers = sendQueue.toArray();
+		}
+
+		socketContext().catchWrite(buffers);
+	}
+
 	@Override
 	protected MessageSplitter getMessagePartition() {
 		return this.socketContext().messageSplitter();
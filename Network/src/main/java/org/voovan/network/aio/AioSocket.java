@@ -18,6 +18,7 @@ import java.nio.channels.AsynchronousSocketChannel;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * AioSocket 连接
@@ -33,8 +34,17 @@ public class AioSocket extends SocketContext {
 	private AsynchronousSocketChannel	socketChannel;
 	private AioSession					session;
 	private ReadCompletionHandler		readCompletionHandler;
+	private WriteCompletionHandler		writeCompletionHandler;
 	private ByteBuffer readByteBuffer;
 
+	//接收缓冲区的上限, 超过后暂停读取, 0: 不限制
+	private volatile int receiveLimit = 0;
+	private AtomicBoolean readSuspended = new AtomicBoolean(false);
+
+	//每次读取到数据或者连接关闭时递增, 用于不通过消息分割器直接读取接收缓冲区的线程等待数据
+	private final Object readSignal = new Object();
+	private long readSequence = 0;
+
 	/**
 	 * 构造函数
 	 *
@@ -68,6 +78,7 @@ public class AioSocket extends SocketContext {
 		session = new AioSession(this);
 
 		readCompletionHandler = new ReadCompletionHandler(this,  session.getByteBufferChannel());
+		writeCompletionHandler = new WriteCompletionHandler(this);
 		connectModel = ConnectModel.CLIENT;
 	}
 
@@ -85,6 +96,7 @@ public class AioSocket extends SocketContext {
 		session = new AioSession(this);
 
 		readCompletionHandler = new ReadCompletionHandler(this, session.getByteBufferChannel());
+		writeCompletionHandler = new WriteCompletionHandler(this);
 		connectModel = ConnectModel.SERVER;
 	}
 
@@ -137,6 +149,107 @@ public class AioSocket extends SocketContext {
 		}
 	}
 
+	/**
+	 * 读取完成后继续捕获 Aio Read
+	 * 		接收缓冲区超过上限时暂停读取, 由 resumeRead 在缓冲区被消费后恢复
+	 * @param buffer 缓冲区
+	 */
+	protected void continueRead(ByteBuffer buffer) {
+		if(receiveLimit > 0 && session.getByteBufferChannel().size() >= receiveLimit) {
+			readSuspended.set(true);
+
+			//再次检查, 避免与 resumeRead 同时发生时错过恢复
+			if(session.getByteBufferChannel().size() >= receiveLimit || !readSuspended.compareAndSet(true, false)) {
+				return;
+			}
+		}
+
+		catchRead(buffer);
+	}
+
+	/**
+	 * 获取接收缓冲区的上限
+	 * @return 接收缓冲区的上限, 单位: 字节, 0: 不限制
+	 */
+	public int getReceiveLimit() {
+		return receiveLimit;
+	}
+
+	/**
+	 * 设置接收缓冲区的上限
+	 * 		接收缓冲区中未读取的数据超过上限时暂停从 Socket 读取, 使发送方受 TCP 流量控制约束
+	 * @param receiveLimit 接收缓冲区的上限, 单位: 字节, 0: 不限制
+	 */
+	public void setReceiveLimit(int receiveLimit) {
+		this.receiveLimit = receiveLimit;
+		resumeRead();
+	}
+
+	/**
+	 * 恢复暂停的读取
+	 * 		读取接收缓冲区中的数据后调用, 缓冲区低于上限时继续从 Socket 读取
+	 */
+	public void resumeRead() {
+		if(readSuspended.get() &&
+				(receiveLimit <= 0 || session.getByteBufferChannel().size() < receiveLimit) &&
+				readSuspended.compareAndSet(true, false)) {
+			catchRead(readByteBuffer);
+		}
+	}
+
+	/**
+	 * 通知等待数据的线程
+	 * 		读取到数据或者连接关闭时调用
+	 */
+	protected void signalRead() {
+		synchronized (readSignal) {
+			readSequence++;
+			readSignal.notifyAll();
+		}
+	}
+
+	/**
+	 * 获取读取的序号
+	 * 		在检查接收缓冲区之前获取, 作为 awaitRead 的参数, 避免错过检查之后到达的数据
+	 * @return 读取的序号
+	 */
+	public long getReadSequence() {
+		synchronized (readSignal) {
+			return readSequence;
+		}
+	}
+
+	/**
+	 * 等待新的数据到达或者连接关闭
+	 * @param sequence 检查接收缓冲区之前通过 getReadSequence 获取的序号
+	 * @param waitTime 超时时间, 单位: 毫秒
+	 * @throws InterruptedException 线程被中断
+	 */
+	public void awaitRead(long sequence, long waitTime) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + waitTime;
+		synchronized (readSignal) {
+			while (readSequence == sequence) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return;
+				}
+				readSignal.wait(remaining);
+			}
+		}
+	}
+
+	/**
+	 * 捕获 Aio Write
+	 * @param buffers 缓冲区数组
+	 */
+	protected void catchWrite(ByteBuffer[] buffers) {
+		try {
+			socketChannel.write(buffers, 0, buffers.length, 0, TimeUnit.MILLISECONDS, buffers, writeCompletionHandler);
+		} catch (RuntimeException e) {
+			writeCompletionHandler.failed(e, buffers);
+		}
+	}
+
 	/**
 	 * 获取 Session 对象
 	 * @return  Session 对象
@@ -169,6 +282,7 @@ public class AioSocket extends SocketContext {
 	 */
 	public void syncStart() throws IOException {
 
+		initReceiveChannel(session);
 		initSSL(session);
 
         try {
@@ -190,6 +304,7 @@ public class AioSocket extends SocketContext {
 	}
 
 	protected void acceptStart() throws IOException {
+		initReceiveChannel(session);
 		initSSL(session);
 
 		//捕获输入事件
@@ -271,15 +386,21 @@ public class AioSocket extends SocketContext {
 			 try {
 				// 关闭 Socket 连接
 				 if (isConnected()) {
+					 //等待发送队列中的数据写出
+					 session.flush();
+					 session.getSendQueue().waitEmpty(this.getReadTimeout());
+
 					 // 触发 DisConnect 事件
 					 EventTrigger.fireDisconnectThread(session);
 					 socketChannel.close();
+					 session.getSendQueue().release();
+					 signalRead();
 
 					 //如果有未读数据等待数据处理完成
 					 session.wait(this.getReadTimeout());
 
-					 readCompletionHandler.release();
 					 session.getByteBufferChannel().release();
+					 signalRead();
 					 TByteBuffer.release(readByteBuffer);
 					 if(session.getSSLParser()!=null){
 					 	 session.getSSLParser().release();
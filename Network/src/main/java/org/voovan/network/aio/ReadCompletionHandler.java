@@ -3,6 +3,7 @@ package org.voovan.network.aio;
 import org.voovan.network.EventTrigger;
 import org.voovan.network.HeartBeat;
 import org.voovan.network.MessageLoader;
+import org.voovan.network.NetworkMetrics;
 import org.voovan.tools.ByteBufferChannel;
 
 import java.io.IOException;
@@ -22,7 +23,6 @@ import java.nio.channels.CompletionHandler;
  */
 public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBuffer>{
 	private AioSocket aioSocket;
-	private ByteBufferChannel netByteBufferChannel;
 	private ByteBufferChannel appByteBufferChannel;
 	private AioSession session;
 
@@ -36,10 +36,6 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
 	public void completed(Integer length, ByteBuffer readTempBuffer) {
 		try {
 
-			if(netByteBufferChannel== null && session.getSSLParser()!=null) {
-				netByteBufferChannel = new ByteBufferChannel(session.socketContext().getBufferSize());
-			}
-
 			// 如果对端连接关闭,或者 session 关闭,则直接调用 session 的关闭
 			if (MessageLoader.isStreamEnd(readTempBuffer, length) || !session.isConnected()) {
 				session.getMessageLoader().setStopType(MessageLoader.StopType.STREAM_END);
@@ -48,15 +44,15 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
 				readTempBuffer.flip();
 
 				if (length > 0) {
-
-					if(session.getHeartBeat()!=null) {
-						session.getMessageLoader().pause();
+					NetworkMetrics metrics = session.getMetrics();
+					if(metrics != null) {
+						metrics.addBytesRead(length);
 					}
 
 					// 接收数据
-					if(session.getSSLParser()!=null && session.getSSLParser().isHandShakeDone()){
-						netByteBufferChannel.writeEnd(readTempBuffer);
-						session.getSSLParser().unWarpByteBufferChannel(session, netByteBufferChannel, appByteBufferChannel);
+					if(session.getSSLParser()!=null){
+						//握手未完成时推进握手, 完成后解包到接收通道
+						session.getSSLParser().receive(readTempBuffer);
 					}else{
 						appByteBufferChannel.writeEnd(readTempBuffer);
 					}
@@ -64,21 +60,18 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
                     //检查心跳
                     HeartBeat.interceptHeartBeat(session, appByteBufferChannel);
 
-					if(session.getHeartBeat()!=null) {
-                        session.getMessageLoader().unpause();
-					}
-
 					if(appByteBufferChannel.size() > 0) {
 						// 触发 onReceive 事件
 						EventTrigger.fireReceiveThread(session);
+						aioSocket.signalRead();
 					}
 					
 					// 接收完成后重置buffer对象
 					readTempBuffer.clear();
 
-					// 继续接收 Read 请求
+					// 继续接收 Read 请求, 接收缓冲区超过上限时暂停
 					if(aioSocket.isConnected()) {
-						aioSocket.catchRead(readTempBuffer);
+						aioSocket.continueRead(readTempBuffer);
 					}
 				}
 			}
@@ -111,10 +104,4 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
 			EventTrigger.fireExceptionThread(session, (Exception)exc);
 		}
 	}
-
-	public void release(){
-		if(netByteBufferChannel!=null) {
-			netByteBufferChannel.release();
-		}
-	}
 }
@@ -0,0 +1,69 @@
+package org.voovan.network.aio;
+
+import org.voovan.network.EventTrigger;
+import org.voovan.network.NetworkMetrics;
+import org.voovan.network.SendQueue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+
+/**
+ * Aio 写入事件
+ * 		一次聚集写操作完成后继续写出发送队列中剩余的缓冲区, 队列写空后结束
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WriteCompletionHandler implements CompletionHandler<Long,  ByteBuffer[]>{
+	private AioSocket aioSocket;
+	private AioSession session;
+
+	public WriteCompletionHandler(AioSocket aioSocket){
+		this.aioSocket = aioSocket;
+		this.session = aioSocket.getSession();
+	}
+
+	@Override
+	public void completed(Long length, ByteBuffer[] buffers) {
+		SendQueue sendQueue = session.getSendQueue();
+		ByteBuffer[] nextBuffers = null;
+
+		NetworkMetrics metrics = session.getMetrics();
+		if (metrics != null) {
+			metrics.addBytesWritten(length);
+		}
+
+		synchronized (sendQueue) {
+			sendQueue.written(length);
+			nextBuffers = sendQueue.toArray();
+			if (nextBuffers.length == 0) {
+				sendQueue.endFlush();
+			}
+		}
+
+		// 继续写出队列中的数据
+		if (nextBuffers.length > 0) {
+			aioSocket.catchWrite(nextBuffers);
+		}
+	}
+
+	@Override
+	public void failed(Throwable exc,  ByteBuffer[] buffers) {
+		session.getSendQueue().release();
+
+		if(!(exc instanceof AsynchronousCloseException) &&
+				!(exc instanceof ClosedChannelException) &&
+				exc instanceof Exception &&
+				!exc.getStackTrace()[0].getClassName().contains("sun.nio.ch")){
+			//触发 onException 事件
+			EventTrigger.fireExceptionThread(session, (Exception)exc);
+		}
+
+		session.close();
+	}
+}
@@ -1,15 +1,19 @@
 package org.voovan.network.messagesplitter;
 
 import org.voovan.network.IoSession;
-import org.voovan.network.MessageSplitter;
-import org.voovan.tools.TByteBuffer;
-import org.voovan.tools.TString;
+import org.voovan.network.StatefulMessageSplitter;
+import org.voovan.tools.log.Logger;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Http 消息分割类
+ *      按会话保存分割状态, 数据到达时从上一次扫描的位置继续解析报文头,
+ *      报文头完整后交给解析器, 报文体由解析器从会话的缓冲区中流式读取,
+ *      解析器读取完一个报文后, 缓冲区中剩余的数据从下一个报文 (管道化的请求) 的起始位置重新分割.
+ *      设置了报文头的最大长度时, 超过长度的请求返回 413 后关闭连接.
  *
  * @author helyho
  *
@@ -17,88 +21,272 @@ import java.nio.ByteBuffer;
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class HttpMessageSplitter implements MessageSplitter {
+public class HttpMessageSplitter implements StatefulMessageSplitter<HttpMessageSplitter.SplitState> {
 
-    private static final String	BODY_TAG	= "\r\n\r\n";
-    private int result = -1;
+    private static final int FRAME_ERROR = -2;
 
-    private int contentLength = -1;
-    boolean isChunked = false;
+    private static final byte[] HTTP_PROTOCOL = "http/".getBytes();
+    private static final byte[] ENTITY_TOO_LARGE = ("HTTP/1.1 413 Request Entity Too Large\r\n" +
+            "Connection: close\r\nContent-Length: 0\r\n\r\n").getBytes();
 
+    //报文头的最大长度, 0: 不限制
+    private long maxHeadSize;
+
+    /**
+     * 构造函数
+     *      不限制报文头的长度
+     */
+    public HttpMessageSplitter() {
+        this(0);
+    }
+
+    /**
+     * 构造函数
+     * @param maxHeadSize 报文头的最大长度, 单位: 字节, 0: 不限制. 报文体由解析器流式读取, 不受这个长度的限制
+     */
+    public HttpMessageSplitter(long maxHeadSize) {
+        this.maxHeadSize = maxHeadSize;
+    }
+
+    /**
+     * 获取报文头的最大长度
+     * @return 报文头的最大长度, 单位: 字节, 0: 不限制
+     */
+    public long getMaxHeadSize() {
+        return maxHeadSize;
+    }
+
+    @Override
+    public SplitState createState(IoSession session) {
+        return new SplitState();
+    }
 
     @Override
     public int canSplite(IoSession session, ByteBuffer byteBuffer) {
+        return canSplite(session, byteBuffer, createState(session));
+    }
+
+    @Override
+    public int canSplite(IoSession session, ByteBuffer byteBuffer, SplitState state) {
 
         if(byteBuffer.limit()==0){
             return -1;
         }
 
         if( "WebSocket".equals(session.getAttribute(0x1111)) ){
-            result = isWebSocketFrame(byteBuffer);
-        }else{
-            result = isHttpFrame(byteBuffer);
-
-            if(result>0){
-                result = 0;
-            }else if(result == -1){
-                session.close();
-            }
+            return isWebSocketFrame(byteBuffer);
         }
 
+        //缓冲区被直接读取过, 重新开始分割
+        if(state.position > byteBuffer.limit()){
+            state.reset();
+        }
 
+        int result = isHttpHead(byteBuffer, state);
 
-        return result;
-    }
-
-    private int isHttpFrame(ByteBuffer byteBuffer){
-        int bodyTagIndex = 0;
-        byte[] buffer = TByteBuffer.toArray(byteBuffer);
-        StringBuilder stringBuilder = new StringBuilder();
-        String httpHead = null;
+        if(result == FRAME_ERROR){
+            state.reset();
+            session.close();
+            return -1;
+        }
 
-        //非 HTTP 请求直接关闭连接
-        int httpMarkIndex = TByteBuffer.indexOf(byteBuffer, "HTTP/1.".getBytes());
-        int lineSpliterIndex = TByteBuffer.indexOf(byteBuffer, "\r\n".getBytes());
-        if(httpMarkIndex < 0 || httpMarkIndex >= lineSpliterIndex) {
+        //报文头不完整时缓冲区中只有这一个报文头的数据
+        long headSize = result >= 0 ? result : byteBuffer.limit();
+        if(maxHeadSize > 0 && headSize > maxHeadSize){
+            Logger.warn("HTTP head exceeds the max size " + maxHeadSize + ", the connection will be closed.");
+            if(state.isRequest) {
+                session.send(ByteBuffer.wrap(ENTITY_TOO_LARGE));
+            }
+            state.reset();
+            session.close();
             return -1;
         }
 
+        if(result >= 0){
+            //报文头完整, 由解析器从会话的缓冲区中流式读取报文体
+            state.reset();
+            return 0;
+        }
+
+        return -1;
+    }
 
-        for(int x=0;x<buffer.length-3;x++){
-            if(buffer[x] == '\r' && buffer[x+1] == '\n' && buffer[x+2] == '\r' && buffer[x+3] == '\n'){
-                bodyTagIndex = x + 3;
-                httpHead = stringBuilder.toString();
-                break;
-            }else{
-                stringBuilder.append((char)buffer[x]);
+    /**
+     * 从上一次扫描的位置继续判断缓冲区中是否有一个完整的 HTTP 报文头
+     * @param byteBuffer 缓冲区对象
+     * @param state 分割状态
+     * @return 报文头的长度, -1: 报文头不完整, -2: 不是 HTTP 报文
+     */
+    private int isHttpHead(ByteBuffer byteBuffer, SplitState state){
+        while(true) {
+            int lineEnd = nextLine(byteBuffer, state);
+            if (lineEnd < 0) {
+                //首行不完整时检查已到达的部分, 非 HTTP 的数据尽早关闭连接
+                if (state.lineCount == 0 && !isFirstLinePrefix(byteBuffer, state.lineStart, byteBuffer.limit(), state)) {
+                    return FRAME_ERROR;
+                }
+                return -1;
             }
-        }
 
-        if(httpHead !=null && isHttpHead(httpHead)) {
+            if (lineEnd == state.lineStart) {
+                //报文前不允许出现空行
+                if (state.lineCount == 0) {
+                    return FRAME_ERROR;
+                }
+                return state.position;
+            }
 
-            String[] contentLengthLines = TString.searchByRegex(httpHead, "Content-Length: \\d+");
-            if (contentLengthLines.length > 1) {
-                contentLength = Integer.parseInt(contentLengthLines[0].split(" ")[1].trim());
+            boolean isValid = state.lineCount == 0 ?
+                    parseFirstLine(byteBuffer, state.lineStart, lineEnd, state) :
+                    isHeaderLine(byteBuffer, state.lineStart, lineEnd);
+            if (!isValid) {
+                return FRAME_ERROR;
             }
 
-            isChunked = httpHead.contains("chunked");
-            return bodyTagIndex;
+            state.lineCount++;
+            state.lineStart = state.position;
+        }
+    }
+
+    /**
+     * 从上一次扫描的位置查找行尾
+     * @param byteBuffer 缓冲区对象
+     * @param state 分割状态, 找到行尾时 position 指向下一行的起始位置
+     * @return 行内容的结束位置 (不包含 \r\n), -1: 行不完整
+     */
+    private static int nextLine(ByteBuffer byteBuffer, SplitState state){
+        int limit = byteBuffer.limit();
+        for(int i = state.position; i < limit; i++){
+            if(byteBuffer.get(i) == '\n'){
+                state.position = i + 1;
+                return i > state.lineStart && byteBuffer.get(i - 1) == '\r' ? i - 1 : i;
+            }
+        }
+
+        state.position = limit;
+        return -1;
+    }
+
+    /**
+     * 判断不完整的首行是否可能是 HTTP 首行
+     *      响应行以 HTTP/ 开头, 请求行以大写的方法名和空格开头
+     * @param byteBuffer 缓冲区对象
+     * @param start 行的起始位置
+     * @param end 已到达数据的结束位置
+     * @param state 分割状态, 可以确定是请求行时设置 isRequest
+     * @return true: 可能是 HTTP 首行, false: 不是 HTTP 首行
+     */
+    private static boolean isFirstLinePrefix(ByteBuffer byteBuffer, int start, int end, SplitState state){
+        int protocolLength = Math.min(end - start, HTTP_PROTOCOL.length);
+        if(matchIgnoreCase(byteBuffer, start, start + protocolLength, Arrays.copyOf(HTTP_PROTOCOL, protocolLength))){
+            return true;
+        }
 
-        }else{
-            return -2;
+        for(int i = start; i < end; i++){
+            byte value = byteBuffer.get(i);
+            if(value == ' '){
+                state.isRequest = i > start;
+                return state.isRequest;
+            } else if(value < 'A' || value > 'Z'){
+                return false;
+            }
         }
+
+        return true;
     }
 
-    private boolean isHttpHead(String str){
-        //判断是否是 HTTP 头
-        int firstLineIndex = str.indexOf("\r\n");
-        if(firstLineIndex != -1) {
-            String firstLine = str.substring(0, firstLineIndex);
-            if (TString.regexMatch(firstLine, "HTTP\\/\\d\\.\\d\\s\\d{3}\\s.*") <= 0) {
-                if (TString.regexMatch(firstLine, "^[A-Z]*\\s.*\\sHTTP\\/\\d\\.\\d") <= 0) {
+    /**
+     * 解析首行, 请求行: METHOD PATH HTTP/x.x, 响应行: HTTP/x.x CODE MESSAGE
+     * @param byteBuffer 缓冲区对象
+     * @param start 行的起始位置
+     * @param end 行的结束位置
+     * @param state 分割状态
+     * @return true: 合法的 HTTP 首行, false: 非法的 HTTP 首行
+     */
+    private static boolean parseFirstLine(ByteBuffer byteBuffer, int start, int end, SplitState state){
+        if(matchIgnoreCase(byteBuffer, start, end, HTTP_PROTOCOL) && isVersion(byteBuffer, start, end)){
+            //响应行
+            int codeStart = start + HTTP_PROTOCOL.length + 4;
+            if(end < codeStart + 3 || byteBuffer.get(codeStart - 1) != ' '){
+                return false;
+            }
+
+            for(int i = codeStart; i < codeStart + 3; i++){
+                if(!isDigit(byteBuffer.get(i))){
                     return false;
                 }
             }
+            state.isRequest = false;
+            return true;
+        }
+
+        //请求行
+        int methodEnd = start;
+        while(methodEnd < end && byteBuffer.get(methodEnd) >= 'A' && byteBuffer.get(methodEnd) <= 'Z'){
+            methodEnd++;
+        }
+
+        if(methodEnd == start || methodEnd == end || byteBuffer.get(methodEnd) != ' '){
+            return false;
+        }
+
+        int versionStart = end - HTTP_PROTOCOL.length - 3;
+        if(versionStart <= methodEnd + 1 || byteBuffer.get(versionStart - 1) != ' ' ||
+                !matchIgnoreCase(byteBuffer, versionStart, end, HTTP_PROTOCOL) || !isVersion(byteBuffer, versionStart, end)){
+            return false;
+        }
+
+        state.isRequest = true;
+        return true;
+    }
+
+    /**
+     * 判断是否是合法的报文头, 报文头的内容由解析器处理
+     * @param byteBuffer 缓冲区对象
+     * @param start 行的起始位置
+     * @param end 行的结束位置
+     * @return true: 合法的报文头, false: 非法的报文头
+     */
+    private static boolean isHeaderLine(ByteBuffer byteBuffer, int start, int end){
+        for(int i = start; i < end; i++){
+            if(byteBuffer.get(i) == ':'){
+                return i > start;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 判断 HTTP/ 之后是否是 x.x 形式的版本号
+     */
+    private static boolean isVersion(ByteBuffer byteBuffer, int start, int end){
+        int versionStart = start + HTTP_PROTOCOL.length;
+        return end >= versionStart + 3 && isDigit(byteBuffer.get(versionStart)) &&
+                byteBuffer.get(versionStart + 1) == '.' && isDigit(byteBuffer.get(versionStart + 2));
+    }
+
+    private static boolean isDigit(byte value){
+        return value >= '0' && value <= '9';
+    }
+
+    /**
+     * 忽略大小写判断缓冲区指定位置是否以 mark 开头, mark 必须是小写
+     */
+    private static boolean matchIgnoreCase(ByteBuffer byteBuffer, int start, int end, byte[] mark){
+        if(end - start < mark.length){
+            return false;
+        }
+
+        for(int i = 0; i < mark.length; i++){
+            byte value = byteBuffer.get(start + i);
+            if(value >= 'A' && value <= 'Z'){
+                value = (byte)(value + 32);
+            }
+
+            if(value != mark[i]){
+                return false;
+            }
         }
         return true;
     }
@@ -173,4 +361,28 @@ public class HttpMessageSplitter implements MessageSplitter {
             return expectPackagesize;
         }
     }
+
+    /**
+     * 会话的分割状态
+     */
+    public static class SplitState {
+        private int position;
+        private int lineStart;
+        private int lineCount;
+        private boolean isRequest;
+
+        public SplitState(){
+            reset();
+        }
+
+        /**
+         * 重置分割状态, 从下一个报文的起始位置开始分割
+         */
+        public void reset(){
+            position = 0;
+            lineStart = 0;
+            lineCount = 0;
+            isRequest = false;
+        }
+    }
 }
@@ -1,18 +1,34 @@
 package org.voovan.network.messagesplitter;
 
 import org.voovan.network.IoSession;
-import org.voovan.network.MessageSplitter;
+import org.voovan.network.StatefulMessageSplitter;
 
 import java.nio.ByteBuffer;
 
-public class TimeOutMesssageSplitter implements MessageSplitter {
+/**
+ * 按超时时间对消息分割
+ * 		缓冲区中的数据在第一次分割后超过读超时时间 (readTimeout) 时作为一个消息返回.
+ * 		对端不再发送数据时, MessageLoader 在读超时时间后重新分割, 保证消息能够被交付.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class TimeOutMesssageSplitter implements StatefulMessageSplitter<TimeOutMesssageSplitter.SplitState> {
 
 	private long initTime;
 	
 	public TimeOutMesssageSplitter(){
 		initTime = -1;
 	}
-	
+
+	@Override
+	public SplitState createState(IoSession session) {
+		return new SplitState();
+	}
+
 	@Override
 	public int canSplite(IoSession session, ByteBuffer byteBuffer) {
 		int timeOut = session.socketContext().getReadTimeout();
@@ -28,4 +44,27 @@ public class TimeOutMesssageSplitter implements MessageSplitter {
 		}
 	}
 
+	@Override
+	public int canSplite(IoSession session, ByteBuffer byteBuffer, SplitState state) {
+		int timeOut = session.socketContext().getReadTimeout();
+		long currentTime = System.currentTimeMillis();
+		if(state.initTime==-1){
+			state.initTime = currentTime;
+		}
+
+		if(currentTime-state.initTime >= timeOut){
+			//下一个消息重新计时
+			state.initTime = -1;
+			return byteBuffer.limit();
+		}else{
+			return -1;
+		}
+	}
+
+	/**
+	 * 会话的分割状态
+	 */
+	public static class SplitState {
+		private long initTime = -1;
+	}
 }
@@ -3,7 +3,7 @@ package org.voovan.network.nio;
 import org.voovan.network.EventTrigger;
 import org.voovan.network.HeartBeat;
 import org.voovan.network.MessageLoader;
-import org.voovan.network.SocketContext;
+import org.voovan.network.NetworkMetrics;
 import org.voovan.tools.ByteBufferChannel;
 import org.voovan.tools.TByteBuffer;
 import org.voovan.tools.log.Logger;
@@ -12,36 +12,104 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * 事件监听器
- * 
+ * 		一个 NioSelector 对应一个 Reactor 线程和一个 Selector,
+ * 		多个 NioSession 注册在同一个 Selector 上, 由这个线程轮询所有连接的读事件
+ *
  * @author helyho
  *
  * Voovan Framework.
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class NioSelector {
-	
+public class NioSelector implements Runnable {
+
 	private Selector selector;
-	private SocketContext socketContext;
-	private ByteBufferChannel netByteBufferChannel;
-	private ByteBufferChannel appByteBufferChannel;
-	private NioSession session;
-	
+	private ByteBuffer readTempBuffer;
+	private Queue<NioSocket> registerQueue;
+	private volatile boolean running;
+	private Thread reactorThread;
+
 	/**
 	 * 事件监听器构造
 	 * @param selector   对象Selector
-	 * @param socketContext socketContext 对象
 	 */
-	public NioSelector(Selector selector, SocketContext socketContext) {
+	public NioSelector(Selector selector) {
 		this.selector = selector;
-		this.socketContext = socketContext;
-		if (socketContext instanceof NioSocket){
-			this.session = ((NioSocket)socketContext).getSession();
-			this.appByteBufferChannel = session.getByteBufferChannel();
+		this.registerQueue = new ConcurrentLinkedQueue<NioSocket>();
+		this.readTempBuffer = ByteBuffer.allocateDirect(1024);
+		this.running = true;
+	}
+
+	/**
+	 * 获取 Selector 对象
+	 * @return Selector 对象
+	 */
+	public Selector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * 获取当前 Selector 上注册的连接数
+	 * @return 连接数
+	 */
+	public int getSessionCount(){
+		return selector.keys().size();
+	}
+
+	/**
+	 * 当前线程是否是这个 Selector 的 Reactor 线程
+	 * @return true: 是, false: 否
+	 */
+	public boolean inReactorThread(){
+		return Thread.currentThread() == reactorThread;
+	}
+
+	/**
+	 * 将 Socket 注册到当前的 Selector
+	 * 		注册操作在 Reactor 线程中完成, 完成后触发 onConnect 事件
+	 * @param nioSocket NioSocket 对象
+	 */
+	public void register(NioSocket nioSocket){
+		registerQueue.offer(nioSocket);
+		selector.wakeup();
+	}
+
+	/**
+	 * 处理等待注册的 Socket
+	 */
+	private void processRegister(){
+		NioSocket nioSocket = null;
+		while((nioSocket = registerQueue.poll()) != null) {
+			NioSession session = nioSocket.getSession();
+			try {
+				if (!nioSocket.socketChannel().isOpen()) {
+					continue;
+				}
+
+				//注册前已经有等待发送的数据, 同时关注可写事件
+				int interestOps = SelectionKey.OP_READ;
+				if (!session.getSendQueue().isEmpty()) {
+					interestOps = interestOps | SelectionKey.OP_WRITE;
+				}
+
+				SelectionKey selectionKey = nioSocket.socketChannel().register(selector, interestOps, session);
+				session.setSelectionKey(selectionKey);
+				session.setNioSelector(this);
+
+				EventTrigger.fireConnectThread(session);
+			} catch (IOException e) {
+				Logger.error("Register SocketChannel to selector failed", e);
+				EventTrigger.fireExceptionThread(session, e);
+				session.close();
+			} catch (Throwable e) {
+				closeSession(session, e);
+			}
 		}
 	}
 
@@ -49,147 +117,158 @@ public class NioSelector {
 	 * 所有的事件均在这里触发
 	 */
 	public void eventChose() {
-		//读取用的缓冲区
-		ByteBuffer readTempBuffer = ByteBuffer.allocateDirect(socketContext.getBufferSize());
+		while (running) {
+			try {
+				processRegister();
 
-		if( socketContext instanceof NioSocket && netByteBufferChannel== null && session.getSSLParser()!=null) {
-			netByteBufferChannel = new ByteBufferChannel(session.socketContext().getBufferSize());
-		}
-		
-		if (socketContext instanceof NioSocket) {
-			EventTrigger.fireConnectThread(session);
-		}
-		
-		// 事件循环
-		try {
-			while (socketContext != null && socketContext.isConnected()) {
 				if (selector.select(1000) > 0) {
 					Set<SelectionKey> selectionKeys = selector.selectedKeys();
-					Iterator<SelectionKey> selectionKeyIterator = selectionKeys
-							.iterator();
+					Iterator<SelectionKey> selectionKeyIterator = selectionKeys.iterator();
 					while (selectionKeyIterator.hasNext()) {
 						SelectionKey selectionKey = selectionKeyIterator.next();
-						if (selectionKey.isValid()) {
-							// 获取 socket 通道
-							SocketChannel socketChannel = getSocketChannel(selectionKey);
-							if (socketChannel.isOpen() && selectionKey.isValid()) {
-								// 事件分发,包含时间 onRead onAccept
-								
-								switch (selectionKey.readyOps()) {
-									// Server接受连接
-									case SelectionKey.OP_ACCEPT: {
-										NioServerSocket serverSocket = (NioServerSocket)socketContext;
-										NioSocket socket = new NioSocket(serverSocket,socketChannel);
-										session = socket.getSession();
-										EventTrigger.fireAcceptThread(session);
-										break;
-									}
-									// 有数据读取
-									case SelectionKey.OP_READ: {
-                                            int readSize = socketChannel.read(readTempBuffer);
-
-											//判断连接是否关闭
-											if(MessageLoader.isStreamEnd(readTempBuffer, readSize) && session.isConnected()){
-
-												session.getMessageLoader().setStopType(MessageLoader.StopType.STREAM_END);
-												//如果 Socket 流达到结尾,则关闭连接
-												while(session.isConnected()) {
-													session.close();
-												}
-												break;
-											}else if(readSize>0){
-												readTempBuffer.flip();
-
-												if(session.getHeartBeat()!=null) {
-													session.getMessageLoader().pause();
-												}
-
-												// 接收数据
-												if(session.getSSLParser()!=null && session.getSSLParser().isHandShakeDone()){
-													netByteBufferChannel.writeEnd(readTempBuffer);
-													session.getSSLParser().unWarpByteBufferChannel(session, netByteBufferChannel, appByteBufferChannel);
-												}else{
-													appByteBufferChannel.writeEnd(readTempBuffer);
-												}
-
-												//检查心跳
-												HeartBeat.interceptHeartBeat(session, appByteBufferChannel);
-
-												if(session.getHeartBeat()!=null) {
-													session.getMessageLoader().unpause();
-												}
-
-												if(appByteBufferChannel.size() > 0) {
-													// 触发 onReceive 事件
-													EventTrigger.fireReceiveThread(session);
-												}
-											}
-
-											readTempBuffer.clear();
-
-
-										break;
-									}
-									default: {
-										Logger.debug("Nothing to do ,SelectionKey is:"
-												+ selectionKey.readyOps());
-									}
-								}
-								selectionKeyIterator.remove();
+						selectionKeyIterator.remove();
+
+						NioSession session = (NioSession) selectionKey.attachment();
+						//单个连接的异常只关闭这个连接, 不能影响 Reactor 线程上的其他连接
+						try {
+							if (selectionKey.isValid() && selectionKey.isWritable()) {
+								writeToChannel(session);
+							}
+
+							if (selectionKey.isValid() && selectionKey.isReadable()) {
+								readFromChannel(session, (SocketChannel) selectionKey.channel());
 							}
+						} catch (Throwable e) {
+							closeSession(session, e);
 						}
 					}
 				}
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				Logger.error("NioSelector select failed", e);
+			} catch (Throwable e) {
+				Logger.error("NioSelector process failed", toException(e));
 			}
-		} catch (IOException e) {
-			if((e instanceof AsynchronousCloseException) ||
-					(e instanceof ClosedChannelException)){
-				return;
+		}
+	}
+
+	/**
+	 * 关闭处理过程中产生未捕获异常的连接
+	 * @param session 会话对象
+	 * @param throwable 异常对象
+	 */
+	private void closeSession(NioSession session, Throwable throwable){
+		Logger.error("NioSelector process session failed", toException(throwable));
+		try {
+			if (session != null) {
+				session.close();
 			}
+		} catch (Throwable e) {
+			Logger.error("NioSelector close session failed", toException(e));
+		}
+	}
 
-			//兼容 windows 的 "java.io.IOException: 指定的网络名不再可用" 错误
-			if(e.getStackTrace()[0].getClassName().contains("sun.nio.ch")){
-				return;
+	private static Exception toException(Throwable throwable){
+		return throwable instanceof Exception ? (Exception) throwable : new Exception(throwable);
+	}
+
+	/**
+	 * 读取连接中的数据
+	 * @param session     会话对象
+	 * @param socketChannel SocketChannel 对象
+	 */
+	private void readFromChannel(NioSession session, SocketChannel socketChannel){
+		try {
+			ByteBufferChannel appByteBufferChannel = session.getByteBufferChannel();
+
+			int bufferSize = session.socketContext().getBufferSize();
+			if (readTempBuffer.capacity() < bufferSize) {
+				TByteBuffer.release(readTempBuffer);
+				readTempBuffer = ByteBuffer.allocateDirect(bufferSize);
 			}
+			readTempBuffer.clear();
+			readTempBuffer.limit(bufferSize);
+
+			int readSize = socketChannel.read(readTempBuffer);
+
+			//判断连接是否关闭
+			if (MessageLoader.isStreamEnd(readTempBuffer, readSize) && session.isConnected()) {
+				session.getMessageLoader().setStopType(MessageLoader.StopType.STREAM_END);
+				//如果 Socket 流达到结尾,则关闭连接
+				session.close();
+			} else if (readSize > 0) {
+				readTempBuffer.flip();
+
+				NetworkMetrics metrics = session.getMetrics();
+				if (metrics != null) {
+					metrics.addBytesRead(readSize);
+				}
+
+				// 接收数据
+				if (session.getSSLParser() != null) {
+					//握手未完成时推进握手, 完成后解包到接收通道
+					session.getSSLParser().receive(readTempBuffer);
+				} else {
+					appByteBufferChannel.writeEnd(readTempBuffer);
+				}
+
+				//检查心跳
+				HeartBeat.interceptHeartBeat(session, appByteBufferChannel);
 
-			if(e instanceof Exception){
+				if (appByteBufferChannel.size() > 0) {
+					// 触发 onReceive 事件
+					EventTrigger.fireReceiveThread(session);
+				}
+			}
+		} catch (IOException e) {
+			//兼容 windows 的 "java.io.IOException: 指定的网络名不再可用" 错误
+			if (!(e instanceof AsynchronousCloseException) &&
+					!(e instanceof ClosedChannelException) &&
+					!e.getStackTrace()[0].getClassName().contains("sun.nio.ch")) {
 				//触发 onException 事件
 				EventTrigger.fireExceptionThread(session, e);
 			}
-		} finally{
-			// 触发连接断开事件
-			if(session!=null) {
-				EventTrigger.fireDisconnectThread(session);
-				TByteBuffer.release(readTempBuffer);
-			}
+
+			session.close();
 		}
 	}
 
 	/**
-	 * 获取 socket 通道
-	 * 
-	 * @param selectionKey  当前 Selectionkey
-	 * @return SocketChannel 对象
-	 * @throws IOException  IO 异常
+	 * 将发送队列中的数据写入连接
+	 * @param session     会话对象
 	 */
-	public SocketChannel getSocketChannel(SelectionKey selectionKey)
-			throws IOException {
-		SocketChannel socketChannel = null;
-		// 取得通道
-		Object unknowChannel = selectionKey.channel();
-		//  根据通道的类来判断类型是 ServerSocketChannel 还是 SocketChannel
-		if (unknowChannel instanceof ServerSocketChannel) {
-			ServerSocketChannel serverSocketChannel = (ServerSocketChannel)unknowChannel;
-			socketChannel = serverSocketChannel.accept();
-		} else if (unknowChannel instanceof SocketChannel) {
-			socketChannel = (SocketChannel)unknowChannel;
+	private void writeToChannel(NioSession session){
+		try {
+			session.flush();
+		} catch (IOException e) {
+			if (!(e instanceof AsynchronousCloseException) &&
+					!(e instanceof ClosedChannelException) &&
+					!e.getStackTrace()[0].getClassName().contains("sun.nio.ch")) {
+				//触发 onException 事件
+				EventTrigger.fireExceptionThread(session, e);
+			}
+
+			session.close();
 		}
-		return socketChannel;
 	}
 
+	@Override
+	public void run() {
+		reactorThread = Thread.currentThread();
+		eventChose();
+	}
+
+	/**
+	 * 停止当前的 Selector
+	 */
 	public void release(){
-		if(netByteBufferChannel!=null) {
-			netByteBufferChannel.release();
+		running = false;
+		try {
+			selector.close();
+		} catch (IOException e) {
+			Logger.error("Close selector failed", e);
 		}
+		TByteBuffer.release(readTempBuffer);
 	}
 }
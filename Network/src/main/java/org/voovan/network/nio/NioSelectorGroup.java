@@ -0,0 +1,116 @@
+package org.voovan.network.nio;
+
+import org.voovan.tools.log.Logger;
+
+import java.io.IOException;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NioSelector 组
+ * 		固定数量的 Reactor 线程, 每个线程持有一个 Selector,
+ * 		新的连接按轮询的方式注册到其中一个 Selector 上
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class NioSelectorGroup {
+	private final static int cpuCoreCount = Runtime.getRuntime().availableProcessors();
+	protected static int DEFAULT_SIZE = cpuCoreCount;
+
+	private static NioSelectorGroup defaultGroup;
+
+	private NioSelector[] nioSelectors;
+	private AtomicInteger index;
+
+	/**
+	 * 获取默认 Reactor 线程数
+	 * @return 默认 Reactor 线程数
+	 */
+	public static int getDefaultSize() {
+		return DEFAULT_SIZE;
+	}
+
+	/**
+	 * 设置默认 Reactor 线程数
+	 * 		需要在第一个 NioSocket 启动前设置
+	 * @param defaultSize 默认 Reactor 线程数
+	 */
+	public static void setDefaultSize(int defaultSize) {
+		DEFAULT_SIZE = defaultSize;
+	}
+
+	/**
+	 * 获取全局公用的 NioSelectorGroup
+	 * @return NioSelectorGroup 对象
+	 * @throws IOException IO 异常
+	 */
+	public synchronized static NioSelectorGroup getInstance() throws IOException {
+		if(defaultGroup == null){
+			defaultGroup = new NioSelectorGroup(DEFAULT_SIZE);
+		}
+		return defaultGroup;
+	}
+
+	/**
+	 * 构造函数
+	 * @param size Reactor 线程数
+	 * @throws IOException IO 异常
+	 */
+	public NioSelectorGroup(int size) throws IOException {
+		if(size < 1){
+			size = 1;
+		}
+
+		index = new AtomicInteger(0);
+		nioSelectors = new NioSelector[size];
+		SelectorProvider provider = SelectorProvider.provider();
+		for(int i=0; i<size; i++){
+			nioSelectors[i] = new NioSelector(provider.openSelector());
+			Thread reactorThread = new Thread(nioSelectors[i], "VOOVAN@NIO_SELECTOR-"+i);
+			reactorThread.setDaemon(true);
+			reactorThread.start();
+		}
+	}
+
+	/**
+	 * 获取 Reactor 线程数
+	 * @return Reactor 线程数
+	 */
+	public int size(){
+		return nioSelectors.length;
+	}
+
+	/**
+	 * 选择一个 NioSelector
+	 * @return NioSelector 对象
+	 */
+	public NioSelector choose(){
+		int position = (index.getAndIncrement() & Integer.MAX_VALUE) % nioSelectors.length;
+		return nioSelectors[position];
+	}
+
+	/**
+	 * 将 Socket 注册到组内的一个 NioSelector 上
+	 * @param nioSocket NioSocket 对象
+	 * @return 注册到的 NioSelector 对象
+	 */
+	public NioSelector register(NioSocket nioSocket){
+		NioSelector nioSelector = choose();
+		nioSelector.register(nioSocket);
+		return nioSelector;
+	}
+
+	/**
+	 * 关闭所有的 Reactor 线程
+	 */
+	public void release(){
+		for(NioSelector nioSelector : nioSelectors){
+			nioSelector.release();
+		}
+		Logger.debug("NioSelectorGroup released");
+	}
+}
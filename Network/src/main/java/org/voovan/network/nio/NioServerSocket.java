@@ -1,16 +1,18 @@
 package org.voovan.network.nio;
 
-import org.voovan.Global;
+import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
+import org.voovan.tools.TEnv;
 import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketOption;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.*;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * NioServerSocket 监听
@@ -22,10 +24,17 @@ import java.nio.channels.spi.SelectorProvider;
  * Licence: Apache v2 License
  */
 public class NioServerSocket extends SocketContext{
-	
+
+	//accept 失败后等待的最小和最大时间, 单位: 毫秒
+	private static final int MIN_RETRY_DELAY = 10;
+	private static final int MAX_RETRY_DELAY = 1000;
+
 	private SelectorProvider provider;
 	private Selector selector;
 	private ServerSocketChannel serverSocketChannel;
+	private NioSelectorGroup nioSelectorGroup;
+	private List<ServerSocketChannel> reusePortChannels;
+	private boolean bound;
 
 	/**
 	 * 构造函数
@@ -65,7 +74,42 @@ public class NioServerSocket extends SocketContext{
 		serverSocketChannel.configureBlocking(false);
 		selector = provider.openSelector();
 		serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
-		serverSocketChannel.bind(new InetSocketAddress(host, port), 1000);
+		reusePortChannels = new ArrayList<ServerSocketChannel>();
+		bound = false;
+	}
+
+	/**
+	 * 绑定监听端口
+	 * 		配置了多个接入循环时, 使用 SO_REUSEPORT 在同一个端口上打开多个 ServerSocketChannel
+	 * @throws IOException IO 异常
+	 */
+	private synchronized void bind() throws IOException {
+		if(bound){
+			return;
+		}
+
+		InetSocketAddress socketAddress = new InetSocketAddress(host, port);
+		int acceptors = acceptors();
+		if(acceptors > 1) {
+			try {
+				serverSocketChannel.setOption(reusePortOption(), true);
+			} catch (UnsupportedOperationException e) {
+				Logger.warn("SO_REUSEPORT is not supported, use one acceptor");
+				acceptors = 1;
+			}
+		}
+
+		serverSocketChannel.bind(socketAddress, 1000);
+
+		for(int i=1; i<acceptors; i++){
+			ServerSocketChannel reusePortChannel = provider.openServerSocketChannel();
+			reusePortChannel.configureBlocking(false);
+			reusePortChannel.setOption(reusePortOption(), true);
+			reusePortChannel.bind(socketAddress, 1000);
+			reusePortChannels.add(reusePortChannel);
+		}
+
+		bound = true;
 	}
 
 
@@ -93,16 +137,100 @@ public class NioServerSocket extends SocketContext{
 	public ServerSocketChannel socketChannel(){
 		return this.serverSocketChannel;
 	}
-	
+
+	/**
+	 * 获取接入连接使用的 NioSelectorGroup
+	 * @return NioSelectorGroup 对象, 为 null 时使用全局公用的 NioSelectorGroup
+	 */
+	public NioSelectorGroup getNioSelectorGroup() {
+		return nioSelectorGroup;
+	}
+
+	/**
+	 * 设置接入连接使用的 NioSelectorGroup
+	 * @param nioSelectorGroup NioSelectorGroup 对象
+	 */
+	public void setNioSelectorGroup(NioSelectorGroup nioSelectorGroup) {
+		this.nioSelectorGroup = nioSelectorGroup;
+	}
+
 	/**
 	 * 启动监听
 	 * 		阻赛方法
+	 * 		当前线程作为 Acceptor 线程, 接入的连接注册到 NioSelectorGroup 中的 Reactor 线程,
+	 * 		配置了多个接入循环时, 其他的接入循环运行在独立的线程中
 	 * @throws IOException  IO 异常
 	 */
 	@Override
 	public void start() throws IOException {
-		NioSelector eventListener = new NioSelector(selector,this);
-		eventListener.eventChose();
+		bind();
+
+		for(int i=0; i<reusePortChannels.size(); i++){
+			final ServerSocketChannel reusePortChannel = reusePortChannels.get(i);
+			final Selector reusePortSelector = provider.openSelector();
+			reusePortChannel.register(reusePortSelector, SelectionKey.OP_ACCEPT);
+
+			Thread acceptorThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					acceptLoop(reusePortChannel, reusePortSelector);
+				}
+			}, "VOOVAN@NIO_ACCEPTOR-" + (i + 1));
+			acceptorThread.setDaemon(true);
+			acceptorThread.start();
+		}
+
+		acceptLoop(serverSocketChannel, selector);
+	}
+
+	/**
+	 * 接入循环
+	 * 		accept 失败 (例如文件句柄耗尽) 时按退避时间等待后再继续, 未接收的连接会让 select 立即返回, 不等待会形成忙循环
+	 * @param acceptChannel 监听的 ServerSocketChannel
+	 * @param acceptSelector 监听使用的 Selector
+	 */
+	private void acceptLoop(ServerSocketChannel acceptChannel, Selector acceptSelector) {
+		int retryDelay = 0;
+		try {
+			while (isConnected() && acceptChannel.isOpen()) {
+				if (acceptSelector.select(1000) > 0) {
+					Iterator<SelectionKey> selectionKeyIterator = acceptSelector.selectedKeys().iterator();
+					while (selectionKeyIterator.hasNext()) {
+						SelectionKey selectionKey = selectionKeyIterator.next();
+						selectionKeyIterator.remove();
+
+						if (selectionKey.isValid() && selectionKey.isAcceptable()) {
+							try {
+								SocketChannel socketChannel = acceptChannel.accept();
+								if (socketChannel != null) {
+									retryDelay = 0;
+									NioSocket socket = new NioSocket(this, socketChannel);
+									EventTrigger.fireAcceptThread(socket.getSession());
+								}
+							} catch (ClosedChannelException e) {
+								throw e;
+							} catch (IOException e) {
+								Logger.error("Accept SocketChannel failed", e);
+
+								//连续失败时等待时间逐次加倍, 直到最大等待时间
+								retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY), MAX_RETRY_DELAY);
+								TEnv.sleep(retryDelay);
+							}
+						}
+					}
+				}
+			}
+		} catch (ClosedSelectorException | ClosedChannelException e) {
+			return;
+		} catch (IOException e) {
+			Logger.error("NioServerSocket accept loop failed", e);
+		} finally {
+			try {
+				acceptSelector.close();
+			} catch (IOException e) {
+				Logger.error("Selector close failed", e);
+			}
+		}
 	}
 
 	/**
@@ -112,7 +240,11 @@ public class NioServerSocket extends SocketContext{
 	 */
 	@Override
 	public void syncStart() throws IOException {
-		Global.getThreadPool().execute(new Runnable(){
+		//在当前线程中绑定端口, 端口被占用等错误直接抛给调用者
+		bind();
+
+		//监听循环长期占用线程, 使用独立的线程, 不占用公用线程池
+		Thread thread = new Thread(new Runnable(){
 			public void run() {
 				try {
 					start();
@@ -120,7 +252,8 @@ public class NioServerSocket extends SocketContext{
 					e.printStackTrace();
 				}
 			}
-		});
+		}, "VOOVAN@NIO_ACCEPTOR-0");
+		thread.start();
 	}
 
 	@Override
@@ -151,6 +284,10 @@ public class NioServerSocket extends SocketContext{
 		if(serverSocketChannel!=null && serverSocketChannel.isOpen()){
 			try{
 				serverSocketChannel.close();
+				selector.wakeup();
+				for(ServerSocketChannel reusePortChannel : reusePortChannels){
+					reusePortChannel.close();
+				}
 				return true;
 			} catch(IOException e){
 				Logger.error("SocketChannel close failed",e);
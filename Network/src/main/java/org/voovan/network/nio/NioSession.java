@@ -2,11 +2,15 @@ package org.voovan.network.nio;
 
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.NetworkMetrics;
+import org.voovan.network.SendQueue;
 import org.voovan.network.exception.RestartException;
 import org.voovan.tools.log.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
 /**
@@ -20,6 +24,8 @@ import java.nio.channels.SocketChannel;
  */
 public class NioSession extends IoSession<NioSocket> {
 	private SocketChannel		socketChannel;
+	private SelectionKey		selectionKey;
+	private NioSelector			nioSelector;
 
 	/**
 	 * 构造函数
@@ -102,6 +108,46 @@ public class NioSession extends IoSession<NioSocket> {
 		}
 	}
 
+	/**
+	 * 获取注册在 Selector 上的 SelectionKey
+	 * @return SelectionKey 对象, 未注册时返回 null
+	 */
+	protected SelectionKey getSelectionKey() {
+		return selectionKey;
+	}
+
+	/**
+	 * 设置注册在 Selector 上的 SelectionKey
+	 * @param selectionKey SelectionKey 对象
+	 */
+	protected void setSelectionKey(SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * 获取会话注册的 NioSelector
+	 * @return NioSelector 对象, 未注册时返回 null
+	 */
+	protected NioSelector getNioSelector() {
+		return nioSelector;
+	}
+
+	/**
+	 * 设置会话注册的 NioSelector
+	 * @param nioSelector NioSelector 对象
+	 */
+	protected void setNioSelector(NioSelector nioSelector) {
+		this.nioSelector = nioSelector;
+	}
+
+	/**
+	 * 当前线程是否是会话所在的 Reactor 线程
+	 * @return true: 是, false: 否
+	 */
+	protected boolean inReactorThread() {
+		return nioSelector != null && nioSelector.inReactorThread();
+	}
+
 	@Override
 	protected int read0(ByteBuffer buffer) throws IOException {
 		int readSize = 0;
@@ -113,16 +159,106 @@ public class NioSession extends IoSession<NioSocket> {
 
 	@Override
 	protected int send0(ByteBuffer buffer) throws IOException {
+		return send0(new ByteBuffer[]{buffer});
+	}
+
+	@Override
+	protected int send0(ByteBuffer[] buffers) throws IOException {
 		int totalSendByte = 0;
-		if (isConnected() && buffer != null) {
-			//循环发送直到全部内容发送完毕
-			while(isConnected() && buffer.remaining()!=0){
-				totalSendByte+=socketChannel.write(buffer);
+		if (isConnected() && buffers != null) {
+			for (ByteBuffer buffer : buffers) {
+				totalSendByte += buffer.remaining();
+			}
+
+			SendQueue sendQueue = getSendQueue();
+
+			synchronized (sendQueue) {
+				//队列中没有等待的数据时直接聚集写入, 写入的字节数为 0 说明 Socket 发送缓冲区已满
+				if (sendQueue.isEmpty() && !sendQueue.isCorked()) {
+					long remaining = totalSendByte;
+					long writeSize = 0;
+					while (remaining > 0 && (writeSize = socketChannel.write(buffers)) > 0) {
+						remaining -= writeSize;
+					}
+
+					NetworkMetrics metrics = getMetrics();
+					if (metrics != null) {
+						metrics.addBytesWritten(totalSendByte - remaining);
+					}
+				}
+
+				//剩余的数据进入发送队列, 等待通道可写时由 Reactor 线程写出
+				for (ByteBuffer buffer : buffers) {
+					sendQueue.add(buffer);
+				}
+
+				//合并发送中的数据在 flush 时写出
+				if (!sendQueue.isEmpty() && !sendQueue.isCorked()) {
+					interestWrite(true);
+				}
+			}
+
+			//超过高水位时等待对端接收, Reactor 线程中不能等待
+			if (!sendQueue.isWritable() && !inReactorThread()) {
+				sendQueue.waitWritable(socketContext().getReadTimeout());
 			}
 		}
 		return totalSendByte;
 	}
 
+	/**
+	 * 将发送队列中的数据聚集写入通道
+	 * 		数据全部写出后取消对可写事件的关注, 否则等待下一次可写事件
+	 * @throws IOException IO 异常
+	 */
+	@Override
+	protected void flush() throws IOException {
+		SendQueue sendQueue = getSendQueue();
+		synchronized (sendQueue) {
+			ByteBuffer[] buffers = null;
+			while ((buffers = sendQueue.toArray()).length > 0) {
+				long writeSize = socketChannel.write(buffers);
+				sendQueue.written(writeSize);
+
+				NetworkMetrics metrics = getMetrics();
+				if (metrics != null && writeSize > 0) {
+					metrics.addBytesWritten(writeSize);
+				}
+
+				//Socket 发送缓冲区已满, 等待下一次可写事件
+				if (!sendQueue.isEmpty() && writeSize == 0) {
+					interestWrite(true);
+					return;
+				}
+			}
+
+			interestWrite(false);
+		}
+	}
+
+	/**
+	 * 设置是否关注通道的可写事件
+	 * @param interest true: 关注, false: 不关注
+	 */
+	protected void interestWrite(boolean interest) {
+		if (selectionKey == null || !selectionKey.isValid()) {
+			return;
+		}
+
+		try {
+			int interestOps = selectionKey.interestOps();
+			if (interest && (interestOps & SelectionKey.OP_WRITE) == 0) {
+				selectionKey.interestOps(interestOps | SelectionKey.OP_WRITE);
+				if (!inReactorThread()) {
+					selectionKey.selector().wakeup();
+				}
+			} else if (!interest && (interestOps & SelectionKey.OP_WRITE) != 0) {
+				selectionKey.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+			}
+		} catch (CancelledKeyException e) {
+			//连接已关闭
+		}
+	}
 
 	@Override
 	protected MessageSplitter getMessagePartition() {
@@ -2,6 +2,7 @@ package org.voovan.network.nio;
 
 import org.voovan.Global;
 import org.voovan.network.ConnectModel;
+import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
 import org.voovan.network.exception.ReadMessageException;
 import org.voovan.network.exception.RestartException;
@@ -12,9 +13,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketOption;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * NioSocket 连接
@@ -27,10 +30,10 @@ import java.nio.channels.spi.SelectorProvider;
  */
 public class NioSocket extends SocketContext{
 	private SelectorProvider provider;
-	private Selector selector;
 	private SocketChannel socketChannel;
 	private NioSession session;
-	private NioSelector nioSelector;
+	private NioSelectorGroup nioSelectorGroup;
+	private CountDownLatch closeLatch = new CountDownLatch(1);
 
 	/**
 	 * socket 连接
@@ -64,6 +67,7 @@ public class NioSocket extends SocketContext{
 		socketChannel.socket().setSoTimeout(this.readTimeout);
 		session = new NioSession(this);
 		connectModel = ConnectModel.CLIENT;
+		closeLatch = new CountDownLatch(1);
 	}
 
 	/**
@@ -79,6 +83,9 @@ public class NioSocket extends SocketContext{
 			this.socketChannel = socketChannel;
 			socketChannel.configureBlocking(false);
 			this.copyFrom(parentSocketContext);
+			if(parentSocketContext instanceof NioServerSocket){
+				this.nioSelectorGroup = ((NioServerSocket) parentSocketContext).getNioSelectorGroup();
+			}
 			this.socketChannel().socket().setSoTimeout(this.readTimeout);
 			session = new NioSession(this);
 			connectModel = ConnectModel.SERVER;
@@ -114,15 +121,31 @@ public class NioSocket extends SocketContext{
 	}
 	
 	/**
-	 * 初始化函数
+	 * 获取 NioSelectorGroup 对象
+	 * @return NioSelectorGroup 对象, 为 null 时使用全局公用的 NioSelectorGroup
+	 */
+	public NioSelectorGroup getNioSelectorGroup() {
+		return nioSelectorGroup;
+	}
+
+	/**
+	 * 设置 NioSelectorGroup 对象
+	 * @param nioSelectorGroup NioSelectorGroup 对象
 	 */
-	private void registerSelector()  {
-		try{
-			selector = provider.openSelector();
-			socketChannel.register(selector, SelectionKey.OP_READ);
-		}catch(IOException e){
-			Logger.error("init SocketChannel failed by openSelector",e);
+	public void setNioSelectorGroup(NioSelectorGroup nioSelectorGroup) {
+		this.nioSelectorGroup = nioSelectorGroup;
+	}
+
+	/**
+	 * 将当前连接注册到 Reactor 线程
+	 * @throws IOException IO 异常
+	 */
+	private void registerSelector() throws IOException {
+		if(nioSelectorGroup == null){
+			nioSelectorGroup = NioSelectorGroup.getInstance();
 		}
+
+		nioSelectorGroup.register(this);
 	}
 
 	/**
@@ -139,58 +162,42 @@ public class NioSocket extends SocketContext{
 	 * @throws IOException IO 异常
 	 */
 	public void start() throws IOException  {
-		initSSL(session);
-
-		socketChannel.connect(new InetSocketAddress(this.host, this.port));
-		socketChannel.configureBlocking(false);
+		syncStart();
 
-		registerSelector();
-
-		if(socketChannel!=null && socketChannel.isOpen()){
-			nioSelector = new NioSelector(selector,this);
-			nioSelector.eventChose();
+		// 等待连接关闭, close 时唤醒
+		try {
+			while (isConnected()) {
+				closeLatch.await(1, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
 	/**
 	 * 启动同步的上下文连接
 	 * 		非阻塞方法
+	 * @throws IOException IO 异常
 	 */
-	public void syncStart(){
+	public void syncStart() throws IOException {
+		initReceiveChannel(session);
+		initSSL(session);
 
-		Global.getThreadPool().execute(new Runnable(){
-			public void run() {
-				try {
-					start();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		});
+		socketChannel.connect(new InetSocketAddress(this.host, this.port));
+		socketChannel.configureBlocking(false);
+
+		registerSelector();
 
 		waitConnected(session);
 	}
 
 	protected void acceptStart() throws IOException {
-		final NioSocket nioSocket = this;
-
-		Global.getThreadPool().execute(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					initSSL(session);
-
-					registerSelector();
+		initReceiveChannel(session);
+		initSSL(session);
 
-					if (socketChannel != null && socketChannel.isOpen()) {
-						nioSelector = new NioSelector(selector, nioSocket);
-						nioSelector.eventChose();
-					}
-				}catch(IOException e){
-					e.printStackTrace();
-				}
-			}
-		});
+		if (socketChannel != null && socketChannel.isOpen()) {
+			registerSelector();
+		}
 	}
 
 	/**
@@ -253,22 +260,67 @@ public class NioSocket extends SocketContext{
 	public boolean close(){
 
 		if(socketChannel!=null){
-			try{
-				socketChannel.close();
+			//等待发送队列中的数据写出, Reactor 线程中不能等待
+			if(socketChannel.isOpen()){
+				try {
+					session.flush();
+				} catch (IOException e) {
+					Logger.debug("Flush SocketChannel failed: " + e.getMessage());
+				}
 
-				//如果有未读数据等待数据处理完成
-				session.wait(this.getReadTimeout());
+				if(!session.inReactorThread()) {
+					session.getSendQueue().waitEmpty(this.getReadTimeout());
+				}
+			}
 
-				nioSelector.release();
-				session.getByteBufferChannel().release();
-				if(session.getSSLParser()!=null){
-					session.getSSLParser().release();
+			synchronized (this) {
+				if (!socketChannel.isOpen()) {
+					return true;
 				}
-				return true;
-			} catch(IOException e){
-				Logger.error("Close SocketChannel failed",e);
-				return false;
+
+				try {
+					if (session.getSelectionKey() != null) {
+						session.getSelectionKey().cancel();
+					}
+					socketChannel.close();
+				} catch (IOException e) {
+					Logger.error("Close SocketChannel failed", e);
+					return false;
+				} finally {
+					session.getSendQueue().release();
+				}
+			}
+
+			closeLatch.countDown();
+
+			// 触发连接断开事件
+			EventTrigger.fireDisconnectThread(session);
+
+			//资源释放在独立的线程中进行, 防止 close 在 Reactor 线程中调用时阻塞其他连接
+			final NioSession closedSession = session;
+			final int waitTime = this.getReadTimeout();
+			Runnable releaseTask = new Runnable() {
+				@Override
+				public void run() {
+					//如果有未读数据等待数据处理完成
+					closedSession.wait(waitTime);
+
+					closedSession.getByteBufferChannel().release();
+					if(closedSession.getSSLParser()!=null){
+						closedSession.getSSLParser().release();
+					}
+				}
+			};
+
+			try {
+				Global.getWorkerPool().execute(releaseTask);
+			} catch (RejectedExecutionException e) {
+				//线程池饱和时使用独立的线程释放, 不能在 Reactor 线程中等待
+				Thread releaseThread = new Thread(releaseTask, "VOOVAN@NIO_RELEASE");
+				releaseThread.setDaemon(true);
+				releaseThread.start();
 			}
+			return true;
 		}else{
 			return true;
 		}
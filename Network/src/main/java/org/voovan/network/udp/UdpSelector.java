@@ -3,7 +3,9 @@ package org.voovan.network.udp;
 import org.voovan.network.EventTrigger;
 import org.voovan.network.HeartBeat;
 import org.voovan.network.MessageLoader;
+import org.voovan.network.NetworkMetrics;
 import org.voovan.network.SocketContext;
+import org.voovan.network.messagesplitter.TransferSplitter;
 import org.voovan.tools.TByteBuffer;
 import org.voovan.tools.log.Logger;
 
@@ -19,6 +21,7 @@ import java.util.Set;
 
 /**
  * UDP事件监听器
+ *      每次唤醒批量读取数据报, 服务端按对端地址将数据报分发到会话
  *
  * @author helyho
  *
@@ -28,10 +31,13 @@ import java.util.Set;
  */
 public class UdpSelector {
 
+    //一次唤醒最多读取的数据报数量
+    private static final int MAX_BATCH_READ = 64;
 
     private Selector selector;
     private SocketContext socketContext;
     private UdpSession session;
+    private UdpServerSocket udpServerSocket;
 
     /**
      * 事件监听器构造
@@ -43,6 +49,8 @@ public class UdpSelector {
         this.socketContext = socketContext;
         if (socketContext instanceof UdpSocket){
             session = ((UdpSocket)socketContext).getSession();
+        } else if(socketContext instanceof UdpServerSocket){
+            udpServerSocket = (UdpServerSocket)socketContext;
         }
     }
 
@@ -77,57 +85,12 @@ public class UdpSelector {
 
                                     // 有数据读取
                                     case SelectionKey.OP_READ: {
-
-                                        int readSize = - 1;
-                                        UdpSocket clientUdpSocket = null;
-
-                                        //接受的连接isConnected 是 false
-                                        //发起的连接isConnected 是 true
-                                        if(datagramChannel.isConnected()) {
-                                            readSize = datagramChannel.read(readTempBuffer);
-
-                                        }else{
-                                            SocketAddress address = datagramChannel.receive(readTempBuffer);
-                                            readSize = readTempBuffer.position();
-                                            clientUdpSocket = new UdpSocket(socketContext,(InetSocketAddress)address);
-                                            session = clientUdpSocket.getSession();
-                                            //触发连接时间, 关闭事件在触发 onSent 之后触发
-                                            EventTrigger.fireConnectThread(session);
-                                        }
-
-                                        //判断连接是否关闭
-                                        if (MessageLoader.isStreamEnd(readTempBuffer, readSize) && session.isConnected()) {
-
-                                            session.getMessageLoader().setStopType(MessageLoader.StopType.STREAM_END);
-                                            //如果 Socket 流达到结尾,则关闭连接
-                                            while(session.isConnected()) {
-                                                if (session.getByteBufferChannel().size() == 0) {
-                                                    session.close();
-                                                }
+                                        //一次唤醒读取多个数据报, 直到没有数据或者达到批量上限
+                                        for(int i=0; i<MAX_BATCH_READ; i++) {
+                                            if(!readDatagram(datagramChannel, readTempBuffer)){
+                                                break;
                                             }
-                                            break;
-                                        } else if (readSize > 0) {
-                                            readTempBuffer.flip();
-
-                                            if(session.getHeartBeat()!=null) {
-                                                session.getMessageLoader().pause();
-                                            }
-
-                                            session.getByteBufferChannel().writeEnd(readTempBuffer);
-
-                                            //检查心跳
-                                            HeartBeat.interceptHeartBeat(session,  session.getByteBufferChannel());
-
-                                            if(session.getHeartBeat()!=null) {
-                                                session.getMessageLoader().unpause();
-                                            }
-
-                                            readTempBuffer.clear();
-                                            // 触发 onRead 事件,如果正在处理 onRecive 事件则本次事件触发忽略
-                                            EventTrigger.fireReceiveThread(session);
                                         }
-
-                                        readTempBuffer.clear();
                                         break;
                                     } default: {
                                         Logger.debug("Nothing to do ,SelectionKey is:"
@@ -139,16 +102,86 @@ public class UdpSelector {
                         }
                     }
                 }
+
+                //关闭空闲超时的会话
+                if(udpServerSocket != null) {
+                    udpServerSocket.expireSessions();
+                }
             }
         } catch (IOException e) {
             // 触发 onException 事件
-            EventTrigger.fireExceptionThread(session, e);
+            if(session != null) {
+                EventTrigger.fireExceptionThread(session, e);
+            } else {
+                Logger.error("UdpSelector error", e);
+            }
         }finally{
-            // 触发连接断开事件
-            if(session!=null) {
-//                EventTrigger.fireDisconnectThread(session);
-                TByteBuffer.release(readTempBuffer);
+            TByteBuffer.release(readTempBuffer);
+        }
+    }
+
+    /**
+     * 读取一个数据报
+     * @param datagramChannel DatagramChannel 对象
+     * @param readTempBuffer 读取用的缓冲区
+     * @return true: 读取到数据报, false: 没有可读取的数据报
+     * @throws IOException IO 异常
+     */
+    private boolean readDatagram(DatagramChannel datagramChannel, ByteBuffer readTempBuffer) throws IOException {
+        try {
+            int readSize = -1;
+            UdpSession readSession = session;
+
+            //接受的连接isConnected 是 false
+            //发起的连接isConnected 是 true
+            if (datagramChannel.isConnected()) {
+                readSize = datagramChannel.read(readTempBuffer);
+                if (readSize == 0) {
+                    return false;
+                }
+            } else {
+                SocketAddress address = datagramChannel.receive(readTempBuffer);
+                if (address == null) {
+                    return false;
+                }
+
+                readSize = readTempBuffer.position();
+                //会话表模式下同一个对端地址使用同一个会话, 否则每个数据报创建一个会话
+                readSession = udpServerSocket.acceptSession((InetSocketAddress) address);
+            }
+
+            //判断连接是否关闭
+            if (MessageLoader.isStreamEnd(readTempBuffer, readSize) && readSession.isConnected()) {
+                readSession.getMessageLoader().setStopType(MessageLoader.StopType.STREAM_END);
+                //如果 Socket 流达到结尾,则关闭连接, 关闭时等待未读取的数据处理完成
+                readSession.close();
+                return false;
+            } else if (readSize > 0) {
+                readTempBuffer.flip();
+
+                NetworkMetrics metrics = readSession.getMetrics();
+                if (metrics != null) {
+                    metrics.addBytesRead(readSize);
+                }
+
+                //会话表中的会话使用透传分割器时, 记录数据报的边界
+                if(readSession != session && readSession.socketContext().isMultiplexed() &&
+                        socketContext.messageSplitter() instanceof TransferSplitter) {
+                    readSession.offerDatagram(readSize);
+                }
+
+                readSession.getByteBufferChannel().writeEnd(readTempBuffer);
+
+                //检查心跳
+                HeartBeat.interceptHeartBeat(readSession, readSession.getByteBufferChannel());
+
+                // 触发 onRead 事件,如果正在处理 onRecive 事件则本次事件触发忽略
+                EventTrigger.fireReceiveThread(readSession);
             }
+
+            return true;
+        } finally {
+            readTempBuffer.clear();
         }
     }
 
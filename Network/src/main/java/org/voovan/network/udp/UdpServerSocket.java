@@ -1,6 +1,6 @@
 package org.voovan.network.udp;
 
-import org.voovan.Global;
+import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
 import org.voovan.network.handler.SynchronousHandler;
 import org.voovan.network.messagesplitter.TransferSplitter;
@@ -13,6 +13,9 @@ import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * UdpSocket 连接
@@ -29,6 +32,9 @@ public class UdpServerSocket extends SocketContext{
     private Selector selector;
     private DatagramChannel datagramChannel;
     private UdpSession session;
+    private int sessionTimeout = 0;
+    private ConcurrentHashMap<InetSocketAddress, UdpSession> sessions;
+    private long lastExpireTime;
 
 
     /**
@@ -65,6 +71,85 @@ public class UdpServerSocket extends SocketContext{
         datagramChannel.bind(new InetSocketAddress(this.host, this.port));
         datagramChannel.configureBlocking(false);
         this.handler = new SynchronousHandler();
+        sessions = new ConcurrentHashMap<InetSocketAddress, UdpSession>();
+    }
+
+    /**
+     * 获取会话的空闲超时时间
+     * @return 会话的空闲超时时间, 单位: 秒
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * 设置会话的空闲超时时间
+     *      大于 0 时启用会话表: 同一个对端地址的数据报在同一个会话中处理, 发送后不断开,
+     *      超过空闲超时时间没有收到数据报的会话被关闭并触发 onDisconnect 事件.
+     *      等于 0 时每个数据报创建一个会话, 发送完成后断开.
+     * @param sessionTimeout 会话的空闲超时时间, 单位: 秒
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * 获取会话表
+     * @return 对端地址和会话的 Map, 只读
+     */
+    public Map<InetSocketAddress, UdpSession> getSessions() {
+        return Collections.unmodifiableMap(sessions);
+    }
+
+    /**
+     * 获取对端地址对应的会话
+     *      会话表中没有时创建新的会话, 并触发 onConnect 事件
+     * @param address 对端地址
+     * @return 会话对象
+     */
+    UdpSession acceptSession(InetSocketAddress address) {
+        if(sessionTimeout <= 0){
+            UdpSession newSession = new UdpSocket(this, address).getSession();
+            EventTrigger.fireConnectThread(newSession);
+            return newSession;
+        }
+
+        UdpSession udpSession = sessions.get(address);
+        if(udpSession == null || !udpSession.isOpen()) {
+            udpSession = new UdpSocket(this, address).getSession();
+            sessions.put(address, udpSession);
+            EventTrigger.fireConnectThread(udpSession);
+        }
+
+        udpSession.refreshActiveTime();
+        return udpSession;
+    }
+
+    /**
+     * 从会话表中移除会话
+     * @param udpSession 会话对象
+     * @return true: 移除成功, false: 会话不在会话表中
+     */
+    boolean removeSession(UdpSession udpSession) {
+        return sessions.remove(udpSession.getRemoteSocketAddress(), udpSession);
+    }
+
+    /**
+     * 关闭空闲超时的会话
+     *      由监听线程调用, 每秒最多检查一次
+     */
+    void expireSessions() {
+        long currentTime = System.currentTimeMillis();
+        if(sessionTimeout <= 0 || currentTime - lastExpireTime < 1000){
+            return;
+        }
+
+        lastExpireTime = currentTime;
+        for(UdpSession udpSession : sessions.values()){
+            if(currentTime - udpSession.getLastActiveTime() >= sessionTimeout * 1000L){
+                udpSession.close();
+            }
+        }
     }
 
 
@@ -136,7 +221,8 @@ public class UdpServerSocket extends SocketContext{
      */
     @Override
     public void syncStart() throws IOException {
-        Global.getThreadPool().execute(new Runnable(){
+        //监听循环长期占用线程, 使用独立的线程, 不占用公用线程池
+        Thread thread = new Thread(new Runnable(){
             public void run() {
                 try {
                     start();
@@ -144,7 +230,8 @@ public class UdpServerSocket extends SocketContext{
                     e.printStackTrace();
                 }
             }
-        });
+        }, "VOOVAN@UDP_SERVER");
+        thread.start();
     }
 
     @Override
@@ -173,6 +260,11 @@ public class UdpServerSocket extends SocketContext{
     @Override
     public boolean close() {
         if(datagramChannel!=null){
+            //关闭会话表中的会话
+            for(UdpSession udpSession : sessions.values()){
+                udpSession.close();
+            }
+
             try{
                 datagramChannel.close();
                 return true;
@@ -2,6 +2,7 @@ package org.voovan.network.udp;
 
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.NetworkMetrics;
 import org.voovan.network.exception.RestartException;
 import org.voovan.tools.log.Logger;
 
@@ -22,6 +23,12 @@ import java.nio.channels.DatagramChannel;
 public class UdpSession extends IoSession<UdpSocket> {
 	private DatagramChannel	datagramChannel;
 	private InetSocketAddress remoteAddress;
+	private volatile long lastActiveTime;
+
+	//会话中缓存的数据报长度, 用于按数据报的边界分割消息
+	private int[] datagramSizes = new int[8];
+	private int datagramHead = 0;
+	private int datagramCount = 0;
 
 	/**
 	 * 构造函数
@@ -33,6 +40,7 @@ public class UdpSession extends IoSession<UdpSocket> {
 		if (udpSocket != null) {
 			this.datagramChannel = udpSocket.datagramChannel();
 			this.remoteAddress = remoteAddress;
+			this.lastActiveTime = System.currentTimeMillis();
 
 			//UDP 是无状态协议,所以无心跳,也无空闲事件,所以这里设置为0
 			this.setIdleInterval(0);
@@ -43,6 +51,64 @@ public class UdpSession extends IoSession<UdpSocket> {
 		
 	}
 
+	/**
+	 * 获取最后一次收到数据报的时间
+	 * @return 最后一次收到数据报的时间, 单位: 毫秒
+	 */
+	public long getLastActiveTime() {
+		return lastActiveTime;
+	}
+
+	/**
+	 * 收到数据报时刷新活动时间
+	 */
+	void refreshActiveTime() {
+		lastActiveTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * 记录收到的数据报长度
+	 * @param size 数据报长度
+	 */
+	synchronized void offerDatagram(int size) {
+		if(datagramCount == datagramSizes.length) {
+			int[] newSizes = new int[datagramSizes.length * 2];
+			for(int i=0; i<datagramCount; i++){
+				newSizes[i] = datagramSizes[(datagramHead + i) % datagramSizes.length];
+			}
+			datagramSizes = newSizes;
+			datagramHead = 0;
+		}
+
+		datagramSizes[(datagramHead + datagramCount) % datagramSizes.length] = size;
+		datagramCount++;
+	}
+
+	/**
+	 * 获取下一个数据报的长度
+	 * 		会话表中的会话缓存了多个数据报时, 透传分割器按数据报的边界分割消息
+	 * @param available 缓冲区中的数据长度
+	 * @return 下一个数据报的长度, 没有记录时返回缓冲区中的数据长度
+	 */
+	public synchronized int pollDatagram(int available) {
+		if(datagramCount == 0) {
+			return available;
+		}
+
+		int size = datagramSizes[datagramHead];
+		datagramHead = (datagramHead + 1) % datagramSizes.length;
+		datagramCount--;
+		return size <= available ? size : available;
+	}
+
+	/**
+	 * 获取对端地址
+	 * @return 对端地址
+	 */
+	InetSocketAddress getRemoteSocketAddress() {
+		return remoteAddress;
+	}
+
 	/**
 	 * 获取本地 IP 地址
 	 * 
@@ -125,6 +191,11 @@ public class UdpSession extends IoSession<UdpSocket> {
 			while(isOpen() && buffer.remaining()!=0){
 				totalSendByte+=datagramChannel.send(buffer, remoteAddress);
 			}
+
+			NetworkMetrics metrics = getMetrics();
+			if (metrics != null) {
+				metrics.addBytesWritten(totalSendByte);
+			}
 		}
 		return totalSendByte;
 	}
@@ -2,6 +2,7 @@ package org.voovan.network.udp;
 
 import org.voovan.Global;
 import org.voovan.network.ConnectModel;
+import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
 import org.voovan.network.exception.ReadMessageException;
 import org.voovan.network.exception.RestartException;
@@ -31,6 +32,8 @@ public class UdpSocket extends SocketContext{
     private Selector selector;
     private DatagramChannel datagramChannel;
     private UdpSession session;
+    private UdpServerSocket serverSocket;
+    private volatile boolean closed = false;
 
 
     /**
@@ -77,7 +80,8 @@ public class UdpSocket extends SocketContext{
     protected UdpSocket(SocketContext parentSocketContext,InetSocketAddress socketAddress){
         try {
             provider = SelectorProvider.provider();
-            this.datagramChannel = ((UdpServerSocket)parentSocketContext).datagramChannel();
+            this.serverSocket = (UdpServerSocket)parentSocketContext;
+            this.datagramChannel = serverSocket.datagramChannel();
             this.copyFrom(parentSocketContext);
             session = new UdpSession(this, socketAddress);
             connectModel = ConnectModel.SERVER;
@@ -128,6 +132,15 @@ public class UdpSocket extends SocketContext{
         return this.datagramChannel;
     }
 
+    /**
+     * 是否是服务端会话表中的会话
+     *      会话表中的会话共用服务端的 DatagramChannel, 发送完成后不断开, 空闲超时后关闭
+     * @return true: 会话表中的会话, false: 独立的会话
+     */
+    public boolean isMultiplexed(){
+        return serverSocket != null && serverSocket.getSessionTimeout() > 0;
+    }
+
     @Override
     public void start() throws IOException {
         InetSocketAddress address = new InetSocketAddress(this.host, this.port);
@@ -145,7 +158,8 @@ public class UdpSocket extends SocketContext{
      * 启动同步的上下文连接,同步读写时使用
      */
     public void syncStart(){
-        Global.getThreadPool().execute(new Runnable(){
+        //接收循环长期占用线程, 使用独立的线程, 不占用公用线程池
+        Thread thread = new Thread(new Runnable(){
            public void run() {
                try {
                    start();
@@ -153,7 +167,8 @@ public class UdpSocket extends SocketContext{
                    e.printStackTrace();
                }
            }
-        });
+        }, "VOOVAN@UDP_SOCKET");
+        thread.start();
     }
 
     @Override
@@ -198,6 +213,10 @@ public class UdpSocket extends SocketContext{
 
     @Override
     public boolean isOpen() {
+        if(closed){
+            return false;
+        }
+
         if(datagramChannel!=null){
             return datagramChannel.isOpen();
         }else{
@@ -217,6 +236,11 @@ public class UdpSocket extends SocketContext{
     @Override
     public boolean close() {
 
+        //会话表中的会话不关闭共用的 DatagramChannel, 只从会话表中移除
+        if(isMultiplexed()){
+            return closeMultiplexed();
+        }
+
         if(datagramChannel!=null){
             try{
                 datagramChannel.close();
@@ -234,4 +258,32 @@ public class UdpSocket extends SocketContext{
             return true;
         }
     }
+
+    /**
+     * 关闭会话表中的会话
+     * @return true: 关闭成功
+     */
+    private boolean closeMultiplexed(){
+        if(closed || !serverSocket.removeSession(session)){
+            return true;
+        }
+
+        closed = true;
+
+        // 触发连接断开事件
+        EventTrigger.fireDisconnectThread(session);
+
+        final UdpSession closedSession = session;
+        final int waitTime = this.getReadTimeout();
+        Global.getWorkerPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                //如果有未读数据等待数据处理完成
+                closedSession.wait(waitTime);
+
+                closedSession.getByteBufferChannel().release();
+            }
+        });
+        return true;
+    }
 }
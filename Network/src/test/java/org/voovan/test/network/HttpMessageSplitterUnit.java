@@ -0,0 +1,198 @@
+package org.voovan.test.network;
+
+import junit.framework.TestCase;
+import org.voovan.network.IoHandler;
+import org.voovan.network.IoSession;
+import org.voovan.network.messagesplitter.HttpMessageSplitter;
+import org.voovan.network.nio.NioServerSocket;
+import org.voovan.network.nio.NioSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * Http 消息分割测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class HttpMessageSplitterUnit extends TestCase {
+
+	private HttpMessageSplitter splitter;
+	private HttpMessageSplitter.SplitState state;
+	private IoSession session;
+
+	public HttpMessageSplitterUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	public void setUp() throws IOException {
+		splitter = new HttpMessageSplitter();
+		state = splitter.createState(null);
+		//未连接的会话, 只用于分割
+		session = new NioSocket("127.0.0.1", 28036, 1000).getSession();
+	}
+
+	private int split(String data) {
+		return splitter.canSplite(session, ByteBuffer.wrap(data.getBytes()), state);
+	}
+
+	public void testSplitAcrossHead() {
+		//每次分割时缓冲区包含之前到达的全部数据, 分割状态从上一次扫描的位置继续
+		String request = "POST /upload HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: 5\r\n\r\nhello";
+		assertEquals(-1, split(request.substring(0, 8)));
+		assertEquals(-1, split(request.substring(0, 30)));
+
+		//报文头完整后不等待报文体, 报文体由解析器流式读取
+		assertEquals(0, split(request.substring(0, request.indexOf("hello"))));
+		assertEquals(0, split(request));
+	}
+
+	public void testChunked() {
+		String request = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhel";
+		assertEquals(-1, split(request.substring(0, request.indexOf("chunked"))));
+		assertEquals(0, split(request));
+	}
+
+	public void testPipelinedRequests() {
+		String request1 = "GET /a HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n";
+		String request2 = "POST /b HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc";
+		String request3 = "GET /c HTTP/1.1\r\n\r\n";
+
+		//第一个报文完整后由解析器读取, 剩余的数据从报文的起始位置重新分割
+		assertEquals(0, split(request1 + request2 + request3));
+		assertEquals(0, split(request2 + request3));
+		assertEquals(0, split(request3));
+	}
+
+	public void testContentLengthZero() {
+		assertEquals(0, split("POST / HTTP/1.1\r\nContent-Length: 0\r\n\r\n"));
+		assertEquals(0, split("GET / HTTP/1.1\r\nContent-Length:0\r\n\r\nGET /next HTTP/1.1\r\n"));
+	}
+
+	public void testResponse() {
+		//响应报文在报文头完整后交给解析器
+		assertEquals(-1, split("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n"));
+		assertEquals(0, split("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n"));
+	}
+
+	public void testMalformed() {
+		assertEquals(-1, split("\r\nGET / HTTP/1.1\r\n\r\n"));
+		assertEquals(-1, split("get / HTTP/1.1\r\n\r\n"));
+		assertEquals(-1, split("GET /HTTP/1.1\r\n\r\n"));
+		assertEquals(-1, split("GET / HTTP/1.1\r\nNoColon\r\n\r\n"));
+
+		//非法报文重置分割状态, 之后的报文重新开始分割
+		assertEquals(0, split("GET / HTTP/1.1\r\n\r\n"));
+	}
+
+	public void testMaxHeadSize() {
+		splitter = new HttpMessageSplitter(64);
+		state = splitter.createState(null);
+
+		assertEquals(0, split("GET / HTTP/1.1\r\n\r\n"));
+
+		//报文体不受报文头最大长度的限制
+		assertEquals(0, split("POST / HTTP/1.1\r\nContent-Length: 100\r\n\r\n" + new String(new char[100])));
+
+		//报文头超过最大长度
+		StringBuilder head = new StringBuilder("GET / HTTP/1.1\r\n");
+		while(head.length() <= 64) {
+			head.append("X-Padding: 0123456789\r\n");
+		}
+		assertEquals(-1, split(head.toString()));
+		assertEquals(-1, split(head.append("\r\n").toString()));
+	}
+
+	private NioServerSocket startServer(HttpMessageSplitter messageSplitter) throws IOException {
+		NioServerSocket server = new NioServerSocket("127.0.0.1", 0, 5000);
+		server.handler(new IoHandler() {
+			@Override
+			public Object onConnect(IoSession session) {
+				return null;
+			}
+
+			@Override
+			public void onDisconnect(IoSession session) {
+			}
+
+			@Override
+			public Object onReceive(IoSession session, Object obj) {
+				return null;
+			}
+
+			@Override
+			public void onException(IoSession session, Exception e) {
+			}
+
+			@Override
+			public void onIdle(IoSession session) {
+			}
+
+			@Override
+			public void onSent(IoSession session, Object obj) {
+			}
+		});
+		server.messageSplitter(messageSplitter);
+		server.syncStart();
+		return server;
+	}
+
+	private static String readAll(Socket socket) throws IOException {
+		InputStream inputStream = socket.getInputStream();
+		StringBuilder result = new StringBuilder();
+		try {
+			int value;
+			while ((value = inputStream.read()) != -1) {
+				result.append((char) value);
+			}
+		} catch (SocketException e) {
+			//未读取的数据被丢弃时对端收到 RST
+			assertTrue(e.getMessage().contains("reset"));
+		}
+		return result.toString();
+	}
+
+	public void testMaxHeadSizeResponse() throws Exception {
+		NioServerSocket server = startServer(new HttpMessageSplitter(1024));
+		Socket socket = new Socket("127.0.0.1", server.socketChannel().socket().getLocalPort());
+		try {
+			socket.setSoTimeout(5000);
+			OutputStream outputStream = socket.getOutputStream();
+			outputStream.write("POST / HTTP/1.1\r\n".getBytes());
+			for(int i=0; i<100; i++) {
+				outputStream.write("X-Padding: 0123456789\r\n".getBytes());
+			}
+			outputStream.flush();
+
+			//报文头超过最大长度时返回 413 后关闭连接
+			assertTrue(readAll(socket).startsWith("HTTP/1.1 413"));
+		} finally {
+			socket.close();
+			server.close();
+		}
+	}
+
+	public void testNonHttpCloseConnection() throws Exception {
+		NioServerSocket server = startServer(new HttpMessageSplitter());
+		Socket socket = new Socket("127.0.0.1", server.socketChannel().socket().getLocalPort());
+		try {
+			socket.setSoTimeout(5000);
+			//没有换行的非 HTTP 数据不等待首行完整, 直接关闭连接
+			socket.getOutputStream().write(new byte[]{0x16, 0x03, 0x01, 0x00});
+			socket.getOutputStream().flush();
+			assertEquals("", readAll(socket));
+		} finally {
+			socket.close();
+			server.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.voovan.test.network;
+
+import junit.framework.TestCase;
+import org.voovan.network.NetworkMetrics;
+
+import java.util.Map;
+
+/**
+ * 网络 IO 统计测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class NetworkMetricsUnit extends TestCase {
+
+	public void testByteCounter(){
+		NetworkMetrics contextMetrics = new NetworkMetrics();
+		NetworkMetrics session1 = new NetworkMetrics(contextMetrics);
+		NetworkMetrics session2 = new NetworkMetrics(contextMetrics);
+
+		session1.addBytesRead(100);
+		session1.addBytesWritten(10);
+		session2.addBytesRead(50);
+		session2.addBytesWritten(5);
+
+		//会话只记录自己的数据, SocketContext 汇总所有会话的数据
+		assertEquals(100, session1.getBytesRead());
+		assertEquals(10, session1.getBytesWritten());
+		assertEquals(50, session2.getBytesRead());
+		assertEquals(5, session2.getBytesWritten());
+		assertEquals(150, contextMetrics.getBytesRead());
+		assertEquals(15, contextMetrics.getBytesWritten());
+	}
+
+	public void testEventCounter(){
+		NetworkMetrics contextMetrics = new NetworkMetrics();
+		NetworkMetrics session1 = new NetworkMetrics(contextMetrics);
+		NetworkMetrics session2 = new NetworkMetrics(contextMetrics);
+
+		session1.incrementMessage();
+		session1.incrementMessage();
+		session2.incrementMessage();
+		assertEquals(2, session1.getMessageCount());
+		assertEquals(3, contextMetrics.getMessageCount());
+
+		//同一个会话只计数一次
+		session1.sessionOpened();
+		session1.sessionOpened();
+		session2.sessionOpened();
+		assertEquals(2, contextMetrics.getActiveSessions());
+		assertEquals(2, contextMetrics.getTotalSessions());
+
+		session1.sessionClosed();
+		session1.sessionClosed();
+		assertEquals(1, contextMetrics.getActiveSessions());
+		assertEquals(2, contextMetrics.getTotalSessions());
+		assertEquals(0, session1.getActiveSessions());
+		assertEquals(1, session2.getActiveSessions());
+
+		//耗时只记录在 SocketContext 的统计对象上
+		session1.recordFilter(1000);
+		session2.recordHandler(2000);
+		session2.recordQueue(3000);
+		assertEquals(1, contextMetrics.getFilterLatency().getCount());
+		assertEquals(1, contextMetrics.getHandlerLatency().getCount());
+		assertEquals(1, contextMetrics.getQueueLatency().getCount());
+		assertSame(contextMetrics.getFilterLatency(), session1.getFilterLatency());
+	}
+
+	public void testReset(){
+		NetworkMetrics contextMetrics = new NetworkMetrics();
+		NetworkMetrics session = new NetworkMetrics(contextMetrics);
+		session.sessionOpened();
+		session.addBytesRead(100);
+		session.incrementMessage();
+		session.recordHandler(1000);
+
+		Map<String, Object> metricsMap = contextMetrics.toMap();
+		assertEquals(100L, metricsMap.get("bytesRead"));
+		assertEquals(1L, metricsMap.get("messageCount"));
+		assertEquals(1L, metricsMap.get("activeSessions"));
+		assertTrue(contextMetrics.toJSON().contains("\"handlerLatency\""));
+
+		//活动的会话数不会被清空
+		contextMetrics.reset();
+		assertEquals(0, contextMetrics.getBytesRead());
+		assertEquals(0, contextMetrics.getMessageCount());
+		assertEquals(0, contextMetrics.getTotalSessions());
+		assertEquals(1, contextMetrics.getActiveSessions());
+		assertEquals(0, contextMetrics.getHandlerLatency().getCount());
+	}
+}
@@ -0,0 +1,163 @@
+package org.voovan.test.network.udp;
+
+import junit.framework.TestCase;
+import org.voovan.network.IoHandler;
+import org.voovan.network.IoSession;
+import org.voovan.network.filter.StringFilter;
+import org.voovan.network.udp.UdpServerSocket;
+import org.voovan.tools.TEnv;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UDP 服务端会话表测试
+ *
+ * @author helyho
+ *         <p>
+ *         Voovan Framework.
+ *         WebSite: https://github.com/helyho/Voovan
+ *         Licence: Apache v2 License
+ */
+public class UdpSessionUnit extends TestCase {
+
+    private UdpServerSocket server;
+    private InetSocketAddress serverAddress;
+    private AtomicInteger connectCount;
+    private AtomicInteger disconnectCount;
+    private Set<IoSession> sessions;
+
+    public UdpSessionUnit(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        connectCount = new AtomicInteger(0);
+        disconnectCount = new AtomicInteger(0);
+        sessions = Collections.synchronizedSet(new HashSet<IoSession>());
+
+        server = new UdpServerSocket("127.0.0.1", 0, 1000);
+        serverAddress = new InetSocketAddress("127.0.0.1", server.datagramChannel().socket().getLocalPort());
+        server.filterChain().add(new StringFilter());
+        server.handler(new IoHandler() {
+            @Override
+            public Object onConnect(IoSession session) {
+                connectCount.incrementAndGet();
+                return null;
+            }
+
+            @Override
+            public void onDisconnect(IoSession session) {
+                disconnectCount.incrementAndGet();
+            }
+
+            @Override
+            public Object onReceive(IoSession session, Object obj) {
+                sessions.add(session);
+                return "echo:" + obj;
+            }
+
+            @Override
+            public void onException(IoSession session, Exception e) {
+            }
+
+            @Override
+            public void onIdle(IoSession session) {
+            }
+
+            @Override
+            public void onSent(IoSession session, Object obj) {
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() {
+        server.close();
+    }
+
+    private String request(DatagramSocket client, String message) throws IOException {
+        byte[] data = message.getBytes();
+        client.send(new DatagramPacket(data, data.length, serverAddress));
+        DatagramPacket packet = new DatagramPacket(new byte[100], 100);
+        client.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength());
+    }
+
+    public void testSessionReuse() throws IOException {
+        server.setSessionTimeout(60);
+        server.syncStart();
+
+        DatagramSocket client1 = new DatagramSocket();
+        DatagramSocket client2 = new DatagramSocket();
+        try {
+            client1.setSoTimeout(2000);
+            client2.setSoTimeout(2000);
+
+            //同一个对端地址的数据报使用同一个会话
+            for (int i = 0; i < 5; i++) {
+                assertEquals("echo:a" + i, request(client1, "a" + i));
+            }
+            assertEquals(1, connectCount.get());
+            assertEquals(1, sessions.size());
+            assertEquals(1, server.getSessions().size());
+
+            //不同的对端地址使用不同的会话
+            assertEquals("echo:b", request(client2, "b"));
+            assertEquals(2, connectCount.get());
+            assertEquals(2, sessions.size());
+            assertEquals(2, server.getSessions().size());
+        } finally {
+            client1.close();
+            client2.close();
+        }
+    }
+
+    public void testSessionExpire() throws IOException {
+        server.setSessionTimeout(1);
+        server.syncStart();
+
+        DatagramSocket client = new DatagramSocket();
+        try {
+            client.setSoTimeout(2000);
+            assertEquals("echo:a", request(client, "a"));
+            assertEquals(1, server.getSessions().size());
+
+            //空闲超时的会话被关闭并从会话表中移除
+            TEnv.sleep(3000);
+            assertEquals(0, server.getSessions().size());
+            assertEquals(1, disconnectCount.get());
+
+            //同一个对端再次发送数据报时创建新的会话
+            assertEquals("echo:b", request(client, "b"));
+            assertEquals(2, connectCount.get());
+            assertEquals(2, sessions.size());
+        } finally {
+            client.close();
+        }
+    }
+
+    public void testSessionPerDatagram() throws IOException {
+        //没有设置会话超时时间时每个数据报使用一个新的会话
+        server.syncStart();
+
+        DatagramSocket client = new DatagramSocket();
+        try {
+            client.setSoTimeout(2000);
+            assertEquals("echo:a", request(client, "a"));
+            assertEquals("echo:b", request(client, "b"));
+            assertEquals(2, connectCount.get());
+            assertEquals(2, sessions.size());
+            assertEquals(0, server.getSessions().size());
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -11,12 +11,12 @@ import org.voovan.http.websocket.WebSocketRouter;
 import org.voovan.http.websocket.WebSocketSession;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.IoSession;
+import org.voovan.network.MessageLoader;
 import org.voovan.network.SSLManager;
 import org.voovan.network.aio.AioSocket;
 import org.voovan.network.exception.ReadMessageException;
 import org.voovan.network.exception.SendMessageException;
 import org.voovan.network.messagesplitter.HttpMessageSplitter;
-import org.voovan.tools.TEnv;
 import org.voovan.tools.TString;
 import org.voovan.tools.log.Logger;
 
@@ -30,6 +30,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 /**
  * HTTP 请求调用
@@ -40,14 +43,27 @@ import java.util.Map.Entry;
  * Licence: Apache v2 License
  */
 public class HttpClient {
+	//所有 HttpClient 共用的 SSLManager, 连接同一个 host:port 时复用缓存的 TLS 会话
+	private static SSLManager clientSSLManager;
 
 	private AioSocket socket;
+	private HttpClientHandler clientHandler;
 	private Request request;
 	private Map<String, Object> parameters;
 	private String charset="UTF-8";
 	private String urlString;
 	private boolean isSSL = false;
 	private boolean isWebSocket = false;
+	private String hostString;
+	private volatile boolean keepAlive = true;
+	private int streamBufferSize = 64 * 1024;
+	private ResponseStream responseStream;
+
+	//连接池中的 HttpClient 所属的连接池和路由
+	HttpClientPool pool;
+	String route;
+	volatile long lastUsedTime;
+	AtomicBoolean borrowed = new AtomicBoolean(false);
 
 	/**
 	 * 构建函数
@@ -103,6 +119,18 @@ public class HttpClient {
 		return isSSL;
 	}
 
+	/**
+	 * 获取客户端共用的 SSLManager
+	 * @return SSLManager 对象
+	 * @throws NoSuchAlgorithmException 无可用协议异常
+	 */
+	private static synchronized SSLManager getClientSSLManager() throws NoSuchAlgorithmException {
+		if(clientSSLManager == null){
+			clientSSLManager = new SSLManager("TLS");
+		}
+		return clientSSLManager;
+	}
+
 	/**
 	 * 初始化函数
 	 * @param urlString     主机地址
@@ -133,23 +161,18 @@ public class HttpClient {
 
 			parameters = new HashMap<String, Object>();
 
-			request = new Request();
-			//初始化请求参数,默认值
-			request.header().put("Host", hostString);
-			request.header().put("Pragma", "no-cache");
-			request.header().put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
-			request.header().put("User-Agent", "Voovan Http Client");
-			request.header().put("Accept-Encoding","gzip");
-			request.header().put("Connection","keep-alive");
+			this.hostString = hostString;
+			initRequest();
 
 			socket = new AioSocket(hostString, port==-1?80:port, timeOut*1000);
+			clientHandler = new HttpClientHandler();
+			socket.handler(clientHandler);
 			socket.filterChain().add(new HttpClientFilter());
 			socket.messageSplitter(new HttpMessageSplitter());
 
 			if(isSSL){
 				try {
-					SSLManager sslManager = new SSLManager("TLS");
-					socket.setSSLManager(sslManager);
+					socket.setSSLManager(getClientSSLManager());
 				} catch (NoSuchAlgorithmException e) {
 					Logger.error(e);
 				}
@@ -163,6 +186,29 @@ public class HttpClient {
 	}
 
 
+	/**
+	 * 初始化请求对象
+	 */
+	private void initRequest(){
+		request = new Request();
+		//初始化请求参数,默认值
+		request.header().put("Host", hostString);
+		request.header().put("Pragma", "no-cache");
+		request.header().put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
+		request.header().put("User-Agent", "Voovan Http Client");
+		request.header().put("Accept-Encoding","gzip");
+		request.header().put("Connection","keep-alive");
+	}
+
+	/**
+	 * 重置请求
+	 * 		归还到连接池时调用, 清理上一次使用时设置的请求方法, 请求头, Cookie 和参数
+	 */
+	void reset(){
+		parameters.clear();
+		initRequest();
+	}
+
 	/**
 	 * 读取流
 	 * @return 字节缓冲对象ByteBuffer
@@ -411,6 +457,164 @@ public class HttpClient {
 			throw new SendMessageException("The WebSocket is connect, you can't send http request.");
 		}
 
+		//发送报文
+		sendRequest(location);
+
+		Object readObject = null;
+		try {
+			readObject = socket.synchronouRead();
+		} catch (ReadMessageException e) {
+			keepAlive = false;
+			throw e;
+		}
+		Response response = null;
+
+		//如果是异常则抛出异常, 连接的状态未知不能复用
+		if(readObject instanceof Exception){
+			keepAlive = false;
+			throw new ReadMessageException((Exception) readObject);
+		}else{
+			response = (Response) readObject;
+		}
+
+		//结束操作
+		finished(request, response);
+
+		return response;
+	}
+
+	/**
+	 * 获取流式读取响应时接收缓冲区的上限
+	 * @return 接收缓冲区的上限, 单位: 字节
+	 */
+	public int getStreamBufferSize() {
+		return streamBufferSize;
+	}
+
+	/**
+	 * 设置流式读取响应时接收缓冲区的上限
+	 * 		缓冲区中未读取的报文体超过上限时暂停从连接接收数据
+	 * @param streamBufferSize 接收缓冲区的上限, 单位: 字节
+	 * @return HttpClient 对象
+	 */
+	public HttpClient setStreamBufferSize(int streamBufferSize) {
+		this.streamBufferSize = streamBufferSize;
+		return this;
+	}
+
+	/**
+	 * 发送请求并流式读取响应
+	 * 		响应头到达后立即返回, 报文体通过 ResponseStream 按需读取, 内存占用不超过 streamBufferSize.
+	 * 		报文体读取完成之前不能在这个连接上发送新的请求.
+	 * @param location 请求 URL
+	 * @return 响应流对象
+	 * @throws SendMessageException  发送异常
+	 * @throws ReadMessageException  读取异常
+	 */
+	public ResponseStream sendStream(String location) throws SendMessageException, ReadMessageException {
+		if(isWebSocket){
+			throw new SendMessageException("The WebSocket is connect, you can't send http request.");
+		}
+
+		if(responseStream != null && !responseStream.isEnd()){
+			throw new SendMessageException("The body of last response stream is not read completely.");
+		}
+
+		if(clientHandler.getPendingCount() > 0){
+			throw new SendMessageException("The asynchronous requests are waiting for response.");
+		}
+
+		IoSession session = socket.getSession();
+		boolean hasBody = !"HEAD".equals(request.protocol().getMethod());
+
+		//响应头解析后停止消息分割, 报文体保留在接收缓冲区中
+		session.setAttribute(ResponseStream.RESPONSE_STREAM, true);
+		socket.setReceiveLimit(streamBufferSize);
+
+		Response response;
+		try {
+			response = send(location);
+		} catch (SendMessageException | ReadMessageException e) {
+			streamAborted();
+			throw e;
+		}
+
+		responseStream = new ResponseStream(this, socket, response, hasBody);
+		return responseStream;
+	}
+
+	/**
+	 * 流式读取的报文体没有读取完成
+	 * 		连接中残留的数据无法区分, 连接不再复用
+	 */
+	void streamAborted() {
+		keepAlive = false;
+		socket.getSession().removeAttribute(ResponseStream.RESPONSE_STREAM);
+		socket.setReceiveLimit(0);
+	}
+
+	/**
+	 * 异步发送请求
+	 * 		不等待响应直接返回, 响应到达后完成返回的 CompletableFuture.
+	 * 		同一个连接上可以连续发送多个请求 (HTTP/1.1 管线化), 响应按发送的顺序对应到各自的请求.
+	 * 		请求发送后立即清理参数和请求体, 可以继续设置下一个请求.
+	 * @param location 请求 URL
+	 * @return 响应的 CompletableFuture 对象, 连接断开, 读超时或者解析失败时以异常结束
+	 */
+	public CompletableFuture<Response> sendAsync(String location) {
+		CompletableFuture<Response> future = new CompletableFuture<Response>();
+
+		if(isWebSocket){
+			future.completeExceptionally(new SendMessageException("The WebSocket is connect, you can't send http request."));
+			return future;
+		}
+
+		synchronized (this) {
+			//先登记再发送, 保证响应到达时能找到对应的请求
+			clientHandler.addPending(future);
+			try {
+				sendRequest(location);
+			} catch (SendMessageException e) {
+				clientHandler.removePending(future);
+				future.completeExceptionally(e);
+				return future;
+			}
+
+			clearRequest();
+		}
+
+		//连接在登记之前已经断开时, 断开事件不会再结束这个请求
+		if(!isConnect()) {
+			clientHandler.removePending(future);
+			future.completeExceptionally(new ReadMessageException("Socket is disconnect"));
+		}
+
+		return future.whenComplete(new BiConsumer<Response, Throwable>() {
+			@Override
+			public void accept(Response response, Throwable e) {
+				if (e != null) {
+					keepAlive = false;
+				} else {
+					applyResponse(response);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 异步发送请求
+	 * @return 响应的 CompletableFuture 对象
+	 */
+	public CompletableFuture<Response> sendAsync() {
+		return sendAsync("/");
+	}
+
+	/**
+	 * 构造并发送请求报文
+	 * @param location 请求 URL
+	 * @throws SendMessageException 发送异常
+	 */
+	private void sendRequest(String location) throws SendMessageException {
 		//设置默认的报文 Body 类型
 		if(request.protocol().getMethod().equals("POST") && request.parts().size()>0){
 			setBodyType(Request.RequestType.BODY_MULTIPART);
@@ -423,27 +627,12 @@ public class HttpClient {
 		//构造 Request 对象
 		buildRequest(TString.isNullOrEmpty(location)?"/":location);
 
-		//发送报文
 		try {
 			request.send(socket.getSession());
 		}catch(IOException e){
+			keepAlive = false;
 			throw new SendMessageException("HttpClient send error",e);
 		}
-
-		Object readObject = socket.synchronouRead();
-		Response response = null;
-
-		//如果是异常则抛出异常
-		if(readObject instanceof Exception){
-			throw new ReadMessageException((Exception) readObject);
-		}else{
-			response = (Response) readObject;
-		}
-
-		//结束操作
-		finished(request, response);
-
-		return response;
 	}
 
 	/**
@@ -461,13 +650,38 @@ public class HttpClient {
 	 * @param response 请求对象
      */
 	 private void finished(Request request, Response response){
+		applyResponse(response);
+		clearRequest();
+	}
+
+	/**
+	 * 处理响应对连接的影响
+	 * 		记录连接是否可以复用, 并将响应的 Cookie 传递到后续的请求
+	 * @param response 响应对象
+	 */
+	private synchronized void applyResponse(Response response){
+		//服务端要求关闭连接时, 连接不能复用. HTTP/1.0 默认关闭连接, 只有声明了 keep-alive 才能复用
+		if(response!=null) {
+			String connection = response.header().get("Connection");
+			connection = connection == null ? "" : connection.toLowerCase();
+			if (connection.contains("close") ||
+					(response.protocol().getVersion() < 1.1f && !connection.contains("keep-alive"))) {
+				keepAlive = false;
+			}
+		}
+
 		//传递 cookie 到 Request 对象
 		if(response!=null
 				&& response.cookies()!=null
 				&& !response.cookies().isEmpty()){
 			request.cookies().addAll(response.cookies());
 		}
+	}
 
+	/**
+	 * 清理请求对象,以便下次请求使用
+	 */
+	private void clearRequest(){
 		 try {
 			 request.body().changeToBytes(new byte[0]);
 		 } catch (IOException e) {
@@ -523,6 +737,7 @@ public class HttpClient {
 	 */
 	public void webSocket(String location, WebSocketRouter webSocketRouter) throws SendMessageException, ReadMessageException {
 		IoSession session = socket.getSession();
+		WebSocketHandler webSocketHandler = null;
 
 		//处理升级后的消息
 		if(doWebSocketUpgrade(location)){
@@ -530,7 +745,7 @@ public class HttpClient {
 			//这里需要效验Sec-WebSocket-Accept
 
 			WebSocketSession webSocketSession = new WebSocketSession(socket.getSession(), null, this.socket.getHost(), this.socket.getPort());
-			WebSocketHandler webSocketHandler = new WebSocketHandler(this, webSocketSession, webSocketRouter);
+			webSocketHandler = new WebSocketHandler(this, webSocketSession, webSocketRouter);
 			webSocketSession.setWebSocketRouter(webSocketRouter);
 
 			Object result = null;
@@ -563,7 +778,7 @@ public class HttpClient {
 
 		//为异步调用进行阻赛,等待 socket 关闭
 		while(socket.isOpen()){
-			TEnv.sleep(1);
+			webSocketHandler.awaitClose(socket.getReadTimeout());
 		}
 	}
 
@@ -578,8 +793,20 @@ public class HttpClient {
 
 	/**
 	 * 关闭 HTTP 连接
+	 * 		从连接池获取的 HttpClient 归还到连接池
 	 */
 	public void close(){
+		if(pool!=null){
+			pool.restitution(this);
+		}else {
+			socket.close();
+		}
+	}
+
+	/**
+	 * 关闭 Socket 连接
+	 */
+	void closeSocket(){
 		socket.close();
 	}
 
@@ -591,4 +818,35 @@ public class HttpClient {
 		return socket.isConnected();
 	}
 
+	/**
+	 * 判断连接是否可以复用
+	 * 		连接保持打开, 服务端没有要求关闭连接, 没有等待中的异步请求和未读完的响应流, 并且没有升级为 WebSocket
+	 * @return true: 可以复用, false: 不可以复用
+	 */
+	public boolean isKeepAlive(){
+		return keepAlive && !isWebSocket && clientHandler.getPendingCount()==0 &&
+				(responseStream==null || responseStream.isEnd()) && isConnect();
+	}
+
+	/**
+	 * 判断空闲的连接是否可以复用
+	 * 		在 isKeepAlive 的基础上检查对端是否已经关闭了连接: 读取到流结束后连接的关闭是异步完成的,
+	 * 		这期间 isConnect 仍然返回 true. 空闲的连接上收到了数据 (例如服务端超时前发送的响应) 也不能复用.
+	 * @return true: 可以复用, false: 不可以复用
+	 */
+	boolean isIdleHealthy(){
+		if(!isKeepAlive() || !socket.socketChannel().isOpen()){
+			return false;
+		}
+
+		IoSession session = socket.getSession();
+		MessageLoader.StopType stopType = session.getMessageLoader().getStopType();
+		if(stopType == MessageLoader.StopType.STREAM_END || stopType == MessageLoader.StopType.SOCKET_CLOSED ||
+				stopType == MessageLoader.StopType.EXCEPTION){
+			return false;
+		}
+
+		return !session.getByteBufferChannel().isReleased() && session.getByteBufferChannel().size() == 0;
+	}
+
 }
@@ -43,6 +43,8 @@ public class HttpClientFilter implements IoFilter {
 
 	@Override
 	public Object decode(IoSession session,Object object) throws IoFilterException{
+		//流式读取响应时只解析响应头, 报文体由 ResponseStream 读取
+		boolean isStream = session.containAttribute(ResponseStream.RESPONSE_STREAM);
 		try{
 			if(object instanceof ByteBuffer){
                 ByteBuffer byteBuffer = (ByteBuffer)object;
@@ -55,14 +57,19 @@ public class HttpClientFilter implements IoFilter {
                 if("WebSocket".equals(WebServerHandler.getAttribute(session, WebServerHandler.SessionParam.TYPE))){
                     return WebSocketFrame.parse((ByteBuffer)object);
                 }else {
-					Response response = HttpParser.parseResponse(byteBufferChannel, session.socketContext().getReadTimeout());
+					if(isStream){
+						session.enabledMessageSpliter(false);
+					}
+					Response response = HttpParser.parseResponse(byteBufferChannel, session.socketContext().getReadTimeout(), !isStream);
 					return response;
 				}
 			}
 		}catch(IOException e){
 			throw new IoFilterException("HttpClientFilter decode Error. "+e.getMessage(),e);
 		}finally {
-			session.enabledMessageSpliter(true);
+			if(!isStream) {
+				session.enabledMessageSpliter(true);
+			}
 		}
 		return null;
 	}
@@ -0,0 +1,93 @@
+package org.voovan.http.client;
+
+import org.voovan.http.message.Response;
+import org.voovan.network.IoSession;
+import org.voovan.network.exception.ReadMessageException;
+import org.voovan.network.handler.SynchronousHandler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * HttpClient 的 IoHandler
+ * 		异步请求的响应按发送的顺序完成等待中的 CompletableFuture (HTTP/1.1 管线化),
+ * 		没有等待中的异步请求时按同步方式放入响应队列, 由 syncRead 读取.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpClientHandler extends SynchronousHandler {
+
+	//等待响应的异步请求, 按发送顺序排列
+	private ConcurrentLinkedQueue<CompletableFuture<Response>> pendingResponses = new ConcurrentLinkedQueue<CompletableFuture<Response>>();
+
+	/**
+	 * 增加等待响应的异步请求
+	 * 		必须在请求报文发送之前调用, 保证与响应的顺序一致
+	 * @param future 异步请求的 CompletableFuture 对象
+	 */
+	public void addPending(CompletableFuture<Response> future) {
+		pendingResponses.offer(future);
+	}
+
+	/**
+	 * 移除等待响应的异步请求
+	 * 		请求报文发送失败时调用
+	 * @param future 异步请求的 CompletableFuture 对象
+	 */
+	public void removePending(CompletableFuture<Response> future) {
+		pendingResponses.remove(future);
+	}
+
+	/**
+	 * 获取等待响应的异步请求数
+	 * @return 等待响应的异步请求数
+	 */
+	public int getPendingCount() {
+		return pendingResponses.size();
+	}
+
+	@Override
+	public void onDisconnect(IoSession session) {
+		failAll(new ReadMessageException("Socket is disconnect"));
+		super.onDisconnect(session);
+	}
+
+	@Override
+	public Object onReceive(IoSession session, Object obj) {
+		if(obj instanceof Response) {
+			CompletableFuture<Response> future = pendingResponses.poll();
+			if (future != null) {
+				future.complete((Response) obj);
+				return null;
+			}
+		}
+
+		return super.onReceive(session, obj);
+	}
+
+	@Override
+	public void onException(IoSession session, Exception e) {
+		//解析异常后无法确定后续响应的边界, 所有等待中的请求都失败
+		if(!pendingResponses.isEmpty()) {
+			failAll(e);
+			return;
+		}
+
+		super.onException(session, e);
+	}
+
+	/**
+	 * 所有等待中的异步请求以异常结束
+	 * @param e 异常对象
+	 */
+	private void failAll(Exception e) {
+		CompletableFuture<Response> future;
+		while((future = pendingResponses.poll()) != null) {
+			future.completeExceptionally(e);
+		}
+	}
+}
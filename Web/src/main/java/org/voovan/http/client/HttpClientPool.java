@@ -0,0 +1,300 @@
+package org.voovan.http.client;
+
+import org.voovan.Global;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpClient 连接池
+ *      按 scheme://host:port 区分路由, 每个路由的连接数不超过 maxPerRoute,
+ *      保持连接 (keep-alive) 的 HttpClient 归还后被下一次请求复用, 省去 TCP 和 TLS 握手.
+ *      时间轮每秒检查一次空闲的连接, 关闭空闲超时或者已经断开的连接, 复用之前也会再次检查连接是否可用.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpClientPool {
+	private int maxPerRoute = 16;
+	private int timeout = 5;
+	private int idleTimeout = 60;
+	private String charset = "UTF-8";
+	private ConcurrentHashMap<String, Route> routes;
+	private HashWheelTask evictTask;
+
+	/**
+	 * 构造函数
+	 */
+	public HttpClientPool() {
+		routes = new ConcurrentHashMap<String, Route>();
+
+		evictTask = new HashWheelTask() {
+			@Override
+			public void run() {
+				evict();
+			}
+		};
+		Global.getHashWheelTimer().addTask(evictTask, 1, true);
+	}
+
+	/**
+	 * 构造函数
+	 * @param maxPerRoute 每个路由的最大连接数
+	 * @param timeout 连接和读取的超时时间, 以及等待空闲连接的时间, 单位: 秒
+	 * @param idleTimeout 连接的空闲超时时间, 单位: 秒
+	 */
+	public HttpClientPool(int maxPerRoute, int timeout, int idleTimeout) {
+		this();
+		this.maxPerRoute = maxPerRoute;
+		this.timeout = timeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * 获取每个路由的最大连接数
+	 * @return 每个路由的最大连接数
+	 */
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * 设置每个路由的最大连接数
+	 *      只对之后创建的路由生效
+	 * @param maxPerRoute 每个路由的最大连接数
+	 */
+	public void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+	}
+
+	/**
+	 * 获取超时时间
+	 * @return 超时时间, 单位: 秒
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * 设置超时时间
+	 * @param timeout 连接和读取的超时时间, 以及等待空闲连接的时间, 单位: 秒
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * 获取连接的空闲超时时间
+	 * @return 空闲超时时间, 单位: 秒
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * 设置连接的空闲超时时间
+	 *      Aio 连接在超过读超时 (timeout) 没有数据时会被关闭, 所以空闲连接的存活时间不会超过 timeout
+	 * @param idleTimeout 空闲超时时间, 单位: 秒
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * 获取字符集
+	 * @return 字符集
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * 设置新建 HttpClient 使用的字符集
+	 * @param charset 字符集
+	 */
+	public void setCharset(String charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * 获取路由的空闲连接数
+	 * @param urlString 请求的 URL 地址
+	 * @return 空闲连接数
+	 */
+	public int getIdleCount(String urlString) {
+		Route route = routes.get(getRouteKey(urlString));
+		return route == null ? 0 : route.idleClients.size();
+	}
+
+	/**
+	 * 获取路由正在使用的连接数
+	 * @param urlString 请求的 URL 地址
+	 * @return 正在使用的连接数
+	 */
+	public int getBorrowedCount(String urlString) {
+		Route route = routes.get(getRouteKey(urlString));
+		return route == null ? 0 : route.maxPerRoute - route.permits.availablePermits();
+	}
+
+	/**
+	 * 生成路由的标识
+	 * @param urlString 请求的 URL 地址
+	 * @return scheme://host:port 形式的路由标识
+	 */
+	public static String getRouteKey(String urlString) {
+		String lowerUrl = urlString.toLowerCase();
+
+		//WebSocket 的连接按对应的 HTTP 协议区分
+		if(lowerUrl.startsWith("ws")){
+			lowerUrl = "http" + lowerUrl.substring(2);
+		}
+
+		try {
+			URL url = new URL(lowerUrl);
+			int port = url.getPort();
+			if(port == -1) {
+				port = url.getDefaultPort();
+			}
+			return url.getProtocol() + "://" + url.getHost() + ":" + port;
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("HttpClientPool unsupport url: " + urlString, e);
+		}
+	}
+
+	/**
+	 * 从连接池获取 HttpClient
+	 *      优先复用空闲的连接, 没有空闲连接并且未达到最大连接数时创建新的连接,
+	 *      达到最大连接数时等待其他请求归还连接, 最多等待 timeout 秒.
+	 *      使用完成后调用 HttpClient.close() 或者 restitution 归还到连接池.
+	 * @param urlString 请求的 URL 地址
+	 * @return HttpClient 对象, 等待超时或者连接失败时返回 null
+	 */
+	public HttpClient getHttpClient(String urlString) {
+		String routeKey = getRouteKey(urlString);
+		Route route = routes.get(routeKey);
+		if(route == null) {
+			route = new Route(maxPerRoute);
+			Route oldRoute = routes.putIfAbsent(routeKey, route);
+			if(oldRoute != null) {
+				route = oldRoute;
+			}
+		}
+
+		try {
+			if (!route.permits.tryAcquire(timeout, TimeUnit.SECONDS)) {
+				Logger.warn("HttpClientPool wait for " + routeKey + " timeout, max connection per route is " + route.maxPerRoute);
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		//复用最近归还的连接, 跳过已经断开或者被对端关闭的连接
+		HttpClient httpClient;
+		while((httpClient = route.idleClients.pollFirst()) != null) {
+			if(httpClient.isIdleHealthy()) {
+				httpClient.borrowed.set(true);
+				return httpClient;
+			}
+			httpClient.closeSocket();
+		}
+
+		httpClient = new HttpClient(urlString, charset, timeout);
+		if(!httpClient.isConnect()) {
+			httpClient.closeSocket();
+			route.permits.release();
+			return null;
+		}
+
+		httpClient.pool = this;
+		httpClient.route = routeKey;
+		httpClient.borrowed.set(true);
+		return httpClient;
+	}
+
+	/**
+	 * 归还 HttpClient 到连接池
+	 *      可以复用的连接重置请求后放入空闲队列, 否则关闭连接
+	 * @param httpClient HttpClient 对象
+	 */
+	public void restitution(HttpClient httpClient) {
+		if(httpClient.pool != this || !httpClient.borrowed.compareAndSet(true, false)) {
+			return;
+		}
+
+		Route route = routes.get(httpClient.route);
+		if(route == null) {
+			httpClient.closeSocket();
+			return;
+		}
+
+		if(httpClient.isIdleHealthy()) {
+			httpClient.reset();
+			httpClient.lastUsedTime = System.currentTimeMillis();
+			route.idleClients.offerFirst(httpClient);
+		} else {
+			httpClient.closeSocket();
+		}
+
+		route.permits.release();
+	}
+
+	/**
+	 * 关闭空闲超时和已经断开的连接
+	 */
+	private void evict() {
+		long currentTime = System.currentTimeMillis();
+		for(Route route : routes.values()) {
+			for(HttpClient httpClient : route.idleClients) {
+				if(currentTime - httpClient.lastUsedTime >= idleTimeout * 1000L || !httpClient.isIdleHealthy()) {
+					//移除失败说明连接已经被取走
+					if(route.idleClients.remove(httpClient)) {
+						httpClient.closeSocket();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 关闭连接池
+	 *      关闭所有空闲的连接, 正在使用的连接在归还时关闭
+	 */
+	public void close() {
+		evictTask.cancel();
+
+		for(Route route : routes.values()) {
+			HttpClient httpClient;
+			while((httpClient = route.idleClients.pollFirst()) != null) {
+				httpClient.closeSocket();
+			}
+		}
+		routes.clear();
+	}
+
+	/**
+	 * 路由
+	 *      保存同一个 scheme://host:port 的空闲连接
+	 */
+	private class Route {
+		private int maxPerRoute;
+		private Semaphore permits;
+		private ConcurrentLinkedDeque<HttpClient> idleClients;
+
+		public Route(int maxPerRoute) {
+			this.maxPerRoute = maxPerRoute;
+			this.permits = new Semaphore(maxPerRoute);
+			this.idleClients = new ConcurrentLinkedDeque<HttpClient>();
+		}
+	}
+}
@@ -0,0 +1,361 @@
+package org.voovan.http.client;
+
+import org.voovan.http.message.Response;
+import org.voovan.network.EventTrigger;
+import org.voovan.network.IoSession;
+import org.voovan.network.aio.AioSocket;
+import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.TString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * 流式读取的 HTTP 响应
+ * 		响应头解析完成后立即返回, 报文体由调用者从连接中按需读取.
+ * 		支持 Content-Length, chunked 和以关闭连接结束的报文体, chunked 的分块头在读取时被去除.
+ * 		报文体按传输的内容返回, Content-Encoding 为 gzip 时需要调用者解压.
+ * 		连接的接收缓冲区受 HttpClient 的 streamBufferSize 限制, 读取的速度决定从服务端接收的速度.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ResponseStream extends InputStream {
+	private static final int MODE_LENGTH 	= 0;
+	private static final int MODE_CHUNKED 	= 1;
+	private static final int MODE_CLOSE 	= 2;
+
+	//会话属性, 存在时 HttpClientFilter 只解析响应头, 报文体留给 ResponseStream 读取
+	static final int RESPONSE_STREAM = 0x6666;
+
+	private HttpClient httpClient;
+	private AioSocket socket;
+	private IoSession session;
+	private ByteBufferChannel byteBufferChannel;
+	private Response response;
+	private int timeout;
+
+	private int mode;
+	//当前长度段或分块中剩余的字节数
+	private long remaining;
+	private volatile boolean end;
+	private boolean closed;
+
+	/**
+	 * 构造函数
+	 * @param httpClient HttpClient 对象
+	 * @param socket 连接对象
+	 * @param response 只包含响应头的响应对象
+	 * @param hasBody 是否存在报文体, HEAD 请求, 1xx, 204 和 304 响应没有报文体
+	 */
+	protected ResponseStream(HttpClient httpClient, AioSocket socket, Response response, boolean hasBody) {
+		this.httpClient = httpClient;
+		this.socket = socket;
+		this.session = socket.getSession();
+		this.byteBufferChannel = session.getByteBufferChannel();
+		this.response = response;
+		this.timeout = socket.getReadTimeout();
+
+		int status = response.protocol().getStatus();
+		String transferEncoding = response.header().get("Transfer-Encoding");
+		String contentLength = response.header().get("Content-Length");
+
+		if(!hasBody || status / 100 == 1 || status == 204 || status == 304) {
+			mode = MODE_LENGTH;
+			remaining = 0;
+		} else if(transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			mode = MODE_CHUNKED;
+			remaining = -1;
+		} else if(contentLength != null && TString.isInteger(contentLength.trim())) {
+			mode = MODE_LENGTH;
+			remaining = Long.parseLong(contentLength.trim());
+		} else {
+			//没有长度标识, 报文体在服务端关闭连接时结束
+			mode = MODE_CLOSE;
+			remaining = -1;
+		}
+
+		if(mode == MODE_LENGTH && remaining == 0) {
+			finish();
+		}
+	}
+
+	/**
+	 * 获取响应对象
+	 * @return 只包含协议行, 响应头和 Cookie 的响应对象
+	 */
+	public Response getResponse() {
+		return response;
+	}
+
+	/**
+	 * 报文体是否已经读取完成
+	 * @return true: 读取完成, false: 未读取完成
+	 */
+	public boolean isEnd() {
+		return end;
+	}
+
+	/**
+	 * 读取报文体
+	 * 		等待至少一个字节的数据, 超过读超时时间抛出异常
+	 * @param byteBuffer 接收数据的缓冲区, 数据从 position 开始写入, 读取后 position 向后移动
+	 * @return 读取的字节数, -1: 报文体已经读取完成
+	 * @throws IOException IO 异常
+	 */
+	public int read(ByteBuffer byteBuffer) throws IOException {
+		if(closed) {
+			throw new IOException("ResponseStream is closed");
+		}
+
+		if(byteBuffer.remaining() == 0) {
+			return end ? -1 : 0;
+		}
+
+		while(!end) {
+			if(mode == MODE_CHUNKED && remaining <= 0) {
+				readChunkSize();
+				continue;
+			}
+
+			if(!waitData(1)) {
+				finish();
+				break;
+			}
+
+			int readSize = readBody(byteBuffer);
+			if(readSize > 0) {
+				return readSize;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * 读取全部报文体并逐段交给回调处理
+	 * 		回调中的 ByteBuffer 在回调返回后被复用, 需要保存时应复制其中的数据
+	 * @param bufferSize 每一段的最大字节数
+	 * @param consumer 处理报文体数据的回调
+	 * @return 读取的总字节数
+	 * @throws IOException IO 异常
+	 */
+	public long read(int bufferSize, Consumer<ByteBuffer> consumer) throws IOException {
+		ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
+		long totalSize = 0;
+		int readSize;
+		while((readSize = read(byteBuffer)) != -1) {
+			byteBuffer.flip();
+			consumer.accept(byteBuffer);
+			byteBuffer.clear();
+			totalSize = totalSize + readSize;
+		}
+		return totalSize;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] oneByte = new byte[1];
+		return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if(length == 0) {
+			return 0;
+		}
+		return read(ByteBuffer.wrap(buffer, offset, length));
+	}
+
+	@Override
+	public int available() throws IOException {
+		if(end || closed) {
+			return 0;
+		}
+
+		int size = byteBufferChannel.isReleased() ? 0 : byteBufferChannel.size();
+		return remaining >= 0 ? (int) Math.min(size, remaining) : size;
+	}
+
+	/**
+	 * 关闭流
+	 * 		报文体没有读取完成时, 连接中残留的数据无法区分, 连接不再复用
+	 */
+	@Override
+	public void close() {
+		if(closed) {
+			return;
+		}
+
+		closed = true;
+		if(!end) {
+			httpClient.streamAborted();
+		}
+	}
+
+	/**
+	 * 从接收缓冲区读取报文体的数据
+	 * @param byteBuffer 接收数据的缓冲区
+	 * @return 读取的字节数
+	 * @throws IOException IO 异常
+	 */
+	private int readBody(ByteBuffer byteBuffer) throws IOException {
+		int position = byteBuffer.position();
+		int limit = byteBuffer.limit();
+		if(remaining >= 0 && byteBuffer.remaining() > remaining) {
+			byteBuffer.limit(position + (int) remaining);
+		}
+
+		//readHead 读取后会 flip 缓冲区, 恢复为写入后的状态
+		int readSize = 0;
+		try {
+			readSize = byteBufferChannel.readHead(byteBuffer);
+		} finally {
+			byteBuffer.limit(limit);
+			byteBuffer.position(position + readSize);
+		}
+
+		//缓冲区被消费后恢复从连接读取
+		socket.resumeRead();
+
+		if(remaining >= 0) {
+			remaining = remaining - readSize;
+			if(remaining == 0) {
+				if(mode == MODE_LENGTH) {
+					finish();
+				} else {
+					//跳过分块数据结尾的换行
+					if(!waitData(2)) {
+						throw new IOException("ResponseStream read chunked data error");
+					}
+					byteBufferChannel.shrink(2);
+					socket.resumeRead();
+				}
+			}
+		}
+
+		return readSize;
+	}
+
+	/**
+	 * 读取 chunked 分块的长度
+	 * 		长度为 0 的分块之后跳过报文尾部的头, 报文体结束
+	 * @throws IOException IO 异常
+	 */
+	private void readChunkSize() throws IOException {
+		String chunkedLengthLine = readLine();
+		int extensionIndex = chunkedLengthLine.indexOf(';');
+		if(extensionIndex >= 0) {
+			chunkedLengthLine = chunkedLengthLine.substring(0, extensionIndex);
+		}
+
+		try {
+			remaining = Long.parseLong(chunkedLengthLine.trim(), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("ResponseStream read chunked length error: " + chunkedLengthLine, e);
+		}
+
+		if(remaining == 0) {
+			//跳过报文尾部的头直到空行
+			while(!readLine().isEmpty()) {
+			}
+			finish();
+		}
+	}
+
+	/**
+	 * 读取一行
+	 * @return 不包含换行符的行内容
+	 * @throws IOException IO 异常
+	 */
+	private String readLine() throws IOException {
+		byte[] mark = "\n".getBytes();
+		long deadline = System.currentTimeMillis() + timeout;
+		while(true) {
+			//先获取序号再检查缓冲区, 检查之后到达的数据会唤醒等待
+			long sequence = socket.getReadSequence();
+			if(byteBufferChannel.indexOf(mark) != -1) {
+				break;
+			}
+			checkWait(sequence, deadline);
+		}
+
+		String line = byteBufferChannel.readLine();
+		socket.resumeRead();
+		return line == null ? "" : line.trim();
+	}
+
+	/**
+	 * 等待接收缓冲区中的数据
+	 * @param length 期望的数据长度
+	 * @return true: 数据已经到达, false: 连接已关闭且没有更多的数据
+	 * @throws IOException IO 异常
+	 */
+	private boolean waitData(int length) throws IOException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while(true) {
+			long sequence = socket.getReadSequence();
+			if(byteBufferChannel.size() >= length) {
+				return true;
+			}
+
+			//以关闭连接结束的报文体读完缓冲区后结束, 其他情况是报文体不完整
+			if(!session.isConnected() && mode == MODE_CLOSE) {
+				return false;
+			}
+			checkWait(sequence, deadline);
+		}
+	}
+
+	/**
+	 * 检查连接状态和超时时间, 然后等待数据到达或者连接关闭
+	 * @param sequence 检查缓冲区之前获取的读取序号
+	 * @param deadline 超时的时间点
+	 * @throws IOException IO 异常
+	 */
+	private void checkWait(long sequence, long deadline) throws IOException {
+		if(byteBufferChannel.isReleased() || (!session.isConnected() && mode != MODE_CLOSE)) {
+			throw new IOException("ResponseStream socket is disconnect");
+		}
+
+		long waitTime = deadline - System.currentTimeMillis();
+		if(waitTime <= 0) {
+			throw new IOException("ResponseStream read timeout");
+		}
+
+		try {
+			socket.awaitRead(sequence, waitTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("ResponseStream read interrupted");
+		}
+	}
+
+	/**
+	 * 报文体读取完成
+	 * 		恢复消息分割器和接收缓冲区的上限, 连接可以继续发送下一个请求
+	 */
+	private void finish() {
+		end = true;
+
+		if(mode == MODE_CLOSE) {
+			httpClient.streamAborted();
+			return;
+		}
+
+		session.removeAttribute(RESPONSE_STREAM);
+		session.enabledMessageSpliter(true);
+		socket.setReceiveLimit(0);
+
+		//缓冲区中剩余的数据属于后续的响应
+		if(byteBufferChannel.size() > 0) {
+			EventTrigger.fireReceiveThread(session);
+		}
+	}
+}
@@ -13,6 +13,8 @@ import org.voovan.tools.TEnv;
 import org.voovan.tools.log.Logger;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 处理 WebSocket 相关的 IoHandler 事件
@@ -28,6 +30,7 @@ public class WebSocketHandler implements IoHandler{
     private WebSocketRouter webSocketRouter;
     private HttpClient httpClient;
     private WebSocketSession webSocketSession;
+    private CountDownLatch closeLatch = new CountDownLatch(1);
 
     /**
      * 构造函数
@@ -57,6 +60,22 @@ public class WebSocketHandler implements IoHandler{
         if (byteBufferChannel != null && !byteBufferChannel.isReleased()) {
             byteBufferChannel.release();
         }
+
+        closeLatch.countDown();
+    }
+
+    /**
+     * 等待 WebSocket 连接关闭
+     * @param timeout 超时时间, 单位: 毫秒
+     * @return true: 连接已关闭, false: 等待超时
+     */
+    public boolean awaitClose(long timeout) {
+        try {
+            return closeLatch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
     }
 
     @Override
@@ -95,7 +114,7 @@ public class WebSocketHandler implements IoHandler{
         else if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.PONG) {
             final IoSession poneSession = session;
 
-            Global.getThreadPool().execute(new Runnable() {
+            Global.getWorkerPool().execute(new Runnable() {
                 @Override
                 public void run() {
                     TEnv.sleep(poneSession.socketContext().getReadTimeout()/3);
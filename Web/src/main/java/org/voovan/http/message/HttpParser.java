@@ -231,6 +231,18 @@ public class HttpParser {
 	 * @throws IOException IO 异常
 	 */
 	public static Map<String, Object> parser(ByteBufferChannel byteBufferChannel, int timeOut) throws IOException{
+		return parser(byteBufferChannel, timeOut, true);
+	}
+
+	/**
+	 * 解析 HTTP 报文
+	 * @param byteBufferChannel 输入流
+	 * @param timeOut 读取超时时间参数
+	 * @param parseBody true: 解析报文体, false: 只解析到报文头结束的空行, 报文体保留在输入流中
+	 * @return 解析后的 Map
+	 * @throws IOException IO 异常
+	 */
+	public static Map<String, Object> parser(ByteBufferChannel byteBufferChannel, int timeOut, boolean parseBody) throws IOException{
 		Map<String, Object> packetMap = new HashMap<String, Object>();
 
 		int headerLength = 0;
@@ -262,6 +274,11 @@ public class HttpParser {
 			}
 
 
+			//只解析报文头时, 报文体由调用者从输入流中读取
+			if(isBodyConent && !parseBody){
+				break;
+			}
+
 			//解析 HTTP 请求 body
 			if(isBodyConent){
 				String contentType =packetMap.get(HEAD_CONTENT_TYPE)==null ? "" : packetMap.get(HEAD_CONTENT_TYPE).toString();
@@ -308,7 +325,7 @@ public class HttpParser {
 
 
 						//Part 头读取
-						ByteBuffer partHeadBuffer = ByteBuffer.allocateDirect(partHeadEndIndex + 4);
+						ByteBuffer partHeadBuffer = TByteBuffer.allocateDirect(partHeadEndIndex + 4);
 						byteBufferChannel.readHead(partHeadBuffer);
 
 						//构造新的 Bytebufer 递归解析
@@ -415,7 +432,7 @@ public class HttpParser {
 						int readSize = 0;
 						if(chunkedLength > 0) {
 							//按长度读取chunked内容
-							ByteBuffer byteBuffer = ByteBuffer.allocateDirect(chunkedLength);
+							ByteBuffer byteBuffer = TByteBuffer.allocateDirect(chunkedLength);
 							readSize = byteBufferChannel.readHead(byteBuffer);
 
 							if(readSize != chunkedLength){
@@ -454,7 +471,9 @@ public class HttpParser {
 					packetMap.put(BODY_VALUE, value);
 				}
 				//4. 容错,没有标识长度则默认读取全部内容段
-				else if(packetMap.get(BODY_VALUE)==null || packetMap.get(BODY_VALUE).toString().isEmpty()){
+				//   没有标识长度的请求没有报文体, 缓冲区中的数据属于下一个请求 (Pipeline)
+				else if(!packetMap.containsKey(FL_METHOD) &&
+						(packetMap.get(BODY_VALUE)==null || packetMap.get(BODY_VALUE).toString().isEmpty())){
 					byte[] contentBytes = byteBufferChannel.array();
 					if(contentBytes!=null && contentBytes.length>0){
 						byte[] value = dealBodyContent(packetMap, contentBytes);
@@ -568,11 +587,23 @@ public class HttpParser {
 	 * @return   返回响应报文
 	 * @throws IOException IO 异常
 	 */
-	@SuppressWarnings("unchecked")
 	public static Response parseResponse(ByteBufferChannel byteBufferChannel, int timeOut) throws IOException{
+		return parseResponse(byteBufferChannel, timeOut, true);
+	}
+
+	/**
+	 * 解析报文成 HttpResponse 对象
+	 * @param byteBufferChannel  输入字节流
+	 * @param timeOut 读取超时时间参数
+	 * @param parseBody true: 解析报文体, false: 只解析报文头, 报文体保留在输入流中
+	 * @return   返回响应报文
+	 * @throws IOException IO 异常
+	 */
+	@SuppressWarnings("unchecked")
+	public static Response parseResponse(ByteBufferChannel byteBufferChannel, int timeOut, boolean parseBody) throws IOException{
 		Response response = new Response();
 
-		Map<String, Object> parsedPacket = parser(byteBufferChannel, timeOut);
+		Map<String, Object> parsedPacket = parser(byteBufferChannel, timeOut, parseBody);
 
 		//填充报文到响应对象
 		Set<Entry<String, Object>> parsedItems= parsedPacket.entrySet();
@@ -183,13 +183,15 @@ public class Response {
 
 	/**
 	 * 发送数据
+	 * 		报文头、chunked 段长度、报文主体和结束符合并为一次写操作发送
 	 * @param session socket 会话对象
 	 * @throws IOException IO异常
 	 */
 	public void send(IoSession session) throws IOException {
 
-		//发送报文头
-		session.send(readHead());
+		//报文头和第一段报文主体一起发送
+		List<ByteBuffer> sendBuffers = new ArrayList<ByteBuffer>(5);
+		sendBuffers.add(readHead());
 
 		//是否需要压缩
 		if(isCompress){
@@ -200,9 +202,12 @@ public class Response {
 		if(body.size() != 0) {
 
 			//准备缓冲区
-			ByteBuffer byteBuffer = ByteBuffer.allocateDirect(1024 * 50);
+			ByteBuffer byteBuffer = TByteBuffer.allocateDirect(1024 * 50);
+			long bodySize = body.size();
+			long totalReadSize = 0;
 			int readSize = 0;
-			while (true) {
+			boolean isEnd = false;
+			while (!isEnd) {
 
 				readSize = body.read(byteBuffer);
 
@@ -210,31 +215,44 @@ public class Response {
 					break;
 				}
 
+				totalReadSize += readSize;
+
 				//判断是否需要发送 chunked 段长度
 				if (isCompress() && readSize!=0) {
 					String chunkedLengthLine = Integer.toHexString(readSize) + "\r\n";
-					session.send(ByteBuffer.wrap(chunkedLengthLine.getBytes()));
+					sendBuffers.add(ByteBuffer.wrap(chunkedLengthLine.getBytes()));
 				}
 
-				session.send(byteBuffer);
-				byteBuffer.clear();
+				sendBuffers.add(byteBuffer);
 
 				//判断是否需要发送 chunked 结束符号
 				if (isCompress() && readSize!=0) {
-					session.send(ByteBuffer.wrap("\r\n".getBytes()));
+					sendBuffers.add(ByteBuffer.wrap("\r\n".getBytes()));
+				}
+
+				//最后一段报文主体和报文结束符一起发送
+				if (bodySize > 0 && totalReadSize >= bodySize) {
+					sendBuffers.add(readEnd());
+					isEnd = true;
 				}
+
+				session.send(sendBuffers.toArray(new ByteBuffer[sendBuffers.size()]));
+				sendBuffers.clear();
+				byteBuffer.clear();
 			}
 
 			byteBuffer.clear();
 
 			//发送报文结束符
-			session.send(readEnd());
+			if (!isEnd) {
+				sendBuffers.add(readEnd());
+				session.send(sendBuffers.toArray(new ByteBuffer[sendBuffers.size()]));
+			}
 			TByteBuffer.release(byteBuffer);
 			body.free();
+		} else {
+			session.send(sendBuffers.toArray(new ByteBuffer[sendBuffers.size()]));
 		}
-
-
-
 	}
 
 	/**
@@ -128,18 +128,27 @@ public class Body {
 	 * @throws IOException 文件未找到异常
 	 */
 	public void changeToBytes(byte[] content) throws IOException {
-		if(byteBufferChannel == null || byteBufferChannel.isReleased()){
-			byteBufferChannel = new ByteBufferChannel();
-		}
-
 		if(bodyFile != null){
 			bodyFile = null;
 		}
 
-		byteBufferChannel.writeEnd(ByteBuffer.wrap(content));
+		getByteBufferChannel().writeEnd(ByteBuffer.wrap(content));
 		type = BodyType.BYTES;
 	}
 
+	/**
+	 * 获取字节形式的内容通道
+	 * 		通道在 free 后已归还内存, 再次使用时重新创建
+	 * @return ByteBufferChannel 对象
+	 */
+	private ByteBufferChannel getByteBufferChannel(){
+		if(byteBufferChannel == null || byteBufferChannel.isReleased()){
+			byteBufferChannel = new ByteBufferChannel();
+		}
+
+		return byteBufferChannel;
+	}
+
 	/**
 	 * 获取长度
 	 * @return 长度 小于0,则读取失败.
@@ -153,7 +162,7 @@ public class Body {
 				return -1;
 			}
 		}else {
-			return byteBufferChannel.size();
+			return getByteBufferChannel().size();
 		}
 	}
 
@@ -165,7 +174,7 @@ public class Body {
 		if(type == BodyType.FILE){
 			return TFile.loadFile(bodyFile);
 		} else {
-			return byteBufferChannel.array();
+			return getByteBufferChannel().array();
 		}
 	}
 	
@@ -207,7 +216,7 @@ public class Body {
 	public int read(ByteBuffer byteBuffer){
 		int readSize = -1;
 		if(type == BodyType.BYTES) {
-			 readSize = byteBufferChannel.readHead(byteBuffer);
+			 readSize = getByteBufferChannel().readHead(byteBuffer);
 			 readSize = readSize==0? -1: readSize;
 		}else {
 			byte[] fileContent = TFile.loadFile(bodyFile, position, position + byteBuffer.remaining());
@@ -246,7 +255,7 @@ public class Body {
 				ByteBuffer bodyTmp = ByteBuffer.wrap(body);
 				bodyTmp.position(offset);
 				bodyTmp.limit(length);
-				byteBufferChannel.writeEnd(bodyTmp);
+				getByteBufferChannel().writeEnd(bodyTmp);
             }else{
             	TFile.writeFile(bodyFile,true, body, offset, length);
             }
@@ -290,7 +299,7 @@ public class Body {
 	 */
 	public void clear(){
 		if(type == BodyType.BYTES) {
-			byteBufferChannel.clear();
+			getByteBufferChannel().clear();
 		} else if(type == BodyType.FILE){
 			if(bodyFile.getPath().startsWith(TFile.getTemporaryPath())) {
 				bodyFile.delete();
@@ -353,8 +362,8 @@ public class Body {
 				return true;
 			} else {
 				byte[] bodyBytes = TZip.encodeGZip(getBodyBytes());
-				byteBufferChannel.clear();
-				byteBufferChannel.writeEnd(ByteBuffer.wrap(bodyBytes));
+				getByteBufferChannel().clear();
+				getByteBufferChannel().writeEnd(ByteBuffer.wrap(bodyBytes));
 				return true;
 			}
 		}else {
@@ -362,6 +371,10 @@ public class Body {
 		}
 	}
 
+	/**
+	 * 释放内容通道的内存
+	 * 		释放后仍然可以继续写入, 会重新分配内存
+	 */
 	public void free(){
 		clear();
 		if(byteBufferChannel!=null) {
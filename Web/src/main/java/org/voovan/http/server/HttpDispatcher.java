@@ -37,6 +37,9 @@ import java.util.regex.Matcher;
  * Licence: Apache v2 License
  */
 public class HttpDispatcher {
+	//获取过滤器配置快照使用的数组类型
+	private static final HttpFilterConfig[] FILTER_CONFIG_ARRAY_TYPE = new HttpFilterConfig[0];
+
 	/**
 	 * [MainKey] = HTTP method ,[Value] = { [Value Key] = Route path, [Value value] = RouteBuiz对象 }
 	 */
@@ -45,6 +48,7 @@ public class HttpDispatcher {
 	private SessionManager sessionManager;
 	private MimeFileRouter mimeFileRouter;
 	private String[] indexFiles;
+	private SlowTaskWatchdog watchdog;
 
 	/**
 	 * 构造函数
@@ -141,7 +145,7 @@ public class HttpDispatcher {
 	 * @param response   HTTP 响应
 	 */
 	public void process(HttpRequest request, HttpResponse response){
-		Chain<HttpFilterConfig> filterConfigs = webConfig.getFilterConfigs().clone();
+		HttpFilterConfig[] filterConfigs = webConfig.getFilterConfigs().snapshot(FILTER_CONFIG_ARRAY_TYPE);
 
 		Object filterResult = null;
 
@@ -168,6 +172,23 @@ public class HttpDispatcher {
 		WebContext.writeAccessLog(webConfig, request, response);
 	}
 
+	/**
+	 * 获取慢路由检测
+	 * @return 慢路由检测对象, 未启用时返回 null
+	 */
+	public SlowTaskWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * 设置慢路由检测
+	 * 		启用后按 "请求方法 路由" 记录每次路由处理的耗时, 处理时间超过阈值的请求会被采样线程栈
+	 * @param watchdog 慢路由检测对象, null: 不启用
+	 */
+	public void setWatchdog(SlowTaskWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
 	/**
 	 * Http 路由处理函数
 	 * @param request    Http请求对象
@@ -190,6 +211,11 @@ public class HttpDispatcher {
 				//获取路由处理对象
 				HttpRouter router = routeEntry.getValue();
 
+				SlowTaskWatchdog.Watch watch = null;
+				if(watchdog != null) {
+					watch = watchdog.enter(requestMethod + " " + routePath);
+				}
+
 				try {
 					//获取路径变量
 					Map<String, String> pathVariables = fetchPathVariables(requestPath,routePath);
@@ -200,6 +226,10 @@ public class HttpDispatcher {
 
 				} catch (Exception e) {
 					exceptionMessage(request, response, e);
+				} finally {
+					if(watch != null) {
+						watchdog.exit(watch);
+					}
 				}
 
 				break;
@@ -332,10 +362,20 @@ public class HttpDispatcher {
 	 * @return 过滤器最后的结果
      */
 	public Object disposeFilter(Chain<HttpFilterConfig> filterConfigs, HttpRequest request, HttpResponse response) {
-		filterConfigs.rewind();
+		return disposeFilter(filterConfigs.snapshot(FILTER_CONFIG_ARRAY_TYPE), request, response);
+	}
+
+	/**
+	 * 正向处理过滤器
+	 * @param filterConfigs   HTTP过滤器配置对象的快照
+	 * @param request		  请求对象
+	 * @param response		  响应对象
+	 * @return 过滤器最后的结果
+	 */
+	public Object disposeFilter(HttpFilterConfig[] filterConfigs, HttpRequest request, HttpResponse response) {
 		Object filterResult = null;
-		while(filterConfigs.hasNext()){
-			HttpFilterConfig filterConfig = filterConfigs.next();
+		for(int i = 0; i < filterConfigs.length; i++){
+			HttpFilterConfig filterConfig = filterConfigs[i];
 			HttpFilter httpFilter = filterConfig.getHttpFilterInstance();
 			if(httpFilter!=null) {
 				filterResult = httpFilter.onRequest(filterConfig, request, response, filterResult);
@@ -353,10 +393,20 @@ public class HttpDispatcher {
 	 * @return 过滤器最后的结果
      */
 	public Object disposeInvertedFilter(Chain<HttpFilterConfig> filterConfigs, HttpRequest request, HttpResponse response) {
-		filterConfigs.rewind();
+		return disposeInvertedFilter(filterConfigs.snapshot(FILTER_CONFIG_ARRAY_TYPE), request, response);
+	}
+
+	/**
+	 * 反向处理过滤器
+	 * @param filterConfigs   HTTP过滤器配置对象的快照
+	 * @param request		  请求对象
+	 * @param response		  响应对象
+	 * @return 过滤器最后的结果
+	 */
+	public Object disposeInvertedFilter(HttpFilterConfig[] filterConfigs, HttpRequest request, HttpResponse response) {
 		Object filterResult = null;
-		while(filterConfigs.hasPrevious()){
-			HttpFilterConfig filterConfig = filterConfigs.previous();
+		for(int i = filterConfigs.length - 1; i >= 0; i--){
+			HttpFilterConfig filterConfig = filterConfigs[i];
 			HttpFilter httpFilter = filterConfig.getHttpFilterInstance();
 			if(httpFilter!=null) {
 				filterResult = httpFilter.onResponse(filterConfig, request, response, filterResult);
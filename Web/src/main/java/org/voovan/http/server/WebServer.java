@@ -5,9 +5,11 @@ import org.voovan.http.server.context.HttpRouterConfig;
 import org.voovan.http.server.context.WebContext;
 import org.voovan.http.server.context.WebServerConfig;
 import org.voovan.http.websocket.WebSocketRouter;
+import org.voovan.network.NetworkMetrics;
 import org.voovan.network.SSLManager;
 import org.voovan.network.aio.AioServerSocket;
 import org.voovan.network.messagesplitter.HttpMessageSplitter;
+import org.voovan.tools.SlowTaskWatchdog;
 import org.voovan.tools.TEnv;
 import org.voovan.tools.TFile;
 import org.voovan.tools.TString;
@@ -34,6 +36,7 @@ public class WebServer {
 	private WebSocketDispatcher webSocketDispatcher;
 	private SessionManager sessionManager;
 	private WebServerConfig config;
+	private SlowTaskWatchdog watchdog;
 
 	/**
 	 * 构造函数
@@ -62,26 +65,38 @@ public class WebServer {
 	private void initSocketServer(WebServerConfig config) throws IOException{
 		//[Socket] 准备 socket 监听
 		aioServerSocket = new AioServerSocket(config.getHost(), config.getPort(), config.getTimeout()*1000);
+		aioServerSocket.setAcceptorCount(config.getAcceptorCount());
+		aioServerSocket.setVirtualThread(config.isVirtualThread());
+		aioServerSocket.setMetricsEnabled(config.isMetrics());
+		if(config.getSlowThreshold() > 0) {
+			watchdog = new SlowTaskWatchdog(config.getSlowThreshold());
+			aioServerSocket.setWatchdog(watchdog);
+		}
 
 		//[HTTP] 构造 SessionManage
 		sessionManager = SessionManager.newInstance(config);
 
 		//[HTTP]请求派发器创建
 		this.httpDispatcher = new HttpDispatcher(config,sessionManager);
+		this.httpDispatcher.setWatchdog(watchdog);
 
 		this.webSocketDispatcher = new WebSocketDispatcher(config);
 
 		//[Socket]确认是否启用 HTTPS 支持
 		if(config.isHttps()) {
 			SSLManager sslManager = new SSLManager("TLS", false);
+			//会话票据需要在 JDK 第一次使用 SSL 之前开启
+			sslManager.setSessionTicket(config.getHttps().isSessionTicket());
 			sslManager.loadCertificate(System.getProperty("user.dir") + config.getHttps().getCertificateFile(),
 					config.getHttps().getCertificatePassword(), config.getHttps().getKeyPassword());
+			sslManager.setSessionCacheSize(config.getHttps().getSessionCacheSize());
+			sslManager.setSessionTimeout(config.getHttps().getSessionTimeout());
 			aioServerSocket.setSSLManager(sslManager);
 		}
 
 		aioServerSocket.handler(new WebServerHandler(config, httpDispatcher,webSocketDispatcher));
 		aioServerSocket.filterChain().add(new WebServerFilter());
-		aioServerSocket.messageSplitter(new HttpMessageSplitter());
+		aioServerSocket.messageSplitter(new HttpMessageSplitter(config.getMaxHeadSize() * 1024L));
 	}
 
 	private void initHotSwap() {
@@ -127,6 +142,74 @@ public class WebServer {
 		}
 	}
 
+	/**
+	 * 判断是否允许访问统计路由
+	 * 		按连接的对端 IP 判断, 不使用可以伪造的 X-Forwarded-For 和 X-Real-IP 请求头,
+	 * 		不允许访问时返回 403
+	 * @param request HTTP 请求对象
+	 * @param response HTTP 响应对象
+	 * @return true: 允许访问, false: 不允许访问
+	 */
+	private boolean checkMonitorAccess(HttpRequest request, HttpResponse response){
+		String remoteAddress = request.getSocketSession().remoteAddress();
+		for(String allowIp : config.getMonitorAllowIp()){
+			if(allowIp.trim().equals(remoteAddress)){
+				return true;
+			}
+		}
+
+		response.protocol().setStatus(403);
+		response.protocol().setStatusCode("Forbidden");
+		return false;
+	}
+
+	/**
+	 * 注册网络 IO 统计的路由
+	 * 		启用统计时通过 GET /VoovanMonitor/Metrics 以 JSON 格式返回统计数据, 只允许 MonitorAllowIp 中的 IP 访问
+	 */
+	private void initMetricsRouter(){
+		final NetworkMetrics metrics = aioServerSocket.getMetrics();
+		if(metrics == null){
+			return;
+		}
+
+		get("/VoovanMonitor/Metrics", new HttpRouter() {
+			@Override
+			public void process(HttpRequest request, HttpResponse response) throws Exception {
+				if(!checkMonitorAccess(request, response)){
+					return;
+				}
+
+				response.header().put("Content-Type", "application/json");
+				response.write(metrics.toJSON());
+			}
+		});
+	}
+
+	/**
+	 * 注册慢处理检测的路由
+	 * 		启用检测时通过 GET /VoovanMonitor/SlowTasks 以 JSON 格式返回耗时最严重的事件处理器和路由,
+	 * 		参数 top 指定返回的数量, 默认 20, 参数 stack 为 true 时返回采样的线程栈, 只允许 MonitorAllowIp 中的 IP 访问
+	 */
+	private void initWatchdogRouter(){
+		if(watchdog == null){
+			return;
+		}
+
+		get("/VoovanMonitor/SlowTasks", new HttpRouter() {
+			@Override
+			public void process(HttpRequest request, HttpResponse response) throws Exception {
+				if(!checkMonitorAccess(request, response)){
+					return;
+				}
+
+				String top = request.getParameter("top");
+				response.header().put("Content-Type", "application/json");
+				response.write(watchdog.toJSON(TString.isInteger(top) ? Integer.parseInt(top) : 20, "true".equals(request.getParameter("stack"))));
+			}
+		});
+	}
+
 	/**
 	 * 模块安装
      */
@@ -315,6 +398,8 @@ public class WebServer {
 
 		initConfigedRouter();
 		initModule();
+		initMetricsRouter();
+		initWatchdogRouter();
 		Logger.simple("Process ID: "+ TEnv.getCurrentPID());
 		Logger.simple("WebServer working on: http"+(config.isHttps()?"s":"")+"://"+config.getHost()+":"+config.getPort()+" ...");
 
@@ -367,6 +452,22 @@ public class WebServer {
 		return webSocketDispatcher.getRoutes();
 	}
 
+	/**
+	 * 获取网络 IO 统计
+	 * @return 统计对象, 未启用时返回 null
+	 */
+	public NetworkMetrics getMetrics(){
+		return aioServerSocket.getMetrics();
+	}
+
+	/**
+	 * 获取慢处理检测
+	 * @return 慢处理检测对象, 未启用时返回 null
+	 */
+	public SlowTaskWatchdog getWatchdog(){
+		return watchdog;
+	}
+
 	/**
 	 * 是否处于服务状态
 	 * @return true: 当前是服务状态, false: 当前未提供服务
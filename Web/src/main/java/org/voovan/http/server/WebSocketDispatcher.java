@@ -139,7 +139,7 @@ public class WebSocketDispatcher {
 						return WebSocketFrame.newInstance(true, Opcode.PONG, false, byteBuffer);
 					} else if (event == WebSocketEvent.PONG) {
 						final IoSession poneSession = session;
-						Global.getThreadPool().execute(new Runnable() {
+						Global.getWorkerPool().execute(new Runnable() {
 							@Override
 							public void run() {
 								TEnv.sleep(poneSession.socketContext().getReadTimeout() / 3);
@@ -13,6 +13,9 @@ public class HttpsConfig {
     private String certificateFile;
     private String certificatePassword;
     private String keyPassword;
+    private int sessionCacheSize = 20480;
+    private int sessionTimeout = 3600;
+    private boolean sessionTicket = false;
 
     public String getCertificateFile() {
         return certificateFile;
@@ -37,4 +40,28 @@ public class HttpsConfig {
     public void setKeyPassword(String keyPassword) {
         this.keyPassword = keyPassword;
     }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public boolean isSessionTicket() {
+        return sessionTicket;
+    }
+
+    public void setSessionTicket(boolean sessionTicket) {
+        this.sessionTicket = sessionTicket;
+    }
 }
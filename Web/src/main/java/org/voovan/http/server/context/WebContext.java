@@ -159,6 +159,28 @@ public class WebContext {
 			Logger.simple(TString.rightPad("  HotSwapInterval:", 35, ' ') + config.getHotSwapInterval());
 		}
 
+		if(config.getAcceptorCount()>1) {
+			Logger.simple(TString.rightPad("  AcceptorCount:", 35, ' ') + config.getAcceptorCount());
+		}
+
+		if(config.isVirtualThread()) {
+			Logger.simple(TString.rightPad("  VirtualThread:", 35, ' ') + config.isVirtualThread());
+		}
+
+		if(config.isMetrics()) {
+			Logger.simple(TString.rightPad("  Metrics:", 35, ' ') + config.isMetrics());
+		}
+
+		if(config.getSlowThreshold()>0) {
+			Logger.simple(TString.rightPad("  SlowThreshold:", 35, ' ') + config.getSlowThreshold());
+		}
+
+		if(config.isMetrics() || config.getSlowThreshold()>0) {
+			Logger.simple(TString.rightPad("  MonitorAllowIp:", 35, ' ') + String.join(",", config.getMonitorAllowIp()));
+		}
+
+		Logger.simple(TString.rightPad("  MaxHeadSize:", 35, ' ') + config.getMaxHeadSize());
+
 		if(config.isHttps()) {
 			Logger.simple(TString.rightPad("  CertificateFile:",35,' ')+config.getHttps().getCertificateFile());
 			Logger.simple(TString.rightPad("  CertificatePassword:",35,' ')+config.getHttps().getCertificatePassword());
@@ -37,6 +37,12 @@ public class WebServerConfig {
     private HttpsConfig https;
     private String indexFiles = "index.htm,index.html,default.htm,default.htm";
     private int hotSwapInterval = 0;
+    private int acceptorCount = 1;
+    private boolean virtualThread = false;
+    private boolean metrics = false;
+    private int slowThreshold = 0;
+    private int maxHeadSize = 64;
+    private String monitorAllowIp = "127.0.0.1,0:0:0:0:0:0:0:1";
 
     private Chain<HttpFilterConfig> filterConfigs = new Chain<HttpFilterConfig>();
     private List<HttpRouterConfig> routerConfigs = new Vector<HttpRouterConfig>();
@@ -169,6 +175,54 @@ public class WebServerConfig {
         hotSwapInterval = hotSwapInterval;
     }
 
+    public int getAcceptorCount() {
+        return acceptorCount;
+    }
+
+    public void setAcceptorCount(int acceptorCount) {
+        this.acceptorCount = acceptorCount;
+    }
+
+    public boolean isVirtualThread() {
+        return virtualThread;
+    }
+
+    public void setVirtualThread(boolean virtualThread) {
+        this.virtualThread = virtualThread;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(int slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    public int getMaxHeadSize() {
+        return maxHeadSize;
+    }
+
+    public void setMaxHeadSize(int maxHeadSize) {
+        this.maxHeadSize = maxHeadSize;
+    }
+
+    public String[] getMonitorAllowIp() {
+        return monitorAllowIp.split(",");
+    }
+
+    public void setMonitorAllowIp(String monitorAllowIp) {
+        this.monitorAllowIp = monitorAllowIp;
+    }
+
     public Chain<HttpFilterConfig> getFilterConfigs() {
         return filterConfigs;
     }
@@ -14,6 +14,8 @@ import java.nio.ByteBuffer;
  * Licence: Apache v2 License
  */
 public abstract class WebSocketRouter implements Cloneable{
+	//获取过滤器链快照使用的数组类型
+	private static final WebSocketFilter[] FILTER_ARRAY_TYPE = new WebSocketFilter[0];
 
 	protected Chain<WebSocketFilter> webSocketFilterChain;
 
@@ -45,11 +47,9 @@ public abstract class WebSocketRouter implements Cloneable{
 	 * @throws WebSocketFilterException WebSocket过滤器异常
 	 */
 	public Object filterDecoder(WebSocketSession session, Object result) throws WebSocketFilterException {
-		Chain<WebSocketFilter> tmpWebFilterChain = webSocketFilterChain.clone();
-		tmpWebFilterChain.rewind();
-		while (tmpWebFilterChain.hasNext()) {
-			WebSocketFilter fitler = tmpWebFilterChain.next();
-			result = fitler.decode(session, result);
+		WebSocketFilter[] filters = webSocketFilterChain.snapshot(FILTER_ARRAY_TYPE);
+		for (int i = 0; i < filters.length; i++) {
+			result = filters[i].decode(session, result);
 		}
 		return result;
 	}
@@ -62,11 +62,9 @@ public abstract class WebSocketRouter implements Cloneable{
 	 * @throws WebSocketFilterException WebSocket过滤器异常
 	 */
 	public Object filterEncoder(WebSocketSession session,Object result) throws WebSocketFilterException {
-		Chain<WebSocketFilter> tmpWebFilterChain = webSocketFilterChain.clone();
-		tmpWebFilterChain.rewind();
-		while (tmpWebFilterChain.hasPrevious()) {
-			WebSocketFilter fitler = tmpWebFilterChain.previous();
-			result = fitler.encode(session, result);
+		WebSocketFilter[] filters = webSocketFilterChain.snapshot(FILTER_ARRAY_TYPE);
+		for (int i = filters.length - 1; i >= 0; i--) {
+			result = filters[i].encode(session, result);
 		}
 
 		if(result instanceof ByteBuffer || result == null) {
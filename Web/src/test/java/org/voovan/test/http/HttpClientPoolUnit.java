@@ -0,0 +1,188 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.client.HttpClient;
+import org.voovan.http.client.HttpClientPool;
+import org.voovan.http.message.Response;
+import org.voovan.tools.TEnv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HttpClient 连接池测试
+ *      使用一个简单的 HTTP 服务端, 按请求路径返回不同的连接控制方式
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpClientPoolUnit extends TestCase {
+	private String url;
+	private ServerSocket serverSocket;
+	private AtomicInteger acceptCount;
+	private HttpClientPool pool;
+
+	public HttpClientPoolUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	public void setUp() throws IOException {
+		acceptCount = new AtomicInteger(0);
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+		url = "http://127.0.0.1:" + serverSocket.getLocalPort();
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						acceptCount.incrementAndGet();
+						Thread connectionThread = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+						connectionThread.setDaemon(true);
+						connectionThread.start();
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+
+		pool = new HttpClientPool(4, 5, 60);
+	}
+
+	@Override
+	public void tearDown() throws IOException {
+		try {
+			pool.close();
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * 按请求路径响应
+	 *      /keep: HTTP/1.1 保持连接, /close: Connection: close,
+	 *      /http10: HTTP/1.0 没有 keep-alive, /http10-keep: HTTP/1.0 声明 keep-alive,
+	 *      /halfclose: 响应后服务端关闭输出, 连接处于半关闭状态
+	 */
+	private void serve(Socket socket) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			OutputStream outputStream = socket.getOutputStream();
+			String requestLine;
+			while ((requestLine = reader.readLine()) != null) {
+				String line;
+				while ((line = reader.readLine()) != null && !line.isEmpty()) {
+				}
+
+				String path = requestLine.split(" ")[1].split("\\?")[0];
+				if (path.equals("/close")) {
+					//等待客户端关闭连接
+					outputStream.write("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok".getBytes());
+				} else if (path.equals("/http10")) {
+					outputStream.write("HTTP/1.0 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes());
+				} else if (path.equals("/http10-keep")) {
+					outputStream.write("HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 2\r\n\r\nok".getBytes());
+				} else if (path.equals("/halfclose")) {
+					outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes());
+					outputStream.flush();
+					//连接进入连接池空闲后服务端关闭输出
+					TEnv.sleep(100);
+					socket.shutdownOutput();
+				} else {
+					outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes());
+				}
+				outputStream.flush();
+			}
+		} catch (IOException e) {
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void request(String path) throws Exception {
+		HttpClient httpClient = pool.getHttpClient(url);
+		assertNotNull(httpClient);
+		try {
+			Response response = httpClient.send(path);
+			assertEquals(200, response.protocol().getStatus());
+			assertEquals("ok", response.body().getBodyString());
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	public void testReuse() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			request("/keep");
+		}
+		assertEquals(1, acceptCount.get());
+		assertEquals(1, pool.getIdleCount(url));
+		assertEquals(0, pool.getBorrowedCount(url));
+
+		//HTTP/1.0 声明了 keep-alive 的连接可以复用
+		request("/http10-keep");
+		request("/keep");
+		assertEquals(1, acceptCount.get());
+	}
+
+	public void testConnectionClose() throws Exception {
+		request("/close");
+		assertEquals(0, pool.getIdleCount(url));
+
+		request("/keep");
+		assertEquals(2, acceptCount.get());
+		assertEquals(1, pool.getIdleCount(url));
+	}
+
+	public void testHttp10WithoutKeepAlive() throws Exception {
+		request("/http10");
+		assertEquals(0, pool.getIdleCount(url));
+
+		request("/keep");
+		assertEquals(2, acceptCount.get());
+	}
+
+	public void testHalfClose() throws Exception {
+		request("/halfclose");
+		TEnv.sleep(200);
+
+		//对端已经关闭的空闲连接不会被复用
+		request("/keep");
+		assertEquals(2, acceptCount.get());
+	}
+
+	public void testEviction() throws Exception {
+		pool.setIdleTimeout(1);
+		request("/keep");
+		assertEquals(1, pool.getIdleCount(url));
+
+		//时间轮每秒检查一次空闲的连接
+		TEnv.sleep(2500);
+		assertEquals(0, pool.getIdleCount(url));
+
+		request("/keep");
+		assertEquals(2, acceptCount.get());
+	}
+}
@@ -3,6 +3,7 @@ package org.voovan.test.http;
 
 import junit.framework.TestCase;
 import org.voovan.http.client.HttpClient;
+import org.voovan.http.client.ResponseStream;
 import org.voovan.http.message.Response;
 import org.voovan.http.message.packet.Part;
 import org.voovan.http.websocket.WebSocketRouter;
@@ -13,6 +14,12 @@ import org.voovan.tools.log.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 测试用例中的方法需要单独执行
@@ -52,6 +59,35 @@ public class HttpClientUnit extends TestCase {
 		getClient.close();
 	}
 
+	public void testSendAsync() throws Exception{
+		HttpClient getClient = new HttpClient("http://127.0.0.1:28080","GB2312", 60);
+		List<CompletableFuture<Response>> futures = new ArrayList<CompletableFuture<Response>>();
+		for(int i=0; i<10; i++) {
+			futures.add(getClient.putParameters("name", "测试Async" + i).sendAsync());
+		}
+
+		for(CompletableFuture<Response> future : futures) {
+			Response response = future.get(60, TimeUnit.SECONDS);
+			assertTrue(response.protocol().getStatus()!=500);
+		}
+		getClient.close();
+	}
+
+	public void testSendStream() throws Exception{
+		HttpClient getClient = new HttpClient("http://127.0.0.1:28080","GB2312", 60);
+		ResponseStream responseStream = getClient.setMethod("GET").sendStream("/");
+		assertTrue(responseStream.getResponse().protocol().getStatus()!=500);
+		long totalSize = responseStream.read(1024, new Consumer<ByteBuffer>() {
+			@Override
+			public void accept(ByteBuffer byteBuffer) {
+				Logger.simple(byteBuffer.remaining());
+			}
+		});
+		assertTrue(responseStream.isEnd());
+		Logger.simple("total: " + totalSize);
+		getClient.close();
+	}
+
 	public void testPost() throws Exception {
 		HttpClient postClient = new HttpClient("http://127.0.0.1:28080","GB2312",60);
 		Response response = postClient.setMethod("POST") 